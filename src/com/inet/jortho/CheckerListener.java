@@ -28,11 +28,14 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Future;
 
 import javax.swing.JComponent;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JPopupMenu;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
 import javax.swing.event.PopupMenuEvent;
 import javax.swing.event.PopupMenuListener;
 import javax.swing.text.BadLocationException;
@@ -45,7 +48,7 @@ import javax.swing.text.Utilities;
  * Is used from CheckerMenu and CheckerPopup to handle the user events.
  * @author Volker Berlin
  */
-public class CheckerListener implements PopupMenuListener, LanguageChangeListener {
+public class CheckerListener implements PopupMenuListener, LanguageChangeListener, CaretListener {
 
     private final JComponent          menu;
 
@@ -55,6 +58,12 @@ public class CheckerListener implements PopupMenuListener, LanguageChangeListene
 
     private final SpellCheckerOptions options;
 
+    /** the running suggestion search or null */
+    private Future<?>                 pending;
+
+    /** the text component of the running suggestion search */
+    private JTextComponent            pendingText;
+
     /**
      * Create a PopupMenuListener
      * 
@@ -75,20 +84,28 @@ public class CheckerListener implements PopupMenuListener, LanguageChangeListene
      * {@inheritDoc}
      */
     public void popupMenuCanceled( PopupMenuEvent e ) {
-        /* empty */
+        cancelSearch();
     }
 
     /**
      * {@inheritDoc}
      */
     public void popupMenuWillBecomeInvisible( PopupMenuEvent e ) {
-        /* empty */
+        cancelSearch();
+    }
+
+    /**
+     * Cancel a running suggestion search if the caret is moved because the result is stale.
+     */
+    public void caretUpdate( CaretEvent e ) {
+        cancelSearch();
     }
 
     /**
      * {@inheritDoc}
      */
     public void popupMenuWillBecomeVisible( PopupMenuEvent ev ) {
+        cancelSearch();
         if( dictionary == null) {
             menu.setEnabled( false );
             return;
@@ -131,15 +148,37 @@ public class CheckerListener implements PopupMenuListener, LanguageChangeListene
                     return;
                 }
 
-                List<Suggestion> list = dictionary.searchSuggestions( word );
-
-                //Disable then menu item if there are no suggestions
-                menu.setEnabled( list.size() > 0 );
+                final boolean needCapitalization = tokenizer.isFirstWordInSentence() && Utils.isFirstCapitalized( word );
 
-                boolean needCapitalization = tokenizer.isFirstWordInSentence() && Utils.isFirstCapitalized( word );
+                // the next misspelled word is the most likely next request
+                SuggestionSearch.prefetch( dictionary, tokenizer.nextInvalidWord() );
 
-                addSuggestionMenuItem( jText, begOffs, endOffs, list, needCapitalization );
-                addMenuItemAddToDictionary( jText, word, list.size() > 0 );
+                // the popup is opened immediately with a placeholder, the suggestions are filled in if available
+                addSearchingMenuItem();
+                addMenuItemAddToDictionary( jText, word, true );
+                menu.setEnabled( true );
+                Future<?> future = SuggestionSearch.search( dictionary, word, new SuggestionSearch.Callback() {
+                    public void suggestionsFound( String searchWord, List<Suggestion> list, boolean complete ) {
+                        if( complete ) {
+                            stopSearch();
+                        }
+                        menu.removeAll();
+                        addSuggestionMenuItem( jText, begOffs, endOffs, list, needCapitalization );
+                        if( !complete ) {
+                            addSearchingMenuItem();
+                        }
+                        boolean hasItems = menu.getComponentCount() > 0;
+                        //Disable then menu item if there are no suggestions
+                        menu.setEnabled( hasItems );
+                        addMenuItemAddToDictionary( jText, searchWord, hasItems );
+                        repackMenu();
+                    }
+                } );
+                if( future != null ) {
+                    pending = future;
+                    pendingText = jText;
+                    jText.addCaretListener( this );
+                }
             } catch( BadLocationException ex ) {
                 ex.printStackTrace();
             }
@@ -234,6 +273,48 @@ public class CheckerListener implements PopupMenuListener, LanguageChangeListene
         menu.setEnabled( true );
     }
 
+    /**
+     * Add a disabled menu item as placeholder for the suggestions that are searched currently.
+     */
+    protected void addSearchingMenuItem() {
+        JMenuItem item = new JMenuItem( Utils.getResource( "searchingSuggestions" ) );
+        item.setEnabled( false );
+        menu.add( item );
+    }
+
+    /**
+     * Update the size of the menu after the items was changed while it is visible.
+     */
+    private void repackMenu() {
+        JPopupMenu popup = menu instanceof JMenu ? ((JMenu)menu).getPopupMenu() : (JPopupMenu)menu;
+        if( popup.isVisible() ) {
+            popup.pack();
+        }
+        menu.revalidate();
+        menu.repaint();
+    }
+
+    /**
+     * Cancel the running suggestion search, if any.
+     */
+    private void cancelSearch() {
+        if( pending != null ) {
+            pending.cancel( true );
+        }
+        stopSearch();
+    }
+
+    /**
+     * Release the references of the running suggestion search.
+     */
+    private void stopSearch() {
+        if( pendingText != null ) {
+            pendingText.removeCaretListener( this );
+        }
+        pending = null;
+        pendingText = null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -31,6 +31,11 @@ import java.util.zip.*;
  */
 final class Dictionary extends DictionaryBase{
 
+    /** true, if the tree array is shared with a snapshot and must be copied before the next modification */
+    private boolean shared;
+    
+    /** count of modifications, is used to detect stale cache entries */
+    private int modCount;
    
     /**
      * Create an empty Dictionary.
@@ -104,6 +109,8 @@ final class Dictionary extends DictionaryBase{
     public void load(InputStream stream)  throws IOException{
         InputStream zip = new InflaterInputStream(stream);
         zip = new BufferedInputStream(zip);
+        unshare();
+        modCount++;
         size = 0;
         while(zip.available() > 0){
             char c = (char)(zip.read() + (zip.read() << 8));
@@ -134,6 +141,8 @@ final class Dictionary extends DictionaryBase{
      * @param word the new word.
      */
     public void add(String word){
+        unshare();
+        modCount++;
         idx = 0;
         for(int i=0; i<word.length(); i++){
             char c = word.charAt(i);
@@ -152,6 +161,39 @@ final class Dictionary extends DictionaryBase{
     }
     
     
+    /**
+     * Create a read only view of the current state of this dictionary that can be searched in another thread. The
+     * data are not copied. A later modification of this dictionary copies the data first and has no effect on the
+     * snapshot.
+     * @return the snapshot
+     */
+    DictionaryBase snapshot(){
+        shared = true;
+        return new Snapshot( tree, size );
+    }
+    
+    
+    /**
+     * Get the count of modifications. If the value has changed then cached search results are invalid.
+     */
+    int getModCount(){
+        return modCount;
+    }
+    
+    
+    /**
+     * Copy the tree if it is shared with a snapshot.
+     */
+    private void unshare(){
+        if(shared){
+            char[] temp = new char[tree.length];
+            System.arraycopy( tree, 0, temp, 0, size );
+            tree = temp;
+            shared = false;
+        }
+    }
+    
+    
     /**
      * Convert the directory tree to char array.
      * @return a char array that include the data of the dictionary.
@@ -239,4 +281,15 @@ final class Dictionary extends DictionaryBase{
             tree = puffer;
         }
     }
+
+
+    /**
+     * A read only view of a Dictionary that has its own search position.
+     */
+    private static final class Snapshot extends DictionaryBase{
+        
+        Snapshot(char[] tree, int size){
+            super(tree, size);
+        }
+    }
 }
@@ -38,8 +38,15 @@ abstract class DictionaryBase {
     
     
     DictionaryBase(char[] tree){
+        this(tree, tree.length);
+    }
+    
+    /**
+     * Create a DictionaryBase on the first size characters of the tree. The array is not copied.
+     */
+    DictionaryBase(char[] tree, int size){
         this.tree = tree;
-        size = tree.length;
+        this.size = size;
     }
     
     /**
@@ -83,10 +90,23 @@ abstract class DictionaryBase {
      * @see Suggestion
      */
     public List<Suggestion> searchSuggestions(String word){
+        return searchSuggestions( word, Math.min( 20, 4+word.length() ) );
+    }
+    
+    
+    /**
+     * Returns a list of suggestions if the word is not in the dictionary. The search can be stopped with an interrupt
+     * of the current thread, then the list contains the suggestions that was found so far.
+     * @param word the wrong spelled word. Can't be null.
+     * @param maxDiff the max dissimilarity of the suggestions, a smaller value is faster.
+     * @return a list of class Suggestion.
+     * @see Suggestion
+     */
+    public List<Suggestion> searchSuggestions(String word, int maxDiff){
         if(word.length() == 0 || exist(word)){
             return new ArrayList<Suggestion>();
         }
-        Suggestions suggesions = new Suggestions( Math.min( 20, 4+word.length() ) );
+        Suggestions suggesions = new Suggestions( maxDiff );
         idx = 0;
         searchSuggestions( suggesions, word, 0, 0, 0);
         List<Suggestion> list = suggesions.getlist();
@@ -106,7 +126,7 @@ abstract class DictionaryBase {
      * @param diff Die Un�hnlichkeit bis zur aktuellen Zeichenposition
      */
     private void searchSuggestions( Suggestions list, CharSequence chars, int charPosition, int lastIdx, int diff){
-        if(diff > list.getMaxDissimilarity()){
+        if(diff > list.getMaxDissimilarity() || Thread.currentThread().isInterrupted()){
             return;
         }
         // First with the correct letters to go on 
@@ -59,7 +59,30 @@ class DictionaryFactory {
      *             If filename is null.
      */
     public void loadWordList( URL filename ) throws IOException {
-        loadWords( new WordIterator( filename ) );
+        loadWordList( filename, Utf8WordReader.DEFAULT_BUFFER_SIZE );
+    }
+
+    /**
+     * Load the directory from a compressed list of words with UTF8 encoding. The words are decoded directly from
+     * the I/O buffer and added without creating a String for every word. This method can be called multiple times.
+     * 
+     * @param filename
+     *            the name of the file
+     * @param bufferSize
+     *            the size of the I/O buffer in bytes
+     * @throws IOException
+     *             If an I/O error occurs.
+     * @throws NullPointerException
+     *             If filename is null.
+     */
+    public void loadWordList( URL filename, int bufferSize ) throws IOException {
+        Utf8WordReader reader = Utf8WordReader.create( filename, bufferSize );
+        while( reader.next() ) {
+            int length = reader.length();
+            if( length > 1 ) {
+                add( reader.getChars(), length );
+            }
+        }
     }
     
     public void loadWords( Iterator<String> words ) {
@@ -76,11 +99,20 @@ class DictionaryFactory {
      * @param word the new word.
      */
     public void add(String word){
+        add( word.toCharArray(), word.length() );
+    }
+
+    /**
+     * Add a word to the tree. If it already exist then it has no effect. 
+     * @param word a buffer with the characters of the new word
+     * @param length the count of valid characters in the buffer
+     */
+    void add(char[] word, int length){
         Node node = root;
-        for(int i=0; i<word.length(); i++){
-            char c = word.charAt(i);
+        for(int i=0; i<length; i++){
+            char c = word[i];
             NodeEntry entry = node.searchCharOrAdd( c );
-            if(i == word.length()-1){
+            if(i == length-1){
                 entry.isWord = true;
                 return;
             }
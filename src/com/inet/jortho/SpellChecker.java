@@ -694,7 +694,7 @@ public class SpellChecker {
                     try {
                         DictionaryFactory factory = new DictionaryFactory();
                         try {
-                            factory.loadWordList( new URL( baseURL, "dictionary_" + locale + extension ) );
+                            factory.loadWordList( new URL( baseURL, "dictionary_" + locale + extension ), globalOptions.getDictionaryBufferSize() );
                         } catch( Exception ex ) {
                             JOptionPane.showMessageDialog( null, ex.toString(), "Error", JOptionPane.ERROR_MESSAGE );
                         }
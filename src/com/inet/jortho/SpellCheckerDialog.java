@@ -28,6 +28,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -42,7 +43,10 @@ class SpellCheckerDialog extends JDialog implements ActionListener {
 
     private JTextComponent jText;
     private Dictionary dictionary;
+    private Locale locale;
     private Tokenizer tok;
+    /** the running suggestion search or null */
+    private Future<?> pending;
     private boolean isDictionaryModify;
     private final SpellCheckerOptions options;
     
@@ -176,6 +180,7 @@ class SpellCheckerDialog extends JDialog implements ActionListener {
     public void show( JTextComponent jTextComponent, Dictionary dic, Locale loc ) {
         this.jText = jTextComponent;
         this.dictionary = dic;
+        this.locale = loc;
         change.requestFocus();
         setTitle( Utils.getResource("spelling") + ": " + loc.getDisplayLanguage() );
 
@@ -210,6 +215,7 @@ class SpellCheckerDialog extends JDialog implements ActionListener {
      * @return true, if found a spell error.
      */
     private boolean searchNext() {
+        cancelSearch();
         String wordStr;
         while( true ) {
             wordStr = tok.nextInvalidWord();
@@ -235,10 +241,43 @@ class SpellCheckerDialog extends JDialog implements ActionListener {
         word.setText( wordStr );
         notFound.setText( wordStr );
 
-        List<Suggestion> list = dictionary.searchSuggestions( wordStr );
+        final boolean needCapitalization = tok.isFirstWordInSentence() && Utils.isFirstCapitalized( wordStr );
+
+        // show a placeholder until the suggestions are available
+        Vector<String> placeholder = new Vector<String>();
+        placeholder.add( Utils.getResource( "searchingSuggestions" ) );
+        suggestionsList.setEnabled( false );
+        suggestionsList.setListData( placeholder );
         
-        boolean needCapitalization = tok.isFirstWordInSentence() && Utils.isFirstCapitalized( wordStr );
+        addToDic.setEnabled( true );
+
+        final String misspelled = wordStr;
+        pending = SuggestionSearch.search( dictionary, wordStr, new SuggestionSearch.Callback() {
+            public void suggestionsFound( String searchWord, List<Suggestion> list, boolean complete ) {
+                if( complete ) {
+                    pending = null;
+                }
+                showSuggestions( misspelled, list, needCapitalization );
+                suggestionsList.setEnabled( complete || !list.isEmpty() );
+            }
+        } );
 
+        // the next misspelled word is the most likely next request
+        int offset = tok.getWordOffset() + wordStr.length();
+        Tokenizer lookAhead = new Tokenizer( jText, dictionary, locale, offset, jText.getDocument().getLength(), options );
+        SuggestionSearch.prefetch( dictionary, lookAhead.nextInvalidWord() );
+        return true;
+    }
+    
+    /**
+     * Fill the suggestion list. The first suggestion is set in the word field if the user has not changed it.
+     * @param misspelled the current misspelled word
+     * @param list the suggestions
+     * @param needCapitalization if the first letter of the suggestions should capitalized
+     */
+    private void showSuggestions( String misspelled, List<Suggestion> list, boolean needCapitalization ) {
+        boolean isUntouched = misspelled.equals( word.getText() ) || suggestionsList.getModel().getSize() > 0 && suggestionsList.isEnabled() && word.getText().equals( suggestionsList.getModel().getElementAt( 0 ) );
+        boolean addToDicEnabled = addToDic.isEnabled();
         Vector<String> suggestionsVector = new Vector<String>();
         for( int i = 0; i < list.size() && i < options.getSuggestionsLimitDialog(); i++ ) {
             Suggestion sugestion = list.get( i );
@@ -246,14 +285,22 @@ class SpellCheckerDialog extends JDialog implements ActionListener {
             if( needCapitalization ) {
                 newWord = Utils.getCapitalized( newWord );
             }
-            if( i == 0 )
+            if( i == 0 && isUntouched )
                 word.setText( newWord );
             suggestionsVector.add( newWord );
         }
         suggestionsList.setListData( suggestionsVector );
-        
-        addToDic.setEnabled( true );
-        return true;
+        addToDic.setEnabled( addToDicEnabled );
+    }
+    
+    /**
+     * Cancel the running suggestion search, if any.
+     */
+    private void cancelSearch() {
+        if( pending != null ) {
+            pending.cancel( true );
+            pending = null;
+        }
     }
     
     
@@ -301,6 +348,7 @@ class SpellCheckerDialog extends JDialog implements ActionListener {
 
     @Override
     public void dispose(){
+        cancelSearch();
         super.dispose();
         if( isDictionaryModify ){
             AutoSpellChecker.refresh( jText );
@@ -44,6 +44,8 @@ public class SpellCheckerOptions {
 
     private boolean languageDisableVisible = false;
 
+    private int     dictionaryBufferSize   = Utf8WordReader.DEFAULT_BUFFER_SIZE;
+
     /**
      * Create SpellCheckerOptions with default values.
      */
@@ -185,4 +187,24 @@ public class SpellCheckerOptions {
     public boolean isLanguageDisableVisible() {
         return languageDisableVisible;
     }
+
+    /**
+     * Set the size of the I/O buffer in bytes that is used for loading the dictionaries. The default is 64 KB. This
+     * has only an effect for the global options.
+     * 
+     * @param size
+     *            the new buffer size
+     */
+    public void setDictionaryBufferSize( int size ) {
+        dictionaryBufferSize = size;
+    }
+
+    /**
+     * Get the size of the I/O buffer in bytes that is used for loading the dictionaries.
+     * 
+     * @return the buffer size
+     */
+    public int getDictionaryBufferSize() {
+        return dictionaryBufferSize;
+    }
 }
@@ -0,0 +1,269 @@
+/*
+ *  JOrtho
+ *
+ *  Copyright (C) 2005-2009 by i-net software
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation; either version 2 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ *  Created on 19.10.2026
+ */
+package com.inet.jortho;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Computes the suggestions for a misspelled word in a background thread. The results are delivered on the event
+ * dispatch thread and the results of recently queried words are cached. All methods must be called from the event
+ * dispatch thread.
+ */
+final class SuggestionSearch {
+
+    /**
+     * Receives the suggestions of a search.
+     */
+    interface Callback {
+
+        /**
+         * Is called on the event dispatch thread if suggestions are available.
+         *
+         * @param word
+         *            the searched word
+         * @param list
+         *            the suggestions sorted by dissimilarity
+         * @param complete
+         *            false, if this is a preliminary result with only the most similar words
+         */
+        void suggestionsFound( String word, List<Suggestion> list, boolean complete );
+    }
+
+    /** the max dissimilarity of the fast first pass, this is one changed letter */
+    private static final int QUICK_DIFF = 5;
+
+    private static final int CACHE_SIZE = 64;
+
+    private static final ExecutorService searchExecutor = Executors.newSingleThreadExecutor( new SearchThreadFactory( "JOrtho suggestions", Thread.NORM_PRIORITY ) );
+
+    private static final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor( new SearchThreadFactory( "JOrtho prefetch", Thread.MIN_PRIORITY ) );
+
+    private static final Map<String, List<Suggestion>> cache = new LinkedHashMap<String, List<Suggestion>>( CACHE_SIZE, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, List<Suggestion>> eldest ) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private static final Map<String, Future<?>> prefetches = new HashMap<String, Future<?>>();
+
+    private static Dictionary cacheDictionary;
+
+    private static int cacheModCount;
+
+    /**
+     * There is no instance needed of SuggestionSearch. All methods are static.
+     */
+    private SuggestionSearch() {/*nothing*/}
+
+    /**
+     * Search the suggestions for a word in the background. If the word is in the cache then the callback is called
+     * immediately. Else the callback is called first with the most similar words and then with the complete list.
+     *
+     * @param dictionary
+     *            the dictionary to search in
+     * @param word
+     *            the misspelled word
+     * @param callback
+     *            receives the results
+     * @return the running search that can be cancelled or null if the result was in the cache
+     */
+    static Future<?> search( Dictionary dictionary, final String word, final Callback callback ) {
+        List<Suggestion> list = getCached( dictionary, word );
+        if( list != null ) {
+            callback.suggestionsFound( word, list, true );
+            return null;
+        }
+        final Dictionary dic = dictionary;
+        final int modCount = dictionary.getModCount();
+        final DictionaryBase snapshot = dictionary.snapshot();
+        SearchTask task = new SearchTask() {
+            @Override
+            void search() {
+                List<Suggestion> quick = snapshot.searchSuggestions( word, QUICK_DIFF );
+                if( !quick.isEmpty() ) {
+                    deliver( quick, false );
+                }
+                deliver( snapshot.searchSuggestions( word ), true );
+            }
+
+            @Override
+            void delivered( List<Suggestion> list, boolean complete ) {
+                if( complete ) {
+                    putCache( dic, modCount, word, list );
+                }
+                callback.suggestionsFound( word, list, complete );
+            }
+        };
+        searchExecutor.execute( task );
+        return task;
+    }
+
+    /**
+     * Compute the suggestions of a word with low priority and hold it in the cache. This is used for words that
+     * will be requested with a high probability next.
+     *
+     * @param dictionary
+     *            the dictionary to search in
+     * @param word
+     *            the misspelled word
+     */
+    static void prefetch( Dictionary dictionary, final String word ) {
+        if( word == null || getCached( dictionary, word ) != null || prefetches.containsKey( word ) ) {
+            return;
+        }
+        final Dictionary dic = dictionary;
+        final int modCount = dictionary.getModCount();
+        final DictionaryBase snapshot = dictionary.snapshot();
+        SearchTask task = new SearchTask() {
+            @Override
+            void search() {
+                deliver( snapshot.searchSuggestions( word ), true );
+            }
+
+            @Override
+            void delivered( List<Suggestion> list, boolean complete ) {
+                prefetches.remove( word );
+                putCache( dic, modCount, word, list );
+            }
+        };
+        prefetches.put( word, task );
+        prefetchExecutor.execute( task );
+    }
+
+    /**
+     * Get the cached suggestions of a word. The cache is cleared if the dictionary was changed or modified.
+     */
+    private static List<Suggestion> getCached( Dictionary dictionary, String word ) {
+        if( cacheDictionary != dictionary || cacheModCount != dictionary.getModCount() ) {
+            cache.clear();
+            for( Future<?> future : prefetches.values() ) {
+                future.cancel( true );
+            }
+            prefetches.clear();
+            cacheDictionary = dictionary;
+            cacheModCount = dictionary.getModCount();
+            return null;
+        }
+        return cache.get( word );
+    }
+
+    private static void putCache( Dictionary dictionary, int modCount, String word, List<Suggestion> list ) {
+        if( cacheDictionary == dictionary && cacheModCount == modCount ) {
+            cache.put( word, Collections.unmodifiableList( list ) );
+        }
+    }
+
+    /**
+     * A cancelable search that delivers its results on the event dispatch thread. Results of a cancelled search are
+     * dropped, also if they are already queued on the event dispatch thread.
+     */
+    private static abstract class SearchTask extends FutureTask<Object> {
+
+        SearchTask() {
+            this( new SearchCall() );
+        }
+
+        private SearchTask( SearchCall call ) {
+            super( call );
+            call.task = this;
+        }
+
+        /**
+         * Run the search in the background thread.
+         */
+        abstract void search();
+
+        /**
+         * Is called on the event dispatch thread with the results of the search.
+         */
+        abstract void delivered( List<Suggestion> list, boolean complete );
+
+        /**
+         * Send a result to the event dispatch thread.
+         */
+        final void deliver( final List<Suggestion> list, final boolean complete ) {
+            if( Thread.currentThread().isInterrupted() || isCancelled() ) {
+                return;
+            }
+            SwingUtilities.invokeLater( new Runnable() {
+                public void run() {
+                    if( !isCancelled() ) {
+                        delivered( list, complete );
+                    }
+                }
+            } );
+        }
+    }
+
+    /**
+     * Calls the search of the task, so that a cancel can interrupt the running search.
+     */
+    private static final class SearchCall implements Callable<Object> {
+
+        SearchTask task;
+
+        public Object call() {
+            try {
+                task.search();
+            } catch( RuntimeException ex ) {
+                ex.printStackTrace();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Creates the daemon threads for the background search.
+     */
+    private static final class SearchThreadFactory implements ThreadFactory {
+
+        private final String name;
+
+        private final int priority;
+
+        SearchThreadFactory( String name, int priority ) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        public Thread newThread( Runnable runnable ) {
+            Thread thread = new Thread( runnable, name );
+            thread.setPriority( priority );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+}
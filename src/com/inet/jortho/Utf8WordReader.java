@@ -0,0 +1,252 @@
+/*
+ *  JOrtho
+ *
+ *  Copyright (C) 2005-2009 by i-net software
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License as
+ *  published by the Free Software Foundation; either version 2 of the
+ *  License, or (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *
+ *  Created on 19.10.2026
+ */
+package com.inet.jortho;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A byte level reader for word lists with UTF8 encoding. The words must be delimited with newlines. In difference to
+ * the {@link WordIterator} no String is created for a word. The UTF8 bytes are decoded directly from a large buffer
+ * into a reused char array which is valid until the next call of {@link #next()}. Empty lines are skipped.
+ */
+final class Utf8WordReader {
+
+    /**
+     * The default size of the I/O buffer in bytes.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    private final InputStream input;
+    private final byte[] buffer;
+    private int pos;
+    private int limit;
+    /** true after the end of the stream was reached and the stream was closed */
+    private boolean eof;
+
+    private char[] word = new char[64];
+    private int length;
+
+    // state of a multi byte sequence that can span two buffer fills
+    private int codePoint;
+    private int pending;
+
+    /**
+     * Create a reader for a plain stream of words.
+     *
+     * @param input
+     *            the stream with the UTF8 encoded words, will be closed at the end
+     * @param bufferSize
+     *            the size of the I/O buffer in bytes
+     */
+    Utf8WordReader( InputStream input, int bufferSize ) {
+        this.input = input;
+        this.buffer = new byte[Math.max( bufferSize, 16 )];
+    }
+
+    /**
+     * Create a reader for a compressed list of words like a JOrtho dictionary. Local files are read directly without
+     * an URLConnection and the read timeout is only set for remote URLs.
+     *
+     * @param filename
+     *            the URL of the compressed file
+     * @param bufferSize
+     *            the size of the I/O buffer in bytes
+     * @return the reader
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    static Utf8WordReader create( URL filename, int bufferSize ) throws IOException {
+        InputStream stream;
+        if( "file".equals( filename.getProtocol() ) ) {
+            File file;
+            try {
+                file = new File( filename.toURI() );
+            } catch( Exception ex ) {
+                file = new File( filename.getPath() );
+            }
+            stream = new FileInputStream( file );
+        } else {
+            URLConnection conn = filename.openConnection();
+            conn.setReadTimeout( 5000 );
+            stream = conn.getInputStream();
+        }
+        // the inflater gets its own buffer of the same size, it reads in large blocks from the compressed stream
+        stream = new InflaterInputStream( stream, new Inflater(), Math.max( bufferSize, 512 ) );
+        return new Utf8WordReader( stream, bufferSize );
+    }
+
+    /**
+     * Read the next word. The characters are available with {@link #getChars()} and {@link #length()} until the next
+     * call of this method.
+     *
+     * @return false, if the end of the stream was reached. The stream is closed in this case.
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    boolean next() throws IOException {
+        int len = 0;
+        char[] chars = word;
+        while( true ) {
+            if( pos >= limit ) {
+                if( !fill() ) {
+                    if( pending > 0 ) {
+                        pending = 0;
+                        chars = append( chars, len++, REPLACEMENT_CHAR );
+                    }
+                    length = len;
+                    return len > 0;
+                }
+            }
+            // fast path for ASCII characters
+            byte[] buf = buffer;
+            int p = pos;
+            int lim = limit;
+            if( pending == 0 ) {
+                while( p < lim ) {
+                    int b = buf[p];
+                    if( b < 0 || b == '\n' || b == '\r' ) {
+                        break;
+                    }
+                    chars = append( chars, len++, (char)b );
+                    p++;
+                }
+                pos = p;
+                if( p >= lim ) {
+                    continue;
+                }
+            }
+            int b = buf[pos++] & 0xFF;
+            if( pending > 0 ) {
+                if( (b & 0xC0) == 0x80 ) {
+                    codePoint = (codePoint << 6) | (b & 0x3F);
+                    if( --pending == 0 ) {
+                        if( codePoint > Character.MAX_CODE_POINT ) {
+                            codePoint = REPLACEMENT_CHAR;
+                        }
+                        chars = appendCodePoint( chars, len, codePoint );
+                        len += codePoint >= 0x10000 ? 2 : 1;
+                    }
+                    continue;
+                }
+                // broken sequence, the current byte is handled as a new character
+                pending = 0;
+                chars = append( chars, len++, REPLACEMENT_CHAR );
+            }
+            if( b == '\n' || b == '\r' ) {
+                if( len > 0 ) {
+                    length = len;
+                    return true;
+                }
+            } else if( b < 0x80 ) {
+                chars = append( chars, len++, (char)b );
+            } else if( b >= 0xC0 && b < 0xE0 ) {
+                codePoint = b & 0x1F;
+                pending = 1;
+            } else if( b >= 0xE0 && b < 0xF0 ) {
+                codePoint = b & 0x0F;
+                pending = 2;
+            } else if( b >= 0xF0 && b < 0xF8 ) {
+                codePoint = b & 0x07;
+                pending = 3;
+            } else {
+                chars = append( chars, len++, REPLACEMENT_CHAR );
+            }
+        }
+    }
+
+    /**
+     * The characters of the current word. Only the first {@link #length()} characters are valid.
+     *
+     * @return the reused character buffer
+     */
+    char[] getChars() {
+        return word;
+    }
+
+    /**
+     * The length of the current word.
+     *
+     * @return the count of characters
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Refill the byte buffer.
+     *
+     * @return false, if the end of the stream was reached
+     * @throws IOException
+     *             If an I/O error occurs.
+     */
+    private boolean fill() throws IOException {
+        if( eof ) {
+            // the last word had no line break, it was already returned
+            return false;
+        }
+        int count;
+        do {
+            count = input.read( buffer, 0, buffer.length );
+        } while( count == 0 );
+        pos = 0;
+        if( count < 0 ) {
+            limit = 0;
+            eof = true;
+            input.close();
+            return false;
+        }
+        limit = count;
+        return true;
+    }
+
+    private char[] append( char[] chars, int idx, char c ) {
+        if( idx >= chars.length ) {
+            chars = word = grow( chars, idx + 1 );
+        }
+        chars[idx] = c;
+        return chars;
+    }
+
+    private char[] appendCodePoint( char[] chars, int idx, int cp ) {
+        if( cp < 0x10000 ) {
+            return append( chars, idx, (char)cp );
+        }
+        chars = append( chars, idx, Character.highSurrogate( cp ) );
+        return append( chars, idx + 1, Character.lowSurrogate( cp ) );
+    }
+
+    private static char[] grow( char[] chars, int minSize ) {
+        char[] temp = new char[Math.max( minSize, 2 * chars.length )];
+        System.arraycopy( chars, 0, temp, 0, chars.length );
+        return temp;
+    }
+}
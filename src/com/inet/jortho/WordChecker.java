@@ -0,0 +1,127 @@
+/*
+ *  JOrtho
+ *
+ *  Copyright (C) 2005-2009 by i-net software
+ *
+ *  This program is free software; you can redistribute it and/or
+ *  modify it under the terms of the GNU General Public License as 
+ *  published by the Free Software Foundation; either version 2 of the
+ *  License, or (at your option) any later version. 
+ *
+ *  This program is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ *  General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ *  USA.
+ *  
+ * Created on 19.10.2026
+ */
+package com.inet.jortho;
+
+import java.io.IOException;
+import java.net.URL;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Checks plain strings against a single dictionary without any Swing component. This is used for batch processing
+ * where no user interface is available. The rules are the same as the Tokenizer applies with the default options.
+ */
+public final class WordChecker {
+
+    private final Dictionary dictionary;
+    private final Locale locale;
+
+    private WordChecker( Dictionary dictionary, Locale locale ) {
+        this.dictionary = dictionary;
+        this.locale = locale;
+    }
+
+    /**
+     * Load the dictionary "dictionary_&lt;language&gt;.ortho" from the given base URL.
+     * 
+     * @param baseURL
+     *            the base URL where the dictionaries are located
+     * @param locale
+     *            the language of the dictionary, used also for the word breaker
+     * @return the checker for this language
+     * @throws IOException
+     *             if the dictionary can not be read
+     */
+    public static WordChecker load( URL baseURL, Locale locale ) throws IOException {
+        DictionaryFactory factory = new DictionaryFactory();
+        factory.loadWordList( new URL( baseURL, "dictionary_" + locale.getLanguage() + ".ortho" ) );
+        return new WordChecker( factory.create(), locale );
+    }
+
+    /**
+     * Get all misspelled words of a text in the order of its occurrence.
+     * 
+     * @param text
+     *            the text to check, can be null
+     * @return the list of misspelled words, never null
+     */
+    public List<String> findMisspelledWords( String text ) {
+        List<String> result = new ArrayList<String>();
+        if( text == null ) {
+            return result;
+        }
+        BreakIterator sentences = BreakIterator.getSentenceInstance( locale );
+        BreakIterator words = BreakIterator.getWordInstance( locale );
+        sentences.setText( text );
+        int startSentence = sentences.first();
+        for( int endSentence = sentences.next(); endSentence != BreakIterator.DONE; startSentence = endSentence, endSentence = sentences.next() ) {
+            String sentence = text.substring( startSentence, endSentence );
+            words.setText( sentence );
+            boolean isFirstWordInSentence = true;
+            int startWord = words.first();
+            for( int endWord = words.next(); endWord != BreakIterator.DONE; startWord = endWord, endWord = words.next() ) {
+                String word = sentence.substring( startWord, endWord ).trim();
+                //only words with 2 or more characters are checked
+                if( word.length() > 1 && Character.isLetter( word.charAt( 0 ) ) ) {
+                    if( isWebAddress( sentence, endWord ) ) {
+                        // skip the rest of the address until the next whitespace
+                        while( endWord != BreakIterator.DONE && endWord < sentence.length() && !Character.isWhitespace( sentence.charAt( endWord ) ) ) {
+                            endWord = words.next();
+                        }
+                        continue;
+                    }
+                    if( !isValid( word, isFirstWordInSentence ) ) {
+                        result.add( word );
+                    }
+                    isFirstWordInSentence = false;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Check a single word like the Tokenizer does with the default options.
+     */
+    private boolean isValid( String word, boolean isFirstWordInSentence ) {
+        if( dictionary.exist( word ) ) {
+            return true;
+        }
+        if( isFirstWordInSentence && Character.isUpperCase( word.charAt( 0 ) ) ) {
+            // Uppercase check on starting of sentence
+            if( dictionary.exist( word.substring( 0, 1 ).toLowerCase() + word.substring( 1 ) ) ) {
+                return true;
+            }
+        }
+        return Utils.isAllCapitalized( word ) || Utils.isIncludeNumbers( word );
+    }
+
+    /**
+     * Simplified test for a mail or web address: the word is followed by an '@' or by "://".
+     */
+    private static boolean isWebAddress( String sentence, int endWord ) {
+        return sentence.startsWith( "@", endWord ) || sentence.startsWith( "://", endWord );
+    }
+}
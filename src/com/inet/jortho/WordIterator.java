@@ -97,7 +97,9 @@ public class WordIterator implements Iterator<String> {
      */
     private static InputStream createInflaterStream( URL filename ) throws IOException{
         URLConnection conn = filename.openConnection();
-        conn.setReadTimeout( 5000 );
+        if( !"file".equals( filename.getProtocol() ) ) {
+            conn.setReadTimeout( 5000 );
+        }
         InputStream input = conn.getInputStream();
         input = new InflaterInputStream( input );
         return new BufferedInputStream( input );
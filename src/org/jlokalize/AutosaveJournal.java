@@ -0,0 +1,465 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import org.tools.common.TreeNode;
+
+/**
+ * Crash safe journal of the unsaved changes of the open project. Every change
+ * of a key is appended to a file in the user directory as a small record with
+ * the new state of the key. The records are collected in memory and written
+ * and forced to the disk in the background about once a second, so a crash
+ * loses at most the last second of work and editing is never slowed down by
+ * the disk.
+ *
+ * The journal is emptied after each successful save and deleted when the
+ * project is closed. If it still contains changes at the next start, the
+ * program crashed and the changes can be applied to the reopened project
+ * (see read and Recovery). Each record has a checksum, a record torn by the
+ * crash ends the replay.
+ */
+public class AutosaveJournal {
+
+    private static final Logger LOG = Logger.getLogger(AutosaveJournal.class.getName());
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** Start of the file ("JLKJ"). */
+    private static final int Magic = 0x4A4C4B4A;
+    private static final int Version = 1;
+    /** Milliseconds between two writes to the disk. */
+    private static final long FlushInterval = 1000;
+    /** Upper limit of the size of a record, larger ones are treated as damaged. */
+    private static final int MaxRecordSize = 64 << 20;
+    private static final int TextPresent = 1, TextMapped = 2, CommentPresent = 4, CommentMapped = 8;
+    private final File file;
+    /** Records not yet written, guarded by itself. */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    /** Reused for encoding a record (only on the thread that changes the languages). */
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+    /** Guards the file channel. */
+    private final Object writeLock = new Object();
+    private volatile FileChannel channel;
+    private ScheduledExecutorService flusher;
+    /** Length of the header, the file is truncated to it after saving. */
+    private long headerLength;
+
+    /**
+     * A change of a key read from the journal.
+     */
+    private static class Record {
+
+        String codes, key, text, comment;
+        boolean textMapped, commentMapped;
+    }
+
+    /**
+     * The content of a journal left by a crash.
+     */
+    public static class Recovery {
+
+        /** One of the files of the project (to be used with LanguageTreeProject.open). */
+        public final File project;
+        private final List<Record> records;
+
+        Recovery(File project, List<Record> records) {
+            this.project = project;
+            this.records = records;
+        }
+
+        /**
+         * @return The number of recorded changes.
+         */
+        public int size() {
+            return records.size();
+        }
+
+        /**
+         * Applies all changes to the opened project, languages which do not
+         * exist are created. The changes are recorded in the edit journal, so
+         * they can be undone.
+         *
+         * @param project The project opened from the file of this recovery.
+         * @return The number of applied changes.
+         */
+        public int applyTo(LanguageTreeProject project) {
+            TreeNode<LanguageProperties> root = project.getRoot();
+            if (root == null) {
+                return 0;
+            }
+            int applied = 0;
+            for (Record r : records) {
+                LanguageProperties language = findLanguage(root, r.codes);
+                if (language == null) {
+                    language = new LanguageProperties();
+                    language.setLanguageCodes(r.codes.split("_"));
+                    language.setClearName();
+                    LanguageTreeManager.insertLangPropInTree(root, language);
+                    LanguageTreeManager.sortTreeForClearNames(root);
+                    project.languagesChanged();
+                }
+                language.applyKeyState(r.key, r.text, r.textMapped, r.comment, r.commentMapped);
+                applied++;
+            }
+            return applied;
+        }
+
+        /**
+         * Internal function! Finds a language by its codes.
+         */
+        private static LanguageProperties findLanguage(TreeNode<LanguageProperties> root, String codes) {
+            for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+                if (codes.equals(codesOf(node.getData()))) {
+                    return node.getData();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param file The journal file.
+     */
+    public AutosaveJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Starts an empty journal for a project, replacing the content of the file.
+     *
+     * @param project One of the files of the project.
+     */
+    public void start(File project) {
+        synchronized (writeLock) {
+            close();
+            synchronized (pending) {
+                pending.reset();
+            }
+            try {
+                channel = new RandomAccessFile(file, "rw").getChannel();
+                channel.truncate(0);
+                ByteArrayOutputStream header = new ByteArrayOutputStream(256);
+                DataOutputStream out = new DataOutputStream(header);
+                out.writeInt(Magic);
+                out.writeInt(Version);
+                writeString(out, project.getAbsolutePath());
+                out.flush();
+                headerLength = header.size();
+                write(header.toByteArray());
+                channel.force(false);
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Autosave journal cannot be written.", ex);
+                close();
+                return;
+            }
+        }
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "JLokalize autosave");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            flusher.scheduleWithFixedDelay(new Runnable() {
+
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, FlushInterval, FlushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return True if changes are recorded.
+     */
+    public boolean isStarted() {
+        synchronized (writeLock) {
+            return channel != null;
+        }
+    }
+
+    /**
+     * Forgets all changes, because they were saved. Is called by the project
+     * after a successful save.
+     */
+    public void truncate() {
+        synchronized (writeLock) {
+            synchronized (pending) {
+                pending.reset();
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.truncate(headerLength);
+                channel.force(false);
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Autosave journal cannot be written.", ex);
+                close();
+            }
+        }
+    }
+
+    /**
+     * Stops recording and deletes the file, because the project was closed
+     * (after saving or discarding the changes).
+     */
+    public void stop() {
+        synchronized (writeLock) {
+            synchronized (pending) {
+                pending.reset();
+            }
+            close();
+            if (file.exists() && !file.delete()) {
+                LOG.log(Level.WARNING, "Autosave journal {0} cannot be deleted.", file);
+            }
+        }
+    }
+
+    /**
+     * Writes the collected records and forces them to the disk. Is called
+     * regularly in the background.
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            byte[] bytes;
+            synchronized (pending) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                bytes = pending.toByteArray();
+                pending.reset();
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                write(bytes);
+                channel.force(false);
+            } catch (IOException ex) {
+                LOG.log(Level.WARNING, "Autosave journal cannot be written.", ex);
+                close();
+            }
+        }
+    }
+
+    /**
+     * Records the new state of a key. Is called by the language itself.
+     */
+    void keyChanged(LanguageProperties language, String key, String text, boolean textMapped, String comment, boolean commentMapped) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            record.reset();
+            writeString(recordOut, codesOf(language));
+            writeString(recordOut, key);
+            recordOut.writeByte((text != null ? TextPresent : 0) | (textMapped ? TextMapped : 0)
+                    | (comment != null ? CommentPresent : 0) | (commentMapped ? CommentMapped : 0));
+            if (text != null) {
+                writeString(recordOut, text);
+            }
+            if (comment != null) {
+                writeString(recordOut, comment);
+            }
+            recordOut.flush();
+            crc.reset();
+            crc.update(record.toByteArray(), 0, record.size());
+            synchronized (pending) {
+                DataOutputStream out = new DataOutputStream(pending);
+                out.writeInt(record.size());
+                out.writeInt((int) crc.getValue());
+                record.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // not possible for byte array streams
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Reads a journal left by a crash.
+     *
+     * @param file The journal file.
+     * @return The recorded changes or null if there is no journal or it contains no change.
+     */
+    public static Recovery read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        List<Record> records = new ArrayList<Record>();
+        File project;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != Magic || in.readInt() != Version) {
+                return null;
+            }
+            project = new File(readString(in));
+            CRC32 checksum = new CRC32();
+            Record r;
+            while ((r = readRecord(in, checksum)) != null) {
+                records.add(r);
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Autosave journal " + file + " cannot be read.", ex);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    LOG.log(Level.SEVERE, null, ex);
+                }
+            }
+        }
+        return records.isEmpty() ? null : new Recovery(project, records);
+    }
+
+    /**
+     * Internal function! Reads the next record.
+     *
+     * @param in The journal after the header or the previous record.
+     * @param checksum Reused for checking the record.
+     * @return The record or null at the end or if the record is incomplete or damaged.
+     * @throws IOException If reading fails.
+     */
+    private static Record readRecord(DataInputStream in, CRC32 checksum) throws IOException {
+        byte[] bytes;
+        try {
+            int length = in.readInt();
+            int expected = in.readInt();
+            if (length < 0 || length > MaxRecordSize) {
+                LOG.log(Level.WARNING, "Autosave journal is damaged.");
+                return null;
+            }
+            bytes = new byte[length];
+            in.readFully(bytes);
+            checksum.reset();
+            checksum.update(bytes);
+            if ((int) checksum.getValue() != expected) {
+                LOG.log(Level.WARNING, "Autosave journal is damaged.");
+                return null;
+            }
+        } catch (EOFException ex) {
+            // the end, or the last record was torn by the crash
+            return null;
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes));
+        Record r = new Record();
+        r.codes = readString(data);
+        r.key = readString(data);
+        int flags = data.readByte();
+        r.textMapped = (flags & TextMapped) != 0;
+        r.commentMapped = (flags & CommentMapped) != 0;
+        r.text = (flags & TextPresent) != 0 ? readString(data) : null;
+        r.comment = (flags & CommentPresent) != 0 ? readString(data) : null;
+        return r;
+    }
+
+    /**
+     * Returns the language, country and variant of a language joined by "_",
+     * which identifies the language within a project independent of the base.
+     *
+     * @param language The language.
+     * @return The codes, empty for the root.
+     */
+    static String codesOf(LanguageProperties language) {
+        StringBuilder sb = new StringBuilder();
+        for (String code : new String[]{language.getLanguage(), language.getCountry(), language.getVariant()}) {
+            if (code != null) {
+                if (sb.length() > 0) {
+                    sb.append('_');
+                }
+                sb.append(code);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Internal function! Writes bytes at the end of the file.
+     */
+    private void write(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        channel.position(channel.size());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Internal function! Closes the file.
+     */
+    private void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                LOG.log(Level.SEVERE, null, ex);
+            }
+            channel = null;
+        }
+    }
+
+    /**
+     * Internal function! Writes a string of any length in UTF-8.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Internal function! Reads a string written by writeString.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MaxRecordSize) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
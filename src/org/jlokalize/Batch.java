@@ -0,0 +1,458 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import com.inet.jortho.WordChecker;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.tools.common.TreeNode;
+
+/**
+ * Headless processing of projects from the command line. Nothing of AWT or
+ * Swing is touched, the user options and the log file are not used. Projects
+ * are processed in parallel, the results are written to the standard output
+ * as JSON lines (one object per line) in the order of the given projects.
+ *
+ * Usage: --batch [options] operation file|directory...
+ * with one file of each project (like in the open dialog) or directories, in
+ * which all bundles are processed as projects (see Workspace), and the
+ * operations coverage, missing, resave and spellcheck.
+ */
+public class Batch {
+
+    /** Exit code if everything is fine. */
+    private static final int ExitOk = 0;
+    /** Exit code if a project failed (or findings in strict mode). */
+    private static final int ExitFailed = 1;
+    /** Exit code for wrong arguments. */
+    private static final int ExitUsage = 2;
+    private static final String Usage = "Usage: --batch [--threads n] [--comment-suffix suffix] [--line-separator unix|windows]\n"
+            + "               [--dictionaries directory] [--strict] coverage|missing|resave|spellcheck file|directory...";
+    private final String operation;
+    private final URL dictionaries;
+    /** Loaded spell checkers by language code, null values for unavailable ones. */
+    private final Map<String, WordChecker> checkers = new HashMap<String, WordChecker>();
+
+    /**
+     * @param operation The operation applied to each project.
+     * @param dictionaries Base location of the dictionaries.
+     */
+    private Batch(String operation, URL dictionaries) {
+        this.operation = operation;
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Parses the arguments, processes all projects and writes the results.
+     *
+     * @param args The command line arguments without the leading "--batch".
+     * @return The exit code.
+     */
+    public static int run(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String directory = Main.jarPath;
+        boolean strict = false;
+        int i = 0;
+        try {
+            for (; i < args.length && args[i].startsWith("--"); i++) {
+                String option = args[i];
+                if ("--strict".equals(option)) {
+                    strict = true;
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    return usage("Missing value for " + option);
+                }
+                String value = args[++i];
+                if ("--threads".equals(option)) {
+                    threads = Integer.parseInt(value);
+                } else if ("--comment-suffix".equals(option)) {
+                    LanguageProperties.setCommentSuffix(value);
+                } else if ("--line-separator".equals(option) && "unix".equalsIgnoreCase(value)) {
+                    LanguageProperties.setLineSeparator("\n");
+                } else if ("--line-separator".equals(option) && "windows".equalsIgnoreCase(value)) {
+                    LanguageProperties.setLineSeparator("\r\n");
+                } else if ("--dictionaries".equals(option)) {
+                    directory = value;
+                } else {
+                    return usage("Unknown option " + option + " " + value);
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return usage("Not a number: " + args[i]);
+        }
+        if (args.length - i < 2 || threads < 1) {
+            return usage(null);
+        }
+        String operation = args[i++];
+        if (!"coverage".equals(operation) && !"missing".equals(operation) && !"resave".equals(operation) && !"spellcheck".equals(operation)) {
+            return usage("Unknown operation " + operation);
+        }
+        URL dictionaries = null;
+        if ("spellcheck".equals(operation)) {
+            try {
+                dictionaries = new File(directory == null ? "." : directory).toURI().toURL();
+            } catch (MalformedURLException ex) {
+                return usage("Invalid dictionary directory " + directory);
+            }
+        }
+
+        final Batch batch = new Batch(operation, dictionaries);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> futures = new ArrayList<Future<Result>>(args.length - i);
+        for (; i < args.length; i++) {
+            final File file = new File(args[i]);
+            if (file.isDirectory()) {
+                // every bundle of the directory tree in the order of the workspace
+                Workspace workspace;
+                try {
+                    workspace = Workspace.scan(file, null);
+                } catch (IOException ex) {
+                    executor.shutdownNow();
+                    return usage(ex.getMessage());
+                }
+                for (final Workspace.Bundle bundle : workspace.getBundles()) {
+                    futures.add(executor.submit(new Callable<Result>() {
+
+                        @Override
+                        public Result call() {
+                            return batch.process(bundle);
+                        }
+                    }));
+                }
+                continue;
+            }
+            futures.add(executor.submit(new Callable<Result>() {
+
+                @Override
+                public Result call() {
+                    return batch.process(file);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        // print in the order of the arguments, as soon as each one is available
+        PrintStream out = System.out;
+        int exit = ExitOk;
+        for (Future<Result> future : futures) {
+            Result result;
+            try {
+                result = future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return ExitFailed;
+            } catch (ExecutionException ex) {
+                // process() catches everything, so this should not happen
+                throw new IllegalStateException(ex.getCause());
+            }
+            out.print(result.output);
+            out.flush();
+            if (result.failed || (strict && result.findings > 0)) {
+                exit = ExitFailed;
+            }
+        }
+        return exit;
+    }
+
+    /**
+     * Internal function! Prints a message and the usage to standard error.
+     *
+     * @param message The message or null.
+     * @return The exit code for wrong arguments.
+     */
+    private static int usage(String message) {
+        if (message != null) {
+            System.err.println(message);
+        }
+        System.err.println(Usage);
+        return ExitUsage;
+    }
+
+    /**
+     * Opens a project and applies the operation. Errors are reported in the
+     * output, never thrown.
+     *
+     * @param file One of the files of the project.
+     * @return The output lines for the project.
+     */
+    private Result process(File file) {
+        Result result = new Result(file.getPath());
+        // a file name alone has no parent directory
+        file = file.getAbsoluteFile();
+        try {
+            LanguageTreeProject project = new LanguageTreeProject();
+            project.setSearchIndexEnabled(false);
+            if (!file.isFile() || !project.open(file)) {
+                result.error("cannot open project");
+                return result;
+            }
+            apply(result, project);
+        } catch (RuntimeException ex) {
+            result.error(String.valueOf(ex));
+        }
+        return result;
+    }
+
+    /**
+     * Opens the project of a bundle, applies the operation and closes the
+     * project again. Errors are reported in the output, never thrown.
+     *
+     * @param bundle A bundle of a workspace.
+     * @return The output lines for the project.
+     */
+    private Result process(Workspace.Bundle bundle) {
+        Result result = new Result(bundle.getFile().getPath());
+        try {
+            LanguageTreeProject project = bundle.getProject();
+            if (project == null) {
+                result.error("cannot open project");
+                return result;
+            }
+            apply(result, project);
+        } catch (RuntimeException ex) {
+            result.error(String.valueOf(ex));
+        } finally {
+            bundle.close();
+        }
+        return result;
+    }
+
+    /**
+     * Internal function! Applies the operation to an opened project.
+     *
+     * @param result The output of the project.
+     * @param project The project.
+     */
+    private void apply(Result result, LanguageTreeProject project) {
+        // every operation goes through all languages once
+        project.getResidency().setPolicy(EvictionPolicy.Never);
+        project.loadAllLanguages();
+        TreeNode<LanguageProperties> root = project.getRoot();
+        TreeNode<LanguageProperties> master = LanguageTreeManager.getMasterNode(root);
+        if ("resave".equals(operation)) {
+            result.begin("languages").append(root.subTreeNodesList().size());
+            if (!project.save()) {
+                result.append(",\"error\":\"saving failed\"");
+                result.failed = true;
+            }
+            result.end();
+            return;
+        }
+        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+            LanguageProperties language = node.getData();
+            if ("spellcheck".equals(operation)) {
+                spellcheck(result, language);
+            } else if (node != root && node != master) {
+                if ("coverage".equals(operation)) {
+                    coverage(result, language, project.getStatistics().get(language));
+                } else {
+                    // the same parent as in the keys table
+                    LanguageProperties parent = node.getParent() == root ? master.getData() : node.getParent().getData();
+                    missing(result, language, parent);
+                }
+            }
+        }
+    }
+
+    /**
+     * Internal function! Writes the coverage of a language.
+     *
+     * @param result The output of the project.
+     * @param language The language.
+     * @param statistics The counts of the language.
+     */
+    private void coverage(Result result, LanguageProperties language, LanguageStatistics statistics) {
+        result.begin(language).append(",\"keys\":").append(statistics.translated + statistics.missing);
+        result.append(",\"translated\":").append(statistics.translated).append(",\"orphaned\":").append(statistics.orphaned);
+        result.append(",\"coverage\":").append(statistics.getCoverage()).end();
+        if (statistics.missing > 0) {
+            result.findings++;
+        }
+    }
+
+    /**
+     * Internal function! Compares a language with its parent and writes the
+     * missing keys.
+     *
+     * @param result The output of the project.
+     * @param language The language.
+     * @param parent The parent language (in the sense of the keys table).
+     */
+    private void missing(Result result, LanguageProperties language, LanguageProperties parent) {
+        for (String key : parent.getAllTextKeysAsSet()) {
+            if (parent.containsAsKey(key) && !language.containsAsKey(key)) {
+                result.begin(language).append(",\"key\":").append(quote(key)).end();
+                result.findings++;
+            }
+        }
+    }
+
+    /**
+     * Internal function! Writes the misspelled words for each key of a
+     * language, as far as a dictionary for the language is available.
+     *
+     * @param result The output of the project.
+     * @param language The language.
+     */
+    private void spellcheck(Result result, LanguageProperties language) {
+        if (language.getLanguage() == null) {
+            return;
+        }
+        WordChecker checker = getChecker(language.getLanguage());
+        if (checker == null) {
+            result.begin(language).append(",\"error\":\"no dictionary\"").end();
+            return;
+        }
+        for (String key : language.getAllTextKeysAsSet()) {
+            List<String> words = checker.findMisspelledWords(language.getKeyText(key));
+            if (!words.isEmpty()) {
+                result.begin(language).append(",\"key\":").append(quote(key)).append(",\"words\":[");
+                for (int i = 0; i < words.size(); i++) {
+                    result.append(i > 0 ? "," : "").append(quote(words.get(i)));
+                }
+                result.append("]").end();
+                result.findings++;
+            }
+        }
+    }
+
+    /**
+     * Internal function! Loads the dictionary of a language once and shares it
+     * between all projects.
+     *
+     * @param code The language code.
+     * @return The checker or null if there is no dictionary.
+     */
+    private synchronized WordChecker getChecker(String code) {
+        if (!checkers.containsKey(code)) {
+            WordChecker checker = null;
+            try {
+                checker = WordChecker.load(dictionaries, new Locale(code));
+            } catch (IOException ex) {
+                // no dictionary, stays null
+            }
+            checkers.put(code, checker);
+        }
+        return checkers.get(code);
+    }
+
+    /**
+     * Quotes a string as JSON string.
+     *
+     * @param s The string.
+     * @return The quoted and escaped string.
+     */
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * The collected output lines of one project.
+     */
+    private class Result {
+
+        private final String project;
+        private final StringBuilder output = new StringBuilder(256);
+        /** Missing keys, incomplete languages or misspelled keys. */
+        private int findings;
+        private boolean failed;
+
+        Result(String project) {
+            this.project = project;
+        }
+
+        /**
+         * Starts a line for the project.
+         */
+        Result begin(String field) {
+            output.append("{\"project\":").append(quote(project)).append(",\"operation\":").append(quote(operation));
+            output.append(",\"").append(field).append("\":");
+            return this;
+        }
+
+        /**
+         * Starts a line for a language of the project.
+         */
+        Result begin(LanguageProperties language) {
+            String name = language.toFileName();
+            // without base the name is the locale
+            String locale = language.getBase().isEmpty() ? name : name.substring(Math.min(name.length(), language.getBase().length() + 1));
+            return begin("locale").append(quote(locale));
+        }
+
+        Result append(Object value) {
+            output.append(value);
+            return this;
+        }
+
+        /**
+         * Ends a line.
+         */
+        void end() {
+            output.append("}\n");
+        }
+
+        /**
+         * Writes an error line and marks the project as failed.
+         */
+        void error(String message) {
+            output.setLength(0);
+            begin("error").append(quote(message)).end();
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tools.i18n.Property;
+import org.tools.io.FileResource;
+import org.tools.io.GitRepository;
+import org.tools.io.MemoryResource;
+import org.tools.io.ResourceUtils;
+
+/**
+ * The keys of the languages of a project that differ from the last commit
+ * (HEAD) of the git repository the language files are in.
+ *
+ * The committed version of each file is read directly from the repository
+ * (see GitRepository) and parsed like any language file, the file as saved
+ * is parsed again and both are compared key by key, for all languages in
+ * parallel. Unsaved modifications are not part of the comparison, they are
+ * shown as modified anyway. The result is applied to the languages as bit
+ * sets of key ids, so the keys table does not compare anything while
+ * painting, together with the committed text and comment of each changed key.
+ */
+public class CommittedChanges {
+
+    private static final Logger LOG = Logger.getLogger(CommittedChanges.class.getName());
+    /** Runs one detection after another, so results arrive in order. */
+    private static final ExecutorService Controller = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JLokalize git");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /** Compares the languages in parallel. */
+    private static final ExecutorService Comparer = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JLokalize git");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /** The id of the commit or null if the files are not in a repository. */
+    private final String commit;
+    /** The changed keys (without comment suffix) of each compared language with their committed versions. */
+    private final Map<LanguageProperties, Map<String, Version>> changes;
+    /** All languages passed to detect, also those which could not be compared. */
+    private final Collection<LanguageProperties> languages;
+
+    /**
+     * Is informed when the changes of a project have been detected.
+     */
+    public interface Listener {
+
+        /**
+         * Called on a background thread, the result must be applied on the
+         * thread that modifies the languages (see apply).
+         *
+         * @param changes The detected changes.
+         */
+        void detected(CommittedChanges changes);
+    }
+
+    /**
+     * The text and comment of a changed key in the commit.
+     */
+    public static final class Version {
+
+        /** The committed text or null if the key was not in the commit. */
+        public final String text;
+        /** The committed comment or null if there was none. */
+        public final String comment;
+
+        Version(String text, String comment) {
+            this.text = text;
+            this.comment = comment;
+        }
+    }
+
+    private CommittedChanges(String commit, Map<LanguageProperties, Map<String, Version>> changes, Collection<LanguageProperties> languages) {
+        this.commit = commit;
+        this.changes = changes;
+        this.languages = languages;
+    }
+
+    /**
+     * Starts comparing the saved files of languages with the last commit in
+     * the background. Languages without file are skipped, if the files are
+     * not in a repository the result is empty.
+     *
+     * @param languages The languages of a project.
+     * @param listener Receives the result.
+     */
+    public static void detect(Collection<LanguageProperties> languages, final Listener listener) {
+        // the locations are taken here, the languages may change meanwhile
+        final List<LanguageProperties> all = new ArrayList<LanguageProperties>(languages);
+        final Map<LanguageProperties, File> files = new LinkedHashMap<LanguageProperties, File>();
+        for (LanguageProperties language : all) {
+            if (language.getLocation() instanceof FileResource) {
+                File file = new File(language.getLocation().getPath());
+                if (file.isFile()) {
+                    files.put(language, file);
+                }
+            }
+        }
+        Controller.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                listener.detected(compare(all, files));
+            }
+        });
+    }
+
+    /**
+     * Internal function! Compares all files, each in a task of its own.
+     *
+     * @param languages All languages.
+     * @param files The files of the languages that have one.
+     * @return The result, empty if there is no repository or commit.
+     */
+    private static CommittedChanges compare(List<LanguageProperties> languages, Map<LanguageProperties, File> files) {
+        Map<LanguageProperties, Map<String, Version>> changes = new IdentityHashMap<LanguageProperties, Map<String, Version>>();
+        if (files.isEmpty()) {
+            return new CommittedChanges(null, changes, languages);
+        }
+        long start = System.currentTimeMillis();
+        final GitRepository repository;
+        final String commit;
+        try {
+            repository = GitRepository.find(files.values().iterator().next().getParentFile());
+            commit = repository == null ? null : repository.resolveHead();
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Repository cannot be read: {0}", ex.getMessage());
+            return new CommittedChanges(null, changes, languages);
+        }
+        if (commit == null) {
+            return new CommittedChanges(null, changes, languages);
+        }
+
+        Map<LanguageProperties, Future<Map<String, Version>>> futures = new LinkedHashMap<LanguageProperties, Future<Map<String, Version>>>();
+        for (final Map.Entry<LanguageProperties, File> entry : files.entrySet()) {
+            futures.put(entry.getKey(), Comparer.submit(new Callable<Map<String, Version>>() {
+
+                @Override
+                public Map<String, Version> call() throws IOException {
+                    return compare(repository, commit, entry.getValue());
+                }
+            }));
+        }
+        for (Map.Entry<LanguageProperties, Future<Map<String, Version>>> entry : futures.entrySet()) {
+            try {
+                changes.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                LOG.log(Level.WARNING, "Comparing {0} with the commit failed: {1}", new Object[]{files.get(entry.getKey()).getPath(), ex.getCause()});
+            }
+        }
+        LOG.log(Level.FINE, "Compared {0} languages with commit {1} in {2} ms", new Object[]{changes.size(), commit, System.currentTimeMillis() - start});
+        return new CommittedChanges(commit, changes, languages);
+    }
+
+    /**
+     * Internal function! Compares the saved file of a language with its
+     * committed version.
+     *
+     * @param repository The repository.
+     * @param commit The id of the commit.
+     * @param file The file.
+     * @return The keys (without comment suffix) whose text or comment differs,
+     * which were added or which were removed, with their committed versions.
+     * All keys if the file is not in the commit.
+     * @throws IOException If the repository cannot be read.
+     */
+    private static Map<String, Version> compare(GitRepository repository, String commit, File file) throws IOException {
+        String path = relativePath(repository.getWorkTree(), file.getCanonicalFile());
+        Property current = LanguageProperties.createProperty(ResourceUtils.asResource(file), new KeyDictionary(), null);
+        if (path == null || !current.load()) {
+            return Collections.emptyMap();
+        }
+        byte[] blob = repository.readFile(commit, path);
+        Property committed = LanguageProperties.createProperty(new MemoryResource(path, blob == null ? new byte[0] : blob), new KeyDictionary(), null);
+        if (blob != null && !committed.load()) {
+            throw new IOException("Committed version cannot be parsed");
+        }
+
+        String suffix = LanguageProperties.getCommentSuffix();
+        Set<String> keys = new HashSet<String>(current.getKeysAsSet());
+        keys.addAll(committed.getKeysAsSet());
+        Set<String> changed = new HashSet<String>();
+        for (String key : keys) {
+            String text = current.get(key);
+            if (text == null ? committed.get(key) != null : !text.equals(committed.get(key))) {
+                // a changed comment counts for its key
+                changed.add(key.endsWith(suffix) ? key.substring(0, key.length() - suffix.length()) : key);
+            }
+        }
+        Map<String, Version> versions = new HashMap<String, Version>(changed.size() * 4 / 3 + 1);
+        for (String key : changed) {
+            versions.put(key, new Version(committed.get(key), committed.get(key + suffix)));
+        }
+        return versions;
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param directory A directory.
+     * @param file A file.
+     * @return The path of the file relative to the directory separated by '/',
+     * or null if the file is not below the directory.
+     */
+    private static String relativePath(File directory, File file) {
+        StringBuilder path = new StringBuilder(file.getName());
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(directory)) {
+                return path.toString();
+            }
+            path.insert(0, '/').insert(0, parent.getName());
+        }
+        return null;
+    }
+
+    /**
+     * @return The id of the compared commit or null if the files are not in a
+     * repository.
+     */
+    public String getCommit() {
+        return commit;
+    }
+
+    /**
+     * @param language A language.
+     * @return The changed keys of the language, empty if it was not compared.
+     */
+    public Set<String> getChangedKeys(LanguageProperties language) {
+        Map<String, Version> versions = changes.get(language);
+        return versions == null ? Collections.<String>emptySet() : versions.keySet();
+    }
+
+    /**
+     * Marks the changed keys in the languages (see
+     * LanguageProperties.changedSinceCommit), languages that could not be
+     * compared have no marks afterwards. Must be called on the thread that
+     * modifies the languages.
+     */
+    public void apply() {
+        for (LanguageProperties language : languages) {
+            Map<String, Version> versions = changes.get(language);
+            if (versions == null) {
+                language.setCommittedChanges(null, null);
+                continue;
+            }
+            BitSet bits = new BitSet();
+            Map<String, Version> shown = new HashMap<String, Version>(versions.size() * 4 / 3 + 1);
+            KeyDictionary dictionary = language.getKeyDictionary();
+            for (Map.Entry<String, Version> entry : versions.entrySet()) {
+                // keys removed since that are nowhere else cannot be shown anyway
+                int id = dictionary.find(entry.getKey());
+                if (id != -1) {
+                    bits.set(id);
+                    shown.put(entry.getKey(), entry.getValue());
+                }
+            }
+            language.setCommittedChanges(bits, shown);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.tools.common.TreeNode;
+
+/**
+ * Records the changes of keys of all languages of a project for undo and redo.
+ *
+ * A step consists of the old and new state (text and comment) of each changed
+ * key. The languages report every change themselves. Changes between begin and
+ * end form one step (e.g. renaming a key), otherwise each change of a key is a
+ * step of its own, which is merged into the previous step if that changed the
+ * same key of the same language only. Editing a key many times in a row
+ * therefore keeps a single step. The number of steps is bounded, the oldest
+ * steps are dropped.
+ *
+ * Not thread safe, must be used from the thread that modifies the languages.
+ */
+public class EditJournal {
+
+    /** Default maximal number of steps. */
+    public static final int DefaultCapacity = 1000;
+    /** Steps with more deltas get an index for finding the delta of a key. */
+    private static final int IndexThreshold = 16;
+    private final int capacity;
+    private final ArrayDeque<Step> undoSteps = new ArrayDeque<Step>();
+    private final ArrayDeque<Step> redoSteps = new ArrayDeque<Step>();
+    /** The step being recorded or null. */
+    private Step current;
+    /** Nesting depth of begin. */
+    private int depth = 0;
+    /** True while undoing or redoing, changes are not recorded then. */
+    private boolean replaying = false;
+
+    /**
+     * The old and new state of one key of one language.
+     */
+    private static class Delta {
+
+        final LanguageProperties language;
+        final String key;
+        final String oldText, oldComment;
+        final boolean oldTextMapped, oldCommentMapped;
+        String newText, newComment;
+        boolean newTextMapped, newCommentMapped;
+
+        Delta(LanguageProperties language, String key, String text, boolean textMapped, String comment, boolean commentMapped) {
+            this.language = language;
+            this.key = key;
+            oldText = newText = text;
+            oldTextMapped = newTextMapped = textMapped;
+            oldComment = newComment = comment;
+            oldCommentMapped = newCommentMapped = commentMapped;
+        }
+
+        /**
+         * @return True if the new state is the same as the old one.
+         */
+        boolean isEmpty() {
+            return oldTextMapped == newTextMapped && oldCommentMapped == newCommentMapped
+                    && equal(oldText, newText) && equal(oldComment, newComment);
+        }
+    }
+
+    /**
+     * The deltas of one step in the order of their first change.
+     */
+    private static class Step {
+
+        final List<Delta> deltas = new ArrayList<Delta>(2);
+        /** Only while recording big steps: the deltas by language and key. */
+        Map<LanguageProperties, Map<String, Delta>> index;
+
+        /**
+         * @return The delta of a key or null.
+         */
+        Delta find(LanguageProperties language, String key) {
+            if (index != null) {
+                Map<String, Delta> keys = index.get(language);
+                return keys == null ? null : keys.get(key);
+            }
+            for (int i = deltas.size() - 1; i >= 0; i--) {
+                Delta delta = deltas.get(i);
+                if (delta.language == language && delta.key.equals(key)) {
+                    return delta;
+                }
+            }
+            return null;
+        }
+
+        void add(Delta delta) {
+            deltas.add(delta);
+            if (index == null && deltas.size() > IndexThreshold) {
+                index = new IdentityHashMap<LanguageProperties, Map<String, Delta>>();
+                for (Delta d : deltas) {
+                    addToIndex(d);
+                }
+            } else if (index != null) {
+                addToIndex(delta);
+            }
+        }
+
+        private void addToIndex(Delta delta) {
+            Map<String, Delta> keys = index.get(delta.language);
+            if (keys == null) {
+                keys = new HashMap<String, Delta>();
+                index.put(delta.language, keys);
+            }
+            keys.put(delta.key, delta);
+        }
+
+        /**
+         * Drops deltas without effect and the index.
+         */
+        void close() {
+            index = null;
+            for (int i = deltas.size() - 1; i >= 0; i--) {
+                if (deltas.get(i).isEmpty()) {
+                    deltas.remove(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a journal with the default capacity.
+     */
+    public EditJournal() {
+        this(DefaultCapacity);
+    }
+
+    /**
+     * @param capacity The maximal number of steps that can be undone.
+     */
+    public EditJournal(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Starts a step, all changes until the matching end are undone together.
+     * Can be nested.
+     */
+    public void begin() {
+        if (depth++ == 0) {
+            current = new Step();
+        }
+    }
+
+    /**
+     * Ends a step started with begin.
+     */
+    public void end() {
+        if (depth == 0 || --depth > 0) {
+            return;
+        }
+        Step step = current;
+        current = null;
+        step.close();
+        if (step.deltas.isEmpty()) {
+            return;
+        }
+        redoSteps.clear();
+
+        // a single change of the same key as before is merged
+        Step last = undoSteps.peekLast();
+        if (step.deltas.size() == 1 && last != null && last.deltas.size() == 1) {
+            Delta delta = step.deltas.get(0);
+            Delta previous = last.deltas.get(0);
+            if (previous.language == delta.language && previous.key.equals(delta.key)) {
+                previous.newText = delta.newText;
+                previous.newTextMapped = delta.newTextMapped;
+                previous.newComment = delta.newComment;
+                previous.newCommentMapped = delta.newCommentMapped;
+                if (previous.isEmpty()) {
+                    undoSteps.removeLast();
+                }
+                return;
+            }
+        }
+        undoSteps.addLast(step);
+        if (undoSteps.size() > capacity) {
+            undoSteps.removeFirst();
+        }
+    }
+
+    /**
+     * @return True if there is a step to undo.
+     */
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    /**
+     * @return True if there is a step to redo.
+     */
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    /**
+     * Reverts the last step.
+     *
+     * @return The changed keys (in any language) or an empty set if there was nothing to undo.
+     */
+    public Set<String> undo() {
+        if (undoSteps.isEmpty() || depth > 0) {
+            return Collections.emptySet();
+        }
+        Step step = undoSteps.removeLast();
+        Set<String> keys = new LinkedHashSet<String>();
+        replaying = true;
+        try {
+            for (int i = step.deltas.size() - 1; i >= 0; i--) {
+                Delta delta = step.deltas.get(i);
+                delta.language.applyKeyState(delta.key, delta.oldText, delta.oldTextMapped, delta.oldComment, delta.oldCommentMapped);
+                keys.add(delta.key);
+            }
+        } finally {
+            replaying = false;
+        }
+        redoSteps.addLast(step);
+        return keys;
+    }
+
+    /**
+     * Applies the last undone step again.
+     *
+     * @return The changed keys (in any language) or an empty set if there was nothing to redo.
+     */
+    public Set<String> redo() {
+        if (redoSteps.isEmpty() || depth > 0) {
+            return Collections.emptySet();
+        }
+        Step step = redoSteps.removeLast();
+        Set<String> keys = new LinkedHashSet<String>();
+        replaying = true;
+        try {
+            for (Delta delta : step.deltas) {
+                delta.language.applyKeyState(delta.key, delta.newText, delta.newTextMapped, delta.newComment, delta.newCommentMapped);
+                keys.add(delta.key);
+            }
+        } finally {
+            replaying = false;
+        }
+        undoSteps.addLast(step);
+        return keys;
+    }
+
+    /**
+     * Forgets all steps.
+     */
+    public void clear() {
+        undoSteps.clear();
+        redoSteps.clear();
+    }
+
+    /**
+     * Forgets all steps if one of them changed a language that is not in the
+     * tree anymore. Must be called whenever languages were removed.
+     *
+     * @param root The root node of the language tree or null.
+     */
+    public void synchronize(TreeNode<LanguageProperties> root) {
+        Set<LanguageProperties> inTree = Collections.newSetFromMap(new IdentityHashMap<LanguageProperties, Boolean>());
+        if (root != null) {
+            for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+                inTree.add(node.getData());
+                node.getData().setJournal(this);
+            }
+        }
+        if (!allIn(undoSteps, inTree) || !allIn(redoSteps, inTree)) {
+            clear();
+        }
+    }
+
+    /**
+     * Records the state of a key before it is changed. Is called by the
+     * language itself.
+     */
+    void before(LanguageProperties language, String key, String text, boolean textMapped, String comment, boolean commentMapped) {
+        if (replaying) {
+            return;
+        }
+        begin();
+        if (current.find(language, key) == null) {
+            current.add(new Delta(language, key, text, textMapped, comment, commentMapped));
+        }
+    }
+
+    /**
+     * Records the state of a key after it was changed. Is called by the
+     * language itself.
+     */
+    void after(LanguageProperties language, String key, String text, boolean textMapped, String comment, boolean commentMapped) {
+        if (replaying || current == null) {
+            return;
+        }
+        Delta delta = current.find(language, key);
+        if (delta == null) {
+            // not announced by before
+            return;
+        }
+        delta.newText = text;
+        delta.newTextMapped = textMapped;
+        delta.newComment = comment;
+        delta.newCommentMapped = commentMapped;
+        end();
+    }
+
+    /**
+     * Internal function! Tests if the steps only changed the given languages.
+     *
+     * @param steps The steps.
+     * @param languages The languages.
+     * @return True if no other language was changed.
+     */
+    private static boolean allIn(ArrayDeque<Step> steps, Set<LanguageProperties> languages) {
+        for (Step step : steps) {
+            for (Delta delta : step.deltas) {
+                if (!languages.contains(delta.language)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Internal function! Compares two strings which may be null.
+     */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
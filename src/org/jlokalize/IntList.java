@@ -0,0 +1,117 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.Arrays;
+
+/**
+ * A growing array of ascending ints, used for the postings of the search
+ * indices.
+ */
+class IntList {
+
+    int[] data = new int[4];
+    int size = 0;
+
+    /**
+     * Appends an id if it is not the last one already (a document adds the
+     * same trigram or word several times in a row).
+     *
+     * @param id The id, not smaller than the last one.
+     */
+    void addUnique(int id) {
+        if (size > 0 && data[size - 1] == id) {
+            return;
+        }
+        if (size == data.length) {
+            data = Arrays.copyOf(data, 2 * size);
+        }
+        data[size++] = id;
+    }
+
+    /**
+     * Removes an id if it is contained.
+     *
+     * @param id The id.
+     */
+    void remove(int id) {
+        int i = Arrays.binarySearch(data, 0, size, id);
+        if (i >= 0) {
+            System.arraycopy(data, i + 1, data, i, size - i - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Intersects a sorted array of ids with these ids. Large lists are
+     * searched binary, small ones are merged.
+     *
+     * @param ids Sorted ids, the common ids are moved to the front.
+     * @param count The number of valid ids in the array.
+     * @return The new number of valid ids in the array.
+     */
+    int intersect(int[] ids, int count) {
+        int n = 0;
+        if (size > 8 * count) {
+            int from = 0;
+            for (int i = 0; i < count; i++) {
+                int k = Arrays.binarySearch(data, from, size, ids[i]);
+                if (k >= 0) {
+                    ids[n++] = ids[i];
+                    from = k + 1;
+                } else {
+                    from = -k - 1;
+                }
+            }
+        } else {
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                while (j < size && data[j] < ids[i]) {
+                    j++;
+                }
+                if (j < size && data[j] == ids[i]) {
+                    ids[n++] = ids[i];
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Renumbers the ids and drops removed ones. The new ids must be in the
+     * same order as the old ones.
+     *
+     * @param remap The new id of each id or a negative value if removed.
+     * @return The new number of ids.
+     */
+    int remap(int[] remap) {
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int id = remap[data[i]];
+            if (id >= 0) {
+                data[n++] = id;
+            }
+        }
+        size = n;
+        return n;
+    }
+
+    /**
+     * @return A copy of the ids.
+     */
+    int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives every key of a project a number (id), which is the index in the bit
+ * sets of the languages (see LanguageProperties). All languages of a project
+ * share one dictionary, so each key string is stored only once instead of once
+ * per language: the languages and the loaded properties use the canonical
+ * string returned by intern().
+ *
+ * Ids are never reused. Thread safe, since languages may be loaded in parallel.
+ */
+public class KeyDictionary {
+
+    /** The id of each key. */
+    private final Map<String, Integer> ids = new HashMap<String, Integer>(1024);
+    /** The canonical key of each id. */
+    private final List<String> keys = new ArrayList<String>(1024);
+
+    /**
+     * Returns the id of a key, a new one if the key is not yet known.
+     *
+     * @param key The key.
+     * @return The id.
+     */
+    public synchronized int getId(String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = keys.size();
+            ids.put(key, id);
+            keys.add(key);
+        }
+        return id;
+    }
+
+    /**
+     * @param key The key.
+     * @return The id of the key or -1 if the key is not known.
+     */
+    public synchronized int find(String key) {
+        Integer id = ids.get(key);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id An id.
+     * @return The canonical key with this id.
+     */
+    public synchronized String getKey(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * Returns the canonical string of a key, registering the key if it is not
+     * yet known.
+     *
+     * @param key The key.
+     * @return An equal string which is shared by all languages.
+     */
+    public synchronized String intern(String key) {
+        return keys.get(getId(key));
+    }
+
+    /**
+     * @return The number of ids, i.e. all ids are smaller.
+     */
+    public synchronized int size() {
+        return keys.size();
+    }
+}
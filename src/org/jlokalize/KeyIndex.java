@@ -0,0 +1,329 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An index over the keys list of the keys table model, used to filter the
+ * table without going through all keys. Keys are added, removed and renamed
+ * in place, afterwards the positions must be taken from the changed list with
+ * setPositions.
+ *
+ * - Each key has an id, the positions of the ids in the keys list are kept in
+ *   an array, so rows are found without searching the list.
+ * - The ids sorted by the lower case keys, prefixes are found by binary search.
+ * - The ids for each trigram of the lower case keys, substrings are found by
+ *   intersecting the ids of their trigrams.
+ */
+class KeyIndex {
+
+    /** Id of each key, new keys get ascending ids. */
+    private final Map<String, Integer> ids;
+    /** The lower case key of each id, null if removed. */
+    private String[] lower;
+    /** The position in the keys list of each id. */
+    private int[] positions;
+    /** The number of ids given, removed ones included. */
+    private int count = 0;
+    /** The ids of the keys sorted by their lower case keys. */
+    private int[] sorted;
+    /** Ids for each trigram (three chars packed in a long). */
+    private final TrigramTable trigrams = new TrigramTable();
+
+    /**
+     * Indexes a keys list.
+     *
+     * @param keys The list, without duplicates.
+     */
+    KeyIndex(List<String> keys) {
+        final int n = keys.size();
+        ids = new HashMap<String, Integer>(2 * n);
+        lower = new String[Math.max(n, 16)];
+        positions = new int[lower.length];
+        for (String key : keys) {
+            int id = count++;
+            ids.put(key, id);
+            lower[id] = key.toLowerCase(Locale.ROOT);
+            addTrigrams(id);
+        }
+        setPositions(keys);
+
+        // sort the ids by the lower case keys
+        List<Integer> order = new ArrayList<Integer>(n);
+        for (int id = 0; id < n; id++) {
+            order.add(id);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return lower[o1].compareTo(lower[o2]);
+            }
+        });
+        sorted = new int[lower.length];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = order.get(i);
+        }
+    }
+
+    /**
+     * Adds a key, if it is not indexed yet. Its position is unknown until
+     * setPositions is called.
+     *
+     * @param key The key.
+     */
+    void add(String key) {
+        if (ids.containsKey(key)) {
+            return;
+        }
+        if (count == lower.length) {
+            lower = Arrays.copyOf(lower, 2 * count);
+            positions = Arrays.copyOf(positions, 2 * count);
+        }
+        int id = count++;
+        lower[id] = key.toLowerCase(Locale.ROOT);
+        positions[id] = -1;
+        addTrigrams(id);
+
+        // behind the equal keys in the sorted ids
+        int size = ids.size();
+        int i = firstNotSmaller(lower[id]);
+        while (i < size && lower[sorted[i]].equals(lower[id])) {
+            i++;
+        }
+        if (size == sorted.length) {
+            sorted = Arrays.copyOf(sorted, 2 * size);
+        }
+        System.arraycopy(sorted, i, sorted, i + 1, size - i);
+        sorted[i] = id;
+        ids.put(key, id);
+    }
+
+    /**
+     * Removes a key, if it is indexed. The positions of the other keys are
+     * unchanged until setPositions is called.
+     *
+     * @param key The key.
+     */
+    void remove(String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            return;
+        }
+        String text = lower[id];
+        for (int j = 0; j + 3 <= text.length(); j++) {
+            IntList list = trigrams.get(trigram(text, j));
+            if (list != null) {
+                list.remove(id);
+            }
+        }
+        int size = ids.size();
+        int i = firstNotSmaller(text);
+        while (sorted[i] != id) {
+            i++;
+        }
+        System.arraycopy(sorted, i + 1, sorted, i, size - i - 1);
+        lower[id] = null;
+        ids.remove(key);
+
+        // renumber when most ids are removed ones
+        if (count > 64 && 2 * ids.size() < count) {
+            compact();
+        }
+    }
+
+    /**
+     * Renames a key, i.e. removes the old and adds the new key.
+     *
+     * @param oldKey The old key.
+     * @param newKey The new key.
+     */
+    void rename(String oldKey, String newKey) {
+        remove(oldKey);
+        add(newKey);
+    }
+
+    /**
+     * Takes the positions of the keys from the keys list. Must be called after
+     * the list has been changed (and sorted) and the keys have been added or
+     * removed here.
+     *
+     * @param keys The list, containing exactly the indexed keys.
+     */
+    void setPositions(List<String> keys) {
+        for (int i = 0; i < keys.size(); i++) {
+            Integer id = ids.get(keys.get(i));
+            if (id != null) {
+                positions[id] = i;
+            }
+        }
+    }
+
+    /**
+     * @param key A key.
+     * @return The position of the key in the keys list or -1.
+     */
+    int indexOf(String key) {
+        Integer id = ids.get(key);
+        return id == null ? -1 : positions[id];
+    }
+
+    /**
+     * Finds all keys starting with a prefix (case insensitive).
+     *
+     * @param prefix The prefix.
+     * @return The ascending positions of the keys.
+     */
+    int[] findPrefix(String prefix) {
+        prefix = prefix.toLowerCase(Locale.ROOT);
+        // the first key not smaller than the prefix, there can be several equal keys
+        int from = firstNotSmaller(prefix);
+        int to = from;
+        int size = ids.size();
+        while (to < size && lower[sorted[to]].startsWith(prefix)) {
+            to++;
+        }
+        int[] result = new int[to - from];
+        for (int i = from; i < to; i++) {
+            result[i - from] = positions[sorted[i]];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Finds all keys containing a text (case insensitive).
+     *
+     * @param text The text.
+     * @return The ascending positions of the keys.
+     */
+    int[] findSubstring(String text) {
+        text = text.toLowerCase(Locale.ROOT);
+        int[] result;
+        int n = 0;
+        if (text.length() < 3) {
+            // too short for trigrams, test all keys
+            result = new int[ids.size()];
+            for (int id = 0; id < count; id++) {
+                if (lower[id] != null && lower[id].contains(text)) {
+                    result[n++] = positions[id];
+                }
+            }
+        } else {
+            // the ids of the rarest trigram are intersected with the others
+            List<IntList> postings = new ArrayList<IntList>();
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                IntList list = trigrams.get(trigram(text, i));
+                if (list == null || list.size == 0) {
+                    return new int[0];
+                }
+                postings.add(list);
+            }
+            Collections.sort(postings, new Comparator<IntList>() {
+
+                @Override
+                public int compare(IntList o1, IntList o2) {
+                    return o1.size - o2.size;
+                }
+            });
+            result = postings.get(0).toArray();
+            int m = result.length;
+            for (int i = 1; i < postings.size() && m > 0; i++) {
+                m = postings.get(i).intersect(result, m);
+            }
+
+            // trigrams only give candidates, check them
+            for (int i = 0; i < m; i++) {
+                if (lower[result[i]].contains(text)) {
+                    result[n++] = positions[result[i]];
+                }
+            }
+        }
+        result = Arrays.copyOf(result, n);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Internal function! Adds the trigrams of a key to the index.
+     *
+     * @param id The id of the key.
+     */
+    private void addTrigrams(int id) {
+        String text = lower[id];
+        for (int j = 0; j + 3 <= text.length(); j++) {
+            trigrams.getOrCreate(trigram(text, j)).addUnique(id);
+        }
+    }
+
+    /**
+     * Internal function! Binary search in the sorted ids.
+     *
+     * @param text A lower case text.
+     * @return The index of the first id in the sorted ids whose key is not smaller than the text.
+     */
+    private int firstNotSmaller(String text) {
+        int from = 0;
+        int to = ids.size();
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (lower[sorted[middle]].compareTo(text) < 0) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Internal function! Gives the keys new ascending ids without gaps.
+     */
+    private void compact() {
+        int[] remap = new int[count];
+        int n = 0;
+        for (int id = 0; id < count; id++) {
+            if (lower[id] == null) {
+                remap[id] = -1;
+            } else {
+                remap[id] = n;
+                lower[n] = lower[id];
+                positions[n] = positions[id];
+                n++;
+            }
+        }
+        Arrays.fill(lower, n, count, null);
+        count = n;
+        trigrams.remap(remap);
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            entry.setValue(remap[entry.getValue()]);
+        }
+        for (int i = 0; i < n; i++) {
+            sorted[i] = remap[sorted[i]];
+        }
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+}
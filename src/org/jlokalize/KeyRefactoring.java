@@ -0,0 +1,274 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.tools.common.TreeNode;
+
+/**
+ * Deletes and renames keys in all languages of a project at once.
+ *
+ * Each operation is a transaction: it is first checked against all languages
+ * and only applied if there is no conflict (a new key that already exists in a
+ * language or several keys renamed to the same key). The check uses the bit
+ * sets of the languages and the key dictionary, so languages only need to be
+ * loaded if they were never loaded before or are actually changed. The
+ * changed languages are parsed in parallel in the background while the
+ * previous ones are changed. All changes of an operation are one step in the
+ * edit journal, so they are undone together.
+ *
+ * Renaming moves the text and the comment of a key, swapping keys (a to b
+ * and b to a) is possible.
+ *
+ * Not thread safe, must be used from the thread that modifies the languages.
+ */
+public class KeyRefactoring {
+
+    private final LanguageTreeProject project;
+
+    /**
+     * The outcome of an operation.
+     */
+    public static class Result {
+
+        /** Number of keys that were deleted or renamed. */
+        public final int keys;
+        /** Number of languages that were changed. */
+        public final int languages;
+        /** The reasons why nothing was changed, empty if the operation was applied. */
+        public final List<String> conflicts;
+
+        Result(int keys, int languages, List<String> conflicts) {
+            this.keys = keys;
+            this.languages = languages;
+            this.conflicts = conflicts;
+        }
+
+        /**
+         * @return True if the operation was applied, i.e. there were no conflicts.
+         */
+        public boolean isApplied() {
+            return conflicts.isEmpty();
+        }
+    }
+
+    /**
+     * @param project The project whose languages are changed.
+     */
+    public KeyRefactoring(LanguageTreeProject project) {
+        this.project = project;
+    }
+
+    /**
+     * Deletes keys in all languages that contain them.
+     *
+     * @param keys The keys (not ending with the comment suffix).
+     * @return The outcome, never has conflicts.
+     */
+    public Result delete(Collection<String> keys) {
+        Map<String, String> deletes = new LinkedHashMap<String, String>();
+        for (String key : keys) {
+            deletes.put(key, null);
+        }
+        return apply(deletes);
+    }
+
+    /**
+     * Renames keys in all languages that contain them.
+     *
+     * @param renames The new key of each old key.
+     * @return The outcome, not applied if there are conflicts.
+     */
+    public Result rename(Map<String, String> renames) {
+        return apply(new LinkedHashMap<String, String>(renames));
+    }
+
+    /**
+     * Renames all keys that contain a match of a regular expression to the key
+     * with all matches replaced, e.g. "^old\\." and "new." moves all keys from
+     * the namespace old to new.
+     *
+     * @param pattern The regular expression.
+     * @param replacement The replacement, may refer to groups with $1 etc.
+     * @return The outcome, not applied if there are conflicts.
+     * @throws IllegalArgumentException If the replacement refers to a group that does not exist.
+     */
+    public Result renameMatching(Pattern pattern, String replacement) {
+        KeyDictionary dictionary = getDictionary();
+        Map<String, String> renames = new LinkedHashMap<String, String>();
+        if (dictionary != null) {
+            BitSet present = new BitSet();
+            for (LanguageProperties language : getLanguages()) {
+                present.or(language.getPresentKeys());
+            }
+            for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)) {
+                String key = dictionary.getKey(id);
+                Matcher matcher = pattern.matcher(key);
+                if (matcher.find()) {
+                    String newKey = matcher.replaceAll(replacement);
+                    if (!newKey.equals(key)) {
+                        renames.put(key, newKey);
+                    }
+                }
+            }
+        }
+        return apply(renames);
+    }
+
+    /**
+     * Internal function! Checks and applies deletes (null values) and renames.
+     *
+     * @param changes The new key of each key or null to delete it.
+     * @return The outcome.
+     */
+    private Result apply(Map<String, String> changes) {
+        TreeNode<LanguageProperties> root = project.getRoot();
+        if (root == null || changes.isEmpty()) {
+            return new Result(0, 0, Collections.<String>emptyList());
+        }
+        List<LanguageProperties> languages = getLanguages();
+
+        // ids of the old and new keys
+        KeyDictionary dictionary = getDictionary();
+        String suffix = LanguageProperties.getCommentSuffix();
+        List<String> conflicts = new ArrayList<String>();
+        BitSet sources = new BitSet();
+        Map<Integer, String> targets = new HashMap<Integer, String>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String key = change.getKey(), newKey = change.getValue();
+            int id = dictionary.find(key);
+            if (id == -1 || key.endsWith(suffix)) {
+                continue;
+            }
+            sources.set(id);
+            if (newKey != null) {
+                if (newKey.length() == 0 || newKey.endsWith(suffix)) {
+                    conflicts.add(key + " -> " + newKey + ": invalid key");
+                    continue;
+                }
+                String other = targets.put(dictionary.getId(newKey), key);
+                if (other != null) {
+                    conflicts.add(key + ", " + other + " -> " + newKey + ": same new key");
+                }
+            }
+        }
+
+        // a new key must not exist in a language, unless it is renamed there as well
+        List<LanguageProperties> changed = new ArrayList<LanguageProperties>();
+        for (LanguageProperties language : languages) {
+            BitSet present = language.getPresentKeys();
+            for (Map.Entry<Integer, String> target : targets.entrySet()) {
+                int id = target.getKey();
+                if (present.get(id) && !sources.get(id) && present.get(dictionary.find(target.getValue()))) {
+                    conflicts.add(target.getValue() + " -> " + dictionary.getKey(id) + ": exists in " + language.toFileName());
+                }
+            }
+            if (present.intersects(sources)) {
+                changed.add(language);
+            }
+        }
+        if (!conflicts.isEmpty()) {
+            return new Result(0, 0, conflicts);
+        }
+
+        // parse the changed languages in the background while changing them one by one
+        project.prefetch(changed);
+        EditJournal journal = project.getJournal();
+        journal.begin();
+        try {
+            for (LanguageProperties language : changed) {
+                applyTo(language, changes, sources);
+            }
+        } finally {
+            journal.end();
+        }
+        return new Result(sources.cardinality(), changed.size(), conflicts);
+    }
+
+    /**
+     * Internal function! Applies the changes to one language. All old keys are
+     * read and removed first, so that keys can be swapped.
+     *
+     * @param language The language.
+     * @param changes The new key of each key or null to delete it.
+     * @param sources The ids of the changed keys.
+     */
+    private static void applyTo(LanguageProperties language, Map<String, String> changes, BitSet sources) {
+        language.load();
+        KeyDictionary dictionary = language.getKeyDictionary();
+        BitSet affected = (BitSet) language.getPresentKeys().clone();
+        affected.and(sources);
+        List<String> keys = new ArrayList<String>(affected.cardinality());
+        List<String> texts = new ArrayList<String>(affected.cardinality());
+        List<String> comments = new ArrayList<String>(affected.cardinality());
+        for (int id = affected.nextSetBit(0); id >= 0; id = affected.nextSetBit(id + 1)) {
+            String key = dictionary.getKey(id);
+            keys.add(key);
+            texts.add(language.getKeyText(key));
+            comments.add(language.getKeyComment(key));
+        }
+        for (String key : keys) {
+            language.removeKey(key);
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            String newKey = changes.get(keys.get(i));
+            if (newKey != null) {
+                language.putKeyText(newKey, texts.get(i));
+                language.putKeyComment(newKey, comments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Internal function! The key dictionary shared by all languages.
+     *
+     * @return The dictionary or null if no project is open.
+     */
+    private KeyDictionary getDictionary() {
+        TreeNode<LanguageProperties> root = project.getRoot();
+        return root == null ? null : root.getData().getKeyDictionary();
+    }
+
+    /**
+     * Internal function! All languages of the tree with valid key bits, i.e.
+     * the languages that were never loaded are loaded (in parallel).
+     *
+     * @return The languages.
+     */
+    private List<LanguageProperties> getLanguages() {
+        List<LanguageProperties> languages = new ArrayList<LanguageProperties>();
+        List<LanguageProperties> unknown = new ArrayList<LanguageProperties>();
+        for (TreeNode<LanguageProperties> node : project.getRoot().subTreeNodesList()) {
+            languages.add(node.getData());
+            if (!node.getData().hasKeyBits()) {
+                unknown.add(node.getData());
+            }
+        }
+        project.prefetch(unknown);
+        for (LanguageProperties language : unknown) {
+            language.load();
+        }
+        return languages;
+    }
+}
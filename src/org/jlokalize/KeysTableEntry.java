@@ -26,6 +26,8 @@ public class KeysTableEntry {
     public String key;
     public KeyStatus status;
     public boolean modified;
+    public boolean committed;
+    public CommittedChanges.Version committedVersion;
     
     /**
      * Automatically used in the key table cell renderer to determine the cell
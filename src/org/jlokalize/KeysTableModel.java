@@ -14,10 +14,15 @@
  */
 package org.jlokalize;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.JProgressBar;
 import javax.swing.table.AbstractTableModel;
 import org.tools.common.CentralStatic;
@@ -39,6 +44,9 @@ import org.tools.i18n.PropertyWithStats;
  * language structures and on the modified flag. Not only a key is stored but also
  * a text, comment pair. Optionally, keys are sorted alphabetically.
  * 
+ * The rows can be filtered by key and status. A filter only selects positions
+ * in the keys list, which itself stays as it is.
+ * 
  * To ensure that this is done right is quite a tough task.
  *
  * @author Trilarion 2010-2011
@@ -51,9 +59,21 @@ public class KeysTableModel extends AbstractTableModel {
     /** The parent structure, we need separate object, not automatic parent of LanguageProperties */
     private LanguageProperties parent;
     /** A list of all keys, including their status */
-    private List<String> keys = new LinkedList<String>();
-    /** The current active row in the table */
-    private int activeRow = -1;
+    private List<String> keys = new ArrayList<String>();
+    /** The positions in the keys list that are shown if a filter is set, otherwise null */
+    private int[] rows = null;
+    /** Index over the keys list used by the filter, created when needed and updated when keys are added */
+    private KeyIndex index = null;
+    /** The filter text, empty if not filtering by key */
+    private String filterText = "";
+    /** How the filter text is matched */
+    private KeyFilterMode filterMode = KeyFilterMode.Substring;
+    /** The compiled filter text for regular expression filters */
+    private Pattern filterPattern = null;
+    /** The status of shown keys or null if not filtering by status */
+    private KeyStatus filterStatus = null;
+    /** The key of the current active row in the table (a key because rows change with the filter) */
+    private String activeKey = null;
     /** Progress bar which is located below the keys table. */
     private final JProgressBar statusProgressBar;
     /** Whether keys should be sorted alphabetically. */
@@ -83,6 +103,9 @@ public class KeysTableModel extends AbstractTableModel {
      */
     @Override
     public int getRowCount() {
+        if (rows != null) {
+            return rows.length;
+        }
         return keys.size();
     }
 
@@ -136,9 +159,11 @@ public class KeysTableModel extends AbstractTableModel {
     public Object getValueAt(int rowIndex, int columnIndex) {
         // update the modified propertes (for code simplicity we do it every times)
         KeysTableEntry entry = new KeysTableEntry();
-        String key = keys.get(rowIndex);
+        String key = getKey(rowIndex);
         entry.key = key;
         entry.modified = prop.modified(key);
+        entry.committed = prop.changedSinceCommit(key);
+        entry.committedVersion = prop.getCommittedVersion(key);
         entry.status = determineStatus(key);
         return entry;
     }
@@ -179,9 +204,10 @@ public class KeysTableModel extends AbstractTableModel {
 
         // clear all internal variables
         keys.clear();
+        keysChanged(null, null);
         prop = null;
         parent = null;
-        activeRow = -1;
+        activeKey = null;
 
         // update status bar
         updateProgressBar();
@@ -194,13 +220,13 @@ public class KeysTableModel extends AbstractTableModel {
     /**
      * Returns an entry from the table for use outside. There a new KeyEntry
      * object is created with all necessary information (keys, texts, comments).
-     * Also the activeRow is set.
+     * Also the active key is set.
      * 
      * @param rowIndex The row.
      * @return A KeyEntry object.
      */
     public KeyEntry getEntry(int rowIndex) {
-        String key = keys.get(rowIndex);
+        String key = getKey(rowIndex);
         KeyEntry entry = new KeyEntry();
         entry.key = key;
         entry.text = prop.getKeyText(key);
@@ -209,18 +235,68 @@ public class KeysTableModel extends AbstractTableModel {
             entry.defaultText = parent.getKeyText(key);
             entry.defaultComment = parent.getKeyComment(key);
         }
-        activeRow = rowIndex;
+        activeKey = key;
         return entry;
     }
+
+    /**
+     * Returns the key of a row without making it the active row.
+     * 
+     * @param rowIndex The row.
+     * @return The key.
+     */
+    public String getKey(int rowIndex) {
+        if (rows != null) {
+            return keys.get(rows[rowIndex]);
+        }
+        return keys.get(rowIndex);
+    }
     
     /**
      * Sometimes we need to keep track of newly created keys or such.
      * 
      * @param key The key to search for.
-     * @return The current index in the key list or -1 if not in list. 
+     * @return The current row of the key or -1 if not in list or filtered out. 
      */
     public int getRow(String key) {
-        return keys.indexOf(key);
+        int position = index != null ? index.indexOf(key) : keys.indexOf(key);
+        if (position == -1 || rows == null) {
+            return position;
+        }
+        int row = Arrays.binarySearch(rows, position);
+        return row < 0 ? -1 : row;
+    }
+
+    /**
+     * Shows only the keys matching a filter. The keys list is neither rebuilt
+     * nor sorted again: prefix and substring filters are answered by an index
+     * over the keys, only regular expressions and a status are tested key by
+     * key. Changes of the status (by editing) do not hide or show rows until
+     * the filter is set again.
+     * 
+     * @param text The filter text, empty for not filtering by key.
+     * @param mode How the filter text is matched.
+     * @param status Only keys with this status are shown, null for all.
+     * @return False if the text is not a valid regular expression, the filter is unchanged then.
+     */
+    public boolean setFilter(String text, KeyFilterMode mode, KeyStatus status) {
+        Pattern pattern = null;
+        if (mode == KeyFilterMode.Regex && text.length() > 0) {
+            try {
+                pattern = Pattern.compile(text);
+            } catch (PatternSyntaxException ex) {
+                return false;
+            }
+        }
+        filterText = text;
+        filterMode = mode;
+        filterPattern = pattern;
+        filterStatus = status;
+        applyFilter();
+
+        // only the rows have changed
+        fireTableDataChanged();
+        return true;
     }
 
     /**
@@ -241,8 +317,8 @@ public class KeysTableModel extends AbstractTableModel {
      * @param comment The new comment.
      */
     public void updateLastKey(String text, String comment) {
-        if (activeRow != -1) {
-            String key = keys.get(activeRow);
+        if (activeKey != null) {
+            String key = activeKey;
 
             String oldText = prop.getKeyText(key);
             String oldComment = prop.getKeyComment(key);
@@ -262,7 +338,10 @@ public class KeysTableModel extends AbstractTableModel {
                 updateProgressBar();
 
                 // signal re-rendering of the row
-                fireTableCellUpdated(activeRow, 0);
+                int row = getRow(key);
+                if (row != -1) {
+                    fireTableCellUpdated(row, 0);
+                }
                 // we also need to update the table header, but there seems not
                 // to exist a single event for that (fireTableStructureChanged()
                 // is update everything) - so we fix this from oustide with
@@ -281,14 +360,14 @@ public class KeysTableModel extends AbstractTableModel {
     public int getNextNotHereKey(int row) {
         // search from row + 1 until the end
         int i;
-        for (i = row + 1; i < keys.size(); i++) {
-            if (determineStatus(keys.get(i)) == KeyStatus.OnlyInParent) {
+        for (i = row + 1; i < getRowCount(); i++) {
+            if (determineStatus(getKey(i)) == KeyStatus.OnlyInParent) {
                 return i;
             }
         }
         // search from the beginning until the last one
         for (i = 0; i < row; i++) {
-            if (determineStatus(keys.get(i)) == KeyStatus.OnlyInParent) {
+            if (determineStatus(getKey(i)) == KeyStatus.OnlyInParent) {
                 return i;
             }
         }
@@ -314,14 +393,18 @@ public class KeysTableModel extends AbstractTableModel {
         if (!keys.contains(key)) {
             keys.add(key);
             maybeSortKeys();
+            keysChanged(Collections.singletonList(key), key);
             // after resorting nothing is selected
-            activeRow = -1;
+            activeKey = null;
             // signal that everything has changed
             fireTableDataChanged(); // keys have changed
             fireTableStructureChanged(); // column name may have changed                
         } else {
             // just signal that the row containing key has changed
-            fireTableCellUpdated(keys.indexOf(key), 0);
+            int row = getRow(key);
+            if (row != -1) {
+                fireTableCellUpdated(row, 0);
+            }
         }
 
         // update the status bar
@@ -337,10 +420,10 @@ public class KeysTableModel extends AbstractTableModel {
      * remove keys from a parent).
      */
     public boolean removeKey() {
-        String key = keys.get(activeRow);
+        String key = activeKey;
 
         // it should a key in the list
-        if (!prop.containsAsKey(key)) {
+        if (key == null || !prop.containsAsKey(key)) {
             return false;
         }
 
@@ -348,7 +431,10 @@ public class KeysTableModel extends AbstractTableModel {
         prop.removeKey(key);
 
         // update the row in question
-        fireTableCellUpdated(keys.indexOf(key), 0);
+        int row = getRow(key);
+        if (row != -1) {
+            fireTableCellUpdated(row, 0);
+        }
 
         // update the status bar
         updateProgressBar();
@@ -370,10 +456,10 @@ public class KeysTableModel extends AbstractTableModel {
      * @return New active row.
      */
     public int renameKey(String newKey) {
-        String key = keys.get(activeRow);
+        String key = activeKey;
 
         // test if newkey is not yet there
-        if (keys.contains(newKey)) {
+        if (key == null || keys.contains(newKey)) {
             return -1;
         }
 
@@ -385,9 +471,10 @@ public class KeysTableModel extends AbstractTableModel {
 
         // need to sort again
         maybeSortKeys();
+        keysChanged(Collections.singletonList(newKey), newKey);
 
         // selection will be on new key
-        activeRow = keys.indexOf(newKey);
+        activeKey = newKey;
 
         // update status bar
         updateProgressBar();
@@ -396,7 +483,7 @@ public class KeysTableModel extends AbstractTableModel {
         fireTableDataChanged();
         fireTableStructureChanged();
 
-        return activeRow;
+        return getRow(newKey);
     }
 
     /**
@@ -405,9 +492,9 @@ public class KeysTableModel extends AbstractTableModel {
      * a rebuild is necessary.
      */
     public void restore() {
-        String key = keys.get(activeRow);
+        String key = activeKey;
         // is it modified
-        if (prop.modified(key)) {
+        if (key != null && prop.modified(key)) {
             // restore it
             prop.restore(key);
             // completely reset the language
@@ -416,6 +503,44 @@ public class KeysTableModel extends AbstractTableModel {
         }
     }
 
+    /**
+     * Updates the rows of keys that were changed from outside (e.g. by undo),
+     * without rebuilding the keys list. Keys that are new to the current
+     * language or its parent are added to the list. The active key is reset,
+     * so the row must be selected again.
+     * 
+     * @param changed The changed keys (of any language).
+     */
+    public void refreshKeys(Collection<String> changed) {
+        if (prop == null || changed.isEmpty()) {
+            return;
+        }
+        Set<String> known = changed.size() > 1 ? new HashSet<String>(keys) : null;
+        List<String> added = new ArrayList<String>();
+        for (String key : changed) {
+            boolean listed = known != null ? known.contains(key) : keys.contains(key);
+            if (!listed && (prop.containsAsKey(key) || (parent != null && parent.containsAsKey(key)))) {
+                keys.add(key);
+                added.add(key);
+            }
+        }
+        activeKey = null;
+        if (!added.isEmpty()) {
+            maybeSortKeys();
+            keysChanged(added, changed.size() == 1 ? changed.iterator().next() : null);
+            fireTableDataChanged();
+            fireTableStructureChanged();
+        } else if (changed.size() == 1) {
+            int row = getRow(changed.iterator().next());
+            if (row != -1) {
+                fireTableCellUpdated(row, 0);
+            }
+        } else {
+            fireTableDataChanged();
+        }
+        updateProgressBar();
+    }
+
     /**
      * Internal function! Determines the status of a key (used for the renderer).
      * 
@@ -447,10 +572,15 @@ public class KeysTableModel extends AbstractTableModel {
     private void updateProgressBar() {
         // update progress bar
         int all = 0;
-        for (String key : keys) {
-            KeyStatus status = determineStatus(key);
-            if (status == KeyStatus.Everywhere || status == KeyStatus.OnlyInParent) {
-                all++;
+        LanguageStatistics statistics = getStatistics();
+        if (statistics != null) {
+            all = statistics.translated + statistics.missing;
+        } else {
+            for (String key : keys) {
+                KeyStatus status = determineStatus(key);
+                if (status == KeyStatus.Everywhere || status == KeyStatus.OnlyInParent) {
+                    all++;
+                }
             }
         }
 
@@ -469,12 +599,29 @@ public class KeysTableModel extends AbstractTableModel {
         }
     }
 
+    /**
+     * Internal function! The counts of the current language are kept up to
+     * date by the statistics of the tree, if the language is attached to them.
+     *
+     * @return The counts or null.
+     */
+    private LanguageStatistics getStatistics() {
+        if (prop == null || prop.getStatistics() == null) {
+            return null;
+        }
+        return prop.getStatistics().get(prop);
+    }
+
     /**
      * Internal function! Calculates the number of keys, which are everywhere.
      *
      * @return Number of good keys.
      */
     private int countNumEverywhere() {
+        LanguageStatistics statistics = getStatistics();
+        if (statistics != null) {
+            return statistics.translated;
+        }
         int num = 0;
         for (String key : keys) {
             if (determineStatus(key) == KeyStatus.Everywhere) {
@@ -491,7 +638,7 @@ public class KeysTableModel extends AbstractTableModel {
     private void rebuild() {
         // clear keys list and active row
         keys.clear();
-        activeRow = -1;
+        activeKey = null;
 
         // combine keyset from this and parent
         Set<String> keySet = prop.getAllTextKeysAsSet();
@@ -504,6 +651,7 @@ public class KeysTableModel extends AbstractTableModel {
         keys.addAll(keySet);
         // sort keys list
         maybeSortKeys();
+        keysChanged(null, null);
 
         // update status bar
         updateProgressBar();
@@ -518,4 +666,94 @@ public class KeysTableModel extends AbstractTableModel {
             Collections.sort(keys, String.CASE_INSENSITIVE_ORDER);
         }
     }
+
+    /**
+     * Internal function! Must be called after the keys list has changed. Adds
+     * the new keys to the index (or drops it if the list was rebuilt) and
+     * applies the filter to the new list.
+     * 
+     * @param added The keys added to the list or null if the list was rebuilt.
+     * @param visibleKey A key that is shown even if it does not match the filter (a new key) or null.
+     */
+    private void keysChanged(Collection<String> added, String visibleKey) {
+        if (added == null) {
+            index = null;
+        } else if (index != null) {
+            for (String key : added) {
+                index.add(key);
+            }
+            index.setPositions(keys);
+        }
+        applyFilter();
+        if (rows != null && visibleKey != null) {
+            int position = getIndex().indexOf(visibleKey);
+            int row = Arrays.binarySearch(rows, position);
+            if (position != -1 && row < 0) {
+                row = -row - 1;
+                int[] newRows = new int[rows.length + 1];
+                System.arraycopy(rows, 0, newRows, 0, row);
+                newRows[row] = position;
+                System.arraycopy(rows, row, newRows, row + 1, rows.length - row);
+                rows = newRows;
+            }
+        }
+    }
+
+    /**
+     * Internal function! Determines the shown rows from the filter.
+     */
+    private void applyFilter() {
+        if (filterText.length() == 0 && filterStatus == null) {
+            rows = null;
+            return;
+        }
+
+        // positions matching the text
+        int[] positions;
+        int n;
+        if (filterText.length() == 0) {
+            positions = new int[keys.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+        } else if (filterMode == KeyFilterMode.Prefix) {
+            positions = getIndex().findPrefix(filterText);
+        } else if (filterMode == KeyFilterMode.Substring) {
+            positions = getIndex().findSubstring(filterText);
+        } else {
+            positions = new int[keys.size()];
+            n = 0;
+            for (int i = 0; i < positions.length; i++) {
+                if (filterPattern.matcher(keys.get(i)).find()) {
+                    positions[n++] = i;
+                }
+            }
+            positions = Arrays.copyOf(positions, n);
+        }
+
+        // of these the positions matching the status
+        if (filterStatus != null) {
+            n = 0;
+            for (int i = 0; i < positions.length; i++) {
+                if (determineStatus(keys.get(positions[i])) == filterStatus) {
+                    positions[n++] = positions[i];
+                }
+            }
+            positions = Arrays.copyOf(positions, n);
+        }
+        rows = positions;
+    }
+
+    /**
+     * Internal function! Returns the index over the keys list, creates it if
+     * the list has been rebuilt since the last use.
+     * 
+     * @return The index.
+     */
+    private KeyIndex getIndex() {
+        if (index == null) {
+            index = new KeyIndex(keys);
+        }
+        return index;
+    }
 }
@@ -37,8 +37,12 @@ public class KeysTableRenderer extends DefaultTableCellRenderer {
     private static final long serialVersionUID = 1L;
     /** Width of the red bar that is shown on the right side of the cell if a key has been modified */
     private static final int ModifiedBarWidth = 5;
+    /** Committed texts and comments are cut to this length in the tool tip */
+    private static final int MaxCommittedLength = 80;
     /** We keep track of the modified property so we can react to it in the paint() method */
     private boolean modified = false;
+    /** The same for the changed since commit property, shown as orange bar on the left side */
+    private boolean committed = false;
 
     /**
      * Renders the cell. Sets the key as text (done by the toString method of
@@ -90,12 +94,44 @@ public class KeysTableRenderer extends DefaultTableCellRenderer {
             }
             this.setToolTipText(text);
         }
+        committed = entry.committed;
+        if (committed) {
+            String text = this.getToolTipText();
+            if (text == null) {
+                text = i18n.get("keystable.committed");
+            } else {
+                text += " " + i18n.get("keystable.committed");
+            }
+            CommittedChanges.Version version = entry.committedVersion;
+            if (version != null) {
+                if (version.text == null) {
+                    text += " " + i18n.get("keystable.notcommitted");
+                } else {
+                    text += " " + String.format(i18n.get("keystable.committedtext"), shorten(version.text));
+                    if (version.comment != null) {
+                        text += " " + String.format(i18n.get("keystable.committednote"), shorten(version.comment));
+                    }
+                }
+            }
+            this.setToolTipText(text);
+        }
         return this;
     }
 
+    /**
+     * Internal function! Cuts a committed text for the tool tip.
+     *
+     * @param text The text.
+     * @return The text in one line and at most MaxCommittedLength characters long.
+     */
+    private static String shorten(String text) {
+        text = text.replace('\n', ' ').replace('\r', ' ');
+        return text.length() <= MaxCommittedLength ? text : text.substring(0, MaxCommittedLength - 3) + "...";
+    }
+
     /**
      * The paint method which is modified to paint a red bar if a cell entry is
-     * modified.
+     * modified and an orange bar if it was changed since the last commit.
      * 
      * @param g Graphics context
      */
@@ -108,5 +144,11 @@ public class KeysTableRenderer extends DefaultTableCellRenderer {
             g.fillRect(getWidth() - ModifiedBarWidth - 1, 0, getWidth() - 1, getHeight() - 1);
             g.setColor(oldCol);
         }
+        if (committed) {
+            Color oldCol = g.getColor();
+            g.setColor(Color.ORANGE);
+            g.fillRect(0, 0, ModifiedBarWidth, getHeight());
+            g.setColor(oldCol);
+        }
     }
 }
@@ -14,14 +14,25 @@
  */
 package org.jlokalize;
 
+import java.io.IOException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.tools.common.CommonUtils;
+import org.tools.common.StringPool;
 import org.tools.i18n.Property;
 import org.tools.io.Resource;
+import org.tools.io.ext.ExtIOFactory;
 
 /**
  * This class wraps Property to track modifications (via a HashMap and the
@@ -30,26 +41,73 @@ import org.tools.io.Resource;
  * simultaneously, therefore hiding these details from the higher level editor
  * frame and table model.
  *
+ * A language of an opened project is loaded lazily: its file is parsed when
+ * the content is needed for the first time. An unmodified language can be
+ * unloaded again (see LanguageResidency).
+ *
  * @author Trilarion 2010-2011
  */
 public class LanguageProperties {
 
+    private static final Logger LOG = Logger.getLogger(LanguageProperties.class.getName());
     /** Line separator. */
     private static String lineSeparator = null;
     /** Default ending of a key that is a comment. Regular keys cannot end with this. */
     private static String commentID = ".comment";
+    /** Estimated bytes per entry of the map (map entries, configuration nodes), besides the value. */
+    private static final int EntryOverhead = 250;
+    /** Estimated bytes per entry in the search index, besides the postings. */
+    private static final int IndexEntryOverhead = 120;
+    /** Estimated bytes of postings in the search index per indexed char. */
+    private static final int IndexBytesPerChar = 5;
     /** The underlying properties structure to load and save and keep the originals. */
     private Property prop = new Property();
     /** The more versatile (than Property) map holding the key / text pairs (can also have null which we use for deleted keys) */
     private HashMap<String, String> map = new LinkedHashMap<String, String>(200);
     /* Base name, i.e. project identifier */
     private String base;
+    /** Separates base, language, country and variant in the file name. */
+    private char separator = '_';
     /** Clear name in the actual Locale, depends on language, country, variant and current Locale */
     private String clearname;
     /** Complete identifiers of the language, i.e. language, country and variant. */
     private String language, country, variant;
     /** Is master structure or not */
     private boolean master = false;
+    /** The search index that is told about every change of a key, or null. */
+    private ProjectSearchIndex searchIndex;
+    /** The statistics that are told about every change of a key, or null. */
+    private LanguageTreeStatistics statistics;
+    /** Ids and canonical strings of the keys, shared by all languages of a project. */
+    private KeyDictionary keys = new KeyDictionary();
+    /** Shared texts and comments of all languages of a project, or null. */
+    private StringPool values;
+    /** Ids of the contained keys (see containsAsKey). */
+    private final BitSet presentKeys = new BitSet();
+    /** Ids of the modified keys (see modified). */
+    private final BitSet modifiedKeys = new BitSet();
+    /** Ids of the keys that differ from the last commit (see CommittedChanges), or null. */
+    private BitSet committedChanges;
+    /** The committed versions of the keys that differ from the last commit, or null. */
+    private Map<String, CommittedChanges.Version> committedVersions;
+    /** The file to load from as long as the language is not loaded, afterwards null. */
+    private Resource source;
+    /** The property parsed in the background (see prefetch), or null. */
+    private Future<Property> pending;
+    /** True if the language was loaded and unloaded again, the bit sets are still valid then. */
+    private boolean unloaded = false;
+    /** The commit that is not yet written (see serialize and write), or null. */
+    private Commit uncommitted;
+    /** True if the last save failed, the file may be damaged then and the language is not unloaded. */
+    private boolean saveFailed = false;
+    /** Is told about every access and load, or null. */
+    private LanguageResidency residency;
+    /** Records every change of a key for undo, or null. */
+    private EditJournal journal;
+    /** Records every change of a key for crash recovery, or null. */
+    private AutosaveJournal autosave;
+    /** Restores the file instead of parsing it if it is unchanged, or null. */
+    private ProjectSnapshot snapshot;
 
     /**
      * Sets the line separator to use for all LanguageProperties.
@@ -68,11 +126,19 @@ public class LanguageProperties {
         LanguageProperties.commentID = suffix;
     }
 
+    /**
+     * @return The suffix of the keys that hold the comment of a key.
+     */
+    public static String getCommentSuffix() {
+        return commentID;
+    }
+
     /* For creating new languages */
     public LanguageProperties() {
         if (lineSeparator != null) {
             prop.setLineSeparator(lineSeparator);
         }
+        prop.setCommentSuffix(commentID);
     }
 
     /**
@@ -82,13 +148,310 @@ public class LanguageProperties {
      * @param prop The property.
      */
     public LanguageProperties(Property prop) {
+        this(prop, new KeyDictionary(), null);
+    }
+
+    /**
+     * Creates a language structure with a property already set, whose keys
+     * go into the given key dictionary and whose values into the given pool.
+     * Copies to map.
+     *
+     * @param prop The property.
+     * @param keys The key dictionary of the project.
+     * @param values The value pool of the project or null.
+     */
+    public LanguageProperties(Property prop, KeyDictionary keys, StringPool values) {
         if (lineSeparator != null) {
             prop.setLineSeparator(lineSeparator);
         }
         this.prop = prop;
+        this.keys = keys;
+        this.values = values;
         copyToMap();
     }
 
+    /**
+     * Creates a language that is not loaded yet. The file is only parsed when
+     * the content is needed for the first time (see load) or before that in
+     * the background (see prefetch).
+     *
+     * @param source The file of the language.
+     * @param keys The key dictionary of the project.
+     * @param values The value pool of the project or null.
+     */
+    public LanguageProperties(Resource source, KeyDictionary keys, StringPool values) {
+        this.source = source;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * @return True if the content of the language is available, false if the
+     * file was not yet parsed.
+     */
+    public boolean isLoaded() {
+        return source == null;
+    }
+
+    /**
+     * Loads the file of a language that was created not loaded. Uses the
+     * result of a prefetch if there was one, waiting for it if necessary. All
+     * methods that need the content call this automatically. Does nothing if
+     * the language is already loaded.
+     */
+    public void load() {
+        if (source == null) {
+            if (residency != null) {
+                residency.touch(this);
+            }
+            return;
+        }
+        Property property = null;
+        if (pending != null) {
+            try {
+                property = pending.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                LOG.log(Level.SEVERE, null, ex);
+            }
+        }
+        if (property == null) {
+            property = parse(source, keys, values, snapshot);
+        }
+        if (lineSeparator != null) {
+            property.setLineSeparator(lineSeparator);
+        }
+        prop = property;
+        source = null;
+        pending = null;
+        unloaded = false;
+        copyToMap();
+        if (statistics != null) {
+            statistics.languageLoaded(this);
+        }
+        if (searchIndex != null) {
+            searchIndex.languageLoaded(this);
+        }
+        if (residency != null) {
+            residency.languageLoaded(this);
+        }
+    }
+
+    /**
+     * Reads an entry without loading the language or telling the residency,
+     * for the search index.
+     *
+     * @param key A key, also with commentID.
+     * @return The text or comment, null if not there or the language is not loaded.
+     */
+    String peekEntry(String key) {
+        return source == null ? map.get(key) : null;
+    }
+
+    /**
+     * @return True if the language can be unloaded, i.e. it is loaded, has no
+     * modified keys, was saved successfully (if at all) and can be loaded again
+     * from an existing file.
+     */
+    boolean isUnloadable() {
+        if (source != null || !modifiedKeys.isEmpty() || saveFailed) {
+            return false;
+        }
+        Resource location = prop.getLocation();
+        return location != null && location.exists();
+    }
+
+    /**
+     * Frees the content of an unloadable language (see isUnloadable), it is
+     * loaded again from its file when needed. The bit sets of the keys are
+     * kept. Is called by the residency.
+     */
+    void unload() {
+        if (!isUnloadable()) {
+            return;
+        }
+        source = prop.getLocation();
+        prop = null;
+        map = new LinkedHashMap<String, String>(200);
+        unloaded = true;
+        if (searchIndex != null) {
+            searchIndex.languageUnloaded(this);
+        }
+    }
+
+    /**
+     * @return True if the bit sets of the keys are valid, i.e. the language is
+     * loaded or was loaded before it was unloaded.
+     */
+    boolean hasKeyBits() {
+        return source == null || unloaded;
+    }
+
+    /**
+     * @return A rough estimate of the memory freed by unloading in bytes, i.e.
+     * the content, its documents in the search index and the texts (unless
+     * another loaded language has the same text in the value pool).
+     */
+    long estimateSize() {
+        long size = 0;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            int length = entry.getValue() == null ? 0 : entry.getValue().length();
+            size += EntryOverhead + 2L * length;
+            if (searchIndex != null) {
+                size += IndexEntryOverhead + IndexBytesPerChar * (entry.getKey().length() + length);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The file the language was loaded from or saved to last, or null
+     * for a new language.
+     */
+    public Resource getLocation() {
+        return source != null ? source : prop.getLocation();
+    }
+
+    /**
+     * Starts parsing the file of a language that is not loaded in the
+     * background, so that a later load is fast. Does nothing if the language
+     * is loaded or already prefetched.
+     *
+     * @param executor Runs the parsing.
+     */
+    void prefetch(ExecutorService executor) {
+        if (source == null || pending != null) {
+            return;
+        }
+        final Resource resource = source;
+        final KeyDictionary dictionary = keys;
+        final StringPool pool = values;
+        final ProjectSnapshot restorer = snapshot;
+        pending = executor.submit(new Callable<Property>() {
+
+            @Override
+            public Property call() {
+                return parse(resource, dictionary, pool, restorer);
+            }
+        });
+    }
+
+    /**
+     * Internal function! Reads a file, or restores it from the snapshot if it
+     * is unchanged since. Touches no fields, since it is also used in the
+     * background.
+     *
+     * @param resource The file.
+     * @param dictionary The key dictionary.
+     * @param pool The value pool or null.
+     * @param snapshot The snapshot of the project or null.
+     * @return The loaded property, empty if loading failed.
+     */
+    private static Property parse(Resource resource, KeyDictionary dictionary, StringPool pool, ProjectSnapshot snapshot) {
+        if (snapshot != null) {
+            Property restored = snapshot.restore(resource, dictionary, pool);
+            if (restored != null) {
+                return restored;
+            }
+        }
+        Property property = createProperty(resource, dictionary, pool);
+        if (!property.load()) {
+            LOG.log(Level.WARNING, "Loading language {0} failed.", resource.getName());
+        }
+        return property;
+    }
+
+    /**
+     * Creates an empty property for reading a language file. Encoding and
+     * escaping are detected from the file unless switched off in the settings,
+     * they are kept for saving the language.
+     *
+     * @param resource The file.
+     * @param dictionary The key dictionary.
+     * @param pool The value pool or null.
+     * @return The property, not loaded yet.
+     */
+    static Property createProperty(Resource resource, KeyDictionary dictionary, StringPool pool) {
+        Property property = new Property(Settings.ENCODING, new ExtIOFactory(Settings.ESCAPE, dictionary), pool);
+        property.setEncodingDetection(Settings.DETECT_ENCODING);
+        property.setCommentSuffix(commentID);
+        property.setLocation(resource);
+        return property;
+    }
+
+    /**
+     * Merges the new content of the file, which was changed outside, into the
+     * language. Keys that were changed in the file take the new state, unless
+     * they are modified here as well (and differently), which is a conflict:
+     * the modification is kept then. Afterwards the file content is the new
+     * original, i.e. kept modifications are still modified and overwrite the
+     * file when saving. A language that is not loaded just reads the file
+     * when it gets loaded, if it was loaded before all its keys are updated.
+     *
+     * @param property The new content of the file.
+     * @param conflicts Receives the keys changed in the file and modified here.
+     * @return The keys (without commentID) that were changed in the file.
+     */
+    Set<String> reload(Property property, Set<String> conflicts) {
+        if (lineSeparator != null) {
+            property.setLineSeparator(lineSeparator);
+        }
+        Set<String> changed = new LinkedHashSet<String>();
+        if (source != null) {
+            pending = null;
+            if (!unloaded) {
+                // was never loaded, reads the file anyway
+                return changed;
+            }
+            // was unloaded, so nothing is modified and all keys come from the file
+            for (int id = presentKeys.nextSetBit(0); id >= 0; id = presentKeys.nextSetBit(id + 1)) {
+                changed.add(keys.getKey(id));
+            }
+            prop = property;
+            source = null;
+            unloaded = false;
+            map.clear();
+            for (String key : prop.getKeysAsSet()) {
+                map.put(keys.intern(key), pooled(prop.get(key)));
+                if (!key.endsWith(commentID)) {
+                    changed.add(key);
+                }
+            }
+        } else {
+            Set<String> candidates = new LinkedHashSet<String>(map.keySet());
+            candidates.addAll(prop.getKeysAsSet());
+            candidates.addAll(property.getKeysAsSet());
+            for (String key : candidates) {
+                if (key.endsWith(commentID)) {
+                    continue;
+                }
+                String comment = key + commentID;
+                if (sameEntry(prop, property, key) && sameEntry(prop, property, comment)) {
+                    // not changed outside
+                    continue;
+                }
+                changed.add(key);
+                if (modified(key)) {
+                    if (!equal(map.get(key), property.get(key)) || !equal(map.get(comment), property.get(comment))) {
+                        conflicts.add(key);
+                    }
+                    continue;
+                }
+                takeEntry(property, key);
+                takeEntry(property, comment);
+            }
+            prop = property;
+        }
+        for (String key : changed) {
+            keyChanged(key);
+        }
+        if (residency != null) {
+            residency.languageLoaded(this);
+        }
+        return changed;
+    }
+
     /**
      * @return True if master flag is set.
      */
@@ -139,6 +502,7 @@ public class LanguageProperties {
 
     /**
      * @return The standard convention file name: base_language_country_variant (only for those who are not null).
+     * Without base the name starts with the language (de_AT), empty for the root.
      */
     public String toFileName() {
         String s = null;
@@ -146,17 +510,24 @@ public class LanguageProperties {
             s = base;
         }
         if (language != null) {
-            s = s + "_" + language;
+            s = base != null && base.isEmpty() ? language : s + separator + language;
         }
         if (country != null) {
-            s = s + "_" + country;
+            s = s + separator + country;
         }
         if (variant != null) {
-            s = s + "_" + variant;
+            s = s + separator + variant;
         }
         return s;
     }
 
+    /**
+     * @param separator Separates base, language, country and variant in the file name, '_' by default.
+     */
+    public void setSeparator(char separator) {
+        this.separator = separator;
+    }
+
     /**
      * @return The language (used for comparison).
      */
@@ -238,6 +609,7 @@ public class LanguageProperties {
      * @return True if contained and not a comment key.
      */
     public boolean containsAsKey(String key) {
+        load();
         if (key.endsWith(commentID)) {
             return false;
         }
@@ -251,6 +623,7 @@ public class LanguageProperties {
      * @return The text of the key in the map or null if key is not contained in the map or if key is a comment key.
      */
     public String getKeyText(String key) {
+        load();
         if (key.endsWith(commentID)) {
             return null;
         }
@@ -264,8 +637,11 @@ public class LanguageProperties {
      * @param text The new text.
      */
     public void putKeyText(String key, String text) {
+        load();
         if (!key.endsWith(commentID)) {
-            map.put(key, text);
+            recordBefore(key);
+            map.put(keys.intern(key), pooled(text));
+            keyChanged(key);
         }
     }
 
@@ -278,6 +654,7 @@ public class LanguageProperties {
      * @return The comment content belonging to this key or null if no comment is existing.
      */
     public String getKeyComment(String key) {
+        load();
         if (key.endsWith(commentID)) {
             return null;
         }
@@ -292,15 +669,18 @@ public class LanguageProperties {
      * @param comment The new comment text.
      */
     public void putKeyComment(String key, String comment) {
+        load();
         if (!key.endsWith(commentID)) {
+            recordBefore(key);
             if (comment != null && comment.length() > 0) {
-                map.put(key + commentID, comment);
+                map.put(keys.intern(key + commentID), pooled(comment));
             } else {
                 // mark comment as empty, if present
                 if (map.containsKey(key + commentID)) {
                     map.put(key + commentID, null);
                 }
             }
+            keyChanged(key);
         }
     }
 
@@ -311,11 +691,14 @@ public class LanguageProperties {
      * @param key The key whose text and comment is removed.
      */
     public void removeKey(String key) {
+        load();
         if (key.endsWith(commentID)) {
             return;
         }
-        map.put(key, null);
-        map.put(key + commentID, null);
+        recordBefore(key);
+        map.put(keys.intern(key), null);
+        map.put(keys.intern(key + commentID), null);
+        keyChanged(key);
     }
 
     /**
@@ -329,9 +712,16 @@ public class LanguageProperties {
         if (oldKey.endsWith(commentID) || newKey.endsWith(commentID)) {
             return;
         }
+        // undone together
+        if (journal != null) {
+            journal.begin();
+        }
         putKeyText(newKey, getKeyText(oldKey));
         putKeyComment(newKey, getKeyComment(oldKey));
         removeKey(oldKey);
+        if (journal != null) {
+            journal.end();
+        }
     }
 
     /**
@@ -347,6 +737,10 @@ public class LanguageProperties {
      * @return True if modified.
      */
     public boolean modified(String key) {
+        if (source != null) {
+            // not loaded, cannot be modified
+            return false;
+        }
         if (key.endsWith(commentID)) {
             return false;
         }
@@ -377,15 +771,56 @@ public class LanguageProperties {
         return false;
     }
 
+    /**
+     * Tests if a key differs in the saved file from the last commit of the
+     * repository. Only a lookup, the comparison was done before (see
+     * CommittedChanges).
+     *
+     * @param key The key to test.
+     * @return True if changed since the commit, false if unchanged or not compared.
+     */
+    public boolean changedSinceCommit(String key) {
+        BitSet bits = committedChanges;
+        if (bits == null) {
+            return false;
+        }
+        int id = keys.find(key);
+        return id != -1 && bits.get(id);
+    }
+
+    /**
+     * @param key A key.
+     * @return The committed text and comment of the key if it differs in the
+     * saved file from the last commit, otherwise null.
+     */
+    public CommittedChanges.Version getCommittedVersion(String key) {
+        Map<String, CommittedChanges.Version> versions = committedVersions;
+        return versions == null ? null : versions.get(key);
+    }
+
+    /**
+     * Sets the keys that differ from the last commit. Is called by
+     * CommittedChanges.
+     *
+     * @param bits The ids of the changed keys or null if not compared.
+     * @param versions The committed versions of the changed keys or null if not compared.
+     */
+    void setCommittedChanges(BitSet bits, Map<String, CommittedChanges.Version> versions) {
+        committedChanges = bits;
+        committedVersions = versions;
+    }
+
     /**
      * Restores the behavior of a key as it was during loading.
      *
      * @param key The key to restore.
      */
     public void restore(String key) {
+        load();
         if (key.endsWith(commentID)) {
             return;
         }
+        recordBefore(key);
         if (prop.containsKey(key)) {
             // restore from prop
             putKeyText(key, prop.get(key));
@@ -399,15 +834,53 @@ public class LanguageProperties {
             map.remove(key);
             map.remove(key + commentID);
         }
+        keyChanged(key);
     }
 
     /**
      * On rare occasions we want to remove all keys. We do this directly here.
      */
     public void removeAllKeys() {
+        load();
+        Set<String> textKeys = getAllTextKeysAsSet();
+        for (String key : textKeys) {
+            recordBefore(key);
+        }
         for (String key : map.keySet()) {
             map.put(key, null);
         }
+        for (String key : textKeys) {
+            keyChanged(key);
+        }
+    }
+
+    /**
+     * Sets the text and comment of a key to a recorded state, used for undo
+     * and redo. A key that was not in the map is marked as removed if it is in
+     * the loaded file, so that saving removes it.
+     *
+     * @param key The key (without commentID).
+     * @param text The text or null.
+     * @param textMapped True if the key was in the map.
+     * @param comment The comment or null.
+     * @param commentMapped True if the comment key was in the map.
+     */
+    void applyKeyState(String key, String text, boolean textMapped, String comment, boolean commentMapped) {
+        load();
+        applyEntry(key, text, textMapped);
+        applyEntry(key + commentID, comment, commentMapped);
+        keyChanged(key);
+    }
+
+    /**
+     * Internal function! Sets one entry of the map for applyKeyState.
+     */
+    private void applyEntry(String key, String value, boolean mapped) {
+        if (mapped || prop.containsKey(key)) {
+            map.put(keys.intern(key), pooled(value));
+        } else {
+            map.remove(key);
+        }
     }
 
     /**
@@ -416,6 +889,7 @@ public class LanguageProperties {
      * @return A Set of keys.
      */
     public Set<String> getAllTextKeysAsSet() {
+        load();
         Set<String> set = map.keySet();
         // we need to copy it once more (otherwise iterating over it and deleting results in a ConcurrentModificationException)
         Set<String> newset = new LinkedHashSet<String>(200);
@@ -434,6 +908,9 @@ public class LanguageProperties {
      * @return True if at least one key is modified.
      */
     public boolean anyKeyModified() {
+        if (source != null) {
+            return false;
+        }
         for (String key: getAllTextKeysAsSet()) {
             if (modified(key) == true) {
                 return true;
@@ -442,6 +919,20 @@ public class LanguageProperties {
         return false;
     }
 
+    /**
+     * Tests if saving to a resource would write the file as it is, i.e. the
+     * language was restored from the snapshot, no key is modified, it is saved
+     * to its own file and no line separator is enforced. The file is not
+     * parsed again (see commit) and written then.
+     *
+     * @param resource The resource to save to.
+     * @return True if the file would not change.
+     */
+    boolean isUnchangedRestore(Resource resource) {
+        return source == null && prop.isRestored() && modifiedKeys.isEmpty() && lineSeparator == null
+                && prop.getLocation() != null && prop.getLocation().getPath().equals(resource.getPath());
+    }
+
     /**
      * Puts the current state into props and save them.
      *
@@ -449,19 +940,115 @@ public class LanguageProperties {
      * @return  True, if saving was successfully.
      */
     public boolean save(Resource resource) {
-        // copy from map to prop
+        load();
+        commit(resource);
+        return finishCommit(prop.save());
+    }
+
+    /**
+     * Puts the current state into props and encodes them, without writing
+     * anything. The language must be loaded, it is not loaded here, so this
+     * may run in parallel for different languages of a project.
+     *
+     * @param resource The resource the content is meant for.
+     * @return The content as it would be saved.
+     * @throws IOException If the content cannot be encoded.
+     */
+    byte[] serialize(Resource resource) throws IOException {
+        if (!isLoaded()) {
+            throw new IllegalStateException("Language not loaded: " + clearname);
+        }
+        commit(resource);
+        try {
+            return prop.toBytes();
+        } catch (IOException ex) {
+            finishCommit(false);
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes content prepared by serialize to the resource given there. Only
+     * if that succeeds the map starts unmodified again, otherwise all changes
+     * stay modified.
+     *
+     * @param bytes The encoded content.
+     * @return True, if saving was successfully.
+     */
+    boolean write(byte[] bytes) {
+        return finishCommit(prop.write(bytes));
+    }
+
+    /**
+     * Internal function! Copies the current state from map to prop. The map
+     * is not touched, finishCommit decides what happens after writing.
+     *
+     * @param resource The resource to save to.
+     */
+    private void commit(Resource resource) {
+        uncommitted = new Commit(prop);
+        if (prop.isRestored()) {
+            // the snapshot has neither the layout of the file nor what the format keeps for saving
+            Property property = parse(prop.getLocation(), keys, values, null);
+            if (lineSeparator != null) {
+                property.setLineSeparator(lineSeparator);
+            }
+            prop = property;
+        }
         for (String key : map.keySet()) {
             String text;
             text = map.get(key);
+            String before = prop.containsKey(key) ? prop.get(key) : null;
+            if (prop == uncommitted.property && !equal(before, text)) {
+                uncommitted.before.put(key, before);
+            }
             if (text == null) {
                 prop.removeKey(key);
             } else {
                 prop.put(key, text);
             }
         }
-        copyToMap();
         prop.setLocation(resource);
-        return prop.save();
+    }
+
+    /**
+     * Internal function! Ends a commit. If the content was written, the map
+     * starts unmodified again. Otherwise prop is set back to the state of the
+     * file as it was, so all changes stay modified, and the language stays
+     * loaded until it is saved successfully, since the file may be damaged.
+     *
+     * @param written True if the content was written.
+     * @return The same.
+     */
+    private boolean finishCommit(boolean written) {
+        Commit commit = uncommitted;
+        uncommitted = null;
+        saveFailed = !written;
+        if (written) {
+            copyToMap();
+        } else if (prop != commit.property) {
+            // was parsed anew for a restored property
+            prop = commit.property;
+        } else {
+            for (Map.Entry<String, String> entry : commit.before.entrySet()) {
+                if (entry.getValue() == null) {
+                    prop.removeKey(entry.getKey());
+                } else {
+                    prop.put(entry.getKey(), entry.getValue());
+                }
+            }
+            prop.setLocation(commit.location);
+        }
+        return written;
+    }
+
+    /**
+     * @return The encoding the language is saved in, as detected when loading
+     * the file.
+     */
+    public String getEncoding() {
+        load();
+        return prop.getEncoding();
     }
 
     /**
@@ -478,6 +1065,275 @@ public class LanguageProperties {
         return false;
     }
 
+    /**
+     * @return The search index this language is attached to or null.
+     */
+    public ProjectSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Attaches this language to a search index, which is then told about all
+     * changes of keys. Is called by the search index itself.
+     *
+     * @param index The search index or null to detach.
+     */
+    void setSearchIndex(ProjectSearchIndex index) {
+        searchIndex = index;
+    }
+
+    /**
+     * @return The statistics this language is attached to or null.
+     */
+    public LanguageTreeStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Attaches this language to the statistics of the tree, which are then
+     * told about all changes of keys. Is called by the statistics itself.
+     *
+     * @param statistics The statistics or null to detach.
+     */
+    void setStatistics(LanguageTreeStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Attaches this language to the residency of a project, which is then
+     * told about every access. Is called by the residency itself.
+     *
+     * @param residency The residency or null to detach.
+     */
+    void setResidency(LanguageResidency residency) {
+        this.residency = residency;
+    }
+
+    /**
+     * Attaches this language to the edit journal of a project. Is called by
+     * the journal itself.
+     *
+     * @param journal The journal or null to detach.
+     */
+    void setJournal(EditJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Attaches this language to the autosave journal of a project. Is called
+     * by the project.
+     *
+     * @param autosave The autosave journal or null to detach.
+     */
+    void setAutosave(AutosaveJournal autosave) {
+        this.autosave = autosave;
+    }
+
+    /**
+     * Lets the language restore its file from a snapshot instead of parsing
+     * it, as long as it is not loaded. Is called by the project.
+     *
+     * @param snapshot The snapshot of the project or null.
+     */
+    void setSnapshot(ProjectSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return The content of the file as loaded or saved last (without
+     * unsaved changes), or null if the language is not loaded.
+     */
+    Property getOriginal() {
+        return source == null ? prop : null;
+    }
+
+    /**
+     * @return The dictionary of the keys of this language.
+     */
+    public KeyDictionary getKeyDictionary() {
+        return keys;
+    }
+
+    /**
+     * Switches to the key dictionary of a project. All keys are replaced by
+     * the canonical strings of the dictionary and the bit sets are rebuilt for
+     * the new ids. Is called by the project.
+     *
+     * @param dictionary The key dictionary shared by all languages of the project.
+     */
+    void setKeyDictionary(KeyDictionary dictionary) {
+        keys = dictionary;
+        // the ids are not valid anymore
+        committedChanges = null;
+        committedVersions = null;
+        HashMap<String, String> old = map;
+        map = new LinkedHashMap<String, String>(Math.max(200, old.size() * 4 / 3 + 1));
+        for (String key : old.keySet()) {
+            map.put(keys.intern(key), old.get(key));
+        }
+        updateKeyBits();
+    }
+
+    /**
+     * Switches to the value pool of a project. All texts and comments are
+     * replaced by the pooled strings. Is called by the project.
+     *
+     * @param pool The value pool shared by all languages of the project.
+     */
+    void setValuePool(StringPool pool) {
+        values = pool;
+        if (source == null && prop.getKeysAsSet(false).isEmpty()) {
+            // a new language, its (empty) property can be replaced by one that pools the values when saving
+            prop = new Property(Settings.ENCODING, new ExtIOFactory(Settings.ESCAPE, keys), pool);
+            if (lineSeparator != null) {
+                prop.setLineSeparator(lineSeparator);
+            }
+        }
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            entry.setValue(pooled(entry.getValue()));
+        }
+    }
+
+    /**
+     * @return The value pool of this language or null.
+     */
+    public StringPool getValuePool() {
+        return values;
+    }
+
+    /**
+     * Tests if the key with an id is contained. The same as containsAsKey but
+     * without a lookup of the key.
+     *
+     * @param id The id of a key in the key dictionary.
+     * @return True if contained.
+     */
+    public boolean containsKeyId(int id) {
+        load();
+        return presentKeys.get(id);
+    }
+
+    /**
+     * The ids of all contained keys. The bit set is the one used internally,
+     * it must not be modified.
+     *
+     * @return The bit set with the ids of the contained keys.
+     */
+    BitSet getPresentKeys() {
+        return presentKeys;
+    }
+
+    /**
+     * The ids of all modified keys. The bit set is the one used internally, it
+     * must not be modified.
+     *
+     * @return The bit set with the ids of the modified keys.
+     */
+    BitSet getModifiedKeys() {
+        return modifiedKeys;
+    }
+
+    /**
+     * Updates the bits of a key and tells the search index and the statistics
+     * (if there are) about the new state of the key.
+     *
+     * @param key The changed key (without commentID).
+     */
+    private void keyChanged(String key) {
+        int id = keys.getId(key);
+        boolean present = containsAsKey(key);
+        boolean modified = modified(key);
+        boolean presenceChanged = presentKeys.get(id) != present;
+        boolean modificationChanged = modifiedKeys.get(id) != modified;
+        presentKeys.set(id, present);
+        modifiedKeys.set(id, modified);
+        if (searchIndex != null) {
+            searchIndex.update(this, key, map.get(key), map.get(key + commentID));
+        }
+        if (statistics != null && (presenceChanged || modificationChanged)) {
+            statistics.keyChanged(this, id, presenceChanged, modificationChanged);
+        }
+        if (journal != null || autosave != null) {
+            String comment = key + commentID;
+            String text = map.get(key), commentText = map.get(comment);
+            boolean textMapped = map.containsKey(key), commentMapped = map.containsKey(comment);
+            if (journal != null) {
+                journal.after(this, key, text, textMapped, commentText, commentMapped);
+            }
+            if (autosave != null) {
+                autosave.keyChanged(this, key, text, textMapped, commentText, commentMapped);
+            }
+        }
+    }
+
+    /**
+     * Internal function! Tells the journal (if there is one) the state of a key
+     * before it is changed. Must be followed by keyChanged for the key.
+     *
+     * @param key The key (without commentID).
+     */
+    private void recordBefore(String key) {
+        if (journal != null) {
+            String comment = key + commentID;
+            journal.before(this, key, map.get(key), map.containsKey(key), map.get(comment), map.containsKey(comment));
+        }
+    }
+
+    /**
+     * Internal function! Returns the pooled string of a value if there is a
+     * value pool.
+     *
+     * @param value A text or comment or null.
+     * @return The pooled value.
+     */
+    private String pooled(String value) {
+        return values != null ? values.intern(value) : value;
+    }
+
+    /**
+     * Internal function! Sets one entry of the map to the state in a property.
+     */
+    private void takeEntry(Property property, String key) {
+        if (property.containsKey(key)) {
+            map.put(keys.intern(key), pooled(property.get(key)));
+        } else {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Internal function! Tests if an entry is the same in two properties.
+     */
+    private static boolean sameEntry(Property a, Property b, String key) {
+        return a.containsKey(key) == b.containsKey(key) && equal(a.get(key), b.get(key));
+    }
+
+    /**
+     * Internal function! Compares two strings which may be null.
+     */
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Internal function! Rebuilds the bit sets from the map.
+     */
+    private void updateKeyBits() {
+        presentKeys.clear();
+        modifiedKeys.clear();
+        for (String key : map.keySet()) {
+            if (!key.endsWith(commentID)) {
+                int id = keys.getId(key);
+                if (map.get(key) != null) {
+                    presentKeys.set(id);
+                }
+                if (modified(key)) {
+                    modifiedKeys.set(id);
+                }
+            }
+        }
+    }
+
     /**
      * Used in the beginning and after each save action to start with an unmodified map.
      */
@@ -485,7 +1341,25 @@ public class LanguageProperties {
         // copy to map
         map.clear();
         for (String key : prop.getKeysAsSet()) {
-            map.put(key, prop.get(key));
+            map.put(keys.intern(key), pooled(prop.get(key)));
+        }
+        updateKeyBits();
+    }
+
+    /**
+     * The state of prop before a commit, so it can be set back if writing
+     * fails.
+     */
+    private static class Commit {
+
+        final Property property;
+        final Resource location;
+        /** The former entry of each changed key, null if there was none. */
+        final Map<String, String> before = new HashMap<String, String>();
+
+        Commit(Property property) {
+            this.property = property;
+            this.location = property.getLocation();
         }
     }
 }
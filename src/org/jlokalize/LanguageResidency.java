@@ -0,0 +1,235 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tools.common.TreeNode;
+
+/**
+ * Keeps the loaded languages of a project within a memory budget. If the
+ * estimated size of all loaded languages exceeds the budget, languages are
+ * unloaded according to the eviction policy. An unloaded language is loaded
+ * again from its file as soon as its content is needed (see LanguageProperties),
+ * its bit sets of keys and therefore the statistics stay available. Unloading
+ * also removes the language from the search index, and its texts can leave the
+ * value pool, so the estimated size covers these too.
+ *
+ * Pinned languages are never unloaded: the master, the selected languages and
+ * languages with modified keys or without an existing file.
+ *
+ * Not thread safe, must be used from the thread that modifies the languages.
+ */
+public class LanguageResidency {
+
+    private static final Logger LOG = Logger.getLogger(LanguageResidency.class.getName());
+    private EvictionPolicy policy = EvictionPolicy.LeastRecentlyUsed;
+    /** Maximal estimated size of all loaded languages in bytes. */
+    private long budget = Runtime.getRuntime().maxMemory() / 2;
+    /** The loaded languages with their estimated size, the least recently used first. */
+    private final Map<LanguageProperties, Long> loaded = new LinkedHashMap<LanguageProperties, Long>(64, 0.75f, true);
+    /** The estimated size of all loaded languages. */
+    private long total = 0;
+    /** The selected languages. */
+    private Set<LanguageProperties> selected = Collections.emptySet();
+    /** Number of languages unloaded so far. */
+    private int evictions = 0;
+
+    /**
+     * @return The eviction policy.
+     */
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the eviction policy and unloads languages if necessary.
+     *
+     * @param policy The new policy.
+     */
+    public void setPolicy(EvictionPolicy policy) {
+        this.policy = policy;
+        enforce(null);
+    }
+
+    /**
+     * @return The budget in bytes.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the budget and unloads languages if necessary.
+     *
+     * @param budget The maximal estimated size of all loaded languages in bytes.
+     */
+    public void setBudget(long budget) {
+        this.budget = budget;
+        enforce(null);
+    }
+
+    /**
+     * @return The estimated size of all loaded languages in bytes.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Number of languages unloaded so far.
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Pins the languages that are currently shown (e.g. a language and its
+     * parent in the keys table).
+     *
+     * @param languages The selected languages.
+     */
+    public void setSelected(LanguageProperties... languages) {
+        selected = Collections.newSetFromMap(new IdentityHashMap<LanguageProperties, Boolean>());
+        Collections.addAll(selected, languages);
+    }
+
+    /**
+     * Attaches all languages of a tree, forgetting languages that are not in
+     * the tree anymore. Must be called whenever languages were added or
+     * removed.
+     *
+     * @param root The root node of the language tree, or null to detach all languages.
+     */
+    public void synchronize(TreeNode<LanguageProperties> root) {
+        Set<LanguageProperties> inTree = Collections.newSetFromMap(new IdentityHashMap<LanguageProperties, Boolean>());
+        if (root != null) {
+            for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+                LanguageProperties language = node.getData();
+                inTree.add(language);
+                language.setResidency(this);
+                if (language.isLoaded() && !loaded.containsKey(language)) {
+                    add(language);
+                }
+            }
+        }
+        for (Iterator<Map.Entry<LanguageProperties, Long>> it = loaded.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<LanguageProperties, Long> entry = it.next();
+            if (!inTree.contains(entry.getKey())) {
+                total -= entry.getValue();
+                it.remove();
+            }
+        }
+        selected.retainAll(inTree);
+        enforce(null);
+    }
+
+    /**
+     * Unloads languages until the budget is met, as far as possible. Should be
+     * called after languages became unpinned, e.g. by saving.
+     */
+    public void trim() {
+        enforce(null);
+    }
+
+    /**
+     * Marks a language as used. Is called by the language itself on every
+     * access.
+     *
+     * @param language The used language.
+     */
+    void touch(LanguageProperties language) {
+        // access order, moves it to the end
+        loaded.get(language);
+    }
+
+    /**
+     * Registers a language that has just been loaded and unloads other
+     * languages if necessary. Is called by the language itself.
+     *
+     * @param language The loaded language.
+     */
+    void languageLoaded(LanguageProperties language) {
+        if (!loaded.containsKey(language)) {
+            add(language);
+        }
+        enforce(language);
+    }
+
+    /**
+     * Internal function! Adds a loaded language with its size.
+     *
+     * @param language The language.
+     */
+    private void add(LanguageProperties language) {
+        long size = language.estimateSize();
+        loaded.put(language, size);
+        total += size;
+    }
+
+    /**
+     * Internal function! Unloads languages according to the policy until the
+     * total size is within the budget or only pinned languages are left.
+     *
+     * @param keep A language that is just being used and must stay, or null.
+     */
+    private void enforce(LanguageProperties keep) {
+        if (policy == EvictionPolicy.Never) {
+            return;
+        }
+        while (total > budget) {
+            LanguageProperties victim = null;
+            long size = -1;
+            for (Map.Entry<LanguageProperties, Long> entry : loaded.entrySet()) {
+                LanguageProperties language = entry.getKey();
+                if (language == keep || isPinned(language)) {
+                    continue;
+                }
+                if (entry.getValue() > size) {
+                    victim = language;
+                    size = entry.getValue();
+                }
+                if (policy == EvictionPolicy.LeastRecentlyUsed) {
+                    // the first one is the least recently used
+                    break;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            loaded.remove(victim);
+            total -= size;
+            victim.unload();
+            evictions++;
+            LOG.log(Level.FINE, "Unloaded language {0}.", victim.toFileName());
+        }
+    }
+
+    /**
+     * Internal function! Tests if a language must stay loaded.
+     *
+     * @param language A loaded language.
+     * @return True if pinned.
+     */
+    private boolean isPinned(LanguageProperties language) {
+        return language.isMaster() || selected.contains(language) || !language.isUnloadable();
+    }
+}
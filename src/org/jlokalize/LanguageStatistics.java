@@ -0,0 +1,55 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+/**
+ * The counts of the keys of one language relative to its parent (in the sense
+ * of the keys table: the master for the languages directly below the root,
+ * otherwise the parent node). Languages without a parent (root and master)
+ * have all their keys as translated.
+ */
+public class LanguageStatistics {
+
+    /** Keys here and in the parent. */
+    public final int translated;
+    /** Keys only in the parent. */
+    public final int missing;
+    /** Keys only here. */
+    public final int orphaned;
+    /** Keys modified since loading or saving. */
+    public final int modified;
+
+    /**
+     * @param translated Number of keys here and in the parent.
+     * @param missing Number of keys only in the parent.
+     * @param orphaned Number of keys only here.
+     * @param modified Number of modified keys.
+     */
+    public LanguageStatistics(int translated, int missing, int orphaned, int modified) {
+        this.translated = translated;
+        this.missing = missing;
+        this.orphaned = orphaned;
+        this.modified = modified;
+    }
+
+    /**
+     * @return The translated keys in percent of the keys of the parent, 100 if
+     * the parent has no keys.
+     */
+    public int getCoverage() {
+        int all = translated + missing;
+        return all == 0 ? 100 : (int) (100L * translated / all);
+    }
+}
@@ -16,16 +16,28 @@ package org.jlokalize;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import javax.swing.filechooser.FileFilter;
 import org.tools.common.TreeNode;
 import org.tools.common.CommonUtils;
+import org.tools.common.StringPool;
 import org.tools.i18n.I18nUtils;
-import org.tools.i18n.Property;
+import org.tools.i18n.ResourceFormat;
+import org.tools.i18n.ResourceFormats;
 import org.tools.io.Resource;
 import org.tools.io.ResourceUtils;
 
@@ -38,6 +50,11 @@ import org.tools.io.ResourceUtils;
  * And we can change the base and directory as well as loading the data from files,
  * saving to files or creating new empty projects.
  *
+ * Opening only lists the files, each language is parsed when it is needed
+ * for the first time. The languages that will probably be needed next are
+ * parsed in the background (see prefetchAround). Unmodified languages are
+ * unloaded again if the memory budget is exceeded (see LanguageResidency).
+ *
  * @author Trilarion 2011
  */
 public class LanguageTreeProject {
@@ -45,14 +62,66 @@ public class LanguageTreeProject {
     private static final Logger LOG = Logger.getLogger(LanguageTreeProject.class.getName());
     /** Standard extension of a language (properties) file */
     private static final String StandardLanguageExtension = ".properties";
-    /** Standard naming scheme for a File Open/Save dialog */
-    private static final String StandardLanguageDescription = "Java properties files (*.properties)";
+    /** Encodes the languages to save in parallel, shared by all projects */
+    private static final ExecutorService Saver = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JLokalize saver");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /** Limits the files written at the same time, shared by all projects */
+    private static final Semaphore SaveWrites = new Semaphore(Math.max(1, Settings.SAVE_IO_THREADS));
+    /** Parses languages in the background, shared by all projects */
+    private static final ExecutorService Loader = Executors.newFixedThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JLokalize loader");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
     /** The directory of the project */
     private Resource directory;
     /** The root node of the languages tree that is build and which is representing the data of the project */
     private TreeNode<LanguageProperties> root;
     /** The base which defines the file names and the name of the root node, can be changed via the 'save as' menu */
     private String base;
+    /** The extension of the language files, which determines their format */
+    private String extension = StandardLanguageExtension;
+    /** Separates base and language codes in the file names of new languages */
+    private char separator = '_';
+    /** Full text index over all languages, built in the background after opening */
+    private ProjectSearchIndex searchIndex;
+    /** Counts of translated, missing, orphaned and modified keys for all languages */
+    private final LanguageTreeStatistics statistics = new LanguageTreeStatistics();
+    /** Keeps the loaded languages within the memory budget */
+    private final LanguageResidency residency = new LanguageResidency();
+    /** Undo and redo of the changes of keys in all languages */
+    private final EditJournal journal = new EditJournal();
+    /** Records all unsaved changes for crash recovery, or null */
+    private AutosaveJournal autosave;
+    /** The project file written to the header of the autosave journal */
+    private File autosaveProject;
+    /** Where the snapshots of the projects are kept, none are used if null */
+    private File snapshotDirectory;
+    /** The snapshot the project was opened with, or null */
+    private ProjectSnapshot snapshot;
+    /** Ids of all keys of all languages, replaced for each opened or created project */
+    private KeyDictionary keyDictionary;
+    /** Texts and comments of all languages, replaced for each opened or created project */
+    private StringPool valuePool;
+    /** If false, no search index is built (batch processing does not need one) */
+    private boolean searchIndexEnabled = true;
+    /** Detects changes of the language files made outside, or null */
+    private ProjectWatcher watcher;
+    /** Is informed about changes made outside, no directory is watched if null */
+    private ProjectWatcher.Listener watchListener;
+    /** The files that could not be written by the last save */
+    private final List<String> saveFailures = new ArrayList<String>();
 
     public static final FileFilter FFilter = new FileFilter() {
         /**
@@ -65,20 +134,34 @@ public class LanguageTreeProject {
             if (f.isDirectory()) {
                 return true;
             }
-            String name = f.getName();
-            if (f.isFile() && name.endsWith(StandardLanguageExtension)) {
-                return true;
-            }
-            return false;
+            return f.isFile() && ResourceFormats.find(f.getName()) != null;
         }
 
-        /** Displays the description. */
+        /** Displays the description of all known formats. */
         @Override
         public String getDescription() {
-            return StandardLanguageDescription;
+            StringBuilder description = new StringBuilder(100);
+            for (ResourceFormat format : ResourceFormats.getFormats()) {
+                description.append(description.length() == 0 ? "" : ", ").append(format.getDescription());
+                description.append(" (*").append(format.getExtension()).append(')');
+            }
+            return description.toString();
         }
     };
 
+    /**
+     * Creates a project without languages. The eviction policy and the memory
+     * budget are taken from the settings.
+     */
+    public LanguageTreeProject() {
+        if (Settings.RESIDENCY_POLICY != null) {
+            residency.setPolicy(Settings.RESIDENCY_POLICY);
+        }
+        if (Settings.RESIDENCY_BUDGET > 0) {
+            residency.setBudget(Settings.RESIDENCY_BUDGET * 1024L * 1024L);
+        }
+    }
+
     /**
      * Sets a new directory.
      *
@@ -106,9 +189,29 @@ public class LanguageTreeProject {
      * and create a new instance of this class. This is kind of a shortcut.
      */
     public void reset() {
+        writeSnapshot();
+        snapshot = null;
         directory = null;
         root = null;
         base = null;
+        keyDictionary = null;
+        valuePool = null;
+        statistics.synchronize(null);
+        residency.synchronize(null);
+        journal.clear();
+        journal.synchronize(null);
+        if (autosave != null) {
+            autosave.stop();
+            autosaveProject = null;
+        }
+        if (searchIndex != null) {
+            searchIndex.dispose();
+            searchIndex = null;
+        }
+        if (watcher != null) {
+            watcher.dispose();
+            watcher = null;
+        }
     }
 
     /**
@@ -120,12 +223,22 @@ public class LanguageTreeProject {
      */
     public TreeNode<LanguageProperties> createNew(String base) {
         this.base = base;
+        extension = StandardLanguageExtension;
+        separator = '_';
         // create new LanguageProperties
         LanguageProperties language = new LanguageProperties();
         language.setBase(base);
         language.setClearName();
         root = LanguageTreeManager.insertLangPropInTree(null, language);
         root.getData().setMaster(true);
+        keyDictionary = new KeyDictionary();
+        valuePool = new StringPool();
+        attachLanguages();
+        statistics.synchronize(root);
+        residency.synchronize(root);
+        journal.clear();
+        journal.synchronize(root);
+        createSearchIndex();
         return root;
     }
 
@@ -136,6 +249,102 @@ public class LanguageTreeProject {
         return root;
     }
 
+    /**
+     * @return The search index over all languages or null if no project is open.
+     */
+    public ProjectSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return The statistics of all languages, always the same object for this project.
+     */
+    public LanguageTreeStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return The undo journal of all languages, always the same object for this project.
+     */
+    public EditJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the autosave journal, which records the changes of projects opened
+     * afterwards until they are closed.
+     *
+     * @param autosave The autosave journal or null for none.
+     */
+    public void setAutosave(AutosaveJournal autosave) {
+        this.autosave = autosave;
+    }
+
+    /**
+     * Sets the directory of the snapshots, which let projects opened
+     * afterwards restore their unchanged files instead of parsing them (see
+     * ProjectSnapshot). A snapshot is written when a project is saved or closed.
+     *
+     * @param directory The directory or null for no snapshots.
+     */
+    public void setSnapshotDirectory(File directory) {
+        snapshotDirectory = directory;
+    }
+
+    /**
+     * Sets the listener which is informed if language files of projects opened
+     * or saved afterwards are changed outside. The directory of a project is
+     * only watched if there is a listener.
+     *
+     * @param listener The listener or null.
+     */
+    public void setWatchListener(ProjectWatcher.Listener listener) {
+        watchListener = listener;
+    }
+
+    /**
+     * @return The file names of the languages that could not be saved by the
+     * last save, empty if all were saved.
+     */
+    public List<String> getSaveFailures() {
+        return Collections.unmodifiableList(saveFailures);
+    }
+
+    /**
+     * @return The residency of the languages, always the same object for this project.
+     */
+    public LanguageResidency getResidency() {
+        return residency;
+    }
+
+    /**
+     * Enables or disables the search index for projects opened or created
+     * afterwards. Enabled by default.
+     *
+     * @param enabled False if no search index should be built.
+     */
+    public void setSearchIndexEnabled(boolean enabled) {
+        searchIndexEnabled = enabled;
+    }
+
+    /**
+     * Must be called after languages were added to or removed from the tree
+     * or the master was changed, so that the statistics, the residency, the
+     * undo journal and the search index are informed.
+     */
+    public void languagesChanged() {
+        attachLanguages();
+        statistics.synchronize(root);
+        residency.synchronize(root);
+        journal.synchronize(root);
+        if (searchIndex != null) {
+            searchIndex.synchronize(root);
+        }
+        if (watcher != null) {
+            watcher.synchronize(root);
+        }
+    }
+
     /**
      * @return The base identifier.
      */
@@ -143,6 +352,45 @@ public class LanguageTreeProject {
         return base;
     }
 
+    /**
+     * @return The extension of the language files including the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Internal function! Writes the snapshot of the project (if snapshots are
+     * used).
+     *
+     * @return True if the snapshot was written.
+     */
+    private boolean writeSnapshot() {
+        if (snapshotDirectory == null || root == null || directory == null) {
+            return false;
+        }
+        List<LanguageProperties> languages = new ArrayList<LanguageProperties>();
+        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+            languages.add(node.getData());
+        }
+        return ProjectSnapshot.write(snapshotDirectory, getProjectFile(), languages, snapshot);
+    }
+
+    /**
+     * Internal function! The file standing for the project, e.g. in the
+     * autosave journal: the file of the root or, without base, of the master.
+     *
+     * @return The file.
+     */
+    private File getProjectFile() {
+        String name = base;
+        TreeNode<LanguageProperties> master = LanguageTreeManager.getMasterNode(root);
+        if (name.isEmpty() && master != null) {
+            name = master.getData().toFileName();
+        }
+        return new File(directory.getPath(), name + extension);
+    }
+
     /**
      * Given a file from a project, searches for all files that match a certain
      * regular expression (base at the beginning, then arbitrary stuff, then the
@@ -151,37 +399,56 @@ public class LanguageTreeProject {
      * newly created tree according to the language codes, automatically adding
      * all missing nodes.
      *
+     * Formats that allow it (see ResourceFormat) may have files named by the
+     * language code alone (de.po, de-AT.json). If the name of the given file is
+     * a language code, the project has no base and consists of all files in the
+     * directory with the extension and a language code as name, the given file
+     * is the master.
+     *
      * @param file One of the files from the project (doesn't matter which one).
-     * @return True if opening was successful.
+     * @return True if opening was successful, false also without a file.
      */
     public boolean open(File file) {
+        if (file == null) {
+            return false;
+        }
         try {
             // get parent directory and file name from the chosen file
             directory = ResourceUtils.asResource(file.getParentFile());
             base = file.getName();
             // get the extension
-            String extension = base.substring(base.lastIndexOf('.'));
-            // from file name get everything until the first "_" or if there is none until the last "."
-            int k;
-            k = base.indexOf('_');
-            if (k == -1) {
-                k = base.lastIndexOf('.');
-            }
-            base = base.substring(0, k);
-            // load all languages in this directory that start with the same base identifier (will be project name)
-
-            // get all files with basename inside and finally with ".properties" using a regular expression
-            List<Resource> resources = directory.list("^(" + base + ").*(\\" + extension + ")$");
-            // the double "\\" is only one "\" in the string
+            extension = base.substring(base.lastIndexOf('.'));
+            ResourceFormat format = ResourceFormats.find(base);
+            String stem = base.substring(0, base.lastIndexOf('.'));
+            boolean localeNames = format != null && format.allowsLocaleNames() && I18nUtils.isValidLanguageCode(stem.split("[_-]"));
+            separator = '_';
+            List<Resource> resources;
+            if (localeNames) {
+                // no base, all files with language codes as names
+                base = "";
+                resources = directory.list("^.*(\\" + extension + ")$");
+            } else {
+                // from file name get everything until the first "_" or if there is none until the last "."
+                int k;
+                k = base.indexOf('_');
+                if (k == -1) {
+                    k = base.lastIndexOf('.');
+                }
+                base = base.substring(0, k);
+                // load all languages in this directory that start with the same base identifier (will be project name)
 
-            // comment: instead of using the extension we could as well just use the StandardLanguageExtension since during
-            // saving it is used anyways
+                // get all files with exactly this base (not of other bases starting with it) and the extension
+                resources = directory.list("^" + Pattern.quote(base) + "(_.*)?" + Pattern.quote(extension) + "$");
+            }
 
             // Sorting here will result in less overhead during the insertion in the tree but is not strictly neccessary
             Collections.sort(resources, Resource.comparator);
 
             // the root node of the tree
             root = null;
+            // all languages share the keys and values
+            keyDictionary = new KeyDictionary();
+            valuePool = new StringPool();
 
             // going through the list of matching files
             for (Resource resource : resources) {
@@ -189,17 +456,26 @@ public class LanguageTreeProject {
                 // process file name to extract the language codes
                 String id = resource.getName();
                 id = id.substring(base.length(), id.lastIndexOf('.'));
-                String[] code = id.split("_");
-                code = Arrays.copyOfRange(code, 1, code.length);
+                String[] code;
+                if (localeNames) {
+                    code = id.split("[_-]");
+                    if (id.indexOf('-') != -1) {
+                        // new languages follow the files with language tags (de-AT)
+                        separator = '-';
+                    }
+                } else {
+                    code = id.split("_");
+                    code = Arrays.copyOfRange(code, 1, code.length);
+                }
                 if (I18nUtils.isValidLanguageCode(code)) {
-                    // load from file and create new properties
-                    Property prop = new Property();
-                    prop.setLocation(resource);
-                    prop.load();
-                    LanguageProperties lang = new LanguageProperties(prop);
+                    // create new properties, the file is loaded later
+                    LanguageProperties lang = new LanguageProperties(resource, keyDictionary, valuePool);
                     // sets base and language tags
                     lang.setBase(base);
                     lang.setLanguageCodes(code);
+                    lang.setSeparator(id.indexOf('-') != -1 ? '-' : '_');
+                    // without base the chosen file is the master
+                    lang.setMaster(localeNames && resource.getName().equals(file.getName()));
                     // insert in the tree
                     root = LanguageTreeManager.insertLangPropInTree(root, lang);
 
@@ -211,7 +487,30 @@ public class LanguageTreeProject {
             // sort according to clear names
             LanguageTreeManager.sortTreeForClearNames(root);
 
-            root.getData().setMaster(true);
+            if (LanguageTreeManager.getMasterNode(root) == null) {
+                root.getData().setMaster(true);
+            }
+
+            // unchanged files are restored instead of parsed when they are loaded
+            snapshot = snapshotDirectory == null ? null : ProjectSnapshot.read(snapshotDirectory, getProjectFile());
+
+            // the nodes created in between for missing languages
+            attachLanguages();
+            statistics.synchronize(root);
+            residency.synchronize(root);
+            journal.clear();
+            journal.synchronize(root);
+            if (autosave != null) {
+                autosave.start(file);
+                autosaveProject = file;
+            }
+
+            // index all languages in the background, as soon as they are loaded
+            createSearchIndex();
+            createWatcher();
+
+            // the master is shown first
+            setSelectedNode(root);
         } catch (IOException ex) {
             LOG.log(Level.WARNING, "Opening project {0} failed.", base);
             // maybe also need to close files here?
@@ -221,6 +520,145 @@ public class LanguageTreeProject {
         return true;
     }
 
+    /**
+     * Must be called whenever another node is selected. The language of the
+     * node and its parent in the sense of the keys table are kept loaded, the
+     * languages around are loaded in the background (see prefetchAround).
+     *
+     * @param node The selected node.
+     */
+    public void setSelectedNode(TreeNode<LanguageProperties> node) {
+        if (root == null || node == null) {
+            return;
+        }
+        TreeNode<LanguageProperties> master = LanguageTreeManager.getMasterNode(root);
+        if (node != root && node != master && master != null) {
+            TreeNode<LanguageProperties> parent = node.getParent() == root ? master : node.getParent();
+            residency.setSelected(node.getData(), parent.getData());
+        } else {
+            residency.setSelected(node.getData());
+        }
+        prefetchAround(node);
+    }
+
+    /**
+     * Starts loading the languages in the background which are probably
+     * needed after a node was selected: the node itself, the master, its
+     * parent, its children and its siblings.
+     *
+     * @param node The selected node.
+     */
+    public void prefetchAround(TreeNode<LanguageProperties> node) {
+        if (root == null || node == null) {
+            return;
+        }
+        node.getData().prefetch(Loader);
+        TreeNode<LanguageProperties> master = LanguageTreeManager.getMasterNode(root);
+        if (master != null) {
+            master.getData().prefetch(Loader);
+        }
+        TreeNode<LanguageProperties> parent = node.getParent();
+        if (parent != null) {
+            parent.getData().prefetch(Loader);
+            for (TreeNode<LanguageProperties> sibling : parent.asUnmodifiableList()) {
+                sibling.getData().prefetch(Loader);
+            }
+        }
+        for (TreeNode<LanguageProperties> child : node.asUnmodifiableList()) {
+            child.getData().prefetch(Loader);
+        }
+    }
+
+    /**
+     * Starts parsing the given languages in the background (in parallel), if
+     * they are not loaded yet.
+     *
+     * @param languages Languages of the tree.
+     */
+    void prefetch(Collection<LanguageProperties> languages) {
+        for (LanguageProperties language : languages) {
+            language.prefetch(Loader);
+        }
+    }
+
+    /**
+     * Loads all languages that are not loaded yet, in parallel. Needed before
+     * operations on the whole project.
+     */
+    public void loadAllLanguages() {
+        if (root == null) {
+            return;
+        }
+        List<TreeNode<LanguageProperties>> nodes = root.subTreeNodesList();
+        for (TreeNode<LanguageProperties> node : nodes) {
+            node.getData().prefetch(Loader);
+        }
+        for (TreeNode<LanguageProperties> node : nodes) {
+            node.getData().load();
+        }
+    }
+
+    /**
+     * Internal function! Lets all languages of the tree use the key dictionary
+     * and the value pool of the project.
+     */
+    private void attachLanguages() {
+        if (root == null) {
+            return;
+        }
+        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+            LanguageProperties language = node.getData();
+            if (language.getKeyDictionary() != keyDictionary) {
+                language.setKeyDictionary(keyDictionary);
+            }
+            if (language.getValuePool() != valuePool) {
+                language.setValuePool(valuePool);
+            }
+            language.setAutosave(autosave);
+            if (language.getLocation() == null) {
+                // existing files keep their names
+                language.setSeparator(separator);
+            }
+            language.setSnapshot(snapshot);
+        }
+    }
+
+    /**
+     * Internal function! Replaces the search index by a new one that indexes
+     * the current tree (if the search index is enabled).
+     */
+    private void createSearchIndex() {
+        if (searchIndex != null) {
+            searchIndex.dispose();
+            searchIndex = null;
+        }
+        if (!searchIndexEnabled) {
+            return;
+        }
+        searchIndex = new ProjectSearchIndex();
+        searchIndex.synchronize(root);
+    }
+
+    /**
+     * Internal function! Replaces the watcher by a new one for the current
+     * directory (if there is a listener).
+     */
+    private void createWatcher() {
+        if (watcher != null) {
+            watcher.dispose();
+            watcher = null;
+        }
+        if (watchListener == null || directory == null) {
+            return;
+        }
+        try {
+            watcher = new ProjectWatcher(new File(directory.getPath()), keyDictionary, valuePool, watchListener);
+            watcher.synchronize(root);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Directory {0} cannot be watched.", directory.getPath());
+        }
+    }
+
     /**
      * Chzanges the base for all nodes of the project. Used by the 'save as' menu.
      *
@@ -234,11 +672,15 @@ public class LanguageTreeProject {
             LOG.log(Level.SEVERE, null, ex);
         }
         base = file.getName();
+        // the extension determines the format the languages are saved in
+        int dot = base.lastIndexOf('.');
+        extension = dot == -1 ? StandardLanguageExtension : base.substring(dot);
+        separator = '_';
         // from file name get everything until the first "_" or if there is none until the last "."
         int k;
         k = base.indexOf('_');
         if (k == -1) {
-            k = base.lastIndexOf('.');
+            k = dot;
         }
         if (k != -1) {
             base = base.substring(0, k);
@@ -248,24 +690,126 @@ public class LanguageTreeProject {
         for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
             LanguageProperties props = node.getData();
             props.setBase(base);
+            props.setSeparator(separator);
         }
     }
 
     /**
      * Traverse through the nodes list and saves the languages to a file whos
      * name is derived from directory, base and toFileName() from LanguageProperties.
+     * Languages that are not loaded, or restored from the snapshot and not
+     * modified, are unchanged and therefore skipped, unless they are saved to
+     * another file (after rebase). Without base the root has
+     * no file and is skipped as well.
+     *
+     * The languages are encoded in parallel, the files are written by at most
+     * Settings.SAVE_IO_THREADS threads at the same time, so that a slow network
+     * drive is not flooded. The content of the files is the same as if they
+     * were saved one after another.
+     *
+     * @return True if all languages were saved successfully.
      */
-    public void save() {
-        // traverse through root structure
-        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
-            LanguageProperties language = node.getData();
-            Resource resource = null;
-            try {
-                resource = ResourceUtils.subResource(directory, language.toFileName() + StandardLanguageExtension);
-            } catch (IOException ex) {
-                LOG.log(Level.SEVERE, null, ex);
+    public boolean save() {
+        long start = System.currentTimeMillis();
+        saveFailures.clear();
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        List<LanguageProperties> saved = new ArrayList<LanguageProperties>();
+        int count = 0;
+        // nothing may be unloaded between loading here and serializing in the background
+        EvictionPolicy policy = residency.getPolicy();
+        residency.setPolicy(EvictionPolicy.Never);
+        try {
+            // traverse through root structure
+            for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+                final LanguageProperties language = node.getData();
+                if (language.toFileName().isEmpty()) {
+                    continue;
+                }
+                Resource resource = null;
+                try {
+                    resource = ResourceUtils.subResource(directory, language.toFileName() + extension);
+                } catch (IOException ex) {
+                    LOG.log(Level.SEVERE, null, ex);
+                }
+                if (!language.isLoaded() && resource != null && resource.getPath().equals(language.getLocation().getPath())) {
+                    continue;
+                }
+                language.load();
+                if (resource == null) {
+                    saveFailures.add(language.toFileName() + extension);
+                    continue;
+                }
+                if (language.isUnchangedRestore(resource)) {
+                    // the file is as it was, restored languages are not parsed again for nothing
+                    continue;
+                }
+                final Resource target = resource;
+                futures.add(Saver.submit(new Callable<Boolean>() {
+
+                    @Override
+                    public Boolean call() throws Exception {
+                        byte[] bytes = language.serialize(target);
+                        SaveWrites.acquire();
+                        try {
+                            return language.write(bytes);
+                        } finally {
+                            SaveWrites.release();
+                        }
+                    }
+                }));
+                saved.add(language);
+            }
+
+            // collect the results of all languages before reporting
+            for (int i = 0; i < futures.size(); i++) {
+                LanguageProperties language = saved.get(i);
+                boolean written = false;
+                try {
+                    written = futures.get(i).get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    LOG.log(Level.SEVERE, null, ex);
+                } catch (ExecutionException ex) {
+                    LOG.log(Level.SEVERE, null, ex.getCause());
+                }
+                if (!written) {
+                    saveFailures.add(language.toFileName() + extension);
+                } else {
+                    count++;
+                    if (watcher != null) {
+                        watcher.saved(language);
+                    }
+                }
+            }
+        } finally {
+            residency.setPolicy(policy);
+        }
+        boolean success = saveFailures.isEmpty();
+        LOG.log(Level.INFO, "Saved {0} languages in {1} ms, {2} failed", new Object[]{count, System.currentTimeMillis() - start, saveFailures.size()});
+        // after save as another directory is watched
+        if (watcher == null || !watcher.getDirectory().equals(new File(directory.getPath()).getAbsoluteFile())) {
+            createWatcher();
+        } else {
+            watcher.synchronize(root);
+        }
+        // no key is modified anymore
+        statistics.synchronize(root);
+        residency.trim();
+        // the languages that are not loaded any more can be restored from the new snapshot
+        if (writeSnapshot()) {
+            snapshot = ProjectSnapshot.read(snapshotDirectory, getProjectFile());
+            attachLanguages();
+        }
+        // the recorded changes are saved now, new projects are recorded from now on
+        if (success && autosave != null) {
+            File project = getProjectFile();
+            if (project.equals(autosaveProject) && autosave.isStarted()) {
+                autosave.truncate();
+            } else {
+                autosave.start(project);
+                autosaveProject = project;
             }
-            language.save(resource);
         }
+        return success;
     }
 }
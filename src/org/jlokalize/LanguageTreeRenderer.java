@@ -32,7 +32,8 @@ import org.tools.io.ResourceUtils;
 /**
  * Renderer for the cells of the languages tree. Displays a suitable flag and
  * the languages clear name. If no suitable flag is found (based on country and
- * language codes) than the standard icon is displayed.
+ * language codes) than the standard icon is displayed. The coverage relative to
+ * the parent is shown as a badge, the counts of keys as tool tip.
  * 
  * @author Trilarion 2010-2011
  */
@@ -65,10 +66,24 @@ public class LanguageTreeRenderer extends DefaultTreeCellRenderer {
 
             // the ending is not part of the clear name but only part of the tree rendering
             String ending = "";
+            PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
             if (node.getData().isMaster() == true) {
-                PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
                 ending = " (" + lang.get("languagetree.master") + ")";
             }
+
+            // coverage badge and counts, maintained by the statistics (no counting here)
+            LanguageStatistics statistics = null;
+            if (node.getData().getStatistics() != null) {
+                statistics = node.getData().getStatistics().get(node.getData());
+            }
+            if (statistics != null) {
+                if (!node.getData().isMaster() && !node.isRoot()) {
+                    ending = ending + " [" + statistics.getCoverage() + "%]";
+                }
+                setToolTipText(String.format(lang.get("languagetree.statistics"), statistics.translated, statistics.missing, statistics.orphaned, statistics.modified));
+            } else {
+                setToolTipText(null);
+            }
             setText(node.getData().getClearName() + ending);
 
             // relatively complex algorithm for determining a nice flag
@@ -0,0 +1,297 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.tools.common.TreeNode;
+
+/**
+ * Statistics of all languages of a language tree (see LanguageStatistics).
+ *
+ * All languages of the tree share a key dictionary and have bit sets of the
+ * ids of the keys they contain and of the keys that are modified. The counts
+ * are computed once for the whole tree with bit operations and afterwards
+ * updated incrementally for each changed key, which the LanguageProperties
+ * report. Reading the counts is therefore cheap enough for every paint.
+ *
+ * There are no counts for languages that were not loaded yet or whose parent
+ * was not loaded yet, they are computed when the languages get loaded.
+ *
+ * Not thread safe, must be used from the thread that modifies the languages.
+ */
+public class LanguageTreeStatistics {
+
+    /** The key dictionary of all languages of the tree or null. */
+    private KeyDictionary dictionary;
+    /** The state of each attached language. */
+    private final Map<LanguageProperties, Entry> entries = new IdentityHashMap<LanguageProperties, Entry>();
+    private final List<ChangeListener> listeners = new ArrayList<ChangeListener>(2);
+    private final ChangeEvent event = new ChangeEvent(this);
+
+    /**
+     * The bit sets and counts of one language.
+     */
+    private static class Entry {
+
+        final LanguageProperties language;
+        /** The bits of the language itself. */
+        final BitSet present;
+        /** The parent in the sense of the keys table or null. */
+        Entry parent;
+        /** The languages that have this one as parent. */
+        final List<Entry> children = new ArrayList<Entry>(4);
+        int translated, missing, orphaned, modifiedCount;
+        LanguageStatistics statistics;
+
+        Entry(LanguageProperties language) {
+            this.language = language;
+            this.present = language.getPresentKeys();
+        }
+    }
+
+    /**
+     * Rebuilds the statistics for a language tree. Must be called whenever
+     * languages were added or removed, the master was changed or the modified
+     * state of all keys was reset by saving. All languages of the tree must
+     * share the same key dictionary.
+     *
+     * @param root The root node of the language tree, or null to detach all languages.
+     */
+    public void synchronize(TreeNode<LanguageProperties> root) {
+        for (LanguageProperties language : entries.keySet()) {
+            language.setStatistics(null);
+        }
+        entries.clear();
+        dictionary = null;
+        if (root != null) {
+            dictionary = root.getData().getKeyDictionary();
+            for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+                LanguageProperties language = node.getData();
+                entries.put(language, new Entry(language));
+                language.setStatistics(this);
+            }
+
+            // parents like in the keys table
+            TreeNode<LanguageProperties> master = LanguageTreeManager.getMasterNode(root);
+            for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+                if (node != root && node != master) {
+                    TreeNode<LanguageProperties> parent = node.getParent() == root ? master : node.getParent();
+                    if (parent != null) {
+                        Entry entry = entries.get(node.getData());
+                        entry.parent = entries.get(parent.getData());
+                        entry.parent.children.add(entry);
+                    }
+                }
+            }
+
+            for (Entry entry : entries.values()) {
+                computeCounts(entry);
+            }
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Computes the counts of a language that has just been loaded and of the
+     * languages that have it as parent. Is called by the language itself.
+     *
+     * @param language The loaded language.
+     */
+    void languageLoaded(LanguageProperties language) {
+        Entry entry = entries.get(language);
+        if (entry == null) {
+            return;
+        }
+        computeCounts(entry);
+        for (Entry child : entry.children) {
+            computeCounts(child);
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * @param language A language of the tree.
+     * @return The current counts of the language or null if the language is not attached.
+     */
+    public LanguageStatistics get(LanguageProperties language) {
+        Entry entry = entries.get(language);
+        return entry == null ? null : entry.statistics;
+    }
+
+    /**
+     * Determines the languages which do not contain a key that their parent
+     * contains.
+     *
+     * @param key The key.
+     * @return The languages lacking the key.
+     */
+    public List<LanguageProperties> getLanguagesWithout(String key) {
+        List<LanguageProperties> list = new ArrayList<LanguageProperties>();
+        int id = dictionary == null ? -1 : dictionary.find(key);
+        if (id != -1) {
+            for (Entry entry : entries.values()) {
+                if (entry.parent != null && entry.parent.present.get(id) && !entry.present.get(id)) {
+                    list.add(entry.language);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Determines all keys that are missing in at least one language, i.e.
+     * the language does not contain it but its parent does.
+     *
+     * @return The keys in the order of their ids.
+     */
+    public List<String> getKeysMissingSomewhere() {
+        BitSet missing = new BitSet();
+        for (Entry entry : entries.values()) {
+            if (entry.parent != null) {
+                BitSet bits = (BitSet) entry.parent.present.clone();
+                bits.andNot(entry.present);
+                missing.or(bits);
+            }
+        }
+        List<String> list = new ArrayList<String>(missing.cardinality());
+        for (int id = missing.nextSetBit(0); id >= 0; id = missing.nextSetBit(id + 1)) {
+            list.add(dictionary.getKey(id));
+        }
+        return list;
+    }
+
+    /**
+     * Adds a listener that is informed whenever counts have changed.
+     *
+     * @param listener The listener.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener.
+     */
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Updates the counts of a language and of the languages that have it as
+     * parent after a key has changed. Is called by the language itself after
+     * its bit sets have been updated.
+     *
+     * @param language The changed language.
+     * @param id The id of the changed key.
+     * @param presenceChanged True if the key was added or removed.
+     * @param modificationChanged True if the modified state of the key changed.
+     */
+    void keyChanged(LanguageProperties language, int id, boolean presenceChanged, boolean modificationChanged) {
+        Entry entry = entries.get(language);
+        if (entry == null) {
+            return;
+        }
+        // without counts (the parent is not loaded) this language stays
+        // invalid until computeCounts, but its children still have to follow
+        boolean valid = entry.statistics != null;
+
+        // presence changes the counts here and in all children
+        if (presenceChanged) {
+            int delta = entry.present.get(id) ? 1 : -1;
+            if (valid) {
+                if (entry.parent == null) {
+                    entry.translated += delta;
+                } else if (entry.parent.present.get(id)) {
+                    entry.translated += delta;
+                    entry.missing -= delta;
+                } else {
+                    entry.orphaned += delta;
+                }
+            }
+            for (Entry child : entry.children) {
+                if (child.statistics == null) {
+                    continue;
+                }
+                if (child.present.get(id)) {
+                    child.translated += delta;
+                    child.orphaned -= delta;
+                } else {
+                    child.missing += delta;
+                }
+                updateStatistics(child);
+            }
+        }
+        if (valid) {
+            if (modificationChanged) {
+                entry.modifiedCount += language.getModifiedKeys().get(id) ? 1 : -1;
+            }
+            updateStatistics(entry);
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Internal function! Computes the counts of an entry with bit operations,
+     * if the bit sets of the language and its parent are valid.
+     *
+     * @param entry The entry.
+     */
+    private static void computeCounts(Entry entry) {
+        if (!entry.language.hasKeyBits() || (entry.parent != null && !entry.parent.language.hasKeyBits())) {
+            entry.statistics = null;
+            return;
+        }
+        int count = entry.present.cardinality();
+        if (entry.parent == null) {
+            entry.translated = count;
+            entry.missing = 0;
+            entry.orphaned = 0;
+        } else {
+            BitSet both = (BitSet) entry.present.clone();
+            both.and(entry.parent.present);
+            entry.translated = both.cardinality();
+            entry.missing = entry.parent.present.cardinality() - entry.translated;
+            entry.orphaned = count - entry.translated;
+        }
+        entry.modifiedCount = entry.language.getModifiedKeys().cardinality();
+        updateStatistics(entry);
+    }
+
+    /**
+     * Internal function! Replaces the counts object of an entry by a new one.
+     *
+     * @param entry The entry.
+     */
+    private static void updateStatistics(Entry entry) {
+        entry.statistics = new LanguageStatistics(entry.translated, entry.missing, entry.orphaned, entry.modifiedCount);
+    }
+
+    /**
+     * Internal function! Informs all listeners.
+     */
+    private void fireStateChanged() {
+        for (ChangeListener listener : listeners) {
+            listener.stateChanged(event);
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -69,7 +70,8 @@ public class Main {
     /**
      * Main entry point for the application. We setup the logger, the options
      * and languages, the look and feel, the spell checker and then the editor
-     * frame is started.
+     * frame is started. If the first argument is "--batch", the remaining
+     * arguments are processed headless by Batch instead.
      *
      * @param args the command line arguments
      */
@@ -83,6 +85,11 @@ public class Main {
                 jarPath = new File(jarURL.getPath()).getParent() + ResourceUtils.Delimiter;
             }
 
+            // headless processing, nothing of the user interface is set up
+            if (args.length > 0 && "--batch".equals(args[0])) {
+                System.exit(Batch.run(Arrays.copyOfRange(args, 1, args.length)));
+            }
+
             // tell logger to use file log and to overwrite it everytimes
             setupLogger();
 
@@ -104,11 +111,19 @@ public class Main {
             // process static configuration options
             processConfigurationOptions();
 
+            // load the translation memory in the background
+            setupTranslationMemory();
+
+            // changes left by a crash, must be read before a project is opened
+            AutosaveJournal.Recovery recovery = setupAutosave();
+
             // all setups done, createAndRun the main frame, i.e. the editor frame
             EditorFrame mainFrame = new EditorFrame();
             mainFrame.setVisible(true);
 			
-			if (args.length > 0) {
+			if (recovery != null && mainFrame.recoverProject(recovery)) {
+				// the recovered project is open
+			} else if (args.length > 0) {
 				String filename = args[0];
 				mainFrame.openProjectAction(new File(filename));
 			}
@@ -161,6 +176,34 @@ public class Main {
         }
     }
 
+    /**
+     * Creates the translation memory, which is stored in the user directory,
+     * and starts loading it in the background.
+     */
+    private static void setupTranslationMemory() {
+        TranslationMemory memory = new TranslationMemory(new File(usrPath + "JLokalize.config", "TranslationMemory.dat"));
+        memory.loadInBackground();
+        CentralStatic.store("translation-memory", memory);
+    }
+
+    /**
+     * Creates the autosave journal, which is stored in the user directory, and
+     * reads the changes that are still in it from a crash. The snapshots of
+     * the projects and the scanned workspaces are stored there as well.
+     *
+     * @return The changes to recover or null.
+     */
+    private static AutosaveJournal.Recovery setupAutosave() {
+        File file = new File(usrPath + "JLokalize.config", "Autosave.journal");
+        AutosaveJournal.Recovery recovery = AutosaveJournal.read(file);
+        CentralStatic.store("autosave-journal", new AutosaveJournal(file));
+        if (Settings.SNAPSHOTS) {
+            CentralStatic.store("snapshot-directory", new File(usrPath + "JLokalize.config", "snapshots"));
+        }
+        CentralStatic.store("workspace-directory", new File(usrPath + "JLokalize.config", "workspaces"));
+        return recovery;
+    }
+
     /**
      * Setup configuration options related to the properties file
      * format, including:
@@ -347,12 +390,14 @@ public class Main {
 
     /**
      * This is called before exiting the application, when the editor frame is
-     * disposed. We save the options and the statistics of the used language
-     * object.
+     * disposed. We save the options, the statistics of the used language
+     * object and the translation memory.
      */
     public static void Shutdown() {
         options.save();
         PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
         lang.saveStatsOnly();
+        TranslationMemory memory = CentralStatic.retrieve("translation-memory");
+        memory.save();
     }
 }
\ No newline at end of file
@@ -0,0 +1,574 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tools.common.TreeNode;
+
+/**
+ * A full text index over the keys, texts and comments of all languages of a
+ * project. Each key of each language is a document of the index.
+ *
+ * Two kinds of queries are supported, both case insensitive:
+ * - substring queries, answered by intersecting the postings of all trigrams
+ *   of the query and verifying the remaining candidates
+ * - prefix queries, answered from a sorted map of all words and keys
+ *
+ * Only loaded languages are indexed. The index keeps no copy of the texts,
+ * only the postings, the candidates are verified against the languages
+ * themselves.
+ *
+ * A language is indexed in a background thread in small chunks when it is
+ * loaded, so queries do not wait for a whole language, and afterwards kept up
+ * to date by the LanguageProperties, which report every change of a key. When
+ * a language is unloaded again (see LanguageResidency) its documents are
+ * removed, so it frees its postings too. A changed key is
+ * indexed as a new document, the old one is only marked as removed and the
+ * postings are compacted when too many removed documents have accumulated.
+ *
+ * All public methods are thread safe, the queries must be called from the
+ * thread that modifies the languages (i.e. the event dispatch thread).
+ */
+public class ProjectSearchIndex {
+
+    private static final Logger LOG = Logger.getLogger(ProjectSearchIndex.class.getName());
+    /** Separates key, text and comment in the indexed text, so matches cannot span them. */
+    private static final char FieldSeparator = '\u0000';
+    /** Marks a key in the id map that has been removed. */
+    private static final int Removed = -1;
+    /** Postings are only compacted if at least so many documents are removed. */
+    private static final int MinCompactSize = 4096;
+    /** Keys indexed in the background at once, queries wait at most for so many. */
+    private static final int ChunkSize = 256;
+    /** All documents by id, null if removed. */
+    private Document[] documents = new Document[1024];
+    /** Next free document id. */
+    private int documentCount = 0;
+    /** Number of not removed documents. */
+    private int liveCount = 0;
+    /** For each attached language the document id of each key. */
+    private final Map<LanguageProperties, Map<String, Integer>> ids = new IdentityHashMap<LanguageProperties, Map<String, Integer>>();
+    /** Document ids for each trigram (three chars packed in a long). */
+    private final TrigramTable trigrams = new TrigramTable();
+    /** Document ids for each word and each key, sorted for prefix queries. */
+    private final TreeMap<String, IntList> words = new TreeMap<String, IntList>();
+    /** Number of languages that still wait for the background indexing. */
+    private int pending = 0;
+    /** Runs the background indexing. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JLokalize search index");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Brings the index in line with a language tree. All languages of the tree
+     * that are not yet in the index are attached immediately and indexed in a
+     * background thread (languages that are not loaded yet when they get
+     * loaded). Languages that are not in the tree anymore are removed.
+     *
+     * Must be called from the thread that modifies the languages (i.e. the
+     * event dispatch thread), because the content of the new languages is copied
+     * here.
+     *
+     * @param root The root node of the language tree.
+     */
+    public void synchronize(TreeNode<LanguageProperties> root) {
+        Set<LanguageProperties> inTree = Collections.newSetFromMap(new IdentityHashMap<LanguageProperties, Boolean>());
+        List<Snapshot> snapshots = new ArrayList<Snapshot>();
+        synchronized (this) {
+            if (root != null) {
+                for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+                    LanguageProperties language = node.getData();
+                    inTree.add(language);
+                    if (!ids.containsKey(language)) {
+                        Map<String, Integer> keys = new HashMap<String, Integer>();
+                        ids.put(language, keys);
+                        language.setSearchIndex(this);
+                        if (language.isLoaded()) {
+                            snapshots.add(new Snapshot(language, keys));
+                        }
+                    }
+                }
+            }
+            for (LanguageProperties language : new ArrayList<LanguageProperties>(ids.keySet())) {
+                if (!inTree.contains(language)) {
+                    detach(language);
+                }
+            }
+            pending += snapshots.size();
+        }
+        for (Snapshot snapshot : snapshots) {
+            schedule(snapshot);
+        }
+    }
+
+    /**
+     * Indexes an attached language that has just been loaded in the
+     * background. Is called by the language itself.
+     *
+     * @param language The loaded language.
+     */
+    void languageLoaded(LanguageProperties language) {
+        Map<String, Integer> keys = new HashMap<String, Integer>();
+        synchronized (this) {
+            if (!ids.containsKey(language)) {
+                return;
+            }
+            // replaces the keys of an unloaded language, a pending indexing of it is then dropped
+            ids.put(language, keys);
+            pending++;
+        }
+        schedule(new Snapshot(language, keys));
+    }
+
+    /**
+     * Removes all documents of an attached language that has just been
+     * unloaded. Is called by the language itself.
+     *
+     * @param language The unloaded language.
+     */
+    synchronized void languageUnloaded(LanguageProperties language) {
+        Map<String, Integer> keys = ids.get(language);
+        if (keys == null) {
+            return;
+        }
+        for (Integer id : keys.values()) {
+            if (id != Removed) {
+                removeDocument(id);
+            }
+        }
+        ids.put(language, new HashMap<String, Integer>());
+        if (documentCount - liveCount > Math.max(MinCompactSize, liveCount)) {
+            compact();
+        }
+    }
+
+    /**
+     * @return The number of attached languages that are not loaded and therefore not searched.
+     */
+    public synchronized int getNotLoadedCount() {
+        int count = 0;
+        for (LanguageProperties language : ids.keySet()) {
+            if (!language.isLoaded()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Internal function! Indexes a snapshot in the background thread.
+     *
+     * @param snapshot A copy of the content of a language.
+     */
+    private void schedule(final Snapshot snapshot) {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    indexSnapshot(snapshot);
+                } catch (RuntimeException ex) {
+                    LOG.log(Level.SEVERE, null, ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the background indexing and detaches all languages. The index
+     * cannot be used afterwards.
+     */
+    public void dispose() {
+        executor.shutdownNow();
+        synchronized (this) {
+            for (LanguageProperties language : new ArrayList<LanguageProperties>(ids.keySet())) {
+                detach(language);
+            }
+            pending = 0;
+        }
+    }
+
+    /**
+     * @return True if some languages are still indexed in the background, i.e. results can be incomplete.
+     */
+    public synchronized boolean isBuilding() {
+        return pending > 0;
+    }
+
+    /**
+     * Searches all keys whose name, text or comment contains the query.
+     *
+     * @param query The text to search (case insensitive).
+     * @param max The maximal number of returned hits.
+     * @return The hits in the order of indexing.
+     */
+    public synchronized List<SearchHit> findSubstring(String query, int max) {
+        List<SearchHit> hits = new ArrayList<SearchHit>();
+        String text = normalize(query);
+        if (text.length() == 0 || text.indexOf(FieldSeparator) >= 0) {
+            return hits;
+        }
+
+        if (text.length() < 3) {
+            // too short for trigrams, test all documents
+            for (int id = 0; id < documentCount && hits.size() < max; id++) {
+                Document document = documents[id];
+                if (document != null && contains(document, text)) {
+                    hits.add(new SearchHit(document.language, document.key));
+                }
+            }
+            return hits;
+        }
+
+        // postings of all trigrams of the query, the shortest first
+        List<IntList> postings = new ArrayList<IntList>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            IntList list = trigrams.get(trigram(text, i));
+            if (list == null) {
+                // a trigram that is nowhere in the index
+                return hits;
+            }
+            if (!postings.contains(list)) {
+                postings.add(list);
+            }
+        }
+        Collections.sort(postings, new Comparator<IntList>() {
+
+            @Override
+            public int compare(IntList o1, IntList o2) {
+                return o1.size - o2.size;
+            }
+        });
+        int[] candidates = postings.get(0).toArray();
+        int size = candidates.length;
+        for (int i = 1; i < postings.size() && size > 0; i++) {
+            size = postings.get(i).intersect(candidates, size);
+        }
+
+        // the trigrams only give candidates, which must contain them in a row
+        for (int i = 0; i < size && hits.size() < max; i++) {
+            Document document = documents[candidates[i]];
+            if (document != null && contains(document, text)) {
+                hits.add(new SearchHit(document.language, document.key));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Internal function! Tests if the current key, text or comment of a
+     * document contains a text, without touching the language.
+     *
+     * @param document The document.
+     * @param text The normalized text.
+     * @return True if contained.
+     */
+    private static boolean contains(Document document, String text) {
+        return normalize(document.key).contains(text)
+                || normalize(document.language.peekEntry(document.key)).contains(text)
+                || normalize(document.language.peekEntry(document.key + LanguageProperties.getCommentSuffix())).contains(text);
+    }
+
+    /**
+     * Searches all keys which either start with the query or have a word in
+     * their text or comment that starts with the query.
+     *
+     * @param query The prefix to search (case insensitive).
+     * @param max The maximal number of returned hits.
+     * @return The hits in the order of indexing.
+     */
+    public synchronized List<SearchHit> findPrefix(String query, int max) {
+        List<SearchHit> hits = new ArrayList<SearchHit>();
+        String prefix = normalize(query);
+        if (prefix.length() == 0) {
+            return hits;
+        }
+        BitSet found = new BitSet(documentCount);
+        for (IntList list : words.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            for (int i = 0; i < list.size; i++) {
+                found.set(list.data[i]);
+            }
+        }
+        for (int id = found.nextSetBit(0); id >= 0 && hits.size() < max; id = found.nextSetBit(id + 1)) {
+            Document document = documents[id];
+            if (document != null) {
+                hits.add(new SearchHit(document.language, document.key));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Called by an attached language whenever the text or comment of a key has
+     * changed.
+     *
+     * @param language The language.
+     * @param key The key.
+     * @param text The new text or null if the key was removed.
+     * @param comment The new comment or null.
+     */
+    synchronized void update(LanguageProperties language, String key, String text, String comment) {
+        Map<String, Integer> keys = ids.get(language);
+        if (keys == null) {
+            return;
+        }
+        // the old content is not kept, so the key is always indexed anew
+        Integer id = keys.get(key);
+        if (id != null && id != Removed) {
+            removeDocument(id);
+        }
+        if (text == null && comment == null) {
+            // remember the removal, so that the background indexing does not add the key again
+            keys.put(key, Removed);
+        } else {
+            keys.put(key, addDocument(language, key, content(key, text, comment)));
+        }
+        if (documentCount - liveCount > Math.max(MinCompactSize, liveCount)) {
+            compact();
+        }
+    }
+
+    /**
+     * Background thread: Indexes all keys of a language that have not been
+     * updated in the meantime, a chunk of keys at a time.
+     *
+     * @param snapshot A copy of the content of the language.
+     */
+    private void indexSnapshot(Snapshot snapshot) {
+        try {
+            for (int start = 0; start < snapshot.keys.length; start += ChunkSize) {
+                synchronized (this) {
+                    Map<String, Integer> keys = snapshot.ids;
+                    if (ids.get(snapshot.language) != keys) {
+                        // detached, unloaded or loaded again in the meantime
+                        return;
+                    }
+                    for (int i = start; i < Math.min(start + ChunkSize, snapshot.keys.length); i++) {
+                        String key = snapshot.keys[i];
+                        if (keys.containsKey(key)) {
+                            continue;
+                        }
+                        if (snapshot.texts[i] == null && snapshot.comments[i] == null) {
+                            keys.put(key, Removed);
+                        } else {
+                            keys.put(key, addDocument(snapshot.language, key, content(key, snapshot.texts[i], snapshot.comments[i])));
+                        }
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                pending--;
+            }
+        }
+    }
+
+    /**
+     * Removes all documents of a language and stops listening to it.
+     */
+    private void detach(LanguageProperties language) {
+        Map<String, Integer> keys = ids.remove(language);
+        for (Integer id : keys.values()) {
+            if (id != Removed) {
+                removeDocument(id);
+            }
+        }
+        if (language.getSearchIndex() == this) {
+            language.setSearchIndex(null);
+        }
+    }
+
+    /**
+     * Stores a new document and adds it to the postings. Since the ids are
+     * increasing, all postings stay sorted.
+     *
+     * @return The id of the document.
+     */
+    private int addDocument(LanguageProperties language, String key, String content) {
+        int id = documentCount++;
+        if (id == documents.length) {
+            documents = Arrays.copyOf(documents, 2 * id);
+        }
+        documents[id] = new Document(language, key);
+        liveCount++;
+        addPostings(id, content);
+        return id;
+    }
+
+    private void addPostings(int id, String content) {
+        for (int i = 0; i + 3 <= content.length(); i++) {
+            if (content.charAt(i) == FieldSeparator || content.charAt(i + 1) == FieldSeparator || content.charAt(i + 2) == FieldSeparator) {
+                continue;
+            }
+            trigrams.getOrCreate(trigram(content, i)).addUnique(id);
+        }
+
+        // the whole key (the first field) is a word
+        addWord(id, content.substring(0, content.indexOf(FieldSeparator)));
+        // and all sequences of letters and digits
+        int start = -1;
+        for (int i = 0; i <= content.length(); i++) {
+            boolean letter = i < content.length() && Character.isLetterOrDigit(content.charAt(i));
+            if (letter && start == -1) {
+                start = i;
+            } else if (!letter && start != -1) {
+                addWord(id, content.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    private void addWord(int id, String word) {
+        if (word.length() == 0) {
+            return;
+        }
+        IntList list = words.get(word);
+        if (list == null) {
+            list = new IntList();
+            words.put(word, list);
+        }
+        list.addUnique(id);
+    }
+
+    /**
+     * Marks a document as removed. The postings still contain the id until the
+     * next compaction, but queries ignore removed documents.
+     */
+    private void removeDocument(int id) {
+        documents[id] = null;
+        liveCount--;
+    }
+
+    /**
+     * Renumbers the documents that are not removed and drops the removed ones
+     * from all postings. The order of the ids is kept, so all postings stay
+     * sorted.
+     */
+    private void compact() {
+        int[] remap = new int[documentCount];
+        Document[] old = documents;
+        documents = new Document[Math.max(1024, 2 * liveCount)];
+        int count = 0;
+        for (int i = 0; i < documentCount; i++) {
+            Document document = old[i];
+            if (document == null) {
+                remap[i] = Removed;
+            } else {
+                remap[i] = count;
+                documents[count] = document;
+                ids.get(document.language).put(document.key, count);
+                count++;
+            }
+        }
+        documentCount = count;
+        liveCount = count;
+        trigrams.remap(remap);
+        for (Iterator<IntList> iterator = words.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().remap(remap) == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return The indexed content of a key, all fields in lower case.
+     */
+    private static String content(String key, String text, String comment) {
+        StringBuilder builder = new StringBuilder(key.length() + (text == null ? 0 : text.length()) + (comment == null ? 0 : comment.length()) + 2);
+        builder.append(key).append(FieldSeparator);
+        if (text != null) {
+            builder.append(text);
+        }
+        builder.append(FieldSeparator);
+        if (comment != null) {
+            builder.append(comment);
+        }
+        return normalize(builder.toString());
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    /**
+     * A key of a language. The indexed content is not kept, hits are verified
+     * against the current content of the language.
+     */
+    private static class Document {
+
+        final LanguageProperties language;
+        final String key;
+
+        Document(LanguageProperties language, String key) {
+            this.language = language;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A copy of the content of a language, made on the event dispatch thread
+     * and indexed in the background.
+     */
+    private static class Snapshot {
+
+        final LanguageProperties language;
+        /** The document ids of the keys this snapshot is indexed into. */
+        final Map<String, Integer> ids;
+        final String[] keys;
+        final String[] texts;
+        final String[] comments;
+
+        Snapshot(LanguageProperties language, Map<String, Integer> ids) {
+            this.language = language;
+            this.ids = ids;
+            Set<String> set = language.getAllTextKeysAsSet();
+            keys = set.toArray(new String[set.size()]);
+            texts = new String[keys.length];
+            comments = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                texts[i] = language.getKeyText(keys[i]);
+                comments[i] = language.getKeyComment(keys[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tools.common.StringPool;
+import org.tools.i18n.Property;
+import org.tools.io.Resource;
+
+/**
+ * The content of the language files of a project as it was when the project
+ * was saved or closed, for reopening the project without parsing the files
+ * that did not change since. Each file is recorded with its path, length and
+ * modification time, a file is only restored if all of them still match,
+ * otherwise it is parsed as usual.
+ *
+ * A snapshot is one binary file in the user directory, which is mapped into
+ * memory for reading. Since a mapped file cannot be replaced on all systems,
+ * every snapshot of a project is written as a new generation (the file name
+ * is the project id, the generation and the extension), the newest generation
+ * is read and older ones are deleted as soon as they are not mapped anymore.
+ * All keys, texts and comments of all languages are in
+ * one string table which holds each distinct string once (keys are shared by
+ * all languages), the languages are ranges of two columns of string ids:
+ *
+ * int magic, int version, int string count, int[string count + 1] start of
+ * each string in the characters, int file count, per file (int path, int
+ * encoding, long length, long modified, int first entry, int entry count),
+ * int entry count, int[entry count] keys, int[entry count] texts, char[] the
+ * characters of all strings (UTF-16, so every string is kept exactly).
+ *
+ * Restoring is thread safe, since languages are loaded in parallel.
+ */
+public class ProjectSnapshot {
+
+    private static final Logger LOG = Logger.getLogger(ProjectSnapshot.class.getName());
+    /** The extension of the snapshot files. */
+    public static final String Extension = ".snapshot";
+    /** "JLSS" */
+    private static final int Magic = 0x4A4C5353;
+    private static final int Version = 1;
+    /** Bytes of the record of a file. */
+    private static final int FileRecordLength = 32;
+    /** The mapped file. */
+    private final ByteBuffer buffer;
+    /** The characters of all strings in the mapped file. */
+    private final CharBuffer chars;
+    /** The positions of the tables in the buffer. */
+    private final int starts, keys, texts, characters;
+    /** The position of the record of each file by path. */
+    private final Map<String, Integer> files = new HashMap<String, Integer>();
+
+    /**
+     * The content of one language file.
+     */
+    static class Record {
+
+        final String path;
+        final String encoding;
+        final long length, modified;
+        final String[] keys, texts;
+
+        Record(String path, String encoding, long length, long modified, String[] keys, String[] texts) {
+            this.path = path;
+            this.encoding = encoding;
+            this.length = length;
+            this.modified = modified;
+            this.keys = keys;
+            this.texts = texts;
+        }
+    }
+
+    /**
+     * Checks the tables of a snapshot.
+     *
+     * @param buffer The content of the snapshot file.
+     * @throws IOException If it is not a valid snapshot.
+     */
+    private ProjectSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != Magic || buffer.getInt(4) != Version) {
+            throw new IOException("Not a snapshot of this version");
+        }
+        int count = buffer.getInt(8);
+        starts = 12;
+        int position = starts + 4 * (count + 1);
+        int fileCount = buffer.getInt(position);
+        position += 4;
+        int records = position;
+        position += fileCount * FileRecordLength;
+        int entries = buffer.getInt(position);
+        keys = position + 4;
+        texts = keys + 4 * entries;
+        characters = texts + 4 * entries;
+        if (count < 0 || entries < 0 || (long) characters + 2L * buffer.getInt(starts + 4 * count) != buffer.limit()) {
+            throw new IOException("Truncated snapshot");
+        }
+        ByteBuffer content = buffer.duplicate();
+        content.position(characters);
+        chars = content.slice().asCharBuffer();
+        for (int i = 0; i < fileCount; i++) {
+            int record = records + i * FileRecordLength;
+            if (buffer.getInt(record + 24) < 0 || buffer.getInt(record + 24) + buffer.getInt(record + 28) > entries) {
+                throw new IOException("Invalid file record");
+            }
+            files.put(getString(buffer.getInt(record)), record);
+        }
+    }
+
+    /**
+     * Maps a snapshot file.
+     *
+     * @param file The snapshot file.
+     * @return The snapshot or null if there is none or it is not valid.
+     */
+    public static ProjectSnapshot read(File file) {
+        if (!file.isFile() || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = in.getChannel();
+                // the mapping stays valid after the file is closed
+                return new ProjectSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Snapshot {0} is not used: {1}", new Object[]{file.getPath(), ex.getMessage()});
+        } catch (RuntimeException ex) {
+            // indexes outside of the buffer
+            LOG.log(Level.INFO, "Snapshot {0} is not used: {1}", new Object[]{file.getPath(), ex});
+        }
+        return null;
+    }
+
+    /**
+     * Maps the newest snapshot file of a project.
+     *
+     * @param directory The directory of the snapshots.
+     * @param project The file standing for a project.
+     * @return The snapshot or null if there is none or it is not valid.
+     */
+    public static ProjectSnapshot read(File directory, File project) {
+        TreeMap<Long, File> generations = getGenerations(directory, project);
+        return generations.isEmpty() ? null : read(generations.lastEntry().getValue());
+    }
+
+    /**
+     * @param project The file standing for a project.
+     * @return The id of the project in the names of its snapshot files.
+     */
+    private static String getId(File project) {
+        return UUID.nameUUIDFromBytes(project.getAbsolutePath().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Internal function! Finds the snapshot files of a project.
+     *
+     * @param directory The directory of the snapshots.
+     * @param project The file standing for a project.
+     * @return The files by generation.
+     */
+    private static TreeMap<Long, File> getGenerations(File directory, File project) {
+        TreeMap<Long, File> generations = new TreeMap<Long, File>();
+        String prefix = getId(project) + '.';
+        String[] names = directory.list();
+        if (names == null) {
+            return generations;
+        }
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.endsWith(Extension) && name.length() > prefix.length() + Extension.length()) {
+                try {
+                    generations.put(Long.parseLong(name.substring(prefix.length(), name.length() - Extension.length())), new File(directory, name));
+                } catch (NumberFormatException ex) {
+                    // not a snapshot
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Restores a language file without parsing it, if it did not change since
+     * the snapshot was written.
+     *
+     * @param resource The language file.
+     * @param dictionary The key dictionary of the project.
+     * @param pool The value pool of the project or null.
+     * @return The property with the content of the file (see Property.restore)
+     * or null if the file is not in the snapshot or has changed.
+     */
+    public Property restore(Resource resource, KeyDictionary dictionary, StringPool pool) {
+        Record record = getRecord(resource.getPath());
+        if (record == null) {
+            return null;
+        }
+        for (int i = 0; i < record.keys.length; i++) {
+            record.keys[i] = dictionary.intern(record.keys[i]);
+        }
+        Property property = LanguageProperties.createProperty(resource, dictionary, pool);
+        property.restore(record.encoding, record.length, record.modified, record.keys, record.texts);
+        return property;
+    }
+
+    /**
+     * Internal function! Reads the content of a file if it did not change.
+     *
+     * @param path The path of the file.
+     * @return The content or null if the file is not in the snapshot or has changed.
+     */
+    private synchronized Record getRecord(String path) {
+        Integer position = files.get(path);
+        if (position == null) {
+            return null;
+        }
+        int record = position;
+        long length = buffer.getLong(record + 8);
+        long modified = buffer.getLong(record + 16);
+        File file = new File(path);
+        if (!file.isFile() || file.length() != length || file.lastModified() != modified) {
+            return null;
+        }
+        int encoding = buffer.getInt(record + 4);
+        int first = buffer.getInt(record + 24);
+        int count = buffer.getInt(record + 28);
+        String[] keyStrings = new String[count];
+        String[] textStrings = new String[count];
+        for (int i = 0; i < count; i++) {
+            keyStrings[i] = getString(buffer.getInt(keys + 4 * (first + i)));
+            textStrings[i] = getString(buffer.getInt(texts + 4 * (first + i)));
+        }
+        return new Record(path, encoding == -1 ? null : getString(encoding), length, modified, keyStrings, textStrings);
+    }
+
+    /**
+     * Internal function! Decodes a string of the string table. The strings are
+     * not kept here, so the texts of an unloaded language can be freed while
+     * the snapshot is still open.
+     *
+     * @param id The id of the string.
+     * @return The string.
+     */
+    private String getString(int id) {
+        int start = buffer.getInt(starts + 4 * id);
+        int end = buffer.getInt(starts + 4 * (id + 1));
+        char[] content = new char[end - start];
+        chars.position(start);
+        chars.get(content);
+        return new String(content);
+    }
+
+    /**
+     * Writes the snapshot of a project. Loaded languages are recorded with
+     * the content of their files (without unsaved changes), languages that are
+     * not loaded are taken over from the previous snapshot if their files did
+     * not change. The snapshot is written completely as the next generation
+     * before the older generations are deleted.
+     *
+     * @param directory The directory of the snapshots.
+     * @param project The file standing for the project.
+     * @param languages The languages of the project.
+     * @param previous The snapshot the project was opened with or null.
+     * @return True if the snapshot was written.
+     */
+    public static boolean write(File directory, File project, Collection<LanguageProperties> languages, ProjectSnapshot previous) {
+        List<Record> records = new ArrayList<Record>(languages.size());
+        for (LanguageProperties language : languages) {
+            Property property = language.getOriginal();
+            Resource location = language.getLocation();
+            if (property != null && property.getFileLength() >= 0) {
+                String[] keys = property.getKeysAsSet().toArray(new String[0]);
+                String[] texts = new String[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    String text = property.get(keys[i]);
+                    texts[i] = text == null ? "" : text;
+                }
+                records.add(new Record(location.getPath(), property.getEncoding(), property.getFileLength(), property.getFileModified(), keys, texts));
+            } else if (property == null && location != null && previous != null) {
+                Record record = previous.getRecord(location.getPath());
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+        }
+
+        // the string table and the columns
+        Map<String, Integer> ids = new LinkedHashMap<String, Integer>(4096);
+        int entries = 0;
+        for (Record record : records) {
+            register(ids, record.path);
+            register(ids, record.encoding);
+            for (int i = 0; i < record.keys.length; i++) {
+                register(ids, record.keys[i]);
+                register(ids, record.texts[i]);
+            }
+            entries += record.keys.length;
+        }
+
+        TreeMap<Long, File> generations = getGenerations(directory, project);
+        long generation = generations.isEmpty() ? 1 : generations.lastKey() + 1;
+        File file = new File(directory, getId(project) + '.' + generation + Extension);
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            directory.mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 64 * 1024));
+            try {
+                out.writeInt(Magic);
+                out.writeInt(Version);
+                out.writeInt(ids.size());
+                int start = 0;
+                for (String string : ids.keySet()) {
+                    out.writeInt(start);
+                    start += string.length();
+                }
+                out.writeInt(start);
+                out.writeInt(records.size());
+                int first = 0;
+                for (Record record : records) {
+                    out.writeInt(ids.get(record.path));
+                    out.writeInt(record.encoding == null ? -1 : ids.get(record.encoding));
+                    out.writeLong(record.length);
+                    out.writeLong(record.modified);
+                    out.writeInt(first);
+                    out.writeInt(record.keys.length);
+                    first += record.keys.length;
+                }
+                out.writeInt(entries);
+                for (Record record : records) {
+                    for (String key : record.keys) {
+                        out.writeInt(ids.get(key));
+                    }
+                }
+                for (Record record : records) {
+                    for (String text : record.texts) {
+                        out.writeInt(ids.get(text));
+                    }
+                }
+                for (String string : ids.keySet()) {
+                    out.writeChars(string);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Snapshot {0} cannot be written: {1}", new Object[]{file.getPath(), ex.getMessage()});
+            temporary.delete();
+            return false;
+        }
+        for (File old : generations.values()) {
+            if (!old.delete()) {
+                // still mapped, deleted with the next snapshot
+                LOG.log(Level.FINE, "Snapshot {0} cannot be deleted yet.", old.getPath());
+            }
+        }
+        LOG.log(Level.FINE, "Snapshot of {0} files written to {1}.", new Object[]{records.size(), file.getPath()});
+        return true;
+    }
+
+    /**
+     * Internal function! Adds a string to the string table.
+     *
+     * @param ids The ids of the strings so far.
+     * @param string The string or null.
+     */
+    private static void register(Map<String, Integer> ids, String string) {
+        if (string != null && !ids.containsKey(string)) {
+            ids.put(string, ids.size());
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tools.common.StringPool;
+import org.tools.common.TreeNode;
+import org.tools.i18n.Property;
+import org.tools.io.ResourceUtils;
+
+/**
+ * Watches the directory of a project for changes of the language files made
+ * outside (e.g. by an editor or a build step).
+ *
+ * A background thread waits for events of the directory, waits until the
+ * changed files stay unchanged for a moment and parses each changed file of a
+ * language of the tree. Only files whose modification time or size differs
+ * from the state after loading or saving are considered, so saving the
+ * project does not count as a change. The listener is informed on the
+ * background thread and must apply the change on the thread that modifies the
+ * languages (see Change.apply), which merges the new content into the
+ * language.
+ */
+public class ProjectWatcher {
+
+    private static final Logger LOG = Logger.getLogger(ProjectWatcher.class.getName());
+    /** Time in milliseconds without further events before changed files are read. */
+    private static final long QuietPeriod = 300;
+    private final File directory;
+    private final WatchService service;
+    private final Listener listener;
+    private final KeyDictionary dictionary;
+    private final StringPool pool;
+    /** The languages of the tree by file name. */
+    private final Map<String, LanguageProperties> languages = new ConcurrentHashMap<String, LanguageProperties>();
+    /** The modification time and size of the files as known by the project. */
+    private final Map<String, Stamp> stamps = new ConcurrentHashMap<String, Stamp>();
+    private final Thread thread;
+    private volatile boolean disposed = false;
+
+    /**
+     * Is informed about changed language files.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the background thread of the watcher if the file of a
+         * language was changed outside.
+         *
+         * @param change The change, must be applied on the thread that modifies the languages.
+         */
+        void languageChanged(Change change);
+    }
+
+    /**
+     * The new content of the file of a language.
+     */
+    public class Change {
+
+        private final LanguageProperties language;
+        private final Property property;
+        private Set<String> keys = Collections.emptySet();
+        private final Set<String> conflicts = new LinkedHashSet<String>();
+
+        Change(LanguageProperties language, Property property) {
+            this.language = language;
+            this.property = property;
+        }
+
+        /**
+         * Merges the new content into the language (see
+         * LanguageProperties.reload). Does nothing if the project was closed
+         * or the language removed in between.
+         *
+         * @return The keys that were changed in the file.
+         */
+        public Set<String> apply() {
+            if (!disposed && languages.containsValue(language)) {
+                keys = language.reload(property, conflicts);
+            }
+            return keys;
+        }
+
+        /**
+         * @return The language of the changed file.
+         */
+        public LanguageProperties getLanguage() {
+            return language;
+        }
+
+        /**
+         * @return The keys that were changed in the file, empty until applied.
+         */
+        public Set<String> getKeys() {
+            return keys;
+        }
+
+        /**
+         * @return The keys that were changed in the file and had unsaved
+         * modifications, which were kept. Empty until applied.
+         */
+        public Set<String> getConflicts() {
+            return conflicts;
+        }
+    }
+
+    /**
+     * The modification time and size of a file.
+     */
+    private static class Stamp {
+
+        final long modified, length;
+
+        Stamp(File file) {
+            modified = file.lastModified();
+            length = file.length();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Stamp && ((Stamp) other).modified == modified && ((Stamp) other).length == length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (modified ^ (modified >>> 32)) * 31 + (int) length;
+        }
+    }
+
+    /**
+     * Starts watching a directory.
+     *
+     * @param directory The directory of the project.
+     * @param dictionary The key dictionary of the project.
+     * @param pool The value pool of the project.
+     * @param listener Is informed about changes.
+     * @throws IOException If the directory cannot be watched.
+     */
+    public ProjectWatcher(File directory, KeyDictionary dictionary, StringPool pool, Listener listener) throws IOException {
+        this.directory = directory.getAbsoluteFile();
+        this.dictionary = dictionary;
+        this.pool = pool;
+        this.listener = listener;
+        service = FileSystems.getDefault().newWatchService();
+        this.directory.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                watch();
+            }
+        }, "JLokalize watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return The watched directory.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Updates the watched languages. Must be called whenever languages were
+     * added to or removed from the tree.
+     *
+     * @param root The root node of the language tree.
+     */
+    public void synchronize(TreeNode<LanguageProperties> root) {
+        languages.clear();
+        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+            LanguageProperties language = node.getData();
+            if (language.getLocation() != null) {
+                File file = new File(language.getLocation().getPath()).getAbsoluteFile();
+                if (directory.equals(file.getParentFile())) {
+                    languages.put(file.getName(), language);
+                    if (!stamps.containsKey(file.getName())) {
+                        stamps.put(file.getName(), new Stamp(file));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Must be called after a language was saved, so that its new file is not
+     * taken as a change.
+     *
+     * @param language The saved language.
+     */
+    public void saved(LanguageProperties language) {
+        if (language.getLocation() != null) {
+            File file = new File(language.getLocation().getPath());
+            stamps.put(file.getName(), new Stamp(file));
+        }
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void dispose() {
+        disposed = true;
+        try {
+            service.close();
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, null, ex);
+        }
+    }
+
+    /**
+     * Internal function! The loop of the background thread.
+     */
+    private void watch() {
+        try {
+            while (!disposed) {
+                Set<String> names = new LinkedHashSet<String>();
+                WatchKey key = service.take();
+                // collect until nothing happens for a moment, the files may be written in parts
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path) {
+                            names.add(((Path) event.context()).getFileName().toString());
+                        }
+                    }
+                    key.reset();
+                    key = service.poll(QuietPeriod, TimeUnit.MILLISECONDS);
+                }
+                for (String name : names) {
+                    check(name);
+                }
+            }
+        } catch (InterruptedException ex) {
+            // ends the thread
+        } catch (ClosedWatchServiceException ex) {
+            // disposed
+        }
+    }
+
+    /**
+     * Internal function! Parses a file if it belongs to a language and was
+     * changed, and informs the listener.
+     *
+     * @param name The name of the file.
+     */
+    private void check(String name) {
+        LanguageProperties language = languages.get(name);
+        File file = new File(directory, name);
+        if (language == null || !file.isFile()) {
+            return;
+        }
+        Stamp stamp = new Stamp(file);
+        if (stamp.equals(stamps.get(name))) {
+            return;
+        }
+        Property property;
+        try {
+            property = LanguageProperties.createProperty(ResourceUtils.asResource(file), dictionary, pool);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, null, ex);
+            return;
+        }
+        if (!property.load() || !stamp.equals(new Stamp(file))) {
+            // unreadable or still being written, tried again with the next event
+            LOG.log(Level.INFO, "Changed language file {0} cannot be read.", name);
+            return;
+        }
+        stamps.put(name, stamp);
+        if (!disposed) {
+            listener.languageChanged(new Change(language, property));
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+/**
+ * A single result of a search in the project search index, i.e. the language
+ * and the key where the searched text was found.
+ */
+public class SearchHit {
+
+    public final LanguageProperties language;
+    public final String key;
+
+    /**
+     * @param language The language containing the key.
+     * @param key The key whose name, text or comment matched.
+     */
+    public SearchHit(LanguageProperties language, String key) {
+        this.language = language;
+        this.key = key;
+    }
+
+    /**
+     * Automatically used in the search result list to display a hit. Clear name
+     * of the language followed by the key.
+     *
+     * @return The display text.
+     */
+    @Override
+    public String toString() {
+        return language.getClearName() + ": " + key;
+    }
+}
@@ -5,4 +5,33 @@ public class Settings {
 	public static final String ENCODING = System.getProperty("jlokalize.encoding", "UTF-8");
 	
 	public static final boolean ESCAPE = Boolean.parseBoolean(System.getProperty("jlokalize.escape", "false"));
+	
+	/** If true, encoding and escaping of each language file are detected, the settings above are only the default */
+	public static final boolean DETECT_ENCODING = Boolean.parseBoolean(System.getProperty("jlokalize.encoding.detect", "true"));
+	
+	/** If true, saved files are forced to the disk before they are closed */
+	public static final boolean SAVE_FSYNC = Boolean.parseBoolean(System.getProperty("jlokalize.save.fsync", "false"));
+	
+	/** How many files are written at the same time when saving a project */
+	public static final int SAVE_IO_THREADS = Integer.getInteger("jlokalize.save.io", 2);
+	
+	/** If true, unchanged files of a reopened project are restored from a snapshot instead of parsed */
+	public static final boolean SNAPSHOTS = Boolean.parseBoolean(System.getProperty("jlokalize.snapshots", "true"));
+	
+	/** Which languages are unloaded first (lru, largest or none), null for the default */
+	public static final EvictionPolicy RESIDENCY_POLICY = parsePolicy(System.getProperty("jlokalize.residency.policy"));
+	
+	/** Memory budget for the loaded languages of a project in megabytes, 0 for half of the heap */
+	public static final int RESIDENCY_BUDGET = Integer.getInteger("jlokalize.residency.budget", 0);
+	
+	private static EvictionPolicy parsePolicy(String value) {
+		if ("lru".equalsIgnoreCase(value)) {
+			return EvictionPolicy.LeastRecentlyUsed;
+		} else if ("largest".equalsIgnoreCase(value)) {
+			return EvictionPolicy.LargestFirst;
+		} else if ("none".equalsIgnoreCase(value)) {
+			return EvictionPolicy.Never;
+		}
+		return null;
+	}
 }
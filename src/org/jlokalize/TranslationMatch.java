@@ -0,0 +1,48 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+/**
+ * A fuzzy match from the translation memory: a source text similar to the
+ * searched one together with its existing translation.
+ */
+public class TranslationMatch {
+
+    public final String source;
+    public final String target;
+    /** Similarity of the source texts in percent. */
+    public final int similarity;
+
+    /**
+     * @param source The similar source text.
+     * @param target The translation of the similar source text.
+     * @param similarity The similarity in percent.
+     */
+    public TranslationMatch(String source, String target, int similarity) {
+        this.source = source;
+        this.target = target;
+        this.similarity = similarity;
+    }
+
+    /**
+     * Automatically used in the translation memory list to display a match.
+     *
+     * @return Similarity, source and translation in one line.
+     */
+    @Override
+    public String toString() {
+        return similarity + "%  " + source + "  \u2192  " + target;
+    }
+}
@@ -0,0 +1,555 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tools.common.TreeNode;
+
+/**
+ * A translation memory, i.e. pairs of a source text (the text of a key in the
+ * master language) and its translation (the text of the same key in another
+ * language), collected from all opened projects and kept in a file in the user
+ * config directory.
+ *
+ * For each target locale the trigrams of the normalized source texts are
+ * indexed. A query counts the common trigrams of each segment with the searched
+ * text, the most similar segments (Dice coefficient) are then ranked by their
+ * edit distance, which is only computed up to the largest distance that still
+ * gives an acceptable similarity.
+ *
+ * There is one segment for each source text and locale, a new translation of
+ * the same source replaces the old one. Each segment remembers when it was
+ * last seen in a project, if the memory grows beyond MaxSegments the segments
+ * not seen for the longest time are dropped when saving.
+ *
+ * Only the segments are stored in the file, the trigrams are indexed again
+ * after loading. All public methods are thread safe.
+ */
+public class TranslationMemory {
+
+    private static final Logger LOG = Logger.getLogger(TranslationMemory.class.getName());
+    /** File identification ("JLTM") and format version. */
+    private static final int Magic = 0x4A4C544D;
+    private static final int Version = 2;
+    /** Matches with a smaller similarity (in percent) are not returned. */
+    private static final int MinSimilarity = 60;
+    /** So many candidates of the trigram search are compared by edit distance. */
+    private static final int MaxCandidates = 30;
+    /** Longer texts are only compared with their beginning. */
+    private static final int MaxCompareLength = 1000;
+    /** The background indexing adds so many segments at once, so queries are not blocked for long. */
+    private static final int ChunkSize = 1000;
+    /** At most so many segments are saved, the least recently seen are dropped. */
+    private static final int MaxSegments = 200000;
+    /** The file the memory is stored in. */
+    private final File file;
+    /** The segments for each locale. */
+    private final Map<String, Bucket> buckets = new HashMap<String, Bucket>();
+    /** Number of segments of all locales. */
+    private int count = 0;
+    /** True if there are segments that are not saved yet. */
+    private boolean modified = false;
+    /** Loads and indexes in the background. */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JLokalize translation memory");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    /**
+     * Creates an empty memory.
+     *
+     * @param file The file for loading and saving.
+     */
+    public TranslationMemory(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the locale identifier of a language, which is the language,
+     * country and variant joined by "_", or null for the root language.
+     *
+     * @param language The language.
+     * @return The identifier.
+     */
+    public static String localeOf(LanguageProperties language) {
+        if (language.getLanguage() == null) {
+            return null;
+        }
+        String id = language.getLanguage();
+        if (language.getCountry() != null) {
+            id = id + "_" + language.getCountry();
+        }
+        if (language.getVariant() != null) {
+            id = id + "_" + language.getVariant();
+        }
+        return id;
+    }
+
+    /**
+     * Loads the file in the background, if it exists.
+     */
+    public void loadInBackground() {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Adds all pairs of master text and translation of a project. The texts are
+     * copied here, but indexed in the background, so it must be called from the
+     * thread that modifies the languages (i.e. the event dispatch thread).
+     * Languages that are not loaded yet are skipped, the master is loaded.
+     *
+     * @param root The root node of the language tree.
+     */
+    public void addProject(TreeNode<LanguageProperties> root) {
+        TreeNode<LanguageProperties> masterNode = LanguageTreeManager.getMasterNode(root);
+        if (masterNode == null) {
+            return;
+        }
+        LanguageProperties master = masterNode.getData();
+        final List<String[]> segments = new ArrayList<String[]>();
+        final long seen = System.currentTimeMillis();
+        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+            LanguageProperties language = node.getData();
+            String locale = localeOf(language);
+            if (language == master || locale == null || !language.isLoaded()) {
+                continue;
+            }
+            for (String key : language.getAllTextKeysAsSet()) {
+                String target = language.getKeyText(key);
+                String source = master.getKeyText(key);
+                if (source != null && target != null && source.length() > 0 && target.length() > 0) {
+                    segments.add(new String[]{locale, source, target});
+                }
+            }
+        }
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < segments.size(); i += ChunkSize) {
+                    addAll(segments.subList(i, Math.min(segments.size(), i + ChunkSize)), seen);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds translations of texts similar to a source text.
+     *
+     * @param locale The locale of the translations.
+     * @param source The source text.
+     * @param current The current translation, which is not returned as match (can be null).
+     * @param max The maximal number of matches.
+     * @return The matches, the most similar first.
+     */
+    public synchronized List<TranslationMatch> find(String locale, String source, String current, int max) {
+        List<TranslationMatch> matches = new ArrayList<TranslationMatch>();
+        Bucket bucket = buckets.get(locale);
+        if (bucket == null || source == null) {
+            return matches;
+        }
+        String text = normalize(source);
+        long[] grams = trigrams(text);
+        if (grams.length == 0) {
+            return matches;
+        }
+
+        // count common trigrams
+        int[] counts = new int[bucket.segments.size()];
+        IntList touched = new IntList();
+        for (long gram : grams) {
+            IntList list = bucket.trigrams.get(gram);
+            if (list == null) {
+                continue;
+            }
+            for (int i = 0; i < list.size; i++) {
+                int id = list.data[i];
+                if (counts[id]++ == 0) {
+                    touched.addUnique(id);
+                }
+            }
+        }
+
+        // most similar by dice coefficient, which must allow the minimal similarity
+        List<int[]> candidates = new ArrayList<int[]>();
+        for (int i = 0; i < touched.size; i++) {
+            int id = touched.data[i];
+            int dice = 200 * counts[id] / (grams.length + bucket.segments.get(id).grams);
+            if (dice >= MinSimilarity / 2) {
+                candidates.add(new int[]{dice, id});
+            }
+        }
+        Collections.sort(candidates, new Comparator<int[]>() {
+
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                return o2[0] - o1[0];
+            }
+        });
+
+        // rank the best ones by edit distance
+        Set<String> targets = new HashSet<String>();
+        for (int i = 0; i < candidates.size() && i < MaxCandidates; i++) {
+            Segment segment = bucket.segments.get(candidates.get(i)[1]);
+            if (segment.target.equals(current) || targets.contains(segment.target)) {
+                continue;
+            }
+            int length = Math.min(MaxCompareLength, Math.max(text.length(), segment.text.length()));
+            int bound = length * (100 - MinSimilarity) / 100;
+            int distance = editDistance(text, segment.text, bound);
+            if (distance <= bound) {
+                targets.add(segment.target);
+                matches.add(new TranslationMatch(segment.source, segment.target, 100 - 100 * distance / length));
+            }
+        }
+        Collections.sort(matches, new Comparator<TranslationMatch>() {
+
+            @Override
+            public int compare(TranslationMatch o1, TranslationMatch o2) {
+                return o2.similarity - o1.similarity;
+            }
+        });
+        return matches.size() > max ? new ArrayList<TranslationMatch>(matches.subList(0, max)) : matches;
+    }
+
+    /**
+     * Saves the memory to its file if it has been modified. A temporary file is
+     * written first and replaces the old file in a single rename, so an
+     * interrupted save does not destroy the old file. If
+     * there are more than MaxSegments segments, the least recently seen ones
+     * are dropped before.
+     *
+     * @return True if the memory is saved.
+     */
+    public synchronized boolean save() {
+        if (!modified) {
+            return true;
+        }
+        if (count > MaxSegments) {
+            prune();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+            try {
+                out.writeInt(Magic);
+                out.writeInt(Version);
+                out.writeInt(count);
+                for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+                    for (Segment segment : entry.getValue().segments) {
+                        writeString(out, entry.getKey());
+                        writeString(out, segment.source);
+                        writeString(out, segment.target);
+                        out.writeLong(segment.seen);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            modified = false;
+            return true;
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, null, ex);
+            temp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Background thread: Reads all segments from the file and indexes them.
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != Magic || in.readInt() != Version) {
+                    LOG.log(Level.WARNING, "Unknown translation memory format in {0}", file);
+                    return;
+                }
+                int n = in.readInt();
+                List<String[]> segments = new ArrayList<String[]>(ChunkSize);
+                long[] seen = new long[ChunkSize];
+                for (int i = 0; i < n; i++) {
+                    segments.add(new String[]{readString(in), readString(in), readString(in)});
+                    seen[segments.size() - 1] = in.readLong();
+                    if (segments.size() == ChunkSize || i == n - 1) {
+                        synchronized (this) {
+                            for (int j = 0; j < segments.size(); j++) {
+                                String[] segment = segments.get(j);
+                                add(segment[0], segment[1], segment[2], seen[j]);
+                            }
+                        }
+                        segments.clear();
+                    }
+                }
+                synchronized (this) {
+                    // the segments from the file are saved already
+                    modified = false;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Adds segments (locale, source, target) seen in a project.
+     */
+    private synchronized void addAll(List<String[]> segments, long seen) {
+        for (String[] segment : segments) {
+            add(segment[0], segment[1], segment[2], seen);
+        }
+    }
+
+    /**
+     * Adds a segment or replaces the segment with the same locale and source,
+     * unless that one has been seen later (for equal times the last one wins).
+     *
+     * @param seen When the segment was seen in a project.
+     */
+    private void add(String locale, String source, String target, long seen) {
+        Bucket bucket = buckets.get(locale);
+        if (bucket == null) {
+            bucket = new Bucket();
+            buckets.put(locale, bucket);
+        }
+        Integer existing = bucket.ids.get(source);
+        if (existing != null) {
+            Segment segment = bucket.segments.get(existing);
+            if (seen >= segment.seen) {
+                // the source and therefore the trigrams stay the same
+                modified = true;
+                bucket.segments.set(existing, new Segment(source, target, segment.text, segment.grams, seen));
+            }
+            return;
+        }
+        String text = normalize(source);
+        long[] grams = trigrams(text);
+        int id = bucket.segments.size();
+        bucket.ids.put(source, id);
+        bucket.segments.add(new Segment(source, target, text, grams.length, seen));
+        count++;
+        modified = true;
+        for (long gram : grams) {
+            bucket.trigrams.getOrCreate(gram).addUnique(id);
+        }
+    }
+
+    /**
+     * Keeps only the MaxSegments most recently seen segments and indexes them
+     * anew.
+     */
+    private void prune() {
+        List<Object[]> all = new ArrayList<Object[]>(count);
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            for (Segment segment : entry.getValue().segments) {
+                all.add(new Object[]{entry.getKey(), segment});
+            }
+        }
+        Collections.sort(all, new Comparator<Object[]>() {
+
+            @Override
+            public int compare(Object[] o1, Object[] o2) {
+                return Long.compare(((Segment) o2[1]).seen, ((Segment) o1[1]).seen);
+            }
+        });
+        LOG.log(Level.INFO, "Dropping {0} translation memory segments", all.size() - MaxSegments);
+        buckets.clear();
+        count = 0;
+        for (Object[] entry : all.subList(0, MaxSegments)) {
+            Segment segment = (Segment) entry[1];
+            add((String) entry[0], segment.source, segment.target, segment.seen);
+        }
+    }
+
+    /**
+     * Lower case with single spaces for all white space, so that formatting
+     * does not matter.
+     */
+    private static String normalize(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (!space) {
+                    builder.append(' ');
+                    space = true;
+                }
+            } else {
+                builder.append(c);
+                space = false;
+            }
+        }
+        return builder.toString().trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The distinct trigrams of a text padded with a space on both ends (so
+     * that also short texts have trigrams).
+     */
+    private static long[] trigrams(String text) {
+        if (text.length() == 0) {
+            return new long[0];
+        }
+        String padded = " " + text + " ";
+        long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int n = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (n == 0 || grams[n - 1] != grams[i]) {
+                grams[n++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, n);
+    }
+
+    /**
+     * Levenshtein distance of two texts, only computed in a band of the given
+     * width around the diagonal. The beginnings of long texts are compared.
+     *
+     * @return The distance or bound + 1 if it is larger than bound.
+     */
+    private static int editDistance(String a, String b, int bound) {
+        int n = Math.min(a.length(), MaxCompareLength);
+        int m = Math.min(b.length(), MaxCompareLength);
+        if (Math.abs(n - m) > bound) {
+            return bound + 1;
+        }
+        int big = bound + 1;
+        int[] previous = new int[m + 1];
+        int[] row = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j <= bound ? j : big;
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - bound);
+            int to = Math.min(m, i + bound);
+            row[0] = i <= bound ? i : big;
+            if (from > 1) {
+                row[from - 1] = big;
+            }
+            int minimum = row[0];
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(previous[j - 1] + cost, Math.min(previous[j], row[j - 1]) + 1);
+                row[j] = Math.min(value, big);
+                minimum = Math.min(minimum, row[j]);
+            }
+            if (to < m) {
+                row[to + 1] = big;
+            }
+            if (minimum > bound) {
+                return big;
+            }
+            int[] temp = previous;
+            previous = row;
+            row = temp;
+        }
+        return previous[m];
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * The segments of one target locale and their trigram postings.
+     */
+    private static class Bucket {
+
+        final List<Segment> segments = new ArrayList<Segment>();
+        /** The id of the segment for each source. */
+        final Map<String, Integer> ids = new HashMap<String, Integer>();
+        final TrigramTable trigrams = new TrigramTable();
+    }
+
+    /**
+     * A source text with its translation.
+     */
+    private static class Segment {
+
+        final String source;
+        final String target;
+        /** The normalized source. */
+        final String text;
+        /** Number of distinct trigrams of the normalized source. */
+        final int grams;
+        /** When the segment was last seen in a project (milliseconds since 1970). */
+        final long seen;
+
+        Segment(String source, String target, String text, int grams, long seen) {
+            this.source = source;
+            this.target = target;
+            this.text = text;
+            this.grams = grams;
+            this.seen = seen;
+        }
+    }
+}
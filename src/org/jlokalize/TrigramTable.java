@@ -0,0 +1,103 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+/**
+ * The postings of trigrams (three chars packed in a long) in an open
+ * addressing hash table with the packed trigrams as primitive keys. Used by
+ * the search index and the index of the keys table.
+ */
+class TrigramTable {
+
+    private long[] keys = new long[1 << 14];
+    private IntList[] values = new IntList[1 << 14];
+    private int size = 0;
+
+    /**
+     * @param key A trigram.
+     * @return The postings or null if the trigram is not indexed.
+     */
+    IntList get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key A trigram.
+     * @return The postings, new empty ones if the trigram is not indexed yet.
+     */
+    IntList getOrCreate(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        IntList list = new IntList();
+        keys[i] = key;
+        values[i] = list;
+        if (++size > keys.length / 2) {
+            rehash(2 * keys.length);
+        }
+        return list;
+    }
+
+    /**
+     * Renumbers the ids of all postings, trigrams without postings
+     * afterwards are removed.
+     *
+     * @param remap The new id of each id or a negative value if removed.
+     */
+    void remap(int[] remap) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null && values[i].remap(remap) == 0) {
+                values[i] = null;
+                size--;
+            }
+        }
+        rehash(keys.length);
+    }
+
+    /**
+     * Internal function! Inserts all entries into new arrays.
+     */
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        IntList[] oldValues = values;
+        keys = new long[capacity];
+        values = new IntList[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j], mask);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tools.i18n.I18nUtils;
+import org.tools.i18n.ResourceFormat;
+import org.tools.i18n.ResourceFormats;
+
+/**
+ * All bundles of language files in a directory tree, e.g. the source tree of
+ * an application. A bundle is what LanguageTreeProject.open makes a project
+ * of: the files in one directory with the same base name and extension and a
+ * language code after the base (messages.properties, messages_de.properties),
+ * or the files named by a language code alone for formats that allow it
+ * (de.json, en.json). At least one file of a bundle must have the code of a
+ * known language (see Locale.getISOLanguages), other files like
+ * package.json or a lone config.properties are no bundles.
+ *
+ * The directories are scanned in parallel, hidden directories (.git),
+ * directories of dependencies and build output (node_modules, target) and
+ * symbolic links are skipped. The content of each directory can be cached in
+ * a file together with the modification time of the directory. A rescan then
+ * only lists the directories whose modification time changed, i.e. in which
+ * files were added, removed or renamed, the others are taken from the cache.
+ *
+ * The project of a bundle is opened when it is needed first (see
+ * Bundle.getProject).
+ */
+public class Workspace {
+
+    private static final Logger LOG = Logger.getLogger(Workspace.class.getName());
+    /** The extension of the cache files. */
+    public static final String Extension = ".workspace";
+    /** "JLWS" */
+    private static final int Magic = 0x4A4C5753;
+    private static final int Version = 2;
+    /** Directories of dependencies and build output, which are not scanned. */
+    private static final Set<String> SkippedDirectories = new HashSet<String>(Arrays.asList("node_modules", "bower_components", "vendor", "target"));
+    /** The known language codes. */
+    private static final Set<String> Languages = new HashSet<String>(Arrays.asList(Locale.getISOLanguages()));
+    /** Lists the directories, shared by all workspaces. */
+    private static final ExecutorService Scanner = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "JLokalize workspace");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final File root;
+    private final List<Bundle> bundles;
+
+    /**
+     * The language files of one project in a directory of the workspace.
+     */
+    public static class Bundle {
+
+        private final File directory;
+        private final String base;
+        private final String extension;
+        /** The names of the files, sorted. */
+        private final List<String> names;
+        /** The directory relative to the root of the workspace. */
+        private final String path;
+        /** The opened project or null. */
+        private LanguageTreeProject project;
+
+        Bundle(File directory, String path, String base, String extension, List<String> names) {
+            this.directory = directory;
+            this.path = path;
+            this.base = base;
+            this.extension = extension;
+            this.names = names;
+        }
+
+        /**
+         * @return The directory of the files.
+         */
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return The base name, empty for files named by the language code alone.
+         */
+        public String getBase() {
+            return base;
+        }
+
+        /**
+         * @return The extension of the files.
+         */
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * @return The language files.
+         */
+        public List<File> getFiles() {
+            List<File> files = new ArrayList<File>(names.size());
+            for (String name : names) {
+                files.add(new File(directory, name));
+            }
+            return files;
+        }
+
+        /**
+         * The file to open the project with (see LanguageTreeProject.open):
+         * the file without language code if there is one, for files named by
+         * the language code alone the English one (it becomes the master) or
+         * the first one.
+         *
+         * @return One of the files.
+         */
+        public File getFile() {
+            String preferred = (base.isEmpty() ? "en" : base) + extension;
+            return new File(directory, names.contains(preferred) ? preferred : names.get(0));
+        }
+
+        /**
+         * Opens the project of the bundle on first use. The languages are
+         * loaded when they are accessed, no search index is built.
+         *
+         * @return The project or null if it cannot be opened.
+         */
+        public synchronized LanguageTreeProject getProject() {
+            if (project == null) {
+                LanguageTreeProject opened = new LanguageTreeProject();
+                opened.setSearchIndexEnabled(false);
+                if (!opened.open(getFile())) {
+                    return null;
+                }
+                project = opened;
+            }
+            return project;
+        }
+
+        /**
+         * Closes the project of the bundle if it was opened, unsaved changes
+         * are lost.
+         */
+        public synchronized void close() {
+            if (project != null) {
+                project.reset();
+                project = null;
+            }
+        }
+
+        /**
+         * @return The relative directory, the base and the extension (* if
+         * there is no base) and the number of files, as shown in lists.
+         */
+        @Override
+        public String toString() {
+            String name = (base.isEmpty() ? "*" : base) + extension;
+            return (path.isEmpty() ? name : path + "/" + name) + " (" + names.size() + ")";
+        }
+    }
+
+    /**
+     * The content of a directory.
+     */
+    private static class Directory {
+
+        final long modified;
+        /** The names of the subdirectories. */
+        final String[] directories;
+        /** The names of the files of a known format. */
+        final String[] files;
+
+        Directory(long modified, String[] directories, String[] files) {
+            this.modified = modified;
+            this.directories = directories;
+            this.files = files;
+        }
+    }
+
+    /**
+     * The state of a parallel scan, every directory is a task of its own.
+     */
+    private static class Scan {
+
+        final File root;
+        final Map<String, Directory> cached;
+        /** The directories by path relative to the root. */
+        final Map<String, Directory> scanned = new ConcurrentHashMap<String, Directory>();
+        /** True if any directory was listed, i.e. not taken from the cache. */
+        final AtomicBoolean listed = new AtomicBoolean(false);
+        /** Counts the submitted tasks that have not finished. */
+        final AtomicInteger pending = new AtomicInteger(0);
+        /** Released when the last task finished. */
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        Scan(File root, Map<String, Directory> cached) {
+            this.root = root;
+            this.cached = cached;
+        }
+
+        /**
+         * Scans a directory and its subdirectories in the background.
+         *
+         * @param path The directory relative to the root.
+         */
+        void submit(final String path) {
+            // a task submits the subdirectories before it finishes, so the count drops to zero only at the end
+            pending.incrementAndGet();
+            Scanner.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        scan(path);
+                    } finally {
+                        if (pending.decrementAndGet() == 0) {
+                            finished.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Takes the content of a directory from the cache if the directory is
+         * unchanged, otherwise lists it.
+         *
+         * @param path The directory relative to the root.
+         */
+        void scan(String path) {
+            File directory = path.isEmpty() ? root : new File(root, path);
+            long modified = directory.lastModified();
+            Directory content = cached.get(path);
+            if (content == null || content.modified != modified) {
+                content = list(directory, modified);
+                listed.set(true);
+            }
+            scanned.put(path, content);
+            for (String name : content.directories) {
+                submit(path.isEmpty() ? name : path + "/" + name);
+            }
+        }
+    }
+
+    private Workspace(File root, List<Bundle> bundles) {
+        this.root = root;
+        this.bundles = bundles;
+    }
+
+    /**
+     * Finds all bundles below a directory.
+     *
+     * @param directory The root of the workspace.
+     * @param cacheDirectory Where the content of the directories is cached, no cache is used if null.
+     * @return The workspace.
+     * @throws IOException If the root is not a directory.
+     */
+    public static Workspace scan(File directory, File cacheDirectory) throws IOException {
+        final File root = directory.getAbsoluteFile();
+        if (!root.isDirectory()) {
+            throw new IOException("Not a directory: " + root.getPath());
+        }
+        long start = System.currentTimeMillis();
+        File cacheFile = cacheDirectory == null ? null : getCacheFile(cacheDirectory, root);
+        Map<String, Directory> cached = cacheFile == null ? Collections.<String, Directory>emptyMap() : readCache(cacheFile, root);
+        Scan scan = new Scan(root, cached);
+        scan.submit("");
+        try {
+            scan.finished.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan of " + root.getPath() + " interrupted");
+        }
+        Map<String, Directory> scanned = scan.scanned;
+
+        // directories removed since do not show up as listed
+        if (cacheFile != null && (scan.listed.get() || scanned.size() != cached.size())) {
+            writeCache(cacheFile, root, scanned);
+        }
+
+        List<Bundle> bundles = new ArrayList<Bundle>();
+        for (Map.Entry<String, Directory> entry : scanned.entrySet()) {
+            String path = entry.getKey();
+            group(path.isEmpty() ? root : new File(root, path), path, entry.getValue().files, bundles);
+        }
+        Collections.sort(bundles, new Comparator<Bundle>() {
+
+            @Override
+            public int compare(Bundle a, Bundle b) {
+                int comparison = a.path.compareTo(b.path);
+                if (comparison == 0) {
+                    comparison = a.base.compareTo(b.base);
+                }
+                return comparison == 0 ? a.extension.compareTo(b.extension) : comparison;
+            }
+        });
+        LOG.log(Level.INFO, "Workspace {0}: {1} bundles in {2} directories, {3} ms", new Object[]{root.getPath(), bundles.size(), scanned.size(), System.currentTimeMillis() - start});
+        return new Workspace(root, bundles);
+    }
+
+    /**
+     * Internal function! Lists a directory.
+     *
+     * @param directory The directory.
+     * @param modified Its modification time.
+     * @return The subdirectories (without hidden and skipped ones and links)
+     * and the files of a known format.
+     */
+    private static Directory list(File directory, long modified) {
+        List<String> directories = new ArrayList<String>();
+        List<String> files = new ArrayList<String>();
+        try {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(directory.toPath());
+            try {
+                for (Path child : stream) {
+                    String name = child.getFileName().toString();
+                    if (name.startsWith(".")) {
+                        continue;
+                    }
+                    if (ResourceFormats.find(name) != null) {
+                        if (Files.isRegularFile(child)) {
+                            files.add(name);
+                        }
+                    } else if (!SkippedDirectories.contains(name) && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        directories.add(name);
+                    }
+                }
+            } finally {
+                stream.close();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Directory {0} cannot be listed: {1}", new Object[]{directory.getPath(), ex.getMessage()});
+        }
+        return new Directory(modified, directories.toArray(new String[directories.size()]), files.toArray(new String[files.size()]));
+    }
+
+    /**
+     * Internal function! Groups the files of a directory into bundles, the
+     * same way as LanguageTreeProject.open does. Groups without a file with
+     * the code of a known language are dropped, they are no language files.
+     *
+     * @param directory The directory.
+     * @param path The directory relative to the root.
+     * @param files The names of the files of a known format.
+     * @param bundles Receives the bundles.
+     */
+    private static void group(File directory, String path, String[] files, List<Bundle> bundles) {
+        // by base and extension
+        Map<String, List<String>> groups = new TreeMap<String, List<String>>();
+        Map<String, String[]> keys = new HashMap<String, String[]>();
+        Set<String> localized = new HashSet<String>();
+        for (String name : files) {
+            ResourceFormat format = ResourceFormats.find(name);
+            int dot = name.lastIndexOf('.');
+            String stem = name.substring(0, dot);
+            String base;
+            boolean locale;
+            if (format.allowsLocaleNames() && isKnownLanguage(stem.split("[_-]"))) {
+                base = "";
+                locale = true;
+            } else {
+                int k = stem.indexOf('_');
+                base = k == -1 ? stem : stem.substring(0, k);
+                String[] code = k == -1 ? new String[0] : stem.substring(k + 1).split("_");
+                if (base.isEmpty() || !I18nUtils.isValidLanguageCode(code)) {
+                    continue;
+                }
+                locale = isKnownLanguage(code);
+            }
+            String key = base + '/' + name.substring(dot);
+            List<String> names = groups.get(key);
+            if (names == null) {
+                names = new ArrayList<String>(8);
+                groups.put(key, names);
+                keys.put(key, new String[]{base, name.substring(dot)});
+            }
+            names.add(name);
+            if (locale) {
+                localized.add(key);
+            }
+        }
+        for (Map.Entry<String, List<String>> entry : groups.entrySet()) {
+            if (!localized.contains(entry.getKey())) {
+                continue;
+            }
+            String[] key = keys.get(entry.getKey());
+            List<String> names = entry.getValue();
+            Collections.sort(names);
+            bundles.add(new Bundle(directory, path, key[0], key[1], names));
+        }
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param code The parts of a language code from a file name.
+     * @return True if it is a valid code of a known language.
+     */
+    private static boolean isKnownLanguage(String[] code) {
+        return code.length > 0 && I18nUtils.isValidLanguageCode(code) && Languages.contains(code[0]);
+    }
+
+    /**
+     * @param directory The directory of the caches.
+     * @param root The root of a workspace.
+     * @return The cache file of the workspace.
+     */
+    public static File getCacheFile(File directory, File root) {
+        String id = UUID.nameUUIDFromBytes(root.getAbsolutePath().getBytes(StandardCharsets.UTF_8)).toString();
+        return new File(directory, id + Extension);
+    }
+
+    /**
+     * Internal function! Reads the cached directories of a workspace.
+     *
+     * @param file The cache file.
+     * @param root The root of the workspace.
+     * @return The directories by path relative to the root, empty if the cache is missing or invalid.
+     */
+    private static Map<String, Directory> readCache(File file, File root) {
+        Map<String, Directory> directories = new HashMap<String, Directory>();
+        if (!file.isFile()) {
+            return directories;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+            try {
+                if (in.readInt() != Magic || in.readInt() != Version || !in.readUTF().equals(root.getPath())) {
+                    return directories;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = in.readUTF();
+                    long modified = in.readLong();
+                    directories.put(path, new Directory(modified, readNames(in), readNames(in)));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.INFO, "Workspace cache {0} is not used: {1}", new Object[]{file.getPath(), ex.getMessage()});
+            directories.clear();
+        }
+        return directories;
+    }
+
+    /**
+     * Internal function!
+     */
+    private static String[] readNames(DataInputStream in) throws IOException {
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        return names;
+    }
+
+    /**
+     * Internal function! Writes the directories of a workspace to a temporary
+     * file which then replaces the cache file.
+     *
+     * @param file The cache file.
+     * @param root The root of the workspace.
+     * @param directories The directories by path relative to the root.
+     */
+    private static void writeCache(File file, File root, Map<String, Directory> directories) {
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 65536));
+            try {
+                out.writeInt(Magic);
+                out.writeInt(Version);
+                out.writeUTF(root.getPath());
+                out.writeInt(directories.size());
+                for (Map.Entry<String, Directory> entry : directories.entrySet()) {
+                    Directory directory = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(directory.modified);
+                    writeNames(out, directory.directories);
+                    writeNames(out, directory.files);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            LOG.log(Level.WARNING, "Workspace cache {0} cannot be written: {1}", new Object[]{file.getPath(), ex.getMessage()});
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Internal function!
+     */
+    private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+        out.writeInt(names.length);
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * @return The root directory.
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * @return The bundles, sorted by directory, base and extension.
+     */
+    public List<Bundle> getBundles() {
+        return Collections.unmodifiableList(bundles);
+    }
+}
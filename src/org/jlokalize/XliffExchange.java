@@ -0,0 +1,656 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import org.tools.common.TreeNode;
+import org.tools.io.ChannelWriter;
+
+/**
+ * Export of the languages of a project to XLIFF files for translators and
+ * import of the translated files, in XLIFF 1.2 or 2.0.
+ *
+ * Each language with a parent in the sense of the keys table (all but root and
+ * master) is exported to its own file, named like the language file with the
+ * extension .xlf. There is one unit per key of the parent: the text of the
+ * parent is the source, the text of the language (if there is one) the target,
+ * the comments are notes (developer for the parent, translator for the
+ * language). Files are written and read as StAX streams, no document is built
+ * in memory.
+ *
+ * Importing finds the language of a file by its original file name or else by
+ * its target language and changes only keys whose target or translator note
+ * differs from the language. All changes of an import are one step in the edit
+ * journal.
+ *
+ * Characters that XML cannot contain (control characters and unpaired
+ * surrogates) are written as cp elements in XLIFF 2.0. XLIFF 1.2 has no means
+ * for them, such units are left out and reported.
+ *
+ * Not thread safe, must be used from the thread that modifies the languages.
+ */
+public class XliffExchange {
+
+    /**
+     * The supported versions of XLIFF.
+     */
+    public enum Version {
+
+        Xliff12, Xliff20
+    }
+    /** The extension of the exported files. */
+    public static final String Extension = ".xlf";
+    private static final String Namespace12 = "urn:oasis:names:tc:xliff:document:1.2";
+    private static final String Namespace20 = "urn:oasis:names:tc:xliff:document:2.0";
+    private static final String XmlNamespace = "http://www.w3.org/XML/1998/namespace";
+    private static final XMLOutputFactory OutputFactory = XMLOutputFactory.newInstance();
+    private static final XMLInputFactory InputFactory = XMLInputFactory.newInstance();
+
+    static {
+        // translated files come from outside
+        InputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        InputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        InputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+    private final LanguageTreeProject project;
+
+    /**
+     * The outcome of an export or import.
+     */
+    public static class Result {
+
+        /** Number of files written or read. */
+        public final int files;
+        /** Number of units written or keys changed. */
+        public final int units;
+        /** Number of languages exported or changed. */
+        public final int languages;
+        /** Units that were left out or not imported, with the reason. */
+        public final List<String> problems;
+
+        Result(int files, int units, int languages, List<String> problems) {
+            this.files = files;
+            this.units = units;
+            this.languages = languages;
+            this.problems = problems;
+        }
+    }
+
+    /**
+     * A changed unit found by an import.
+     */
+    private static class Change {
+
+        final LanguageProperties language;
+        final String key;
+        /** The new text or null if unchanged. */
+        final String text;
+        /** The new comment or null if unchanged. */
+        final String comment;
+
+        Change(LanguageProperties language, String key, String text, String comment) {
+            this.language = language;
+            this.key = key;
+            this.text = text;
+            this.comment = comment;
+        }
+    }
+
+    /**
+     * @param project The project whose languages are exported or changed.
+     */
+    public XliffExchange(LanguageTreeProject project) {
+        this.project = project;
+    }
+
+    /**
+     * Writes one XLIFF file for each language that has a parent. Existing
+     * files are overwritten.
+     *
+     * @param directory The directory of the files.
+     * @param version The XLIFF version.
+     * @return The outcome.
+     * @throws IOException If a file cannot be written.
+     */
+    public Result export(File directory, Version version) throws IOException {
+        Map<LanguageProperties, LanguageProperties> parents = getParents();
+        // parse the languages in the background while writing the first ones
+        project.prefetch(parents.keySet());
+        List<String> problems = new ArrayList<String>();
+        int units = 0;
+        for (Map.Entry<LanguageProperties, LanguageProperties> entry : parents.entrySet()) {
+            File file = new File(directory, entry.getKey().toFileName() + Extension);
+            units += write(file, entry.getValue(), entry.getKey(), version, problems);
+        }
+        return new Result(parents.size(), units, parents.size(), problems);
+    }
+
+    /**
+     * Reads translated XLIFF files (both versions) and changes the keys whose
+     * target or translator note differs from the language. Nothing is changed
+     * if a file cannot be read.
+     *
+     * @param files The files.
+     * @return The outcome.
+     * @throws IOException If a file cannot be read or is no valid XML.
+     */
+    public Result importFiles(Collection<File> files) throws IOException {
+        Map<LanguageProperties, LanguageProperties> parents = getParents();
+        List<String> problems = new ArrayList<String>();
+        List<Change> changes = new ArrayList<Change>();
+        for (File file : files) {
+            read(file, parents, changes, problems);
+        }
+
+        EditJournal journal = project.getJournal();
+        Map<LanguageProperties, Boolean> changed = new IdentityHashMap<LanguageProperties, Boolean>();
+        journal.begin();
+        try {
+            for (Change change : changes) {
+                if (change.text != null) {
+                    change.language.putKeyText(change.key, change.text);
+                }
+                if (change.comment != null) {
+                    change.language.putKeyComment(change.key, change.comment);
+                }
+                changed.put(change.language, Boolean.TRUE);
+            }
+        } finally {
+            journal.end();
+        }
+        return new Result(files.size(), changes.size(), changed.size(), problems);
+    }
+
+    /**
+     * Internal function! The languages that have a parent, in the order of the
+     * tree.
+     *
+     * @return The parent of each language, empty if no project is open.
+     */
+    private Map<LanguageProperties, LanguageProperties> getParents() {
+        Map<LanguageProperties, LanguageProperties> parents = new LinkedHashMap<LanguageProperties, LanguageProperties>();
+        TreeNode<LanguageProperties> root = project.getRoot();
+        if (root == null) {
+            return parents;
+        }
+        TreeNode<LanguageProperties> master = LanguageTreeManager.getMasterNode(root);
+        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+            if (node != root && node != master) {
+                TreeNode<LanguageProperties> parent = node.getParent() == root ? master : node.getParent();
+                if (parent != null) {
+                    parents.put(node.getData(), parent.getData());
+                }
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * Internal function! Writes the file of one language.
+     *
+     * @param file The file.
+     * @param source The parent language.
+     * @param target The language.
+     * @param version The XLIFF version.
+     * @param problems Receives the units that were left out.
+     * @return The number of units written.
+     * @throws IOException If the file cannot be written.
+     */
+    private int write(File file, LanguageProperties source, LanguageProperties target, Version version, List<String> problems) throws IOException {
+        boolean v20 = version == Version.Xliff20;
+        int units = 0;
+        Writer out = ChannelWriter.open(new FileOutputStream(file), "UTF-8", Settings.SAVE_FSYNC);
+        try {
+            XMLStreamWriter writer = OutputFactory.createXMLStreamWriter(out);
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("xliff");
+            writer.writeDefaultNamespace(v20 ? Namespace20 : Namespace12);
+            writer.writeAttribute("version", v20 ? "2.0" : "1.2");
+            if (v20) {
+                writer.writeAttribute("srcLang", getCode(source));
+                writer.writeAttribute("trgLang", getCode(target));
+            }
+            writer.writeCharacters("\n  ");
+            writer.writeStartElement("file");
+            writer.writeAttribute("original", target.toFileName() + project.getExtension());
+            if (v20) {
+                writer.writeAttribute("id", "f1");
+            } else {
+                writer.writeAttribute("source-language", getCode(source));
+                writer.writeAttribute("target-language", getCode(target));
+                writer.writeAttribute("datatype", "javapropertyresourcebundle");
+                writer.writeCharacters("\n    ");
+                writer.writeStartElement("body");
+            }
+            String indent = v20 ? "\n    " : "\n      ";
+
+            for (String key : source.getAllTextKeysAsSet()) {
+                String text = source.getKeyText(key);
+                if (text == null) {
+                    continue;
+                }
+                String translation = target.getKeyText(key);
+                String note = source.getKeyComment(key);
+                String translatorNote = target.getKeyComment(key);
+                if (!isAttributeValue(key)) {
+                    problems.add(file.getName() + ": " + key + ": key not possible in XML");
+                    continue;
+                }
+                if (!v20 && (!isContent(text) || !isContent(translation) || !isContent(note) || !isContent(translatorNote))) {
+                    problems.add(file.getName() + ": " + key + ": characters not possible in XLIFF 1.2");
+                    continue;
+                }
+                units++;
+                writer.writeCharacters(indent);
+                if (v20) {
+                    writer.writeStartElement("unit");
+                    writer.writeAttribute("id", "u" + units);
+                    writer.writeAttribute("name", key);
+                    writer.writeAttribute("xml", XmlNamespace, "space", "preserve");
+                    if (note != null || translatorNote != null) {
+                        writer.writeCharacters(indent + "  ");
+                        writer.writeStartElement("notes");
+                        writeNote(writer, indent + "    ", "category", "developer", note);
+                        writeNote(writer, indent + "    ", "category", "translator", translatorNote);
+                        writer.writeCharacters(indent + "  ");
+                        writer.writeEndElement();
+                    }
+                    writer.writeCharacters(indent + "  ");
+                    writer.writeStartElement("segment");
+                    writer.writeAttribute("state", translation == null ? "initial" : "translated");
+                    writeElement(writer, indent + "    ", "source", text);
+                    writeElement(writer, indent + "    ", "target", translation);
+                    writer.writeCharacters(indent + "  ");
+                    writer.writeEndElement();
+                } else {
+                    writer.writeStartElement("trans-unit");
+                    writer.writeAttribute("id", key);
+                    writer.writeAttribute("resname", key);
+                    writer.writeAttribute("xml", XmlNamespace, "space", "preserve");
+                    writeElement(writer, indent + "  ", "source", text);
+                    if (translation != null) {
+                        writer.writeCharacters(indent + "  ");
+                        writer.writeStartElement("target");
+                        writer.writeAttribute("state", "translated");
+                        writeText(writer, translation);
+                        writer.writeEndElement();
+                    }
+                    writeNote(writer, indent + "  ", "from", "developer", note);
+                    writeNote(writer, indent + "  ", "from", "translator", translatorNote);
+                }
+                writer.writeCharacters(indent);
+                writer.writeEndElement();
+            }
+
+            if (!v20) {
+                writer.writeCharacters("\n    ");
+                writer.writeEndElement();
+            }
+            writer.writeCharacters("\n  ");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        } finally {
+            out.close();
+        }
+        return units;
+    }
+
+    /**
+     * Internal function! Writes an element with text content on a new line,
+     * if there is a text.
+     *
+     * @param writer The writer.
+     * @param indent The line break and indentation.
+     * @param name The name of the element.
+     * @param text The text or null.
+     * @throws XMLStreamException If writing fails.
+     */
+    private static void writeElement(XMLStreamWriter writer, String indent, String name, String text) throws XMLStreamException {
+        if (text != null) {
+            writer.writeCharacters(indent);
+            writer.writeStartElement(name);
+            writeText(writer, text);
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Internal function! Writes a note on a new line, if there is a text.
+     *
+     * @param writer The writer.
+     * @param indent The line break and indentation.
+     * @param attribute The attribute for the author (from or category).
+     * @param author The author (developer or translator).
+     * @param text The text or null.
+     * @throws XMLStreamException If writing fails.
+     */
+    private static void writeNote(XMLStreamWriter writer, String indent, String attribute, String author, String text) throws XMLStreamException {
+        if (text != null && text.length() > 0) {
+            writer.writeCharacters(indent);
+            writer.writeStartElement("note");
+            writer.writeAttribute(attribute, author);
+            writeText(writer, text);
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Internal function! Writes a text as content. Carriage returns are
+     * written as character references, otherwise they would be read as line
+     * feeds. Characters that XML cannot contain are written as cp elements.
+     *
+     * @param writer The writer.
+     * @param text The text.
+     * @throws XMLStreamException If writing fails.
+     */
+    private static void writeText(XMLStreamWriter writer, String text) throws XMLStreamException {
+        int start = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean valid = isXmlCharacter(text, i);
+            if (c != '\r' && valid) {
+                continue;
+            }
+            if (i > start) {
+                writer.writeCharacters(text.substring(start, i));
+            }
+            if (valid) {
+                writer.writeEntityRef("#13");
+            } else {
+                writer.writeEmptyElement("cp");
+                writer.writeAttribute("hex", Integer.toHexString(c).toUpperCase(Locale.ENGLISH));
+            }
+            start = i + 1;
+        }
+        if (start < length) {
+            writer.writeCharacters(text.substring(start));
+        }
+    }
+
+    /**
+     * Internal function! Reads a translated file.
+     *
+     * @param file The file.
+     * @param parents The parent of each language.
+     * @param changes Receives the changed units.
+     * @param problems Receives the units that cannot be imported.
+     * @throws IOException If the file cannot be read or is no valid XML.
+     */
+    private void read(File file, Map<LanguageProperties, LanguageProperties> parents, List<Change> changes, List<String> problems) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        try {
+            XMLStreamReader reader = InputFactory.createXMLStreamReader(in);
+            String targetLanguage = null;
+            LanguageProperties language = null;
+            String key = null;
+            StringBuilder target = null;
+            String note = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (("trans-unit".equals(name) || "unit".equals(name)) && language != null && key != null) {
+                        unitRead(file, language, parents.get(language), key, target, note, changes, problems);
+                    }
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                if ("xliff".equals(name)) {
+                    targetLanguage = reader.getAttributeValue(null, "trgLang");
+                } else if ("file".equals(name)) {
+                    String code = reader.getAttributeValue(null, "target-language");
+                    language = findLanguage(parents, reader.getAttributeValue(null, "original"), code == null ? targetLanguage : code);
+                    if (language == null) {
+                        problems.add(file.getName() + ": no language for " + reader.getAttributeValue(null, "original"));
+                    }
+                } else if ("trans-unit".equals(name) || "unit".equals(name)) {
+                    key = reader.getAttributeValue(null, "resname");
+                    if (key == null) {
+                        key = reader.getAttributeValue(null, "name");
+                    }
+                    if (key == null) {
+                        key = reader.getAttributeValue(null, "id");
+                    }
+                    target = null;
+                    note = null;
+                } else if ("target".equals(name)) {
+                    // the targets of all segments of a unit
+                    String text = readText(reader);
+                    target = target == null ? new StringBuilder(text) : target.append(text);
+                } else if ("note".equals(name)) {
+                    String author = reader.getAttributeValue(null, "from");
+                    if (author == null) {
+                        author = reader.getAttributeValue(null, "category");
+                    }
+                    String text = readText(reader);
+                    if ("translator".equals(author)) {
+                        note = text;
+                    }
+                } else if ("source".equals(name) || "alt-trans".equals(name)) {
+                    // sources and suggestions are not imported
+                    readText(reader);
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(file.getName() + ": " + ex.getMessage(), ex);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Internal function! Compares a unit with the language and records the
+     * change, if there is one.
+     *
+     * @param file The file.
+     * @param language The language.
+     * @param parent The parent language.
+     * @param key The key.
+     * @param target The target or null if there is none.
+     * @param note The translator note or null if there is none.
+     * @param changes Receives the change.
+     * @param problems Receives the reason if the unit cannot be imported.
+     */
+    private static void unitRead(File file, LanguageProperties language, LanguageProperties parent, String key, StringBuilder target,
+            String note, List<Change> changes, List<String> problems) {
+        if (target == null || target.length() == 0) {
+            // not translated
+            return;
+        }
+        if (key.endsWith(LanguageProperties.getCommentSuffix()) || parent.getKeyText(key) == null) {
+            problems.add(file.getName() + ": " + key + ": no such key");
+            return;
+        }
+        String text = target.toString();
+        if (text.equals(language.getKeyText(key))) {
+            text = null;
+        }
+        String comment = language.getKeyComment(key);
+        if (note == null || note.equals(comment == null ? "" : comment)) {
+            note = null;
+        }
+        if (text != null || note != null) {
+            changes.add(new Change(language, key, text, note));
+        }
+    }
+
+    /**
+     * Internal function! Reads the text of the current element up to its
+     * end. The text of inline elements is taken, cp elements are replaced by
+     * their character.
+     *
+     * @param reader The reader at the start of the element.
+     * @return The text.
+     * @throws XMLStreamException If the file is no valid XML.
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if ("cp".equals(reader.getLocalName())) {
+                    try {
+                        text.appendCodePoint(Integer.parseInt(reader.getAttributeValue(null, "hex"), 16));
+                    } catch (RuntimeException ex) {
+                        throw new XMLStreamException("invalid cp element", reader.getLocation());
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Internal function! Finds the language of a file, preferably by the file
+     * name.
+     *
+     * @param parents The languages that can be imported.
+     * @param original The original file name or null.
+     * @param code The target language code or null.
+     * @return The language or null.
+     */
+    private LanguageProperties findLanguage(Map<LanguageProperties, LanguageProperties> parents, String original, String code) {
+        if (original != null) {
+            for (LanguageProperties language : parents.keySet()) {
+                if (original.equals(language.toFileName() + project.getExtension()) || original.equals(language.toFileName())) {
+                    return language;
+                }
+            }
+        }
+        if (code != null) {
+            for (LanguageProperties language : parents.keySet()) {
+                if (code.replace('_', '-').equalsIgnoreCase(getCode(language))) {
+                    return language;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Internal function! The language code in the form of XML (BCP 47), e.g.
+     * de-AT, und for the language without codes.
+     *
+     * @param language The language.
+     * @return The code.
+     */
+    private static String getCode(LanguageProperties language) {
+        if (language.getLanguage() == null) {
+            return "und";
+        }
+        StringBuilder code = new StringBuilder(language.getLanguage());
+        if (language.getCountry() != null) {
+            code.append('-').append(language.getCountry());
+        }
+        if (language.getVariant() != null) {
+            code.append('-').append(language.getVariant());
+        }
+        return code.toString();
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param text A text or null.
+     * @return True if the text can be the content of an XML element without
+     * cp elements.
+     */
+    private static boolean isContent(String text) {
+        if (text != null) {
+            for (int i = 0; i < text.length(); i++) {
+                if (!isXmlCharacter(text, i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param text A text.
+     * @return True if the text is kept as attribute value, i.e. contains no
+     * characters that XML cannot contain or normalizes to a space.
+     */
+    private static boolean isAttributeValue(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\t' || c == '\n' || c == '\r' || !isXmlCharacter(text, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Internal function! Tests a character against the characters allowed in
+     * XML 1.0, surrogates are allowed as pairs only.
+     *
+     * @param text A text.
+     * @param i The index of the character.
+     * @return True if the character can be part of an XML document.
+     */
+    private static boolean isXmlCharacter(String text, int i) {
+        char c = text.charAt(i);
+        if (c < 0x20) {
+            return c == '\t' || c == '\n' || c == '\r';
+        }
+        if (Character.isHighSurrogate(c)) {
+            return i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1));
+        }
+        if (Character.isLowSurrogate(c)) {
+            return i > 0 && Character.isHighSurrogate(text.charAt(i - 1));
+        }
+        return c != 0xFFFE && c != 0xFFFF;
+    }
+}
@@ -14,7 +14,9 @@
  */
 package org.jlokalize.ui;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
@@ -26,11 +28,17 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import javax.imageio.ImageIO;
 import javax.swing.GroupLayout;
@@ -40,6 +48,7 @@ import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
@@ -58,16 +67,25 @@ import javax.swing.LayoutStyle.ComponentPlacement;
 import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.ToolTipManager;
 import javax.swing.WindowConstants;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 
+import org.jlokalize.AutosaveJournal;
+import org.jlokalize.CommittedChanges;
 import org.jlokalize.KeyEntry;
+import org.jlokalize.KeyRefactoring;
 import org.jlokalize.KeysTableModel;
 import org.jlokalize.KeysTableRenderer;
 import org.jlokalize.LanguageProperties;
@@ -75,7 +93,12 @@ import org.jlokalize.LanguageTreeManager;
 import org.jlokalize.LanguageTreeModel;
 import org.jlokalize.LanguageTreeProject;
 import org.jlokalize.LanguageTreeRenderer;
+import org.jlokalize.ProjectWatcher;
+import org.jlokalize.XliffExchange;
 import org.jlokalize.Main;
+import org.jlokalize.SearchHit;
+import org.jlokalize.TranslationMemory;
+import org.jlokalize.Workspace;
 import org.jlokalize.SpellCheckerIntegration;
 import org.tools.common.CentralStatic;
 import org.tools.common.CommonUtils;
@@ -102,6 +125,25 @@ public class EditorFrame extends JFrame {
     private final List<String> lastOpened = new LinkedList<String>();
     /** Everything project specific, only one at a time. */
     private final LanguageTreeProject project = new LanguageTreeProject();
+    /** Search menu item, not part of the gui builder form. */
+    private final JMenuItem searchMenuItem = new JMenuItem();
+    /** Open workspace menu item, not part of the gui builder form. */
+    private final JMenuItem openWorkspaceMenuItem = new JMenuItem();
+    private final JMenuItem exportXliffMenuItem = new JMenuItem();
+    private final JMenuItem importXliffMenuItem = new JMenuItem();
+    /** Edit menu with undo, redo and the operations on all languages, not part of the gui builder form. */
+    private final JMenu editMenu = new JMenu();
+    private final JMenuItem undoMenuItem = new JMenuItem();
+    private final JMenuItem redoMenuItem = new JMenuItem();
+    private final JMenuItem deleteAllMenuItem = new JMenuItem();
+    private final JMenuItem renameAllMenuItem = new JMenuItem();
+    private final JMenuItem renameMatchingMenuItem = new JMenuItem();
+    /** The search dialog, created on first use. */
+    private SearchDlg searchDialog;
+    /** Filter above the keys table, not part of the gui builder form. */
+    private KeysFilterPanel keysFilterPanel;
+    /** Translation memory matches below the comments, not part of the gui builder form. */
+    private TranslationMemoryPanel translationMemoryPanel;
 
     /**
      * Initializes a new main editor frame. Populates the frame. Implements the
@@ -112,6 +154,105 @@ public class EditorFrame extends JFrame {
         initComponents();
         // everything that is not covered by the gui builder function, follows now
 
+        // search menu item, inserted in the file menu before the separator
+        searchMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_MASK));
+        searchMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                searchMenuItemActionPerformed(evt);
+            }
+        });
+        fileMenu.insert(searchMenuItem, fileMenu.getPopupMenu().getComponentIndex(fileMenuSeparator));
+
+        // open a bundle of a directory tree, inserted after the open item
+        openWorkspaceMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                openWorkspaceAction();
+            }
+        });
+        fileMenu.insert(openWorkspaceMenuItem, fileMenu.getPopupMenu().getComponentIndex(openMenuItem) + 1);
+
+        // exchange with translators, also before the separator
+        exportXliffMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                exportXliffAction();
+            }
+        });
+        importXliffMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                importXliffAction();
+            }
+        });
+        fileMenu.insert(exportXliffMenuItem, fileMenu.getPopupMenu().getComponentIndex(fileMenuSeparator));
+        fileMenu.insert(importXliffMenuItem, fileMenu.getPopupMenu().getComponentIndex(fileMenuSeparator));
+
+        // edit menu, inserted after the file menu
+        undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_MASK));
+        undoMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                undoRedoAction(true);
+            }
+        });
+        redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_MASK));
+        redoMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                undoRedoAction(false);
+            }
+        });
+        deleteAllMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                deleteAllAction();
+            }
+        });
+        renameAllMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                renameAllAction();
+            }
+        });
+        renameMatchingMenuItem.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent evt) {
+                renameMatchingAction();
+            }
+        });
+        editMenu.add(undoMenuItem);
+        editMenu.add(redoMenuItem);
+        editMenu.addSeparator();
+        editMenu.add(deleteAllMenuItem);
+        editMenu.add(renameAllMenuItem);
+        editMenu.add(renameMatchingMenuItem);
+        menuBar.add(editMenu, menuBar.getComponentIndex(fileMenu) + 1);
+
+        // filter panel above the keys table panel
+        keysFilterPanel = new KeysFilterPanel(keysTable);
+        JPanel keysPanel = new JPanel(new BorderLayout());
+        keysPanel.add(keysFilterPanel, BorderLayout.NORTH);
+        keysPanel.add(keysTablePanel, BorderLayout.CENTER);
+        leftSideSplitPane.setRightComponent(keysPanel);
+
+        // translation memory panel below the comment panel
+        translationMemoryPanel = new TranslationMemoryPanel(valueTextArea);
+        JPanel commentAndMemoryPanel = new JPanel(new BorderLayout());
+        commentAndMemoryPanel.add(commentPanel, BorderLayout.CENTER);
+        commentAndMemoryPanel.add(translationMemoryPanel, BorderLayout.SOUTH);
+        rightSideSplitPane.setBottomComponent(commentAndMemoryPanel);
+
         // setting window sizes from options
         setPropertiesFromOptions();
 
@@ -122,6 +263,40 @@ public class EditorFrame extends JFrame {
         languageTree.setCellRenderer(new LanguageTreeRenderer());
         languageTree.setModel(new LanguageTreeModel());
         languageTree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+        ToolTipManager.sharedInstance().registerComponent(languageTree);
+
+        // the coverage badges in the language tree follow each change of a key
+        project.getStatistics().addChangeListener(new ChangeListener() {
+
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                languageTree.repaint();
+            }
+        });
+
+        // unsaved changes are recorded for crash recovery
+        AutosaveJournal autosave = CentralStatic.retrieve("autosave-journal");
+        project.setAutosave(autosave);
+        // unchanged files of reopened projects are not parsed again
+        if (CentralStatic.contains("snapshot-directory")) {
+            File snapshots = CentralStatic.retrieve("snapshot-directory");
+            project.setSnapshotDirectory(snapshots);
+        }
+
+        // changes of the files made outside are merged on the event dispatch thread
+        project.setWatchListener(new ProjectWatcher.Listener() {
+
+            @Override
+            public void languageChanged(final ProjectWatcher.Change change) {
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        externalChangeAction(change);
+                    }
+                });
+            }
+        });
 
         // set key table model (with reference to progressbar) and renderer
         keysTable.setDefaultRenderer(String.class, new KeysTableRenderer());
@@ -153,6 +328,9 @@ public class EditorFrame extends JFrame {
 
                         valueTextArea.setEnabled(true);
                         commentTextArea.setEnabled(true);
+
+                        // matches from the translation memory
+                        updateTranslationMemory(entry.key);
                     } else {
                         // no row is selected anymore, just need to clear text areas
                         clearTextAreas();
@@ -915,6 +1093,81 @@ public class EditorFrame extends JFrame {
         }
     }//GEN-LAST:event_openMenuItemActionPerformed
 
+    /**
+     * The open workspace menu item has been clicked. Scans the chosen
+     * directory tree for bundles of language files in the background (the
+     * content of unchanged directories comes from the cache) and lets the
+     * user choose the bundle to open as project.
+     */
+    private void openWorkspaceAction() {
+        JFileChooser chooser = new JFileChooser(Main.options.get("program.open.default.directory"));
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final File directory = chooser.getSelectedFile();
+        Main.options.put("program.open.default.directory", directory.getAbsolutePath());
+
+        // scanning a large tree takes a while, keep the event dispatch thread free
+        final File cache = CentralStatic.contains("workspace-directory") ? CentralStatic.<File>retrieve("workspace-directory") : null;
+        openWorkspaceMenuItem.setEnabled(false);
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<Workspace, Void>() {
+            @Override
+            protected Workspace doInBackground() throws IOException {
+                return Workspace.scan(directory, cache);
+            }
+
+            @Override
+            protected void done() {
+                openWorkspaceMenuItem.setEnabled(true);
+                setCursor(Cursor.getDefaultCursor());
+                Workspace workspace;
+                try {
+                    workspace = get();
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (ExecutionException ex) {
+                    PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+                    JOptionPane.showMessageDialog(EditorFrame.this, ex.getCause().getMessage(), lang.get("error"), JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                chooseWorkspaceBundle(directory, workspace);
+            }
+        }.execute();
+    }
+
+    /**
+     * Internal function! Lets the user choose a bundle of a scanned workspace
+     * and opens its file as project. The workspace is only used to find the
+     * bundles, the project is opened like any other file.
+     *
+     * @param directory The scanned directory.
+     * @param workspace The scanned workspace.
+     */
+    private void chooseWorkspaceBundle(File directory, Workspace workspace) {
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        List<Workspace.Bundle> bundles = workspace.getBundles();
+        if (bundles.isEmpty()) {
+            NotificationFactory.createInfoPane(this, String.format(lang.get("menu.file.openworkspace.empty"), directory.getPath()));
+            return;
+        }
+
+        JList<Workspace.Bundle> list = new JList<Workspace.Bundle>(bundles.toArray(new Workspace.Bundle[bundles.size()]));
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setSelectedIndex(0);
+        list.setVisibleRowCount(20);
+        Object[] message = {String.format(lang.get("menu.file.openworkspace.choose"), bundles.size()), new JScrollPane(list)};
+        int choice = JOptionPane.showConfirmDialog(this, message, lang.get("menu.file.openworkspace.name"), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION || list.getSelectedValue() == null) {
+            return;
+        }
+
+        // if any project is open close it
+        closeMenuItemActionPerformed(null);
+        openProjectAction(list.getSelectedValue().getFile());
+    }
+
     /**
      * Called from the 'Open' menu action or from the last opened action.
      *
@@ -937,6 +1190,10 @@ public class EditorFrame extends JFrame {
         // store in last opened menu and update menu structure
         updateLastOpenedMenu(file);
 
+        // the translations of the project go into the translation memory
+        TranslationMemory memory = CentralStatic.retrieve("translation-memory");
+        memory.addProject(project.getRoot());
+
         // update the language tree
         LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
         langTreeModel.setCurrentNode(project.getRoot());
@@ -949,6 +1206,9 @@ public class EditorFrame extends JFrame {
         saveMenuItem.setEnabled(true);
         saveAsMenuItem.setEnabled(true);
         closeMenuItem.setEnabled(true);
+
+        // mark the keys changed since the last commit
+        compareWithCommit();
     }
 
     /**
@@ -966,7 +1226,12 @@ public class EditorFrame extends JFrame {
             // save current text areas
             saveTextAreas();
 
-            project.save();
+            boolean saved = project.save();
+            compareWithCommit();
+
+            // new translations go into the translation memory
+            TranslationMemory memory = CentralStatic.retrieve("translation-memory");
+            memory.addProject(project.getRoot());
 
             // update display of keys in the table, clear all reverse actions and reselect key still available
             KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
@@ -992,7 +1257,15 @@ public class EditorFrame extends JFrame {
             // notification
             PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
             // JOptionPane.showMessageDialog(this, "Project saved to " + project.getDir().getPath(), "Saving", JOptionPane.INFORMATION_MESSAGE);
-            NotificationFactory.createInfoPane(this, String.format(lang.get("menu.file.save.confirm"), project.getDir().getPath()));
+            if (saved) {
+                NotificationFactory.createInfoPane(this, String.format(lang.get("menu.file.save.confirm"), project.getDir().getPath()));
+            } else {
+                StringBuilder message = new StringBuilder(lang.get("menu.file.save.failed"));
+                for (String file : project.getSaveFailures()) {
+                    message.append('\n').append(file);
+                }
+                JOptionPane.showMessageDialog(this, message.toString(), lang.get("error"), JOptionPane.ERROR_MESSAGE);
+            }
         }
     }//GEN-LAST:event_saveMenuItemActionPerformed
 
@@ -1037,6 +1310,12 @@ public class EditorFrame extends JFrame {
             // reset the project's data
             project.reset();
 
+            // the search dialog shows hits of the old project
+            if (searchDialog != null) {
+                searchDialog.dispose();
+                searchDialog = null;
+            }
+
             // reset the language tree
             LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
             langTreeModel.setCurrentNode(null);
@@ -1169,6 +1448,9 @@ public class EditorFrame extends JFrame {
         TreePath path = evt.getPath();
         langTreeModel.setCurrentNode((TreeNode<LanguageProperties>) path.getLastPathComponent());
 
+        // keeps the shown languages loaded, the ones which are probably selected next are loaded in the background
+        project.setSelectedNode(langTreeModel.getCurrentNode());
+
         // update the keys table
         keysTableModel.update(langTreeModel.getCurrentNode());
 
@@ -1226,6 +1508,7 @@ public class EditorFrame extends JFrame {
                     // and insert as new node
                     LanguageTreeManager.insertLangPropInTree(root, language);
                     LanguageTreeManager.sortTreeForClearNames(root);
+                    project.languagesChanged();
 
                     // invalidate selection (since the current node could have been selected and could have been overwritten and then root would be lost in the model...
                     languageTree.setSelectionRow(0);
@@ -1339,6 +1622,7 @@ public class EditorFrame extends JFrame {
         if (current.getParent() == root || current == root) {
             // set the new master node
             LanguageTreeManager.setMasterNode(root, current);
+            project.languagesChanged();
 
             // tell the model that it has changed (basically a new rendering necessary)
             langTreeModel.structureChanged();
@@ -1455,6 +1739,7 @@ public class EditorFrame extends JFrame {
                 // remove from the language tree
 
                 if (LanguageTreeManager.removeNodeFromTree(node) == true) {
+                    project.languagesChanged();
                     // the current node is not valid anymore in the lang model, deselect it, set it to root and update the structure
                     languageTree.setSelectionRow(0);
                     LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
@@ -1500,6 +1785,394 @@ public class EditorFrame extends JFrame {
         commentTextArea.setText(defaultCommentTextArea.getText());
     }//GEN-LAST:event_useDefaultCommentButtonActionPerformed
 
+    /**
+     * The search menu item has been clicked. Display the search dialog.
+     *
+     * @param evt The event.
+     */
+    private void searchMenuItemActionPerformed(ActionEvent evt) {
+        if (project.getRoot() == null) {
+            return;
+        }
+        // only loaded languages are indexed, the dialog tells how many are not searched
+        if (searchDialog == null) {
+            searchDialog = new SearchDlg(this, project);
+        }
+        searchDialog.showDialog();
+    }
+
+    /**
+     * Called at startup if the autosave journal contains changes from a crash.
+     * Asks whether they should be restored, if so opens the project and
+     * applies them (they are not saved yet).
+     *
+     * @param recovery The recorded changes.
+     * @return True if the project was opened with the changes.
+     */
+    public boolean recoverProject(AutosaveJournal.Recovery recovery) {
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        String message = String.format(lang.get("autosave.recover"), recovery.size(), recovery.project.getName());
+        int confirm = JOptionPane.showConfirmDialog(this, message, lang.get("autosave.recover.title"), JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+        if (confirm != JOptionPane.YES_OPTION || !recovery.project.isFile()) {
+            AutosaveJournal autosave = CentralStatic.retrieve("autosave-journal");
+            autosave.stop();
+            return false;
+        }
+        openProjectAction(recovery.project);
+        if (project.getRoot() == null) {
+            return false;
+        }
+        int applied = recovery.applyTo(project);
+
+        // languages may have been created, show everything again
+        LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
+        langTreeModel.structureChanged();
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        keysTableModel.update(langTreeModel.getCurrentNode());
+        NotificationFactory.createInfoPane(this, String.format(lang.get("autosave.recovered"), applied));
+        return true;
+    }
+
+    /**
+     * Undoes or redoes the last change of keys in any language. The text being
+     * edited is stored before, it is a change of its own. Only the rows of the
+     * changed keys are updated, afterwards the changed key (or the previously
+     * selected key) is selected again to show its restored text.
+     *
+     * @param undo True for undo, false for redo.
+     */
+    private void undoRedoAction(boolean undo) {
+        if (project.getRoot() == null) {
+            return;
+        }
+        saveTextAreas();
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        int row = keysTable.getSelectedRow();
+        String selectedKey = row != -1 ? keysTableModel.getKey(row) : null;
+
+        Set<String> keys = undo ? project.getJournal().undo() : project.getJournal().redo();
+        if (keys.isEmpty()) {
+            return;
+        }
+        keysTableModel.refreshKeys(keys);
+
+        // select again, so that the text areas are filled with the restored state
+        String key = keys.size() == 1 ? keys.iterator().next() : selectedKey;
+        row = key != null ? keysTableModel.getRow(key) : -1;
+        keysTable.clearSelection();
+        if (row != -1) {
+            keysTable.setRowSelectionInterval(row, row);
+            keysTable.scrollRectToVisible(new Rectangle(keysTable.getCellRect(row, 0, true)));
+        }
+        keysTable.getColumnModel().getColumn(0).setHeaderValue(keysTableModel.getColumnName(0));
+        keysTable.getTableHeader().resizeAndRepaint();
+    }
+
+    /**
+     * Deletes the key of the selected row in all languages, after a
+     * confirmation.
+     */
+    private void deleteAllAction() {
+        int row = keysTable.getSelectedRow();
+        if (project.getRoot() == null || row == -1) {
+            return;
+        }
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        String key = keysTableModel.getKey(row);
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        int confirm = JOptionPane.showConfirmDialog(this, String.format(lang.get("menu.edit.deleteall.confirm"), key), lang.get("menu.edit.deleteall.name"), JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (confirm == JOptionPane.YES_OPTION) {
+            saveTextAreas();
+            refactoringDone(new KeyRefactoring(project).delete(Collections.singleton(key)), null);
+        }
+    }
+
+    /**
+     * Renames the key of the selected row in all languages.
+     */
+    private void renameAllAction() {
+        int row = keysTable.getSelectedRow();
+        if (project.getRoot() == null || row == -1) {
+            return;
+        }
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        String oldKey = keysTableModel.getKey(row);
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        String newKey = JOptionPane.showInputDialog(this, lang.get("button.newkey.newkey"), oldKey);
+        if (newKey != null && !newKey.equals(oldKey)) {
+            saveTextAreas();
+            refactoringDone(new KeyRefactoring(project).rename(Collections.singletonMap(oldKey, newKey)), newKey);
+        }
+    }
+
+    /**
+     * Renames all keys matching a regular expression in all languages, e.g.
+     * to move keys to another namespace.
+     */
+    private void renameMatchingAction() {
+        if (project.getRoot() == null) {
+            return;
+        }
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        String title = lang.get("menu.edit.renamematching.name");
+        String expression = JOptionPane.showInputDialog(this, lang.get("menu.edit.renamematching.pattern"), title, JOptionPane.QUESTION_MESSAGE);
+        if (expression == null || expression.length() == 0) {
+            return;
+        }
+        String replacement = JOptionPane.showInputDialog(this, lang.get("menu.edit.renamematching.replacement"), title, JOptionPane.QUESTION_MESSAGE);
+        if (replacement == null) {
+            return;
+        }
+        KeyRefactoring.Result result;
+        try {
+            saveTextAreas();
+            result = new KeyRefactoring(project).renameMatching(Pattern.compile(expression), replacement);
+        } catch (IllegalArgumentException ex) {
+            // invalid pattern or replacement
+            JOptionPane.showMessageDialog(this, ex.getMessage(), lang.get("error"), JOptionPane.ERROR_MESSAGE);
+            return;
+        } catch (IndexOutOfBoundsException ex) {
+            // replacement refers to a missing group
+            JOptionPane.showMessageDialog(this, ex.getMessage(), lang.get("error"), JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        refactoringDone(result, null);
+    }
+
+    /**
+     * Internal function! Shows the outcome of an operation on all languages
+     * and updates the keys table once.
+     *
+     * @param result The outcome.
+     * @param selectKey The key to select afterwards or null.
+     */
+    private void refactoringDone(KeyRefactoring.Result result, String selectKey) {
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        if (!result.isApplied()) {
+            // at most a screen full
+            int shown = Math.min(result.conflicts.size(), 20);
+            StringBuilder message = new StringBuilder(lang.get("menu.edit.conflicts"));
+            for (String conflict : result.conflicts.subList(0, shown)) {
+                message.append('\n').append(conflict);
+            }
+            if (shown < result.conflicts.size()) {
+                message.append("\n...");
+            }
+            JOptionPane.showMessageDialog(this, message.toString(), lang.get("error"), JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        keysTableModel.update(langTreeModel.getCurrentNode());
+        valueTextArea.setText(null);
+        defaultValueTextArea.setText(null);
+        int row = selectKey != null ? keysTableModel.getRow(selectKey) : -1;
+        if (row != -1) {
+            keysTable.setRowSelectionInterval(row, row);
+            keysTable.scrollRectToVisible(new Rectangle(keysTable.getCellRect(row, 0, true)));
+        }
+        NotificationFactory.createInfoPane(this, String.format(lang.get("menu.edit.changed"), result.keys, result.languages));
+    }
+
+    /**
+     * Exports the languages to XLIFF files in a directory, for translators.
+     */
+    private void exportXliffAction() {
+        if (project.getRoot() == null) {
+            return;
+        }
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        JFileChooser chooser = new JFileChooser(Main.options.get("program.open.default.directory"));
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Object[] versions = {"XLIFF 1.2", "XLIFF 2.0"};
+        int choice = JOptionPane.showOptionDialog(this, lang.get("menu.file.exportxliff.version"), lang.get("menu.file.exportxliff.name"),
+                JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, versions, versions[1]);
+        if (choice == JOptionPane.CLOSED_OPTION) {
+            return;
+        }
+        // edits in the text areas are exported as well
+        saveTextAreas();
+        File directory = chooser.getSelectedFile();
+        XliffExchange.Result result;
+        try {
+            result = new XliffExchange(project).export(directory, choice == 0 ? XliffExchange.Version.Xliff12 : XliffExchange.Version.Xliff20);
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, null, ex);
+            JOptionPane.showMessageDialog(this, ex.getMessage(), lang.get("error"), JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        xliffDone(result, String.format(lang.get("menu.file.exportxliff.done"), result.languages, result.units, directory.getPath()));
+    }
+
+    /**
+     * Imports translated XLIFF files, only keys with other texts or comments
+     * are changed.
+     */
+    private void importXliffAction() {
+        if (project.getRoot() == null) {
+            return;
+        }
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        JFileChooser chooser = new JFileChooser(Main.options.get("program.open.default.directory"));
+        chooser.setFileFilter(new FileNameExtensionFilter("XLIFF (*.xlf, *.xliff)", "xlf", "xliff"));
+        chooser.setMultiSelectionEnabled(true);
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        saveTextAreas();
+        XliffExchange.Result result;
+        try {
+            result = new XliffExchange(project).importFiles(Arrays.asList(chooser.getSelectedFiles()));
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, null, ex);
+            JOptionPane.showMessageDialog(this, ex.getMessage(), lang.get("error"), JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        keysTableModel.update(langTreeModel.getCurrentNode());
+        valueTextArea.setText(null);
+        defaultValueTextArea.setText(null);
+        xliffDone(result, String.format(lang.get("menu.file.importxliff.done"), result.units, result.languages));
+    }
+
+    /**
+     * Internal function! Shows the outcome of an export or import, with the
+     * units that were left out if there are any.
+     *
+     * @param result The outcome.
+     * @param message The message about the outcome.
+     */
+    private void xliffDone(XliffExchange.Result result, String message) {
+        if (result.problems.isEmpty()) {
+            NotificationFactory.createInfoPane(this, message);
+            return;
+        }
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        // at most a screen full
+        int shown = Math.min(result.problems.size(), 20);
+        StringBuilder text = new StringBuilder(message).append("\n\n").append(lang.get("menu.file.xliff.problems"));
+        for (String problem : result.problems.subList(0, shown)) {
+            text.append('\n').append(problem);
+        }
+        if (shown < result.problems.size()) {
+            text.append("\n...");
+        }
+        JOptionPane.showMessageDialog(this, text.toString(), lang.get("menu.file.name"), JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * The file of a language was changed outside. Merges the new content and
+     * shows the keys table again, if conflicting unsaved modifications were
+     * kept they are listed.
+     *
+     * @param change The change detected by the watcher.
+     */
+    private void externalChangeAction(ProjectWatcher.Change change) {
+        if (project.getRoot() == null) {
+            return;
+        }
+        // edits in the text areas count as unsaved modifications
+        saveTextAreas();
+        Set<String> keys = change.apply();
+        if (keys.isEmpty()) {
+            return;
+        }
+        compareWithCommit();
+
+        LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        int row = keysTable.getSelectedRow();
+        String selectedKey = row != -1 ? keysTableModel.getKey(row) : null;
+        keysTableModel.update(langTreeModel.getCurrentNode());
+        row = selectedKey != null ? keysTableModel.getRow(selectedKey) : -1;
+        if (row != -1) {
+            keysTable.setRowSelectionInterval(row, row);
+            keysTable.scrollRectToVisible(new Rectangle(keysTable.getCellRect(row, 0, true)));
+        }
+
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        String name = change.getLanguage().toFileName();
+        if (change.getConflicts().isEmpty()) {
+            NotificationFactory.createInfoPane(this, String.format(lang.get("watcher.changed"), name, keys.size()));
+            return;
+        }
+        // at most a screen full
+        int shown = Math.min(change.getConflicts().size(), 20);
+        StringBuilder message = new StringBuilder(String.format(lang.get("watcher.conflicts"), name));
+        int i = 0;
+        for (String key : change.getConflicts()) {
+            if (i++ == shown) {
+                message.append("\n...");
+                break;
+            }
+            message.append('\n').append(key);
+        }
+        JOptionPane.showMessageDialog(this, message.toString(), lang.get("watcher.conflicts.title"), JOptionPane.WARNING_MESSAGE);
+    }
+
+    /**
+     * Compares the saved files of the project with the last commit of their
+     * git repository in the background and shows the changed keys in the
+     * keys table when done.
+     */
+    private void compareWithCommit() {
+        final TreeNode<LanguageProperties> root = project.getRoot();
+        if (root == null) {
+            return;
+        }
+        List<LanguageProperties> languages = new ArrayList<LanguageProperties>();
+        for (TreeNode<LanguageProperties> node : root.subTreeNodesList()) {
+            languages.add(node.getData());
+        }
+        CommittedChanges.detect(languages, new CommittedChanges.Listener() {
+
+            @Override
+            public void detected(final CommittedChanges changes) {
+                SwingUtilities.invokeLater(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        // the project may have been closed or another one opened meanwhile
+                        if (project.getRoot() == root) {
+                            changes.apply();
+                            keysTable.repaint();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called from the search dialog. Selects the language of the hit in the
+     * language tree and the key in the keys table.
+     *
+     * @param hit The search hit to display.
+     */
+    void showSearchHit(SearchHit hit) {
+        if (project.getRoot() == null) {
+            return;
+        }
+        for (TreeNode<LanguageProperties> node : project.getRoot().subTreeNodesList()) {
+            if (node.getData() == hit.language) {
+                languageTree.setSelectionPath(TreeNode.getPathFor(node));
+                KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+                int row = keysTableModel.getRow(hit.key);
+                if (row != -1) {
+                    keysTable.setRowSelectionInterval(row, row);
+                    keysTable.scrollRectToVisible(new Rectangle(keysTable.getCellRect(row, 0, true)));
+                }
+                return;
+            }
+        }
+    }
+
     /**
      * Internal function:
      * Either before the row selection of the keys table changes, or before the
@@ -1521,6 +2194,26 @@ public class EditorFrame extends JFrame {
         keysTable.getTableHeader().resizeAndRepaint();
     }
 
+    /**
+     * Internal function:
+     * Shows the translation memory matches for the master text of a key in the
+     * language of the current node. Nothing is shown for the master and the root.
+     *
+     * @param key The selected key.
+     */
+    private void updateTranslationMemory(String key) {
+        LanguageTreeModel langTreeModel = (LanguageTreeModel) languageTree.getModel();
+        TreeNode<LanguageProperties> current = langTreeModel.getCurrentNode();
+        TreeNode<LanguageProperties> master = project.getRoot() != null ? LanguageTreeManager.getMasterNode(project.getRoot()) : null;
+        String locale = current != null ? TranslationMemory.localeOf(current.getData()) : null;
+        if (master == null || current == master || locale == null) {
+            translationMemoryPanel.setMatches(null);
+            return;
+        }
+        TranslationMemory memory = CentralStatic.retrieve("translation-memory");
+        translationMemoryPanel.setMatches(memory.find(locale, master.getData().getKeyText(key), current.getData().getKeyText(key), 5));
+    }
+
     /**
      * Internal function:
      * If either a key is removed, renamed or added, nothing is selected initially
@@ -1534,6 +2227,8 @@ public class EditorFrame extends JFrame {
         defaultCommentTextArea.setText(null);
         commentTextArea.setText(null);
         commentTextArea.setEnabled(false);
+
+        translationMemoryPanel.setMatches(null);
     }
 
     /**
@@ -1602,10 +2297,20 @@ public class EditorFrame extends JFrame {
         fileMenu.setText(lang.get("menu.file.name"));
         newMenuItem.setText(lang.get("menu.file.new.name"));
         openMenuItem.setText(lang.get("menu.file.open.name"));
+        openWorkspaceMenuItem.setText(lang.get("menu.file.openworkspace.name"));
         lastOpenedMenu.setText(lang.get("menu.file.lastopened.name"));
         saveMenuItem.setText(lang.get("menu.file.save.name"));
         saveAsMenuItem.setText(lang.get("menu.file.saveas.name"));
         closeMenuItem.setText(lang.get("menu.file.close.name"));
+        searchMenuItem.setText(lang.get("menu.file.search.name"));
+        exportXliffMenuItem.setText(lang.get("menu.file.exportxliff.name"));
+        importXliffMenuItem.setText(lang.get("menu.file.importxliff.name"));
+        editMenu.setText(lang.get("menu.edit.name"));
+        undoMenuItem.setText(lang.get("menu.edit.undo.name"));
+        redoMenuItem.setText(lang.get("menu.edit.redo.name"));
+        deleteAllMenuItem.setText(lang.get("menu.edit.deleteall.name"));
+        renameAllMenuItem.setText(lang.get("menu.edit.renameall.name"));
+        renameMatchingMenuItem.setText(lang.get("menu.edit.renamematching.name"));
         exitMenuItem.setText(lang.get("menu.file.exit.name"));
         helpMenu.setText(lang.get("menu.help.name"));
         langMenuItem.setText(lang.get("menu.help.language.name"));
@@ -1633,6 +2338,9 @@ public class EditorFrame extends JFrame {
         // tooltips of text areas
         defaultValueTextArea.setToolTipText(lang.get("editor.textarea.value.tooltip"));
         defaultCommentTextArea.setToolTipText(lang.get("editor.textarea.comment.tooltip"));
+        // the keys filter and the translation memory
+        keysFilterPanel.updateLocalization();
+        translationMemoryPanel.updateLocalization();
     }
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private JMenuItem aboutMenuItem;
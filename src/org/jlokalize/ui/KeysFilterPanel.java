@@ -0,0 +1,164 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JComboBox;
+import javax.swing.JPanel;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import org.jlokalize.KeyFilterMode;
+import org.jlokalize.KeyStatus;
+import org.jlokalize.KeysTableModel;
+import org.tools.common.CentralStatic;
+import org.tools.i18n.PropertyWithStats;
+
+/**
+ * The filter above the keys table: a text field (filtering while typing), the
+ * way the text is matched and the status of the shown keys. The selected key
+ * stays selected if it is still shown.
+ */
+public class KeysFilterPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+    /** The statuses in the order of the status combo box, after the "all" entry. */
+    private static final KeyStatus[] Statuses = {KeyStatus.OnlyInParent, KeyStatus.OnlyHere, KeyStatus.Everywhere, KeyStatus.AlreadyDeleted};
+    private final JTable keysTable;
+    private final JTextField filterField = new JTextField();
+    private final JComboBox modeBox = new JComboBox();
+    private final JComboBox statusBox = new JComboBox();
+
+    /**
+     * Creates the filter panel.
+     *
+     * @param keysTable The keys table, must have a KeysTableModel.
+     */
+    public KeysFilterPanel(JTable keysTable) {
+        super(new BorderLayout(2, 0));
+        this.keysTable = keysTable;
+        setBorder(BorderFactory.createEmptyBorder(0, 0, 2, 0));
+
+        JPanel boxes = new JPanel(new BorderLayout(2, 0));
+        boxes.add(modeBox, BorderLayout.WEST);
+        boxes.add(statusBox, BorderLayout.EAST);
+        add(filterField, BorderLayout.CENTER);
+        add(boxes, BorderLayout.EAST);
+        updateLocalization();
+
+        // filter while typing
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter();
+            }
+        });
+        // escape clears the filter text
+        filterField.addKeyListener(new KeyAdapter() {
+
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    filterField.setText(null);
+                }
+            }
+        });
+        ActionListener listener = new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                applyFilter();
+            }
+        };
+        modeBox.addActionListener(listener);
+        statusBox.addActionListener(listener);
+    }
+
+    /**
+     * Sets all texts and tool tips from the language property. The selections
+     * of the combo boxes are kept.
+     */
+    public final void updateLocalization() {
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        filterField.setToolTipText(lang.get("keystable.filter.tooltip"));
+        modeBox.setToolTipText(lang.get("keystable.filter.mode.tooltip"));
+        statusBox.setToolTipText(lang.get("keystable.filter.status.tooltip"));
+
+        int mode = Math.max(modeBox.getSelectedIndex(), KeyFilterMode.Substring.ordinal());
+        modeBox.setModel(new DefaultComboBoxModel(new String[]{
+                    lang.get("keystable.filter.prefix"),
+                    lang.get("keystable.filter.substring"),
+                    lang.get("keystable.filter.regex")}));
+        modeBox.setSelectedIndex(mode);
+
+        int status = Math.max(statusBox.getSelectedIndex(), 0);
+        statusBox.setModel(new DefaultComboBoxModel(new String[]{
+                    lang.get("keystable.filter.all"),
+                    lang.get("keystable.filter.onlyinparent"),
+                    lang.get("keystable.filter.onlyhere"),
+                    lang.get("keystable.filter.everywhere"),
+                    lang.get("keystable.filter.deleted")}));
+        statusBox.setSelectedIndex(status);
+    }
+
+    /**
+     * Sets the filter in the keys table model and selects the previously
+     * selected key again. An invalid regular expression is shown in red.
+     */
+    private void applyFilter() {
+        if (!(keysTable.getModel() instanceof KeysTableModel)) {
+            // during construction of the editor frame
+            return;
+        }
+        KeysTableModel keysTableModel = (KeysTableModel) keysTable.getModel();
+        int row = keysTable.getSelectedRow();
+        String key = row != -1 ? keysTableModel.getKey(row) : null;
+
+        KeyFilterMode mode = KeyFilterMode.values()[modeBox.getSelectedIndex()];
+        int status = statusBox.getSelectedIndex();
+        boolean valid = keysTableModel.setFilter(filterField.getText(), mode, status > 0 ? Statuses[status - 1] : null);
+        filterField.setForeground(valid ? UIManager.getColor("TextField.foreground") : Color.RED);
+
+        // select key again if still shown
+        if (valid && key != null) {
+            row = keysTableModel.getRow(key);
+            if (row != -1) {
+                keysTable.setRowSelectionInterval(row, row);
+                keysTable.scrollRectToVisible(new Rectangle(keysTable.getCellRect(row, 0, true)));
+            }
+        }
+    }
+}
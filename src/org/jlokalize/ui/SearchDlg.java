@@ -0,0 +1,207 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize.ui;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JCheckBox;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import org.jlokalize.LanguageTreeProject;
+import org.jlokalize.ProjectSearchIndex;
+import org.jlokalize.SearchHit;
+import org.tools.common.CentralStatic;
+import org.tools.i18n.PropertyWithStats;
+
+/**
+ * A non modal dialog for searching keys, texts and comments in all languages
+ * of the project. The search is done while typing, a double click (or enter)
+ * on a hit selects the language and key in the editor frame.
+ */
+public class SearchDlg extends JDialog {
+
+    private static final long serialVersionUID = 1L;
+    /** Default size or borders in the dialog is this. */
+    private static final int BorderSize = 10;
+    /** More hits are not displayed. */
+    private static final int MaxHits = 1000;
+    private final EditorFrame parent;
+    private final LanguageTreeProject project;
+    private final JTextField queryField = new JTextField(30);
+    private final JCheckBox prefixCheckBox = new JCheckBox();
+    private final DefaultListModel hitsModel = new DefaultListModel();
+    private final JList hitsList = new JList(hitsModel);
+    private final JLabel statusLabel = new JLabel(" ");
+
+    /**
+     * Creates the dialog.
+     *
+     * @param parent The editor frame, which displays selected hits.
+     * @param project The project to search in.
+     */
+    public SearchDlg(EditorFrame parent, LanguageTreeProject project) {
+        super(parent, false);
+        this.parent = parent;
+        this.project = project;
+
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        setTitle(lang.get("search.title"));
+        prefixCheckBox.setText(lang.get("search.prefix"));
+        prefixCheckBox.setToolTipText(lang.get("search.prefix.tooltip"));
+
+        JPanel top = new JPanel(new BorderLayout(BorderSize, 0));
+        top.add(queryField, BorderLayout.CENTER);
+        top.add(prefixCheckBox, BorderLayout.EAST);
+
+        hitsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        hitsList.setVisibleRowCount(16);
+        JScrollPane scrollPane = new JScrollPane(hitsList);
+
+        JPanel panel = new JPanel(new BorderLayout(0, BorderSize));
+        panel.setBorder(BorderFactory.createEmptyBorder(BorderSize, BorderSize, BorderSize, BorderSize));
+        panel.add(top, BorderLayout.NORTH);
+        panel.add(scrollPane, BorderLayout.CENTER);
+        panel.add(statusLabel, BorderLayout.SOUTH);
+        add(panel);
+
+        // search while typing
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+        });
+        prefixCheckBox.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                search();
+            }
+        });
+        // enter in the query field jumps to the first hit
+        queryField.addActionListener(new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (!hitsModel.isEmpty()) {
+                    hitsList.setSelectedIndex(0);
+                    showSelectedHit();
+                }
+            }
+        });
+        // double click or enter on a hit displays it
+        hitsList.addMouseListener(new MouseAdapter() {
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    showSelectedHit();
+                }
+            }
+        });
+        hitsList.addKeyListener(new KeyAdapter() {
+
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    showSelectedHit();
+                }
+            }
+        });
+
+        setDefaultCloseOperation(HIDE_ON_CLOSE);
+        pack();
+        setLocationRelativeTo(parent);
+    }
+
+    /**
+     * Shows the dialog with the query field focused and updates the hits,
+     * since the project could have changed in the meantime.
+     */
+    public void showDialog() {
+        search();
+        setVisible(true);
+        queryField.requestFocusInWindow();
+        queryField.selectAll();
+    }
+
+    /**
+     * Queries the search index with the current text and displays the hits.
+     */
+    private void search() {
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        hitsModel.clear();
+        ProjectSearchIndex index = project.getSearchIndex();
+        String query = queryField.getText();
+        if (index == null || query.length() == 0) {
+            statusLabel.setText(" ");
+            return;
+        }
+        List<SearchHit> hits;
+        if (prefixCheckBox.isSelected()) {
+            hits = index.findPrefix(query, MaxHits);
+        } else {
+            hits = index.findSubstring(query, MaxHits);
+        }
+        for (SearchHit hit : hits) {
+            hitsModel.addElement(hit);
+        }
+        String status = String.format(lang.get("search.hits"), hits.size());
+        if (index.isBuilding()) {
+            status = status + " " + lang.get("search.building");
+        }
+        int notLoaded = index.getNotLoadedCount();
+        if (notLoaded > 0) {
+            status = status + " " + String.format(lang.get("search.notloaded"), notLoaded);
+        }
+        statusLabel.setText(status);
+    }
+
+    /**
+     * Tells the editor frame to display the selected hit.
+     */
+    private void showSelectedHit() {
+        SearchHit hit = (SearchHit) hitsList.getSelectedValue();
+        if (hit != null) {
+            parent.showSearchHit(hit);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize.ui;
+
+import java.awt.BorderLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.ListSelectionModel;
+import org.jlokalize.TranslationMatch;
+import org.tools.common.CentralStatic;
+import org.tools.i18n.PropertyWithStats;
+
+/**
+ * Displays the matches of the translation memory for the selected key below
+ * the comment area. A double click on a match copies its translation into the
+ * text area for the translation.
+ */
+public class TranslationMemoryPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+    private final JLabel titleLabel = new JLabel();
+    private final DefaultListModel matchesModel = new DefaultListModel();
+    private final JList matchesList = new JList(matchesModel);
+
+    /**
+     * Creates the panel.
+     *
+     * @param valueTextArea The text area that receives a chosen translation.
+     */
+    public TranslationMemoryPanel(final JTextArea valueTextArea) {
+        super(new BorderLayout(0, 2));
+        setBorder(BorderFactory.createEmptyBorder(2, 0, 0, 0));
+
+        matchesList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        matchesList.setVisibleRowCount(4);
+        matchesList.addMouseListener(new MouseAdapter() {
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                TranslationMatch match = (TranslationMatch) matchesList.getSelectedValue();
+                if (e.getClickCount() == 2 && match != null && valueTextArea.isEnabled()) {
+                    valueTextArea.setText(match.target);
+                }
+            }
+        });
+
+        add(titleLabel, BorderLayout.NORTH);
+        add(new JScrollPane(matchesList), BorderLayout.CENTER);
+        updateLocalization();
+    }
+
+    /**
+     * Displays new matches.
+     *
+     * @param matches The matches or null to clear the list.
+     */
+    public void setMatches(List<TranslationMatch> matches) {
+        matchesModel.clear();
+        if (matches != null) {
+            for (TranslationMatch match : matches) {
+                matchesModel.addElement(match);
+            }
+        }
+    }
+
+    /**
+     * Sets all texts and tool tips from the language property.
+     */
+    public final void updateLocalization() {
+        PropertyWithStats lang = CentralStatic.retrieve("lang-prop");
+        titleLabel.setText(lang.get("editor.memory"));
+        matchesList.setToolTipText(lang.get("editor.memory.tooltip"));
+    }
+}
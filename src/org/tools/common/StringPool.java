@@ -0,0 +1,71 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.common;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Deduplicates strings: for equal strings always the same instance is
+ * returned, so each distinct string is stored only once. Used for example to
+ * share the texts of many Property objects.
+ *
+ * The strings are only weakly referenced: a string that is not used anywhere
+ * else anymore (e.g. all languages having it are unloaded) is dropped by the
+ * garbage collector. Thread safe.
+ */
+public class StringPool {
+
+    /** Each distinct string mapped to a weak reference to itself. */
+    private final Map<String, WeakReference<String>> values = new WeakHashMap<String, WeakReference<String>>(4096);
+    /** Number of intern() calls that returned an already pooled value. */
+    private long hits = 0;
+
+    /**
+     * Returns the pooled string equal to a value, pooling the value if it is
+     * not yet contained.
+     *
+     * @param value The value, may be null.
+     * @return An equal pooled string or null.
+     */
+    public synchronized String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<String> reference = values.get(value);
+        String pooled = reference == null ? null : reference.get();
+        if (pooled == null) {
+            values.put(value, new WeakReference<String>(value));
+            return value;
+        }
+        hits++;
+        return pooled;
+    }
+
+    /**
+     * @return The number of distinct strings still in use.
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * @return The number of strings that were replaced by an already pooled one.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+}
@@ -342,10 +342,11 @@ public class TreeNode<T> {
     public void removeUsFromTree() {
         if (parent != null) {
             // remove us from the parent if there is one (setting our parent to null)
-            parent.remove(this);
+            TreeNode<T> former = parent;
+            former.remove(this);
             // add our children to parent
             for (TreeNode<T> node : children) {
-                parent.add(node);
+                former.add(node);
             }
             // now we need to quietly remove our children (without changing their parent)
             children.clear();
@@ -0,0 +1,674 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * JSON files like the ones of i18next or ICU message bundles: one object with
+ * the keys and texts, either flat or nested. Nested objects become dotted keys
+ * (button.save), arrays keys with the index in brackets (days[0]). A file is
+ * written again the way it was read, flat or nested; new files are flat.
+ * Members are written under the names they were read with, also if a name
+ * contains dots, and empty objects and arrays are kept. Numbers, booleans and
+ * null are texts and written without quotes again, as long as they are still
+ * valid literals.
+ *
+ * JSON has no comments, comment keys are not written. A member whose key would
+ * end with the comment suffix is no comment, its key gets the last name in
+ * brackets instead (save["comment"] for "save": {"comment": ...}).
+ */
+public class JsonFormat implements ResourceFormat {
+
+    private static final Pattern Literal = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][-+]?[0-9]+)?|true|false|null");
+    private static final Pattern Index = Pattern.compile("\\[([0-9]+)\\]");
+    /** A key with the last member name in brackets, the name is group 2. */
+    private static final Pattern Bracketed = Pattern.compile("(.*)\\[\"(.*)\"\\]");
+    /** True if the file contained nested objects or arrays. */
+    private boolean nested;
+    /** The keys that were literals. */
+    private final Set<String> literals = new HashSet<String>();
+    /** The keys (String) and empty objects and arrays (Empty) in the order of the file. */
+    private final List<Object> members = new ArrayList<Object>();
+    /** The member names of the keys which cannot be split into them again (see split). */
+    private final Map<String, List<String>> paths = new HashMap<String, List<String>>();
+
+    /**
+     * An empty object or array of a file.
+     */
+    private static class Empty {
+
+        final List<String> path;
+        final boolean array;
+
+        Empty(List<String> path, boolean array) {
+            this.path = path;
+            this.array = array;
+        }
+    }
+
+    @Override
+    public String getExtension() {
+        return ".json";
+    }
+
+    @Override
+    public String getDescription() {
+        return "JSON files";
+    }
+
+    @Override
+    public boolean allowsLocaleNames() {
+        return true;
+    }
+
+    @Override
+    public ResourceFormat newInstance() {
+        return new JsonFormat();
+    }
+
+    @Override
+    public void load(PropertiesConfiguration configuration, Reader reader, String commentSuffix) throws IOException, ConfigurationException {
+        nested = false;
+        literals.clear();
+        members.clear();
+        paths.clear();
+        Parser parser = new Parser(reader);
+        parser.skipWhitespace();
+        if (parser.peek() == -1) {
+            // empty file
+            return;
+        }
+        if (parser.peek() != '{') {
+            throw parser.error("Object expected");
+        }
+        readValue(configuration, parser, "", new ArrayList<String>(8), commentSuffix);
+        parser.skipWhitespace();
+        if (parser.peek() != -1) {
+            throw parser.error("End of file expected");
+        }
+    }
+
+    /**
+     * Internal function! Reads a value and puts its texts into the
+     * configuration.
+     *
+     * @param configuration Receives the texts.
+     * @param parser The input.
+     * @param key The key of the value, empty for the outermost object.
+     * @param path The member names and array indexes of the value.
+     * @param commentSuffix The suffix of the keys holding comments or null.
+     * @throws IOException If the file cannot be read.
+     * @throws ConfigurationException If the file is not valid JSON.
+     */
+    private void readValue(PropertiesConfiguration configuration, Parser parser, String key, List<String> path, String commentSuffix) throws IOException, ConfigurationException {
+        parser.skipWhitespace();
+        int c = parser.peek();
+        if (c == '{') {
+            parser.next();
+            nested |= key.length() > 0;
+            parser.skipWhitespace();
+            if (parser.peek() == '}') {
+                parser.next();
+                if (!path.isEmpty()) {
+                    members.add(new Empty(new ArrayList<String>(path), false));
+                }
+                return;
+            }
+            while (true) {
+                parser.skipWhitespace();
+                String name = parser.readString();
+                parser.skipWhitespace();
+                parser.expect(':');
+                parser.skipWhitespace();
+                String member = key.length() == 0 ? name : key + '.' + name;
+                if (commentSuffix != null && member.endsWith(commentSuffix) && parser.peek() != '{' && parser.peek() != '[') {
+                    // a text, not a comment
+                    member = key + "[\"" + name + "\"]";
+                }
+                path.add(name);
+                readValue(configuration, parser, member, path, commentSuffix);
+                path.remove(path.size() - 1);
+                parser.skipWhitespace();
+                if (parser.peek() != ',') {
+                    break;
+                }
+                parser.next();
+            }
+            parser.expect('}');
+        } else if (c == '[') {
+            parser.next();
+            nested = true;
+            parser.skipWhitespace();
+            if (parser.peek() == ']') {
+                parser.next();
+                members.add(new Empty(new ArrayList<String>(path), true));
+                return;
+            }
+            for (int index = 0;; index++) {
+                String element = "[" + index + ']';
+                path.add(element);
+                readValue(configuration, parser, key + element, path, commentSuffix);
+                path.remove(path.size() - 1);
+                parser.skipWhitespace();
+                if (parser.peek() != ',') {
+                    break;
+                }
+                parser.next();
+            }
+            parser.expect(']');
+        } else if (c == '"') {
+            configuration.addProperty(key, parser.readString());
+            addMember(key, path);
+        } else {
+            String literal = parser.readLiteral();
+            if (!Literal.matcher(literal).matches()) {
+                throw parser.error("Invalid value " + literal);
+            }
+            configuration.addProperty(key, literal);
+            literals.add(key);
+            addMember(key, path);
+        }
+    }
+
+    /**
+     * Internal function! Remembers a key in the order of the file and its
+     * member names if they contain dots or brackets, i.e. if the key cannot be
+     * split into them again.
+     *
+     * @param key The key.
+     * @param path The member names and array indexes of the key.
+     */
+    private void addMember(String key, List<String> path) {
+        members.add(key);
+        for (String name : path) {
+            if (!name.startsWith("[") && (name.indexOf('.') != -1 || name.indexOf('[') != -1)) {
+                paths.put(key, new ArrayList<String>(path));
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void save(PropertiesConfiguration configuration, Writer writer, String commentSuffix) throws IOException {
+        StringBuilder out = new StringBuilder(1024);
+        if (!nested) {
+            out.append('{');
+            boolean first = true;
+            // the layout keeps changed keys in place, the configuration moves them to the end
+            for (Iterator<String> i = configuration.getLayout().getKeys().iterator(); i.hasNext();) {
+                String key = i.next();
+                if (isComment(key, commentSuffix)) {
+                    continue;
+                }
+                out.append(first ? "\n  " : ",\n  ");
+                first = false;
+                Matcher bracketed = Bracketed.matcher(key);
+                quote(out, bracketed.matches() ? bracketed.group(2) : key).append(": ");
+                value(out, configuration, key);
+                if (out.length() > 16 * 1024) {
+                    writer.write(out.toString());
+                    out.setLength(0);
+                }
+            }
+            writer.write(out.append(first ? "}\n" : "\n}\n").toString());
+            return;
+        }
+
+        // the members as they were read without the removed keys, then the new keys
+        Node root = new Node();
+        Set<String> added = new HashSet<String>();
+        for (Object member : members) {
+            if (member instanceof Empty) {
+                Empty empty = (Empty) member;
+                root.add(empty.path, null).array = empty.array;
+            } else if (configuration.containsKey((String) member) && added.add((String) member)) {
+                root.add(getPath((String) member), (String) member);
+            }
+        }
+        for (Iterator<String> i = configuration.getLayout().getKeys().iterator(); i.hasNext();) {
+            String key = i.next();
+            if (!isComment(key, commentSuffix) && added.add(key)) {
+                root.add(getPath(key), key);
+            }
+        }
+        writeObject(out, configuration, root, 1);
+        writer.write(out.append('\n').toString());
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param key A key.
+     * @param commentSuffix The suffix of the keys holding comments or null.
+     * @return True if the key holds a comment, which JSON cannot keep.
+     */
+    private static boolean isComment(String key, String commentSuffix) {
+        return commentSuffix != null && key.endsWith(commentSuffix);
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param key A key.
+     * @return The member names and array indexes of the key.
+     */
+    private List<String> getPath(String key) {
+        List<String> path = paths.get(key);
+        return path != null ? path : split(key);
+    }
+
+    /**
+     * A member of a nested object while saving.
+     */
+    private static class Node {
+
+        /** The key of the text of this member or null. */
+        String key;
+        /** True if this member was an empty array. */
+        boolean array;
+        final Map<String, Node> children = new LinkedHashMap<String, Node>();
+
+        /**
+         * Adds a member below this node.
+         *
+         * @param path The member names and array indexes.
+         * @param fullKey The key of the text or null for an empty object or array.
+         * @return The member.
+         */
+        Node add(List<String> path, String fullKey) {
+            Node node = this;
+            for (String name : path) {
+                Node child = node.children.get(name);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(name, child);
+                }
+                node = child;
+            }
+            if (fullKey != null) {
+                node.key = fullKey;
+            }
+            return node;
+        }
+
+        /**
+         * @return True if all children are array elements in the order of
+         * their indexes, none with a text and children, or if this member was
+         * an empty array.
+         */
+        boolean isArray() {
+            if (children.isEmpty()) {
+                return array;
+            }
+            int index = 0;
+            for (Map.Entry<String, Node> child : children.entrySet()) {
+                if (!child.getKey().equals("[" + index++ + "]") || (child.getValue().key != null && !child.getValue().children.isEmpty())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Internal function! Splits a key into member names and array indexes.
+     *
+     * @param key The key.
+     * @return The names, indexes with their brackets.
+     */
+    private static List<String> split(String key) {
+        List<String> names = new ArrayList<String>(4);
+        Matcher bracketed = Bracketed.matcher(key);
+        if (bracketed.matches()) {
+            // the last name may contain anything
+            if (bracketed.group(1).length() > 0) {
+                names.addAll(split(bracketed.group(1)));
+            }
+            names.add(bracketed.group(2));
+            return names;
+        }
+        for (String part : key.split("\\.", -1)) {
+            int open = part.indexOf('[');
+            if (open > 0 && Index.matcher(part.substring(open)).replaceAll("").length() == 0) {
+                names.add(part.substring(0, open));
+                Matcher matcher = Index.matcher(part);
+                while (matcher.find(open)) {
+                    names.add(matcher.group());
+                    open = matcher.end();
+                }
+            } else {
+                names.add(part);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Internal function! Writes the children of a node as object or array.
+     *
+     * @param out Receives the JSON.
+     * @param configuration The content.
+     * @param node The node.
+     * @param depth The depth of the children for the indentation.
+     */
+    private void writeObject(StringBuilder out, PropertiesConfiguration configuration, Node node, int depth) {
+        boolean array = node.isArray();
+        out.append(array ? '[' : '{');
+        boolean first = true;
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            first = writeMember(out, configuration, child.getKey(), child.getValue(), depth, first, array);
+        }
+        if (!first) {
+            out.append('\n');
+            indent(out, depth - 1);
+        }
+        out.append(array ? ']' : '}');
+    }
+
+    /**
+     * Internal function! Writes a member. A member with a text and children
+     * has its children written next to it with the full names, since JSON
+     * cannot have both.
+     *
+     * @param out Receives the JSON.
+     * @param configuration The content.
+     * @param name The name of the member.
+     * @param node The member.
+     * @param depth The depth for the indentation.
+     * @param first True if it is the first member of its object.
+     * @param array True if the member is an array element.
+     * @return False, i.e. the first for the following member.
+     */
+    private boolean writeMember(StringBuilder out, PropertiesConfiguration configuration, String name, Node node, int depth, boolean first, boolean array) {
+        if (node.key == null || !node.children.isEmpty()) {
+            if (node.key == null) {
+                out.append(first ? "\n" : ",\n");
+                indent(out, depth);
+                if (!array) {
+                    quote(out, name).append(": ");
+                }
+                writeObject(out, configuration, node, depth + 1);
+                return false;
+            }
+            first = writeMember(out, configuration, name, leaf(node.key), depth, first, array);
+            for (Map.Entry<String, Node> child : node.children.entrySet()) {
+                String childName = child.getKey().startsWith("[") ? name + child.getKey() : name + '.' + child.getKey();
+                first = writeMember(out, configuration, childName, child.getValue(), depth, first, false);
+            }
+            return first;
+        }
+        out.append(first ? "\n" : ",\n");
+        indent(out, depth);
+        if (!array) {
+            quote(out, name).append(": ");
+        }
+        value(out, configuration, node.key);
+        return false;
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param key A key.
+     * @return A node with the key and without children.
+     */
+    private static Node leaf(String key) {
+        Node node = new Node();
+        node.key = key;
+        return node;
+    }
+
+    /**
+     * Internal function! Writes the text of a key.
+     *
+     * @param out Receives the JSON.
+     * @param configuration The content.
+     * @param key The key.
+     */
+    private void value(StringBuilder out, PropertiesConfiguration configuration, String key) {
+        Object value = configuration.getProperty(key);
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            value = list.isEmpty() ? "" : list.get(list.size() - 1);
+        }
+        String text = String.valueOf(value);
+        if (isLiteral(key, text)) {
+            out.append(text);
+        } else {
+            quote(out, text);
+        }
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param key The key.
+     * @param text The text of the key.
+     * @return True if the text was a literal and still is a valid one.
+     */
+    private boolean isLiteral(String key, String text) {
+        return literals.contains(key) && Literal.matcher(text).matches();
+    }
+
+    /**
+     * Internal function! Indents a line by two spaces per depth.
+     *
+     * @param out Receives the spaces.
+     * @param depth The depth.
+     */
+    private static void indent(StringBuilder out, int depth) {
+        for (int i = 0; i < depth; i++) {
+            out.append("  ");
+        }
+    }
+
+    /**
+     * Internal function! Writes a JSON string.
+     *
+     * @param out Receives the string.
+     * @param text The text.
+     * @return out
+     */
+    private static StringBuilder quote(StringBuilder out, String text) {
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || (Character.isSurrogate(c) && !isPaired(text, i))) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param text A text.
+     * @param i The index of a surrogate.
+     * @return True if the surrogate is part of a valid pair.
+     */
+    private static boolean isPaired(String text, int i) {
+        char c = text.charAt(i);
+        if (Character.isHighSurrogate(c)) {
+            return i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1));
+        }
+        return i > 0 && Character.isHighSurrogate(text.charAt(i - 1));
+    }
+
+    /**
+     * Reads the tokens of a JSON file from a reader.
+     */
+    private static class Parser {
+
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private int position, limit;
+        private int line = 1;
+        private final StringBuilder text = new StringBuilder(64);
+
+        Parser(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * @return The next character without consuming it or -1 at the end.
+         */
+        int peek() throws IOException {
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position];
+        }
+
+        /**
+         * @return The next character or -1 at the end.
+         */
+        int next() throws IOException {
+            int c = peek();
+            if (c != -1) {
+                position++;
+                if (c == '\n') {
+                    line++;
+                }
+            }
+            return c;
+        }
+
+        void skipWhitespace() throws IOException {
+            for (int c = peek(); c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == 0xFEFF; c = peek()) {
+                next();
+            }
+        }
+
+        void expect(char c) throws IOException, ConfigurationException {
+            if (next() != c) {
+                throw error("'" + c + "' expected");
+            }
+        }
+
+        /**
+         * @return A string without the quotes and escapes.
+         */
+        String readString() throws IOException, ConfigurationException {
+            expect('"');
+            text.setLength(0);
+            while (true) {
+                int c = next();
+                if (c == '"') {
+                    return text.toString();
+                }
+                if (c == -1) {
+                    throw error("Unterminated string");
+                }
+                if (c != '\\') {
+                    text.append((char) c);
+                    continue;
+                }
+                c = next();
+                switch (c) {
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'b':
+                        text.append('\b');
+                        break;
+                    case 'f':
+                        text.append('\f');
+                        break;
+                    case 'u': {
+                        int value = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(next(), 16);
+                            if (digit == -1) {
+                                throw error("Invalid unicode escape");
+                            }
+                            value = value * 16 + digit;
+                        }
+                        text.append((char) value);
+                        break;
+                    }
+                    case '"':
+                    case '\\':
+                    case '/':
+                        text.append((char) c);
+                        break;
+                    default:
+                        throw error("Invalid escape");
+                }
+            }
+        }
+
+        /**
+         * @return The characters up to the next delimiter.
+         */
+        String readLiteral() throws IOException {
+            text.setLength(0);
+            for (int c = peek(); c != -1 && c != ',' && c != '}' && c != ']' && c > ' '; c = peek()) {
+                text.append((char) next());
+            }
+            return text.toString();
+        }
+
+        ConfigurationException error(String message) {
+            return new ConfigurationException(message + " in line " + line);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * Gettext PO files. The message id is the key (with the context in front,
+ * separated like in the binary files of gettext), the message string the text
+ * and the translator comment (lines starting with "# ") the comment. The
+ * header is the entry with the empty key. Plural forms are the keys with the
+ * index in brackets appended, e.g. "%d files[1]" for msgstr[1].
+ *
+ * Everything else of an entry (references, flags, extracted comments,
+ * previous ids, the plural id) and lines after the last entry (obsolete
+ * entries) is kept as it is and written again when saving.
+ */
+public class PoFormat implements ResourceFormat {
+
+    /** Separates the context from the message id in the key. */
+    public static final char ContextSeparator = 0x04;
+    /** The lines of each key that are only written again. */
+    private final Map<String, List<String>> extras = new HashMap<String, List<String>>();
+    /** The plural id of each key with plural forms. */
+    private final Map<String, String> pluralIds = new HashMap<String, String>();
+    /** Lines after the last entry. */
+    private final List<String> trailer = new ArrayList<String>();
+
+    @Override
+    public String getExtension() {
+        return ".po";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Gettext PO files";
+    }
+
+    @Override
+    public boolean allowsLocaleNames() {
+        return true;
+    }
+
+    @Override
+    public ResourceFormat newInstance() {
+        return new PoFormat();
+    }
+
+    /**
+     * The entry that is read at the moment.
+     */
+    private static class Entry {
+
+        final List<String> extras = new ArrayList<String>(4);
+        StringBuilder comment;
+        StringBuilder context;
+        StringBuilder id;
+        StringBuilder pluralId;
+        /** The message strings by plural index. */
+        final Map<Integer, StringBuilder> strings = new TreeMap<Integer, StringBuilder>();
+        /** Receives the strings of continuation lines. */
+        StringBuilder current;
+
+        boolean isEmpty() {
+            return extras.isEmpty() && comment == null && id == null;
+        }
+    }
+
+    @Override
+    public void load(PropertiesConfiguration configuration, Reader reader, String commentSuffix) throws IOException, ConfigurationException {
+        extras.clear();
+        pluralIds.clear();
+        trailer.clear();
+        BufferedReader in = new BufferedReader(reader, 64 * 1024);
+        Entry entry = new Entry();
+        int number = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            number++;
+            String trimmed = line.trim();
+            if (trimmed.length() == 0) {
+                if (entry.id != null) {
+                    add(configuration, entry, commentSuffix);
+                    entry = new Entry();
+                }
+                continue;
+            }
+            if (trimmed.charAt(0) == '#') {
+                if (!entry.strings.isEmpty()) {
+                    // comments of the next entry without a blank line in between
+                    add(configuration, entry, commentSuffix);
+                    entry = new Entry();
+                }
+                if (commentSuffix != null && (trimmed.equals("#") || trimmed.startsWith("# "))) {
+                    String text = trimmed.length() > 2 ? trimmed.substring(2) : "";
+                    entry.comment = entry.comment == null ? new StringBuilder(text) : entry.comment.append('\n').append(text);
+                } else {
+                    entry.extras.add(line);
+                }
+                continue;
+            }
+            if (trimmed.charAt(0) == '"') {
+                if (entry.current == null) {
+                    throw new ConfigurationException("String without keyword in line " + number);
+                }
+                unquote(trimmed, number, entry.current);
+                continue;
+            }
+
+            int space = trimmed.indexOf(' ');
+            String keyword = space == -1 ? trimmed : trimmed.substring(0, space);
+            String rest = space == -1 ? "" : trimmed.substring(space + 1).trim();
+            if (!entry.strings.isEmpty() && (keyword.equals("msgctxt") || keyword.equals("msgid"))) {
+                add(configuration, entry, commentSuffix);
+                entry = new Entry();
+            }
+            StringBuilder target = new StringBuilder();
+            if (keyword.equals("msgctxt")) {
+                entry.context = target;
+            } else if (keyword.equals("msgid")) {
+                entry.id = target;
+            } else if (keyword.equals("msgid_plural")) {
+                entry.pluralId = target;
+            } else if (keyword.equals("msgstr")) {
+                entry.strings.put(0, target);
+            } else if (keyword.startsWith("msgstr[") && keyword.endsWith("]")) {
+                try {
+                    entry.strings.put(Integer.parseInt(keyword.substring(7, keyword.length() - 1)), target);
+                } catch (NumberFormatException ex) {
+                    throw new ConfigurationException("Invalid plural index in line " + number);
+                }
+            } else {
+                throw new ConfigurationException("Unknown keyword " + keyword + " in line " + number);
+            }
+            unquote(rest, number, target);
+            entry.current = target;
+        }
+        if (entry.id != null) {
+            add(configuration, entry, commentSuffix);
+        } else if (!entry.isEmpty()) {
+            trailer.addAll(entry.extras);
+            if (entry.comment != null) {
+                for (String text : entry.comment.toString().split("\n", -1)) {
+                    trailer.add(text.length() == 0 ? "#" : "# " + text);
+                }
+            }
+        }
+    }
+
+    /**
+     * Internal function! Puts a complete entry into the configuration.
+     *
+     * @param configuration The configuration.
+     * @param entry The entry.
+     * @param commentSuffix The suffix of the keys holding comments or null.
+     */
+    private void add(PropertiesConfiguration configuration, Entry entry, String commentSuffix) {
+        String id = entry.id.toString();
+        String key = entry.context == null ? id : entry.context.toString() + ContextSeparator + id;
+        for (Map.Entry<Integer, StringBuilder> string : entry.strings.entrySet()) {
+            int index = string.getKey();
+            configuration.addProperty(index == 0 ? key : key + "[" + index + "]", string.getValue().toString());
+        }
+        if (entry.strings.isEmpty()) {
+            configuration.addProperty(key, "");
+        }
+        if (entry.comment != null) {
+            configuration.addProperty(key + commentSuffix, entry.comment.toString());
+        }
+        if (!entry.extras.isEmpty()) {
+            extras.put(key, entry.extras);
+        }
+        if (entry.pluralId != null) {
+            pluralIds.put(key, entry.pluralId.toString());
+        }
+    }
+
+    @Override
+    public void save(PropertiesConfiguration configuration, Writer writer, String commentSuffix) throws IOException {
+        StringBuilder out = new StringBuilder(256);
+        boolean first = true;
+        // the layout keeps changed keys in place, the configuration moves them to the end
+        for (Iterator<String> i = configuration.getLayout().getKeys().iterator(); i.hasNext();) {
+            String key = i.next();
+            if (commentSuffix != null && key.endsWith(commentSuffix)
+                    && configuration.containsKey(key.substring(0, key.length() - commentSuffix.length()))) {
+                // written with its key
+                continue;
+            }
+            if (isPluralForm(configuration, key)) {
+                continue;
+            }
+            out.setLength(0);
+            if (!first) {
+                out.append('\n');
+            }
+            first = false;
+            // translator comments first, like gettext
+            String comment = commentSuffix == null ? null : getString(configuration, key + commentSuffix);
+            if (comment != null) {
+                for (String text : comment.split("\n", -1)) {
+                    out.append(text.length() == 0 ? "#" : "# " + text).append('\n');
+                }
+            }
+            List<String> lines = extras.get(key);
+            if (lines != null) {
+                for (String line : lines) {
+                    out.append(line).append('\n');
+                }
+            }
+            int separator = key.indexOf(ContextSeparator);
+            if (separator != -1) {
+                quote(out, "msgctxt", key.substring(0, separator));
+            }
+            quote(out, "msgid", key.substring(separator + 1));
+            String pluralId = pluralIds.get(key);
+            if (pluralId != null) {
+                quote(out, "msgid_plural", pluralId);
+                quote(out, "msgstr[0]", getString(configuration, key));
+                for (int index = 1; configuration.containsKey(key + "[" + index + "]"); index++) {
+                    quote(out, "msgstr[" + index + "]", getString(configuration, key + "[" + index + "]"));
+                }
+            } else {
+                quote(out, "msgstr", getString(configuration, key), key.length() == 0);
+            }
+            writer.write(out.toString());
+        }
+        if (!trailer.isEmpty()) {
+            writer.write("\n");
+            for (String line : trailer) {
+                writer.write(line);
+                writer.write("\n");
+            }
+        }
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param configuration The content.
+     * @param key A key.
+     * @return True if the key is a plural form (index 1 or more) of a key with
+     * a plural id, which is written with that key.
+     */
+    private boolean isPluralForm(PropertiesConfiguration configuration, String key) {
+        if (!key.endsWith("]")) {
+            return false;
+        }
+        int open = key.lastIndexOf('[');
+        if (open == -1 || open + 2 == key.length()) {
+            return false;
+        }
+        for (int i = open + 1; i < key.length() - 1; i++) {
+            if (key.charAt(i) < '0' || key.charAt(i) > '9') {
+                return false;
+            }
+        }
+        String base = key.substring(0, open);
+        return pluralIds.containsKey(base) && configuration.containsKey(base);
+    }
+
+    /**
+     * Internal function! The text of a key, the last one for duplicate keys.
+     *
+     * @param configuration The content.
+     * @param key The key.
+     * @return The text or null.
+     */
+    private static String getString(PropertiesConfiguration configuration, String key) {
+        Object value = configuration.getProperty(key);
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            return list.isEmpty() ? "" : String.valueOf(list.get(list.size() - 1));
+        }
+        return value == null ? null : String.valueOf(value);
+    }
+
+    /**
+     * Internal function! Writes a keyword with a string, a string with line
+     * breaks inside as one line per line like gettext.
+     *
+     * @param out Receives the lines.
+     * @param keyword The keyword.
+     * @param text The string or null for an empty string.
+     */
+    private static void quote(StringBuilder out, String keyword, String text) {
+        quote(out, keyword, text, false);
+    }
+
+    /**
+     * Internal function! Writes a keyword with a string, a string with line
+     * breaks inside as one line per line like gettext.
+     *
+     * @param out Receives the lines.
+     * @param keyword The keyword.
+     * @param text The string or null for an empty string.
+     * @param header True for the header, which always starts with an empty line.
+     */
+    private static void quote(StringBuilder out, String keyword, String text, boolean header) {
+        out.append(keyword).append(' ');
+        if (text == null) {
+            text = "";
+        }
+        int lineBreak = text.indexOf('\n');
+        if (lineBreak == -1 || (lineBreak == text.length() - 1 && !header)) {
+            escape(out.append('"'), text, 0, text.length()).append("\"\n");
+            return;
+        }
+        out.append("\"\"\n");
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end == -1 ? text.length() : end + 1;
+            escape(out.append('"'), text, start, end).append("\"\n");
+            start = end;
+        }
+    }
+
+    /**
+     * Internal function! Escapes a part of a string like C.
+     *
+     * @param out Receives the escaped string.
+     * @param text The string.
+     * @param start The first character.
+     * @param end The end of the part.
+     * @return out
+     */
+    private static StringBuilder escape(StringBuilder out, String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append('\\').append((char) ('0' + (c >> 6))).append((char) ('0' + ((c >> 3) & 7))).append((char) ('0' + (c & 7)));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Internal function! Reads a quoted string with C escapes.
+     *
+     * @param quoted The string including the quotes.
+     * @param number The line number for errors.
+     * @param out Receives the string.
+     * @throws ConfigurationException If the string is not quoted.
+     */
+    private static void unquote(String quoted, int number, StringBuilder out) throws ConfigurationException {
+        if (quoted.length() < 2 || quoted.charAt(0) != '"' || quoted.charAt(quoted.length() - 1) != '"') {
+            throw new ConfigurationException("String expected in line " + number);
+        }
+        int end = quoted.length() - 1;
+        for (int i = 1; i < end; i++) {
+            char c = quoted.charAt(i);
+            if (c != '\\' || i + 1 == end) {
+                out.append(c);
+                continue;
+            }
+            c = quoted.charAt(++i);
+            switch (c) {
+                case 'n':
+                    out.append('\n');
+                    break;
+                case 't':
+                    out.append('\t');
+                    break;
+                case 'r':
+                    out.append('\r');
+                    break;
+                case 'a':
+                    out.append((char) 7);
+                    break;
+                case 'b':
+                    out.append('\b');
+                    break;
+                case 'f':
+                    out.append('\f');
+                    break;
+                case 'v':
+                    out.append((char) 11);
+                    break;
+                case 'x': {
+                    int value = 0;
+                    int digits = 0;
+                    while (i + 1 < end && Character.digit(quoted.charAt(i + 1), 16) != -1 && digits < 2) {
+                        value = value * 16 + Character.digit(quoted.charAt(++i), 16);
+                        digits++;
+                    }
+                    out.append((char) value);
+                    break;
+                }
+                default:
+                    if (c >= '0' && c <= '7') {
+                        int value = c - '0';
+                        for (int digits = 1; digits < 3 && i + 1 < end && quoted.charAt(i + 1) >= '0' && quoted.charAt(i + 1) <= '7'; digits++) {
+                            value = value * 8 + quoted.charAt(++i) - '0';
+                        }
+                        out.append((char) value);
+                    } else {
+                        // \" \\ \' \? and unknown escapes
+                        out.append(c);
+                    }
+            }
+        }
+    }
+}
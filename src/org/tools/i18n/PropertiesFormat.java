@@ -0,0 +1,60 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.io.Reader;
+import java.io.Writer;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * Java properties files, read and written by the configuration itself, so the
+ * layout of the file (comments, blank lines) is kept.
+ */
+public class PropertiesFormat implements ResourceFormat {
+
+    @Override
+    public String getExtension() {
+        return ".properties";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Java properties files";
+    }
+
+    @Override
+    public boolean allowsLocaleNames() {
+        return false;
+    }
+
+    /**
+     * Stateless, so this object itself.
+     */
+    @Override
+    public ResourceFormat newInstance() {
+        return this;
+    }
+
+    @Override
+    public void load(PropertiesConfiguration configuration, Reader reader, String commentSuffix) throws ConfigurationException {
+        configuration.load(reader);
+    }
+
+    @Override
+    public void save(PropertiesConfiguration configuration, Writer writer, String commentSuffix) throws ConfigurationException {
+        configuration.save(writer);
+    }
+}
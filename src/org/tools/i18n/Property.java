@@ -16,11 +16,26 @@
  */
 package org.tools.i18n;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,6 +44,9 @@ import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.configuration.PropertiesConfiguration.IOFactory;
 import org.jlokalize.Settings;
+import org.tools.common.StringPool;
+import org.tools.io.ChannelWriter;
+import org.tools.io.EncodingDetector;
 import org.tools.io.Resource;
 import org.tools.io.ext.ExtIOFactory;
 
@@ -48,6 +66,10 @@ import org.tools.io.ext.ExtIOFactory;
 public class Property {
 
     private static final Logger LOG = Logger.getLogger(Property.class.getName());
+    /**
+     * Written first if the loaded file started with it, encoded like the rest.
+     */
+    private static final char ByteOrderMark = 0xFEFF;
 	
     /**
      * We can have them in a chain
@@ -61,6 +83,31 @@ public class Property {
      * The resource location for loading/saving.
      */
     private Resource location;
+    /**
+     * If true, the encoding is detected when loading (see EncodingDetector).
+     */
+    private boolean detectEncoding = false;
+    /**
+     * If true, saving starts with a byte order mark because the loaded file had one.
+     */
+    private boolean byteOrderMark = false;
+    /**
+     * The format of the location, created when needed (see getFormat).
+     */
+    private ResourceFormat format;
+    /**
+     * The suffix of the keys holding comments or null.
+     */
+    private String commentSuffix;
+    /**
+     * Length and modification time of the file when the content was loaded or
+     * saved, -1 if unknown (e.g. in archives).
+     */
+    private long fileLength = -1, fileModified = -1;
+    /**
+     * True if the content was restored from a snapshot instead of the file.
+     */
+    private boolean restored = false;
 
     /**
      * Creates new instance.
@@ -74,9 +121,34 @@ public class Property {
 	}
 	
 	public Property(String encoding, IOFactory ioFactory) {
+		this(encoding, ioFactory, null);
+	}
+
+    /**
+     * Creates new instance whose values are shared with other instances.
+     *
+     * @param encoding The encoding of the file.
+     * @param ioFactory Creates the readers and writers.
+     * @param values All loaded and stored values are replaced by the string
+     * from this pool, may be null.
+     */
+	public Property(String encoding, IOFactory ioFactory, final StringPool values) {
 		super();
 		
-        prop = new PropertiesConfiguration();
+        if (values == null) {
+            prop = new PropertiesConfiguration();
+        } else {
+            prop = new PropertiesConfiguration() {
+
+                /**
+                 * All values end here, after the configuration has copied them (while splitting).
+                 */
+                @Override
+                protected void addPropertyDirect(String key, Object value) {
+                    super.addPropertyDirect(key, value instanceof String ? values.intern((String) value) : value);
+                }
+            };
+        }
 		prop.setDelimiterParsingDisabled(true);
 		
 		prop.setEncoding(encoding);
@@ -109,6 +181,122 @@ public class Property {
         this.location = location;
     }
 
+    /**
+     * @return The loading/saving location or null.
+     */
+    public Resource getLocation() {
+        return location;
+    }
+
+    /**
+     * Switches the detection of the encoding when loading on or off. If on,
+     * the encoding given in the constructor only applies to files without any
+     * evidence of their encoding, the detected encoding, byte order mark and
+     * escaping are used for saving again.
+     *
+     * @param detect True to detect the encoding.
+     */
+    public void setEncodingDetection(boolean detect) {
+        detectEncoding = detect;
+    }
+
+    /**
+     * @return The name of the encoding used for loading and saving.
+     */
+    public String getEncoding() {
+        return prop.getEncoding();
+    }
+
+    /**
+     * Sets the suffix of the keys holding comments, for formats that have
+     * comments of their own (see ResourceFormat).
+     *
+     * @param suffix The suffix or null.
+     */
+    public void setCommentSuffix(String suffix) {
+        commentSuffix = suffix;
+    }
+
+    /**
+     * @return The format belonging to the extension of the location,
+     * properties if there is no location or the extension is unknown.
+     */
+    public ResourceFormat getFormat() {
+        // the name is only known for existing files
+        String name = location == null ? "" : location.getPath().toLowerCase(Locale.ENGLISH);
+        if (format == null || !name.endsWith(format.getExtension())) {
+            format = ResourceFormats.create(name);
+        }
+        return format;
+    }
+
+    /**
+     * @return The length of the file when the content was loaded or saved, -1 if unknown.
+     */
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * @return The modification time of the file when the content was loaded or saved, -1 if unknown.
+     */
+    public long getFileModified() {
+        return fileModified;
+    }
+
+    /**
+     * @return True if the content was restored from a snapshot (see restore).
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Fills an empty property with the content of its file as recorded
+     * earlier, instead of loading the file. The layout of the file and what
+     * the format learned while reading it are not recorded, therefore a
+     * restored property must be loaded from the file before it is saved.
+     *
+     * @param encoding The encoding of the file.
+     * @param length The length of the file the content belongs to.
+     * @param modified The modification time of the file the content belongs to.
+     * @param keys The keys in the order of the file.
+     * @param texts The text of each key.
+     */
+    public void restore(String encoding, long length, long modified, String[] keys, String[] texts) {
+        // there is no layout to keep track of
+        prop.clearConfigurationListeners();
+        prop.setEncoding(encoding);
+        for (int i = 0; i < keys.length; i++) {
+            prop.addProperty(keys[i], texts[i]);
+        }
+        fileLength = length;
+        fileModified = modified;
+        restored = true;
+    }
+
+    /**
+     * Internal function! Records length and modification time of the file
+     * after loading or saving it, if it is a plain file.
+     */
+    private void recordFileState() {
+        File file = new File(location.getPath());
+        if (file.isFile()) {
+            fileLength = file.length();
+            fileModified = file.lastModified();
+        } else {
+            fileLength = -1;
+            fileModified = -1;
+        }
+    }
+
+    /**
+     * @return True if the file starts with a byte order mark.
+     */
+    public boolean hasByteOrderMark() {
+        return byteOrderMark;
+    }
+
     // start of methods extending the Properties functionality
     /**
      * Convenience function. Relays to containsKey(String, boolean).
@@ -272,8 +460,9 @@ public class Property {
     // end of methods extending the Properties functionality
     // start of methods for loading/saving
     /**
-     * Loads from the specified location. Uses the load method of Properties,
-     * therefore fully compatible with ".properties" files.
+     * Loads from the specified location with the format of its extension.
+     * Properties files use the load method of Properties, therefore fully
+     * compatible with ".properties" files.
      *
      * Does not load any parent. Use method chainLoad for this.
      *
@@ -284,8 +473,20 @@ public class Property {
         if (location == null || !location.exists()) {
             return false;
         }
+        // before reading, a change while reading makes the state outdated
+        recordFileState();
         try {
-            prop.load(location.getInputStream());
+            if (detectEncoding) {
+                loadDetected();
+            } else {
+                InputStream in = location.getInputStream();
+                try {
+                    Charset charset = getEncoding() == null ? Charset.defaultCharset() : Charset.forName(getEncoding());
+                    getFormat().load(prop, new InputStreamReader(in, charset), commentSuffix);
+                } finally {
+                    in.close();
+                }
+            }
         } catch (IOException ex) {
             LOG.log(Level.SEVERE, null, ex);
             return false;
@@ -297,8 +498,84 @@ public class Property {
     }
 
     /**
-     * Saves to the specified location. Uses the store method of Properties,
-     * therefore fully compatible with ".properties" files.
+     * Internal function! Loads with the encoding detected from the beginning
+     * of the file. If the rest of the file turns out not to be in that
+     * encoding, it is loaded again as ISO-8859-1, which never fails, instead
+     * of replacing the invalid bytes silently.
+     *
+     * @throws IOException If the file cannot be read.
+     * @throws ConfigurationException If the file cannot be parsed.
+     */
+    private void loadDetected() throws IOException, ConfigurationException {
+        byte[] prefix = new byte[EncodingDetector.PrefixLength];
+        InputStream in = location.getInputStream();
+        EncodingDetector detected;
+        try {
+            int length = 0;
+            int n;
+            while (length < prefix.length && (n = in.read(prefix, length, prefix.length - length)) > 0) {
+                length += n;
+            }
+            detected = EncodingDetector.detect(prefix, length, length < prefix.length);
+            int start = detected.getByteOrderMarkLength();
+            try {
+                load(detected, new SequenceInputStream(new ByteArrayInputStream(prefix, start, length - start), in));
+                return;
+            } catch (ConfigurationException ex) {
+                if (!detected.isExact() || !(ex.getCause() instanceof CharacterCodingException)) {
+                    throw ex;
+                }
+            } catch (CharacterCodingException ex) {
+                // from formats reading the decoder directly
+                if (!detected.isExact()) {
+                    throw ex;
+                }
+            }
+        } finally {
+            in.close();
+        }
+        LOG.log(Level.WARNING, "{0} is not {1} throughout, loaded as ISO-8859-1 to keep all bytes.", new Object[]{location.getPath(), getEncoding()});
+        prop.clear();
+        in = location.getInputStream();
+        try {
+            // without the byte order mark, it cannot be saved in ISO-8859-1
+            int skip = detected.getByteOrderMarkLength();
+            while (skip > 0 && in.read() != -1) {
+                skip--;
+            }
+            load(EncodingDetector.fallback(), in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Internal function! Loads with a detected encoding, invalid bytes are an
+     * error if the detection was exact, and takes over the escaping and the
+     * byte order mark.
+     *
+     * @param detected The detection result.
+     * @param in The content after the byte order mark.
+     * @throws IOException If the file cannot be read.
+     * @throws ConfigurationException If the file cannot be parsed or decoded.
+     */
+    private void load(EncodingDetector detected, InputStream in) throws IOException, ConfigurationException {
+        if (detected.getEncoding() != null) {
+            prop.setEncoding(detected.getEncoding());
+        }
+        byteOrderMark = detected.getByteOrderMarkLength() > 0;
+        if (detected.getEscaped() != null && prop.getIOFactory() instanceof ExtIOFactory) {
+            ((ExtIOFactory) prop.getIOFactory()).setEscapeUnicode(detected.getEscaped());
+        }
+        Charset charset = getEncoding() == null ? Charset.defaultCharset() : Charset.forName(getEncoding());
+        CodingErrorAction action = detected.isExact() ? CodingErrorAction.REPORT : CodingErrorAction.REPLACE;
+        getFormat().load(prop, new InputStreamReader(in, charset.newDecoder().onMalformedInput(action).onUnmappableCharacter(action)), commentSuffix);
+    }
+
+    /**
+     * Saves to the specified location with the format of its extension.
+     * Properties files use the store method of Properties, therefore fully
+     * compatible with ".properties" files.
      *
      * Does not save any parent. A description can be set but it's useless since
      * it is not read upon load. Just use a key with the description as content
@@ -311,14 +588,98 @@ public class Property {
         if (location == null) {
             return false;
         }
+        // encoded directly into the file channel, the configuration would use an unbuffered stream
+        Writer writer = null;
         try {
-            prop.save(location.getOutputStream());
+            writer = ChannelWriter.open(location.getOutputStream(), prop.getEncoding(), Settings.SAVE_FSYNC);
+            if (byteOrderMark) {
+                writer.write(ByteOrderMark);
+            }
+            getFormat().save(prop, writer, commentSuffix);
+            writer.close();
+            writer = null;
+            recordFileState();
         } catch (ConfigurationException ex) {
             LOG.log(Level.SEVERE, null, ex);
             return false;
         } catch (IOException ex) {
             LOG.log(Level.SEVERE, null, ex);
             return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, null, ex);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the content into a byte array exactly as save would write it to
+     * the location. Together with write this splits saving into the part that
+     * needs the processor and the part that needs the disk.
+     *
+     * @return The encoded content.
+     * @throws IOException If the content cannot be written.
+     */
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        Writer writer = ChannelWriter.open(out, prop.getEncoding(), false);
+        try {
+            if (byteOrderMark) {
+                writer.write(ByteOrderMark);
+            }
+            getFormat().save(prop, writer, commentSuffix);
+        } catch (ConfigurationException ex) {
+            throw new IOException(ex);
+        } finally {
+            writer.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes content prepared by toBytes to the location.
+     *
+     * @param bytes The encoded content.
+     * @return True if successful.
+     */
+    public boolean write(byte[] bytes) {
+        if (location == null) {
+            return false;
+        }
+        OutputStream out = null;
+        try {
+            out = location.getOutputStream();
+            if (out instanceof FileOutputStream) {
+                FileChannel channel = ((FileOutputStream) out).getChannel();
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (Settings.SAVE_FSYNC) {
+                    channel.force(true);
+                }
+            } else {
+                out.write(bytes);
+            }
+            out.close();
+            out = null;
+            recordFileState();
+        } catch (IOException ex) {
+            LOG.log(Level.SEVERE, null, ex);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, null, ex);
+                }
+            }
         }
         return true;
     }
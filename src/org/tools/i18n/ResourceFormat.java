@@ -0,0 +1,79 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * A file format for the keys and texts of one language. Property reads and
+ * writes its content through the format that belongs to the extension of its
+ * location (see ResourceFormats), the content itself is always a flat list of
+ * keys and texts in a PropertiesConfiguration. Comments are keys with the
+ * comment suffix, like in properties files.
+ *
+ * A format object may keep what it learned while loading a file (e.g. the
+ * structure of a JSON file) for saving the file again, therefore each Property
+ * gets its own object from newInstance. Additional formats can be provided as
+ * services (META-INF/services/org.tools.i18n.ResourceFormat).
+ */
+public interface ResourceFormat {
+
+    /**
+     * @return The extension of the files including the dot, e.g. ".po".
+     */
+    String getExtension();
+
+    /**
+     * @return A short description for file dialogs.
+     */
+    String getDescription();
+
+    /**
+     * @return True if the files may be named by the language code alone
+     * (de_AT.po or de-AT.json), false if they always start with a base name.
+     */
+    boolean allowsLocaleNames();
+
+    /**
+     * @return A new format object for one file.
+     */
+    ResourceFormat newInstance();
+
+    /**
+     * Reads all keys and texts in the order of the file.
+     *
+     * @param configuration The empty configuration receiving the content.
+     * @param reader The content of the file.
+     * @param commentSuffix The suffix of the keys holding comments or null.
+     * @throws IOException If the file cannot be read.
+     * @throws ConfigurationException If the file is not in this format.
+     */
+    void load(PropertiesConfiguration configuration, Reader reader, String commentSuffix) throws IOException, ConfigurationException;
+
+    /**
+     * Writes all keys and texts.
+     *
+     * @param configuration The content.
+     * @param writer Receives the file, is not closed.
+     * @param commentSuffix The suffix of the keys holding comments or null.
+     * @throws IOException If the file cannot be written.
+     * @throws ConfigurationException If the content cannot be written.
+     */
+    void save(PropertiesConfiguration configuration, Writer writer, String commentSuffix) throws IOException, ConfigurationException;
+}
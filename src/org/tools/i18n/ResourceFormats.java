@@ -0,0 +1,75 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+/**
+ * The known resource formats: properties, Gettext PO and JSON, and the formats
+ * provided as services.
+ */
+public class ResourceFormats {
+
+    /** The format of files with an unknown extension. */
+    public static final ResourceFormat Properties = new PropertiesFormat();
+    private static final List<ResourceFormat> Formats = new ArrayList<ResourceFormat>();
+
+    static {
+        Formats.add(Properties);
+        Formats.add(new PoFormat());
+        Formats.add(new JsonFormat());
+        for (ResourceFormat format : ServiceLoader.load(ResourceFormat.class)) {
+            Formats.add(format);
+        }
+    }
+
+    private ResourceFormats() {
+    }
+
+    /**
+     * @return All known formats, properties first.
+     */
+    public static List<ResourceFormat> getFormats() {
+        return Collections.unmodifiableList(Formats);
+    }
+
+    /**
+     * @param name A file name.
+     * @return The format of the extension of the name or null if it is unknown.
+     */
+    public static ResourceFormat find(String name) {
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        for (ResourceFormat format : Formats) {
+            if (lower.endsWith(format.getExtension())) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name A file name.
+     * @return A new format object for the file, for properties if the
+     * extension is unknown.
+     */
+    public static ResourceFormat create(String name) {
+        ResourceFormat format = find(name);
+        return format == null ? Properties.newInstance() : format.newInstance();
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.io;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A writer that encodes the characters itself into a byte buffer and writes
+ * the buffer to a channel in large chunks, instead of going through an
+ * OutputStreamWriter and an unbuffered stream.
+ *
+ * For charsets that encode ASCII as single bytes of the same value (UTF-8,
+ * ISO-8859-1 and most others) ASCII characters are put into the buffer
+ * directly, only the other characters go through the encoder. Characters that
+ * cannot be encoded are replaced like by OutputStreamWriter, so the output is
+ * the same. The byte buffer is reused by the next writer of the same thread.
+ * Optionally the file is forced to the disk when closing.
+ *
+ * Not thread safe.
+ */
+public class ChannelWriter extends Writer {
+
+    private static final int BufferSize = 64 * 1024;
+    private static final int CharChunkSize = 1024;
+    /** The free byte buffer of each thread. */
+    private static final ThreadLocal<ByteBuffer> Buffers = new ThreadLocal<ByteBuffer>();
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final boolean asciiCompatible;
+    private final boolean force;
+    private ByteBuffer buffer;
+    /** Input of the encoder. */
+    private final CharBuffer chars = CharBuffer.allocate(CharChunkSize);
+    /** A high surrogate at the end of the last write, whose low surrogate is still to come. */
+    private char pending;
+    private boolean hasPending = false;
+
+    /**
+     * @param channel The channel, which is closed by close.
+     * @param charset The encoding.
+     * @param force If true, a file channel is forced to the disk when closing.
+     */
+    public ChannelWriter(WritableByteChannel channel, Charset charset, boolean force) {
+        this.channel = channel;
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.asciiCompatible = isAsciiCompatible(charset);
+        this.force = force;
+        buffer = Buffers.get();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BufferSize);
+        } else {
+            Buffers.remove();
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Creates a writer for an output stream, using the channel of the stream
+     * if it is a file stream.
+     *
+     * @param out The stream, which is closed by close.
+     * @param encoding The name of the encoding.
+     * @param force If true, a file is forced to the disk when closing.
+     * @return The writer.
+     */
+    public static ChannelWriter open(OutputStream out, String encoding, boolean force) {
+        WritableByteChannel channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+        return new ChannelWriter(channel, encoding == null ? Charset.defaultCharset() : Charset.forName(encoding), force);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        ensureOpen();
+        if (asciiCompatible && !hasPending && c < 0x80) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put((byte) c);
+        } else {
+            encodeChunk(new char[]{(char) c}, null, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(String s, int off, int len) throws IOException {
+        ensureOpen();
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (asciiCompatible && !hasPending) {
+                // ASCII runs straight into the buffer
+                while (i < end) {
+                    char c = s.charAt(i);
+                    if (c >= 0x80) {
+                        break;
+                    }
+                    if (!buffer.hasRemaining()) {
+                        drain();
+                    }
+                    buffer.put((byte) c);
+                    i++;
+                }
+                if (i == end) {
+                    break;
+                }
+            }
+            i = encodeChunk(null, s, i, end);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        ensureOpen();
+        int end = off + len;
+        int i = off;
+        while (i < end) {
+            if (asciiCompatible && !hasPending) {
+                while (i < end) {
+                    char c = cbuf[i];
+                    if (c >= 0x80) {
+                        break;
+                    }
+                    if (!buffer.hasRemaining()) {
+                        drain();
+                    }
+                    buffer.put((byte) c);
+                    i++;
+                }
+                if (i == end) {
+                    break;
+                }
+            }
+            i = encodeChunk(cbuf, null, i, end);
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    /**
+     * Writes the rest, forces the file to the disk if requested and closes
+     * the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            chars.clear();
+            if (hasPending) {
+                chars.put(pending);
+                hasPending = false;
+            }
+            chars.flip();
+            encode(true);
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+            drain();
+            if (force && channel instanceof FileChannel) {
+                ((FileChannel) channel).force(true);
+            }
+        } finally {
+            channel.close();
+            Buffers.set(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Internal function! Encodes characters up to the next ASCII character
+     * (if ASCII compatible) or until the chunk is full. Either a char array or
+     * a string is given.
+     *
+     * @return The index after the last consumed character.
+     */
+    private int encodeChunk(char[] cbuf, String s, int i, int end) throws IOException {
+        chars.clear();
+        int first = 0;
+        if (hasPending) {
+            chars.put(pending);
+            hasPending = false;
+            first = 1;
+        }
+        while (i < end && chars.hasRemaining()) {
+            char c = cbuf != null ? cbuf[i] : s.charAt(i);
+            if (asciiCompatible && c < 0x80 && chars.position() > first) {
+                break;
+            }
+            chars.put(c);
+            i++;
+        }
+        chars.flip();
+        encode(false);
+        if (chars.hasRemaining()) {
+            // an incomplete surrogate pair
+            pending = chars.get();
+            hasPending = true;
+        }
+        return i;
+    }
+
+    /**
+     * Internal function! Encodes the characters of the char buffer, writing
+     * the byte buffer whenever it is full.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                // errors are replaced, so this is underflow
+                return;
+            }
+        }
+    }
+
+    /**
+     * Internal function! Writes the content of the byte buffer.
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Internal function! Throws if the writer is closed.
+     */
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Writer closed");
+        }
+    }
+
+    /**
+     * Internal function! Tests if a charset encodes each ASCII character as
+     * a single byte of the same value.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        char[] ascii = new char[0x80];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (char) i;
+        }
+        byte[] bytes = new String(ascii).getBytes(charset);
+        if (bytes.length != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.io;
+
+/**
+ * Guesses the encoding of a properties file from its first bytes, so that
+ * files of different origin can be read and written back without manual
+ * conversion. The evidence is, in this order:
+ * - a byte order mark (UTF-8, UTF-16 big or little endian)
+ * - bytes above 0x7F, which are UTF-8 if they form only valid UTF-8
+ * sequences and ISO-8859-1 otherwise
+ * - \\uXXXX escapes, which are kept as escapes when saving if there are more
+ * of them than characters outside of ASCII
+ *
+ * A file of only ASCII characters gives no evidence about the encoding, the
+ * default applies then. Only a bounded prefix is scanned, so the rest of a
+ * large file might still contradict the guess (see isExact), the file must be
+ * read as ISO-8859-1 then, which keeps every byte.
+ *
+ * Immutable.
+ */
+public class EncodingDetector {
+
+    /** The number of bytes scanned at most. */
+    public static final int PrefixLength = 64 * 1024;
+    public static final String Utf8 = "UTF-8";
+    public static final String Latin1 = "ISO-8859-1";
+    private static final String Utf16BigEndian = "UTF-16BE";
+    private static final String Utf16LittleEndian = "UTF-16LE";
+    private final String encoding;
+    private final int byteOrderMarkLength;
+    private final Boolean escaped;
+    private final boolean exact;
+
+    /**
+     * @param encoding The encoding or null.
+     * @param byteOrderMarkLength The length of the byte order mark in bytes.
+     * @param escaped The escaping or null.
+     * @param exact True if the guess is exact so far.
+     */
+    private EncodingDetector(String encoding, int byteOrderMarkLength, Boolean escaped, boolean exact) {
+        this.encoding = encoding;
+        this.byteOrderMarkLength = byteOrderMarkLength;
+        this.escaped = escaped;
+        this.exact = exact;
+    }
+
+    /**
+     * Scans the beginning of a file.
+     *
+     * @param bytes The first bytes of the file.
+     * @param length The number of valid bytes, at most PrefixLength are scanned.
+     * @param complete True if these are all bytes of the file, false if the
+     * file goes on (then a UTF-8 sequence may be cut off at the end).
+     * @return The result.
+     */
+    public static EncodingDetector detect(byte[] bytes, int length, boolean complete) {
+        if (length > PrefixLength) {
+            length = PrefixLength;
+            complete = false;
+        }
+        // a byte order mark is certain, but invalid UTF-8 bytes are still not replaced
+        if (length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF) {
+            int[] counts = scanUtf8(bytes, 3, length, complete);
+            return new EncodingDetector(Utf8, 3, escaping(bytes, 3, length, counts[0]), true);
+        }
+        // ISO-8859-1 cannot read UTF-16 in any useful way, invalid characters are replaced then
+        if (length >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF) {
+            return new EncodingDetector(Utf16BigEndian, 2, null, false);
+        }
+        if (length >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE) {
+            return new EncodingDetector(Utf16LittleEndian, 2, null, false);
+        }
+
+        int high = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                high++;
+            }
+        }
+        if (high == 0) {
+            // no evidence about the encoding, but escapes are a hint for saving
+            return new EncodingDetector(null, 0, escaping(bytes, 0, length, 0) ? Boolean.TRUE : null, true);
+        }
+        // ISO-8859-1 text hardly ever forms valid UTF-8 sequences, a single invalid one would be replaced
+        int[] counts = scanUtf8(bytes, 0, length, complete);
+        if (counts[1] == 0) {
+            return new EncodingDetector(Utf8, 0, escaping(bytes, 0, length, counts[0]), true);
+        }
+        return fallback();
+    }
+
+    /**
+     * @return The result for ISO-8859-1, which can read any bytes. Characters
+     * outside of ISO-8859-1 can only be saved as escapes, so all are escaped.
+     */
+    public static EncodingDetector fallback() {
+        return new EncodingDetector(Latin1, 0, Boolean.TRUE, true);
+    }
+
+    /**
+     * @return The name of the encoding or null if there was no evidence.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return The number of bytes of the byte order mark, 0 if there is none.
+     */
+    public int getByteOrderMarkLength() {
+        return byteOrderMarkLength;
+    }
+
+    /**
+     * @return True if characters outside of ASCII should be saved as \\uXXXX
+     * escapes, false if as they are, null if there was no evidence.
+     */
+    public Boolean getEscaped() {
+        return escaped;
+    }
+
+    /**
+     * @return True if all scanned bytes are valid in the encoding, then invalid
+     * bytes later in the file mean that the guess was wrong and the file must
+     * be read as ISO-8859-1. False only for UTF-16, invalid characters are
+     * replaced then, like without detection.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Internal function! Counts the valid UTF-8 sequences of characters outside
+     * of ASCII and the invalid bytes.
+     *
+     * @param bytes The bytes.
+     * @param start The first byte.
+     * @param end The end of the bytes.
+     * @param complete False if the bytes are followed by more, then a sequence
+     * may be cut off at the end.
+     * @return The number of valid sequences and the number of invalid bytes.
+     */
+    private static int[] scanUtf8(byte[] bytes, int start, int end, boolean complete) {
+        int valid = 0;
+        int invalid = 0;
+        int i = start;
+        while (i < end) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            // the valid range of the second byte excludes overlong forms and surrogates
+            int length;
+            int low = 0x80;
+            int high = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                length = 2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                length = 3;
+                if (b == 0xE0) {
+                    low = 0xA0;
+                } else if (b == 0xED) {
+                    high = 0x9F;
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                length = 4;
+                if (b == 0xF0) {
+                    low = 0x90;
+                } else if (b == 0xF4) {
+                    high = 0x8F;
+                }
+            } else {
+                invalid++;
+                i++;
+                continue;
+            }
+            int k = 1;
+            while (k < length && i + k < end) {
+                int c = bytes[i + k] & 0xFF;
+                if (k == 1 ? (c < low || c > high) : (c < 0x80 || c > 0xBF)) {
+                    break;
+                }
+                k++;
+            }
+            if (k == length || (i + k == end && !complete)) {
+                valid++;
+            } else {
+                invalid++;
+            }
+            i += k;
+        }
+        return new int[]{valid, invalid};
+    }
+
+    /**
+     * Internal function! Counts the \\uXXXX escapes and compares them with the
+     * characters outside of ASCII. A backslash escaped by a backslash does not
+     * start an escape.
+     *
+     * @param bytes The bytes.
+     * @param start The first byte.
+     * @param end The end of the bytes.
+     * @param characters The number of characters outside of ASCII.
+     * @return True if there are more escapes.
+     */
+    private static boolean escaping(byte[] bytes, int start, int end, int characters) {
+        int escapes = 0;
+        int i = start;
+        while (i < end - 1) {
+            if (bytes[i] != '\\') {
+                i++;
+            } else if (bytes[i + 1] == 'u' && i + 5 < end && isHex(bytes[i + 2]) && isHex(bytes[i + 3]) && isHex(bytes[i + 4]) && isHex(bytes[i + 5])) {
+                escapes++;
+                i += 6;
+            } else {
+                i += 2;
+            }
+        }
+        return escapes > characters;
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param b A byte.
+     * @return True if it is a hexadecimal digit.
+     */
+    private static boolean isHex(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+    }
+}
@@ -22,8 +22,17 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.LinkedList;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -32,18 +41,90 @@ import java.util.regex.Pattern;
  *
  * To create a FileResource we already need a File, see ResourceUtils for an
  * automated way how to get a Resource.
+ *
+ * Listing a directory reuses the names of a recent listing as long as the
+ * modification time of the directory is the same, and creates the resources
+ * of the matching entries only when they are accessed.
  */
 public class FileResource implements Resource {
 
+    /** How long the names of a listed directory are reused, in milliseconds. */
+    private static final long ListingLifetime = 2000;
+    /** The compiled regular expressions of list. */
+    private static final Map<String, Pattern> Patterns = new ConcurrentHashMap<String, Pattern>();
+    /** Recent listings by directory, the least recently used are dropped. */
+    private static final Map<String, Listing> Listings = new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+            return size() > 32;
+        }
+    };
     private File file;
 
+    /**
+     * The names in a directory at a modification time of the directory.
+     */
+    private static class Listing {
+
+        final long modified;
+        /** When the directory was listed. */
+        final long time;
+        final String[] names;
+
+        Listing(long modified, long time, String[] names) {
+            this.modified = modified;
+            this.time = time;
+            this.names = names;
+        }
+    }
+
+    /**
+     * The entries of a directory, each resource is created when it is
+     * accessed first.
+     */
+    private static class LazyList extends AbstractList<Resource> implements RandomAccess {
+
+        private final File directory;
+        private final String[] names;
+        private final Resource[] resources;
+
+        LazyList(File directory, String[] names, Resource[] resources) {
+            this.directory = directory;
+            this.names = names;
+            this.resources = resources;
+        }
+
+        @Override
+        public Resource get(int index) {
+            if (resources[index] == null) {
+                resources[index] = new FileResource(new File(directory, names[index]));
+            }
+            return resources[index];
+        }
+
+        @Override
+        public Resource set(int index, Resource resource) {
+            // sorting sets all elements
+            Resource old = get(index);
+            resources[index] = resource;
+            return old;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+    }
+
     /**
      * Constructs from a file, test for existence and file/directory property.
      *
      * @param file
-     * @throws IOException
      */
-    public FileResource(File file) throws IOException {
+    public FileResource(File file) {
         this.file = file;
     }
 
@@ -110,28 +191,76 @@ public class FileResource implements Resource {
     }
 
     /**
-     *
-     * @param regex
-     * @return
-     * @throws IOException
+     * {@inheritDoc} The resources are created when they are accessed, the
+     * list can be sorted but not resized.
      */
     @Override
     public List<Resource> list(String regex) throws IOException {
-        if (!exists() || !file.isDirectory()) {
-            throw new IOException();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException ex) {
+            throw new IOException("Not existing: " + file.getPath(), ex);
+        }
+        if (!attributes.isDirectory()) {
+            throw new IOException("Not a directory: " + file.getPath());
+        }
+        Pattern pattern = Patterns.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            if (Patterns.size() > 256) {
+                Patterns.clear();
+            }
+            Patterns.put(regex, pattern);
+        }
+        List<String> matching = new ArrayList<String>();
+        for (String name : listNames(attributes.lastModifiedTime().toMillis())) {
+            if (pattern.matcher(name).matches()) {
+                matching.add(name);
+            }
         }
-        List<Resource> list = new LinkedList<Resource>();
-        Pattern pattern = Pattern.compile(regex);
-        // call listFiles on file for getting all children that are not directories
-        File[] files = file.listFiles();
-        // traversing the array and filter for our regular expression
-        for (File f : files) {
-            if (pattern.matcher(f.getName()).matches()) {
-                // it could also be an archive, so we have to use ResourceUtils
-                list.add(ResourceUtils.asResource(f));
+        String[] names = matching.toArray(new String[matching.size()]);
+        Resource[] resources = new Resource[names.length];
+        for (int i = 0; i < names.length; i++) {
+            // archives are read when created, so an error shows up here
+            if (names[i].endsWith(".zip") || names[i].endsWith(".jar")) {
+                resources[i] = ResourceUtils.asResource(new File(file, names[i]));
             }
         }
-        return list;
+        return new LazyList(file, names, resources);
+    }
+
+    /**
+     * Internal function! Lists the names in the directory, or takes them
+     * from a recent listing if the directory is unchanged since.
+     *
+     * @param modified The modification time of the directory.
+     * @return The names of all entries.
+     * @throws IOException If the directory cannot be read.
+     */
+    private String[] listNames(long modified) throws IOException {
+        String key = file.getAbsolutePath();
+        long now = System.currentTimeMillis();
+        synchronized (Listings) {
+            Listing listing = Listings.get(key);
+            if (listing != null && listing.modified == modified && now - listing.time < ListingLifetime) {
+                return listing.names;
+            }
+        }
+        List<String> names = new ArrayList<String>();
+        DirectoryStream<Path> stream = Files.newDirectoryStream(file.toPath());
+        try {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        } finally {
+            stream.close();
+        }
+        String[] array = names.toArray(new String[names.size()]);
+        synchronized (Listings) {
+            Listings.put(key, new Listing(modified, now, array));
+        }
+        return array;
     }
 
     /**
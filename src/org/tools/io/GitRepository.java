@@ -0,0 +1,630 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads files as they are in a commit of a local git repository, directly
+ * from the files of the repository (loose objects and pack files version 2),
+ * without git being installed and without any network access. Only reads,
+ * never writes anything.
+ *
+ * Thread safe, files of a commit can be read in parallel.
+ */
+public class GitRepository {
+
+    private static final int Commit = 1, Tree = 2, Blob = 3, OffsetDelta = 6, ReferenceDelta = 7;
+    private static final String[] TypeNames = {null, "commit", "tree", "blob", "tag"};
+    /** The directory with the checked out files. */
+    private final File workTree;
+    /** The directory with HEAD. */
+    private final File gitDirectory;
+    /** The directory with the objects and the shared references (differs for linked work trees). */
+    private final File commonDirectory;
+    /** The pack files, read when needed. */
+    private List<Pack> packs;
+
+    /**
+     * An object of the repository.
+     */
+    private static class GitObject {
+
+        final int type;
+        final byte[] data;
+
+        GitObject(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private GitRepository(File workTree, File gitDirectory, File commonDirectory) {
+        this.workTree = workTree;
+        this.gitDirectory = gitDirectory;
+        this.commonDirectory = commonDirectory;
+    }
+
+    /**
+     * Finds the repository a directory belongs to.
+     *
+     * @param directory A directory in the work tree.
+     * @return The repository or null if the directory is not in one.
+     * @throws IOException If the repository cannot be read.
+     */
+    public static GitRepository find(File directory) throws IOException {
+        for (File dir = directory.getCanonicalFile(); dir != null; dir = dir.getParentFile()) {
+            File git = new File(dir, ".git");
+            if (git.isDirectory()) {
+                return open(dir, git);
+            }
+            if (git.isFile()) {
+                // linked work trees and submodules point to their directory
+                String line = readFirstLine(git);
+                if (line != null && line.startsWith("gitdir:")) {
+                    File target = new File(line.substring(7).trim());
+                    if (!target.isAbsolute()) {
+                        target = new File(dir, target.getPath());
+                    }
+                    return open(dir, target.getCanonicalFile());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param workTree The work tree.
+     * @param gitDirectory The git directory of the work tree.
+     * @return The repository.
+     * @throws IOException If the git directory cannot be read.
+     */
+    private static GitRepository open(File workTree, File gitDirectory) throws IOException {
+        File common = gitDirectory;
+        File link = new File(gitDirectory, "commondir");
+        if (link.isFile()) {
+            String path = readFirstLine(link);
+            if (path != null) {
+                common = new File(path);
+                if (!common.isAbsolute()) {
+                    common = new File(gitDirectory, path);
+                }
+                common = common.getCanonicalFile();
+            }
+        }
+        return new GitRepository(workTree, gitDirectory, common);
+    }
+
+    /**
+     * @return The directory with the checked out files.
+     */
+    public File getWorkTree() {
+        return workTree;
+    }
+
+    /**
+     * @return The id of the commit HEAD points to, or null if there is no
+     * commit yet.
+     * @throws IOException If the references cannot be read.
+     */
+    public String resolveHead() throws IOException {
+        String head = readFirstLine(new File(gitDirectory, "HEAD"));
+        // symbolic references, at most a few levels deep
+        for (int depth = 0; head != null && head.startsWith("ref:") && depth < 5; depth++) {
+            head = resolveReference(head.substring(4).trim());
+        }
+        return head != null && head.length() == 40 && isHex(head) ? head : null;
+    }
+
+    /**
+     * Internal function! Reads a reference from its file or from the packed
+     * references.
+     *
+     * @param name The name of the reference, e.g. refs/heads/master.
+     * @return The content of the reference or null if it does not exist.
+     * @throws IOException If the references cannot be read.
+     */
+    private String resolveReference(String name) throws IOException {
+        for (File directory : new File[]{gitDirectory, commonDirectory}) {
+            File file = new File(directory, name);
+            if (file.isFile()) {
+                return readFirstLine(file);
+            }
+        }
+        File packed = new File(commonDirectory, "packed-refs");
+        if (!packed.isFile()) {
+            return null;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(packed), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // "id name", comments and peeled tags start with # and ^
+                if (line.length() > 41 && line.charAt(40) == ' ' && line.substring(41).equals(name)) {
+                    return line.substring(0, 40);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return null;
+    }
+
+    /**
+     * Reads a file as it is in a commit.
+     *
+     * @param commit The id of the commit.
+     * @param path The path of the file relative to the work tree, separated by '/'.
+     * @return The content or null if the file is not in the commit.
+     * @throws IOException If the repository cannot be read.
+     */
+    public byte[] readFile(String commit, String path) throws IOException {
+        GitObject object = readObject(commit);
+        // the first line is "tree <id>"
+        if (object.type != Commit || object.data.length < 45) {
+            throw new IOException("Not a commit: " + commit);
+        }
+        String id = new String(object.data, 5, 40, StandardCharsets.US_ASCII);
+        for (String name : path.split("/")) {
+            object = readObject(id);
+            if (object.type != Tree) {
+                return null;
+            }
+            id = findTreeEntry(object.data, name.getBytes(StandardCharsets.UTF_8));
+            if (id == null) {
+                return null;
+            }
+        }
+        object = readObject(id);
+        return object.type == Blob ? object.data : null;
+    }
+
+    /**
+     * Internal function! Searches an entry of a tree ("mode name\0" and 20
+     * bytes id per entry).
+     *
+     * @param tree The content of the tree.
+     * @param name The name of the entry.
+     * @return The id of the entry or null if there is none with the name.
+     */
+    private static String findTreeEntry(byte[] tree, byte[] name) {
+        int position = 0;
+        while (position < tree.length) {
+            int space = position;
+            while (space < tree.length && tree[space] != ' ') {
+                space++;
+            }
+            int end = space + 1;
+            while (end < tree.length && tree[end] != 0) {
+                end++;
+            }
+            if (end + 21 > tree.length) {
+                return null;
+            }
+            if (end - space - 1 == name.length && regionMatches(tree, space + 1, name)) {
+                return toHex(tree, end + 1, 20);
+            }
+            position = end + 21;
+        }
+        return null;
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param data Some bytes.
+     * @param offset Where to compare.
+     * @param part The bytes that must be at the offset.
+     * @return True if they are.
+     */
+    private static boolean regionMatches(byte[] data, int offset, byte[] part) {
+        for (int i = 0; i < part.length; i++) {
+            if (data[offset + i] != part[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Internal function! Reads an object, loose or from a pack file.
+     *
+     * @param id The id of the object.
+     * @return The object with deltas applied.
+     * @throws IOException If the object does not exist or cannot be read.
+     */
+    private GitObject readObject(String id) throws IOException {
+        File loose = new File(commonDirectory, "objects/" + id.substring(0, 2) + "/" + id.substring(2));
+        if (loose.isFile()) {
+            return readLooseObject(loose);
+        }
+        byte[] binary = fromHex(id);
+        for (Pack pack : getPacks()) {
+            long offset = pack.find(binary);
+            if (offset >= 0) {
+                return pack.read(offset);
+            }
+        }
+        throw new IOException("Object not found: " + id);
+    }
+
+    /**
+     * Internal function! Reads a compressed object file ("type size\0" and
+     * the content).
+     *
+     * @param file The object file.
+     * @return The object.
+     * @throws IOException If it cannot be read.
+     */
+    private static GitObject readLooseObject(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE, 4 * file.length()));
+        InputStream in = new InflaterInputStream(new FileInputStream(file));
+        try {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        byte[] raw = out.toByteArray();
+        int space = 0;
+        while (space < raw.length && raw[space] != ' ') {
+            space++;
+        }
+        int end = space;
+        while (end < raw.length && raw[end] != 0) {
+            end++;
+        }
+        if (end == raw.length) {
+            throw new IOException("Invalid object " + file.getPath());
+        }
+        String name = new String(raw, 0, space, StandardCharsets.US_ASCII);
+        int type = 0;
+        for (int i = 1; i < TypeNames.length; i++) {
+            if (TypeNames[i].equals(name)) {
+                type = i;
+            }
+        }
+        byte[] data = new byte[raw.length - end - 1];
+        System.arraycopy(raw, end + 1, data, 0, data.length);
+        return new GitObject(type, data);
+    }
+
+    /**
+     * Internal function!
+     *
+     * @return The pack files of the repository, read on first use.
+     * @throws IOException If an index cannot be read.
+     */
+    private synchronized List<Pack> getPacks() throws IOException {
+        if (packs == null) {
+            List<Pack> list = new ArrayList<Pack>();
+            File[] files = new File(commonDirectory, "objects/pack").listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    File data = new File(file.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+                    if (name.endsWith(".idx") && data.isFile()) {
+                        list.add(new Pack(file, data));
+                    }
+                }
+            }
+            packs = list;
+        }
+        return packs;
+    }
+
+    /**
+     * A pack file with its index (version 2).
+     */
+    private class Pack {
+
+        private final File file;
+        private final ByteBuffer index;
+        private final int count, ids, offsets, largeOffsets;
+
+        /**
+         * Maps the index.
+         *
+         * @param indexFile The index file (.idx).
+         * @param file The pack file (.pack).
+         * @throws IOException If the index cannot be read.
+         */
+        Pack(File indexFile, File file) throws IOException {
+            this.file = file;
+            RandomAccessFile in = new RandomAccessFile(indexFile, "r");
+            try {
+                FileChannel channel = in.getChannel();
+                index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                in.close();
+            }
+            // magic "\377tOc" and version 2, then 256 cumulative counts
+            if (index.getInt(0) != 0xFF744F63 || index.getInt(4) != 2) {
+                throw new IOException("Unsupported pack index " + indexFile.getPath());
+            }
+            count = index.getInt(8 + 4 * 255);
+            ids = 8 + 4 * 256;
+            // the checksums of the entries are skipped
+            offsets = ids + 24 * count;
+            largeOffsets = offsets + 4 * count;
+        }
+
+        /**
+         * @param id The binary id.
+         * @return The offset of the object in the pack file or -1 if it is not in this pack.
+         */
+        long find(byte[] id) {
+            int first = id[0] & 0xFF;
+            int low = first == 0 ? 0 : index.getInt(8 + 4 * (first - 1));
+            int high = index.getInt(8 + 4 * first) - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(middle, id);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    int offset = index.getInt(offsets + 4 * middle);
+                    if (offset < 0) {
+                        return index.getLong(largeOffsets + 8 * (offset & 0x7FFFFFFF));
+                    }
+                    return offset;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Internal function! Compares an id of the index with an id.
+         */
+        private int compare(int entry, byte[] id) {
+            int position = ids + 20 * entry;
+            for (int i = 0; i < 20; i++) {
+                int difference = (index.get(position + i) & 0xFF) - (id[i] & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Reads an object of this pack.
+         *
+         * @param offset The offset of the object.
+         * @return The object with deltas applied.
+         * @throws IOException If the object cannot be read.
+         */
+        GitObject read(long offset) throws IOException {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                return read(in, offset);
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * Internal function! Reads an object and the bases of deltas.
+         */
+        private GitObject read(RandomAccessFile pack, long offset) throws IOException {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(pack.getChannel().position(offset)), 8192);
+            // type and size, seven bits per byte after the first four
+            int c = readByte(in);
+            int type = (c >> 4) & 7;
+            long size = c & 15;
+            for (int shift = 4; (c & 0x80) != 0; shift += 7) {
+                c = readByte(in);
+                size |= (long) (c & 0x7F) << shift;
+            }
+            if (type == OffsetDelta) {
+                c = readByte(in);
+                long distance = c & 0x7F;
+                while ((c & 0x80) != 0) {
+                    c = readByte(in);
+                    distance = ((distance + 1) << 7) | (c & 0x7F);
+                }
+                byte[] delta = inflate(in, size);
+                GitObject base = read(pack, offset - distance);
+                return new GitObject(base.type, applyDelta(base.data, delta));
+            }
+            if (type == ReferenceDelta) {
+                byte[] id = new byte[20];
+                for (int i = 0; i < 20; i++) {
+                    id[i] = (byte) readByte(in);
+                }
+                byte[] delta = inflate(in, size);
+                GitObject base = readObject(toHex(id, 0, 20));
+                return new GitObject(base.type, applyDelta(base.data, delta));
+            }
+            return new GitObject(type, inflate(in, size));
+        }
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param in A stream.
+     * @return The next byte.
+     * @throws IOException At the end of the stream.
+     */
+    private static int readByte(InputStream in) throws IOException {
+        int c = in.read();
+        if (c == -1) {
+            throw new EOFException();
+        }
+        return c;
+    }
+
+    /**
+     * Internal function! Decompresses data of a known size.
+     *
+     * @param in The compressed data.
+     * @param size The size of the data.
+     * @return The data.
+     * @throws IOException If the data is shorter.
+     */
+    private static byte[] inflate(InputStream in, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Object too large");
+        }
+        byte[] data = new byte[(int) size];
+        InputStream inflater = new InflaterInputStream(in);
+        int length = 0;
+        while (length < data.length) {
+            int n = inflater.read(data, length, data.length - length);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            length += n;
+        }
+        return data;
+    }
+
+    /**
+     * Internal function! Builds an object from its base and a delta (sizes,
+     * then instructions to copy from the base or to insert).
+     *
+     * @param base The base object.
+     * @param delta The delta.
+     * @return The object.
+     * @throws IOException If the delta does not fit the base.
+     */
+    private static byte[] applyDelta(byte[] base, byte[] delta) throws IOException {
+        int[] position = {0};
+        long baseSize = readSize(delta, position);
+        long size = readSize(delta, position);
+        if (baseSize != base.length || size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid delta");
+        }
+        byte[] result = new byte[(int) size];
+        int length = 0;
+        int p = position[0];
+        try {
+            while (p < delta.length) {
+                int c = delta[p++] & 0xFF;
+                if ((c & 0x80) != 0) {
+                    int offset = 0, count = 0;
+                    for (int i = 0; i < 4; i++) {
+                        if ((c & (1 << i)) != 0) {
+                            offset |= (delta[p++] & 0xFF) << (8 * i);
+                        }
+                    }
+                    for (int i = 0; i < 3; i++) {
+                        if ((c & (0x10 << i)) != 0) {
+                            count |= (delta[p++] & 0xFF) << (8 * i);
+                        }
+                    }
+                    if (count == 0) {
+                        count = 0x10000;
+                    }
+                    System.arraycopy(base, offset, result, length, count);
+                    length += count;
+                } else if (c != 0) {
+                    System.arraycopy(delta, p, result, length, c);
+                    p += c;
+                    length += c;
+                } else {
+                    throw new IOException("Invalid delta");
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("Invalid delta", ex);
+        }
+        if (length != result.length) {
+            throw new IOException("Invalid delta");
+        }
+        return result;
+    }
+
+    /**
+     * Internal function! Reads a size of a delta, seven bits per byte.
+     */
+    private static long readSize(byte[] delta, int[] position) {
+        long size = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = delta[position[0]++] & 0xFF;
+            size |= (long) (c & 0x7F) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return size;
+    }
+
+    /**
+     * Internal function!
+     *
+     * @param file A file.
+     * @return The first line without surrounding white space or null if the file is empty.
+     * @throws IOException If the file cannot be read.
+     */
+    private static String readFirstLine(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line = reader.readLine();
+            return line == null ? null : line.trim();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.digit(s.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String toHex(byte[] data, int offset, int length) {
+        StringBuilder hex = new StringBuilder(2 * length);
+        for (int i = offset; i < offset + length; i++) {
+            hex.append(Character.forDigit((data[i] >> 4) & 15, 16)).append(Character.forDigit(data[i] & 15, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] data = new byte[hex.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A read-only resource whose content is in the memory, e.g. a file of an
+ * older version from a repository. Can be loaded like any other resource.
+ */
+public class MemoryResource implements Resource {
+
+    private final String path;
+    private final byte[] content;
+
+    /**
+     * @param path The path, its name determines the format when loading.
+     * @param content The content, not copied.
+     */
+    public MemoryResource(String path, byte[] content) {
+        this.path = path;
+        this.content = content;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public void createNew() throws IOException {
+        throw new UnsupportedOperationException("Resources in memory are read-only.");
+    }
+
+    @Override
+    public boolean delete() {
+        return false;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public String getName() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException("Resources in memory are read-only.");
+    }
+
+    @Override
+    public List<Resource> list(String regex) throws IOException {
+        throw new IOException("Not a directory");
+    }
+}
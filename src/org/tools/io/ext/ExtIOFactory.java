@@ -1,22 +1,50 @@
 package org.tools.io.ext;
 
+import java.io.Reader;
 import java.io.Writer;
 
 import org.apache.commons.configuration.PropertiesConfiguration.DefaultIOFactory;
+import org.apache.commons.configuration.PropertiesConfiguration.PropertiesReader;
 import org.apache.commons.configuration.PropertiesConfiguration.PropertiesWriter;
+import org.jlokalize.KeyDictionary;
 import org.jlokalize.Settings;
 
 public class ExtIOFactory extends DefaultIOFactory {
 	
-	private final boolean escapeUnicode;
+	private boolean escapeUnicode;
+	
+	/* Keys are shared with all languages of the project, may be null */
+	private final KeyDictionary keys;
 	
 	public ExtIOFactory() {
 		this(Settings.ESCAPE);
 	}
 	
 	public ExtIOFactory(boolean escapeUnicode) {
+		this(escapeUnicode, null);
+	}
+	
+	public ExtIOFactory(boolean escapeUnicode, KeyDictionary keys) {
 		super();
 		this.escapeUnicode = escapeUnicode;
+		this.keys = keys;
+	}
+	
+	public boolean isEscapeUnicode() {
+		return escapeUnicode;
+	}
+	
+	/* Changes the escaping of the writers created from now on */
+	public void setEscapeUnicode(boolean escapeUnicode) {
+		this.escapeUnicode = escapeUnicode;
+	}
+	
+	@Override
+	public PropertiesReader createPropertiesReader(Reader in, char delimiter) {
+		if (keys == null) {
+			return super.createPropertiesReader(in, delimiter);
+		}
+		return new ExtPropertyReader(in, delimiter, keys);
 	}
 	
 	@Override
@@ -0,0 +1,22 @@
+package org.tools.io.ext;
+
+import java.io.Reader;
+
+import org.apache.commons.configuration.PropertiesConfiguration.PropertiesReader;
+import org.jlokalize.KeyDictionary;
+
+/* Replaces every read key by the canonical string of the key dictionary */
+public class ExtPropertyReader extends PropertiesReader {
+	
+	private final KeyDictionary keys;
+	
+	public ExtPropertyReader(Reader reader, char delimiter, KeyDictionary keys) {
+		super(reader, delimiter);
+		this.keys = keys;
+	}
+	
+	@Override
+	protected void initPropertyName(String name) {
+		super.initPropertyName(keys.intern(name));
+	}
+}
@@ -22,10 +22,30 @@ public class ExtPropertyWriter extends PropertiesWriter {
 	/* Copied from super class */
 	private static final int BUF_SIZE = 8;
 	
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+	
+	/* Second character of the two character escapes of the ASCII characters, 0 if there is none */
+	private static final char[] SHORT_ESCAPES = new char[128];
+	static {
+		SHORT_ESCAPES['\b'] = 'b';
+		SHORT_ESCAPES['\n'] = 'n';
+		SHORT_ESCAPES['\t'] = 't';
+		SHORT_ESCAPES['\f'] = 'f';
+		SHORT_ESCAPES['\r'] = 'r';
+		SHORT_ESCAPES['"'] = '"';
+		SHORT_ESCAPES['\\'] = '\\';
+	}
+	
 	private final char delimiter;
 	
 	private final boolean escapeUnicode;
 	
+	/* The delimiter cannot be part of an escape sequence, so it can be escaped while scanning */
+	private final boolean fastPath;
+	
+	/* Receives one escape sequence at a time */
+	private final char[] escapeBuffer = new char[6];
+	
 	public ExtPropertyWriter(Writer writer, char delimiter) {
 		this(writer, delimiter, Settings.ESCAPE);
 	}
@@ -34,6 +54,8 @@ public class ExtPropertyWriter extends PropertiesWriter {
 		super(writer, delimiter);
 		this.delimiter = delimiter;
 		this.escapeUnicode = escapeUnicode;
+		this.fastPath = delimiter == 0 || (delimiter > ' ' && delimiter < 0x7f && !Character.isLetterOrDigit(delimiter)
+				&& delimiter != '\\' && delimiter != '"');
 	}
 	
 	/* Copied from PropertiesConfiguration */
@@ -59,6 +81,13 @@ public class ExtPropertyWriter extends PropertiesWriter {
 				writeProperty(key, values);
 				return;
 			}
+		} else if (fastPath) {
+			// written directly, without building escaped strings
+			writeKey(key);
+			write(fetchSeparator(key, value));
+			writeValue(String.valueOf(value));
+			writeln(null);
+			return;
 		} else {
 			v = escapeValue(value, false);
 		}
@@ -70,6 +99,73 @@ public class ExtPropertyWriter extends PropertiesWriter {
 		writeln(null);
 	}
 	
+	/* Same as write(escapeKey(key)), but unescaped runs are written in one piece */
+	private void writeKey(String key) throws IOException {
+		int start = 0;
+		int length = key.length();
+		for (int i = 0; i < length; i++) {
+			char c = key.charAt(i);
+			if (c == '=' || c == ':' || c == ' ' || c == '\t' || c == '\f') {
+				if (i > start) {
+					write(key, start, i - start);
+				}
+				escapeBuffer[0] = '\\';
+				escapeBuffer[1] = c;
+				write(escapeBuffer, 0, 2);
+				start = i + 1;
+			}
+		}
+		if (start < length) {
+			write(key, start, length - start);
+		}
+	}
+	
+	/* Same as write(escapeValue(value, false)) for a single value, but unescaped runs are written in one piece */
+	private void writeValue(String value) throws IOException {
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			int n = escape(value.charAt(i));
+			if (n > 0) {
+				if (i > start) {
+					write(value, start, i - start);
+				}
+				write(escapeBuffer, 0, n);
+				start = i + 1;
+			}
+		}
+		if (start < length) {
+			write(value, start, length - start);
+		}
+	}
+	
+	/* Puts the escape sequence of a character into the escape buffer, returns its length or 0 if it is written as it is */
+	private int escape(char ch) {
+		if (ch < 0x80) {
+			char second = SHORT_ESCAPES[ch];
+			if (second == 0 && ch == delimiter && ch != 0) {
+				second = ch;
+			}
+			if (second != 0) {
+				escapeBuffer[0] = '\\';
+				escapeBuffer[1] = second;
+				return 2;
+			}
+			if (ch >= 32 || !escapeUnicode) {
+				return 0;
+			}
+		} else if (!escapeUnicode) {
+			return 0;
+		}
+		escapeBuffer[0] = '\\';
+		escapeBuffer[1] = 'u';
+		escapeBuffer[2] = HEX_DIGITS[(ch >> 12) & 0xF];
+		escapeBuffer[3] = HEX_DIGITS[(ch >> 8) & 0xF];
+		escapeBuffer[4] = HEX_DIGITS[(ch >> 4) & 0xF];
+		escapeBuffer[5] = HEX_DIGITS[ch & 0xF];
+		return 6;
+	}
+	
 	/* Copied from super class */
 	protected String escapeKey(String key) {
 		StringBuilder newkey = new StringBuilder();
@@ -0,0 +1,84 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the batch mode.
+ */
+public class BatchTest {
+
+    private final List<File> files = new ArrayList<File>();
+
+    @After
+    public void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Creates a file in the current directory.
+     */
+    private void create(String name, String content) throws IOException {
+        File file = new File(name);
+        files.add(file);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Runs the batch mode and returns what it printed, after the exit code.
+     */
+    private static String run(String... args) throws IOException {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, "UTF-8"));
+        int exit;
+        try {
+            exit = Batch.run(args);
+        } finally {
+            System.setOut(out);
+        }
+        return exit + "\n" + bytes.toString("UTF-8");
+    }
+
+    /**
+     * A file name without directory, as in the example of the readme.
+     */
+    @Test
+    public void relativePathTest() throws IOException {
+        create("BatchTest.properties", "a=A\nb=B\n");
+        create("BatchTest_de.properties", "a=A\n");
+        assertEquals("1\n{\"project\":\"BatchTest.properties\",\"operation\":\"missing\",\"locale\":\"de\",\"key\":\"b\"}\n",
+                run("--strict", "missing", "BatchTest.properties"));
+    }
+}
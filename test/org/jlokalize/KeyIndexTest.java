@@ -0,0 +1,113 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the filtering of the keys table by prefixes and substrings.
+ */
+public class KeyIndexTest {
+
+    /**
+     * Keys that are equal in lower case must all be found, wherever the binary
+     * search lands between them.
+     */
+    @Test
+    public void prefixWithCaseDuplicatesTest() {
+        List<String> keys = Arrays.asList("Foo", "fOo", "foo", "foO", "FOO");
+        KeyIndex index = new KeyIndex(keys);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, index.findPrefix("foo"));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, index.findPrefix("FO"));
+        assertArrayEquals(new int[]{}, index.findPrefix("foox"));
+    }
+
+    /**
+     * Prefixes among other keys, before and after the matching ones.
+     */
+    @Test
+    public void prefixTest() {
+        List<String> keys = Arrays.asList("menu.file", "Menu.File.Open", "a", "menu", "menv", "MENU.edit", "z", "menu.files");
+        KeyIndex index = new KeyIndex(keys);
+        assertArrayEquals(new int[]{0, 1, 3, 5, 7}, index.findPrefix("menu"));
+        assertArrayEquals(new int[]{0, 1, 7}, index.findPrefix("menu.file"));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7}, index.findPrefix(""));
+        assertArrayEquals(new int[]{6}, index.findPrefix("Z"));
+    }
+
+    /**
+     * Substrings shorter and longer than a trigram.
+     */
+    @Test
+    public void substringTest() {
+        List<String> keys = Arrays.asList("menu.file", "Menu.File.Open", "dialog.open", "FOO");
+        KeyIndex index = new KeyIndex(keys);
+        assertArrayEquals(new int[]{0, 1}, index.findSubstring("FILE"));
+        assertArrayEquals(new int[]{1, 2}, index.findSubstring("open"));
+        assertArrayEquals(new int[]{0, 1, 2}, index.findSubstring("."));
+        assertArrayEquals(new int[]{3}, index.findSubstring("oo"));
+        assertEquals(2, index.indexOf("dialog.open"));
+    }
+
+    /**
+     * Adding, removing and renaming keys updates the index in place, the
+     * positions come from the changed list.
+     */
+    @Test
+    public void updateTest() {
+        List<String> keys = new ArrayList<String>(Arrays.asList("menu.file", "menu.open", "zoom"));
+        KeyIndex index = new KeyIndex(keys);
+
+        keys.add(1, "Menu.Edit");
+        index.add("Menu.Edit");
+        index.setPositions(keys);
+        assertArrayEquals(new int[]{0, 1, 2}, index.findPrefix("menu"));
+        assertArrayEquals(new int[]{1}, index.findSubstring("edit"));
+        assertEquals(3, index.indexOf("zoom"));
+
+        keys.remove("menu.open");
+        index.remove("menu.open");
+        index.setPositions(keys);
+        assertArrayEquals(new int[]{0, 1}, index.findPrefix("menu"));
+        assertArrayEquals(new int[]{}, index.findSubstring("open"));
+        assertEquals(-1, index.indexOf("menu.open"));
+
+        keys.set(2, "menu.zoom");
+        index.rename("zoom", "menu.zoom");
+        index.setPositions(keys);
+        assertArrayEquals(new int[]{0, 1, 2}, index.findPrefix("menu"));
+        assertArrayEquals(new int[]{2}, index.findSubstring("zoom"));
+        assertArrayEquals(new int[]{}, index.findPrefix("zoom"));
+
+        // many removed keys renumber the ids
+        for (int i = 0; i < 100; i++) {
+            keys.add("key" + i);
+            index.add("key" + i);
+        }
+        for (int i = 0; i < 90; i++) {
+            keys.remove("key" + i);
+            index.remove("key" + i);
+        }
+        index.setPositions(keys);
+        assertArrayEquals(new int[]{3, 4, 5, 6, 7, 8, 9, 10, 11, 12}, index.findPrefix("key"));
+        assertArrayEquals(new int[]{12}, index.findSubstring("ey99"));
+        assertArrayEquals(new int[]{2}, index.findSubstring("zoom"));
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import org.tools.common.TreeNode;
+
+/**
+ * Tests updating the search index when texts change.
+ */
+public class ProjectSearchIndexTest {
+
+    /**
+     * A new text is found even if its hash equals the one of the old text
+     * ("Aa" and "BB" have the same hash code).
+     */
+    @Test
+    public void updateWithSameHashTest() throws InterruptedException {
+        LanguageProperties language = new LanguageProperties();
+        language.putKeyText("key", "xAa");
+        TreeNode<LanguageProperties> root = new TreeNode<LanguageProperties>();
+        root.setData(language);
+        ProjectSearchIndex index = new ProjectSearchIndex();
+        try {
+            index.synchronize(root);
+            while (index.isBuilding()) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, index.findSubstring("xAa", 10).size());
+            assertEquals("xAa".hashCode(), "xBB".hashCode());
+            language.putKeyText("key", "xBB");
+            assertEquals(0, index.findSubstring("xAa", 10).size());
+            assertEquals(1, index.findSubstring("xBB", 10).size());
+        } finally {
+            index.dispose();
+        }
+    }
+}
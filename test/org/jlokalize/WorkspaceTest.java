@@ -0,0 +1,84 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jlokalize;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tools.io.TestFiles;
+
+/**
+ * Tests finding the bundles of language files in a directory tree.
+ */
+public class WorkspaceTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = TestFiles.createDirectory("WorkspaceTest");
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(root);
+    }
+
+    private void create(String... paths) throws IOException {
+        for (String path : paths) {
+            File file = new File(root, path);
+            file.getParentFile().mkdirs();
+            file.createNewFile();
+        }
+    }
+
+    private List<String> scan() throws IOException {
+        List<String> bundles = new ArrayList<String>();
+        for (Workspace.Bundle bundle : Workspace.scan(root, null).getBundles()) {
+            bundles.add(bundle.toString());
+        }
+        return bundles;
+    }
+
+    /**
+     * Only groups with a file of a known language are bundles.
+     */
+    @Test
+    public void groupTest() throws IOException {
+        create("messages.properties", "messages_de.properties", "messages_pt_BR.properties",
+                "config.properties", "build_xx.properties",
+                "web/package.json", "web/tsconfig.json", "web/i18n/en.json", "web/i18n/de.json", "web/i18n/xx.json");
+        List<String> expected = new ArrayList<String>();
+        expected.add("messages.properties (3)");
+        expected.add("web/i18n/*.json (2)");
+        assertEquals(expected, scan());
+    }
+
+    /**
+     * Hidden directories and those of dependencies are not scanned.
+     */
+    @Test
+    public void skippedDirectoriesTest() throws IOException {
+        create(".git/a_de.properties", "node_modules/x/a_de.properties", "target/classes/a_de.properties", "src/a_de.properties");
+        List<String> expected = new ArrayList<String>();
+        expected.add("src/a.properties (1)");
+        assertEquals(expected, scan());
+    }
+}
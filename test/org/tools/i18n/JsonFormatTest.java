@@ -0,0 +1,145 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Tests reading and writing JSON files.
+ */
+public class JsonFormatTest {
+
+    private static final String CommentSuffix = ".comment";
+
+    private static PropertiesConfiguration load(ResourceFormat format, String json) throws Exception {
+        PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.setDelimiterParsingDisabled(true);
+        format.load(configuration, new StringReader(json), CommentSuffix);
+        return configuration;
+    }
+
+    private static String save(ResourceFormat format, PropertiesConfiguration configuration) throws Exception {
+        StringWriter writer = new StringWriter();
+        format.save(configuration, writer, CommentSuffix);
+        return writer.toString();
+    }
+
+    /**
+     * A flat file is written again as it was.
+     */
+    @Test
+    public void flatRoundTripTest() throws Exception {
+        String json = "{\n  \"button.save\": \"Save\",\n  \"count\": 3,\n  \"quote\": \"a \\\"b\\\"\\n\\u0001\"\n}\n";
+        JsonFormat format = new JsonFormat();
+        PropertiesConfiguration configuration = load(format, json);
+        assertEquals("Save", configuration.getString("button.save"));
+        assertEquals("3", configuration.getString("count"));
+        assertEquals("a \"b\"\n\u0001", configuration.getString("quote"));
+        assertEquals(json, save(format, configuration));
+    }
+
+    /**
+     * A nested file with arrays is written again as it was.
+     */
+    @Test
+    public void nestedRoundTripTest() throws Exception {
+        String json = "{\n  \"button\": {\n    \"save\": \"Save\",\n    \"enabled\": true\n  },\n  \"days\": [\n    \"Mo\",\n    \"Tu\"\n  ]\n}\n";
+        JsonFormat format = new JsonFormat();
+        PropertiesConfiguration configuration = load(format, json);
+        assertEquals("Save", configuration.getString("button.save"));
+        assertEquals("true", configuration.getString("button.enabled"));
+        assertEquals("Tu", configuration.getString("days[1]"));
+        assertEquals(json, save(format, configuration));
+        // a changed literal that is no literal anymore is quoted
+        configuration.setProperty("button.enabled", "yes");
+        assertEquals(json.replace("true", "\"yes\""), save(format, configuration));
+    }
+
+    /**
+     * Member names with dots stay one member, also after a change.
+     */
+    @Test
+    public void dottedNameTest() throws Exception {
+        String json = "{\n  \"a\": {\n    \"b.c\": \"x\",\n    \"d\": \"y\"\n  }\n}\n";
+        JsonFormat format = new JsonFormat();
+        PropertiesConfiguration configuration = load(format, json);
+        assertEquals("x", configuration.getString("a.b.c"));
+        assertEquals(json, save(format, configuration));
+        configuration.setProperty("a.b.c", "z");
+        assertEquals(json.replace("\"x\"", "\"z\""), save(format, configuration));
+    }
+
+    /**
+     * Empty objects and arrays are kept.
+     */
+    @Test
+    public void emptyMembersTest() throws Exception {
+        String json = "{\n  \"empty\": {},\n  \"button\": {\n    \"save\": \"Save\",\n    \"none\": []\n  }\n}\n";
+        JsonFormat format = new JsonFormat();
+        PropertiesConfiguration configuration = load(format, json);
+        assertEquals(json, save(format, configuration));
+    }
+
+    /**
+     * A flat member in a nested file stays flat, new keys are nested.
+     */
+    @Test
+    public void flatMemberInNestedFileTest() throws Exception {
+        String json = "{\n  \"flat.key\": \"Flat\",\n  \"button\": {\n    \"save\": \"Save\"\n  }\n}\n";
+        JsonFormat format = new JsonFormat();
+        PropertiesConfiguration configuration = load(format, json);
+        assertEquals("Flat", configuration.getString("flat.key"));
+        assertEquals(json, save(format, configuration));
+        configuration.addProperty("button.open", "Open");
+        assertEquals(json.replace("\"Save\"\n", "\"Save\",\n    \"open\": \"Open\"\n"), save(format, configuration));
+    }
+
+    /**
+     * Comments cannot be written into JSON.
+     */
+    @Test
+    public void commentsNotSavedTest() throws Exception {
+        JsonFormat format = new JsonFormat();
+        PropertiesConfiguration configuration = load(format, "{\"save\": \"Save\"}");
+        configuration.addProperty("save" + CommentSuffix, "button text");
+        assertFalse(save(format, configuration).contains("button text"));
+        assertEquals("{\n  \"save\": \"Save\"\n}\n", save(format, configuration));
+    }
+
+    /**
+     * Members whose keys end with the comment suffix are texts and written
+     * again under their names.
+     */
+    @Test
+    public void memberLikeCommentTest() throws Exception {
+        String nested = "{\n  \"save\": {\n    \"comment\": \"Comment\"\n  }\n}\n";
+        JsonFormat format = new JsonFormat();
+        PropertiesConfiguration configuration = load(format, nested);
+        assertFalse(configuration.containsKey("save.comment"));
+        assertEquals("Comment", configuration.getString("save[\"comment\"]"));
+        assertEquals(nested, save(format, configuration));
+
+        String flat = "{\n  \"save.comment\": \"Comment\"\n}\n";
+        format = new JsonFormat();
+        configuration = load(format, flat);
+        assertEquals("Comment", configuration.getString("[\"save.comment\"]"));
+        assertEquals(flat, save(format, configuration));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests reading and writing Gettext PO files.
+ */
+public class PoFormatTest {
+
+    private static final String CommentSuffix = ".comment";
+
+    private static final String Po = "msgid \"\"\n"
+            + "msgstr \"\"\n"
+            + "\"Content-Type: text/plain; charset=UTF-8\\n\"\n"
+            + "\"Plural-Forms: nplurals=2; plural=(n != 1);\\n\"\n"
+            + "\n"
+            + "# translator comment\n"
+            + "#\n"
+            + "# second line\n"
+            + "#. extracted comment\n"
+            + "#: src/Main.java:10\n"
+            + "#, c-format\n"
+            + "msgid \"Open %s\"\n"
+            + "msgstr \"%s \u00f6ffnen\"\n"
+            + "\n"
+            + "msgctxt \"menu\"\n"
+            + "msgid \"File\"\n"
+            + "msgstr \"Datei\"\n"
+            + "\n"
+            + "msgid \"%d file\"\n"
+            + "msgid_plural \"%d files\"\n"
+            + "msgstr[0] \"%d Datei\"\n"
+            + "msgstr[1] \"%d Dateien\"\n"
+            + "\n"
+            + "msgid \"Lines\"\n"
+            + "msgstr \"\"\n"
+            + "\"first\\n\"\n"
+            + "\"second\"\n"
+            + "\n"
+            + "#~ msgid \"Obsolete\"\n"
+            + "#~ msgstr \"Veraltet\"\n";
+
+    private static PropertiesConfiguration load(ResourceFormat format, String po) throws Exception {
+        PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.setDelimiterParsingDisabled(true);
+        format.load(configuration, new StringReader(po), CommentSuffix);
+        return configuration;
+    }
+
+    private static String save(ResourceFormat format, PropertiesConfiguration configuration) throws Exception {
+        StringWriter writer = new StringWriter();
+        format.save(configuration, writer, CommentSuffix);
+        return writer.toString();
+    }
+
+    /**
+     * Keys, texts, contexts, plural forms and comments are read.
+     */
+    @Test
+    public void loadTest() throws Exception {
+        PropertiesConfiguration configuration = load(new PoFormat(), Po);
+        assertEquals("%s \u00f6ffnen", configuration.getString("Open %s"));
+        assertEquals("translator comment\n\nsecond line", configuration.getString("Open %s" + CommentSuffix));
+        assertEquals("Datei", configuration.getString("menu" + PoFormat.ContextSeparator + "File"));
+        assertEquals("%d Datei", configuration.getString("%d file"));
+        assertEquals("%d Dateien", configuration.getString("%d file[1]"));
+        assertEquals("first\nsecond", configuration.getString("Lines"));
+    }
+
+    /**
+     * An unchanged file is written again as it was, a changed text and
+     * comment are written in place.
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        PoFormat format = new PoFormat();
+        PropertiesConfiguration configuration = load(format, Po);
+        assertEquals(Po, save(format, configuration));
+        configuration.setProperty("Open %s", "\u00d6ffne %s");
+        configuration.setProperty("Open %s" + CommentSuffix, "new comment");
+        String expected = Po.replace("# translator comment\n#\n# second line\n", "# new comment\n")
+                .replace("msgstr \"%s \u00f6ffnen\"", "msgstr \"\u00d6ffne %s\"");
+        assertEquals(expected, save(format, configuration));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.i18n;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.tools.io.EncodingDetector;
+import org.tools.io.ResourceUtils;
+
+/**
+ * Tests loading language files with a detected encoding.
+ */
+public class PropertyTest {
+
+    private static Property load(byte[] content) throws IOException {
+        File file = File.createTempFile("PropertyTest", ".properties");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        Property property = new Property();
+        property.setEncodingDetection(true);
+        property.setLocation(ResourceUtils.asResource(file));
+        assertTrue(property.load());
+        return property;
+    }
+
+    /**
+     * A file that is UTF-8 throughout.
+     */
+    @Test
+    public void utf8Test() throws IOException {
+        Property property = load("a=caf\u00e9\nb=\u20ac\n".getBytes("UTF-8"));
+        assertEquals(EncodingDetector.Utf8, property.getEncoding());
+        assertEquals("caf\u00e9", property.get("a"));
+        assertEquals("\u20ac", property.get("b"));
+    }
+
+    /**
+     * An invalid byte after the scanned prefix of a UTF-8 file must not be
+     * replaced, the whole file is read as ISO-8859-1 then.
+     */
+    @Test
+    public void invalidAfterPrefixTest() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write("a=caf\u00e9\n".getBytes("UTF-8"));
+        while (content.size() < EncodingDetector.PrefixLength) {
+            content.write("# padding to get beyond the scanned prefix\n".getBytes("UTF-8"));
+        }
+        content.write("b=caf".getBytes("UTF-8"));
+        content.write(0xE9);
+        content.write('\n');
+        Property property = load(content.toByteArray());
+        assertEquals(EncodingDetector.Latin1, property.getEncoding());
+        assertEquals("caf\u00c3\u00a9", property.get("a"));
+        assertEquals("caf\u00e9", property.get("b"));
+    }
+
+    /**
+     * The same with a byte order mark, which is not part of the first key.
+     */
+    @Test
+    public void invalidWithByteOrderMarkTest() throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        content.write("\ufeffa=x\n".getBytes("UTF-8"));
+        while (content.size() < EncodingDetector.PrefixLength) {
+            content.write("# padding to get beyond the scanned prefix\n".getBytes("UTF-8"));
+        }
+        content.write("b=".getBytes("UTF-8"));
+        content.write(0xFF);
+        content.write('\n');
+        Property property = load(content.toByteArray());
+        assertEquals(EncodingDetector.Latin1, property.getEncoding());
+        assertFalse(property.hasByteOrderMark());
+        assertEquals("x", property.get("a"));
+        assertEquals("\u00ff", property.get("b"));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.io;
+
+import java.io.UnsupportedEncodingException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the guesses of the encoding from the beginning of a file.
+ */
+public class EncodingDetectorTest {
+
+    private static EncodingDetector detect(byte[] bytes) {
+        return EncodingDetector.detect(bytes, bytes.length, true);
+    }
+
+    private static byte[] bytes(String text, String encoding) throws UnsupportedEncodingException {
+        return text.getBytes(encoding);
+    }
+
+    /**
+     * Only ASCII gives no evidence, escapes are a hint for saving.
+     */
+    @Test
+    public void asciiTest() throws UnsupportedEncodingException {
+        EncodingDetector detected = detect(bytes("a=b\nc=d\n", "US-ASCII"));
+        assertNull(detected.getEncoding());
+        assertNull(detected.getEscaped());
+        assertTrue(detected.isExact());
+        detected = detect(bytes("a=\\u00e9\n", "US-ASCII"));
+        assertNull(detected.getEncoding());
+        assertEquals(Boolean.TRUE, detected.getEscaped());
+    }
+
+    /**
+     * Valid UTF-8 sequences, also one cut off at the end of the prefix.
+     */
+    @Test
+    public void utf8Test() throws UnsupportedEncodingException {
+        byte[] bytes = bytes("a=caf\u00e9 \u20ac \ud83d\ude00\n", "UTF-8");
+        EncodingDetector detected = detect(bytes);
+        assertEquals(EncodingDetector.Utf8, detected.getEncoding());
+        assertEquals(Boolean.FALSE, detected.getEscaped());
+        assertEquals(0, detected.getByteOrderMarkLength());
+        assertTrue(detected.isExact());
+        // the euro sign is cut after its first byte
+        bytes = bytes("a=\u00e9\u20ac", "UTF-8");
+        detected = EncodingDetector.detect(bytes, bytes.length - 2, false);
+        assertEquals(EncodingDetector.Utf8, detected.getEncoding());
+        detected = EncodingDetector.detect(bytes, bytes.length - 2, true);
+        assertEquals(EncodingDetector.Latin1, detected.getEncoding());
+    }
+
+    /**
+     * Bytes above 0x7F that are not UTF-8 are ISO-8859-1, even if most of the
+     * others are valid UTF-8.
+     */
+    @Test
+    public void latin1Test() throws UnsupportedEncodingException {
+        EncodingDetector detected = detect(bytes("a=caf\u00e9\nb=M\u00fcnchen\n", "ISO-8859-1"));
+        assertEquals(EncodingDetector.Latin1, detected.getEncoding());
+        assertEquals(Boolean.TRUE, detected.getEscaped());
+        assertTrue(detected.isExact());
+        byte[] utf8 = bytes("a=\u00e9\u00e9\u00e9\u00e9\n", "UTF-8");
+        byte[] damaged = new byte[utf8.length + 1];
+        System.arraycopy(utf8, 0, damaged, 0, utf8.length);
+        damaged[utf8.length] = (byte) 0xE9;
+        assertEquals(EncodingDetector.Latin1, detect(damaged).getEncoding());
+    }
+
+    /**
+     * Byte order marks, only UTF-16 replaces invalid characters.
+     */
+    @Test
+    public void byteOrderMarkTest() throws UnsupportedEncodingException {
+        EncodingDetector detected = detect(bytes("\ufeffa=\u00e9\n", "UTF-8"));
+        assertEquals(EncodingDetector.Utf8, detected.getEncoding());
+        assertEquals(3, detected.getByteOrderMarkLength());
+        assertTrue(detected.isExact());
+        detected = detect(bytes("\ufeffa=b\n", "UTF-16BE"));
+        assertEquals("UTF-16BE", detected.getEncoding());
+        assertEquals(2, detected.getByteOrderMarkLength());
+        assertFalse(detected.isExact());
+        detected = detect(bytes("\ufeffa=b\n", "UTF-16LE"));
+        assertEquals("UTF-16LE", detected.getEncoding());
+        assertFalse(detected.isExact());
+    }
+
+    /**
+     * Escapes are kept if there are more of them than characters outside of
+     * ASCII, an escaped backslash does not start an escape.
+     */
+    @Test
+    public void escapingTest() throws UnsupportedEncodingException {
+        assertEquals(Boolean.TRUE, detect(bytes("a=\u00e9\\u00e9\\u00e9\n", "UTF-8")).getEscaped());
+        assertEquals(Boolean.FALSE, detect(bytes("a=\u00e9\u00e9\\u00e9\n", "UTF-8")).getEscaped());
+        assertEquals(Boolean.FALSE, detect(bytes("a=\u00e9\\\\u00e9\n", "UTF-8")).getEscaped());
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DeflaterOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading files of a commit from repositories that are built here, with
+ * loose objects and with a pack file containing deltas.
+ */
+public class GitRepositoryTest {
+
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = TestFiles.createDirectory("GitRepositoryTest");
+        new File(root, ".git/refs/heads").mkdirs();
+        new File(root, ".git/objects/pack").mkdirs();
+        write(new File(root, ".git/HEAD"), "ref: refs/heads/master\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @After
+    public void tearDown() {
+        TestFiles.delete(root);
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] id(String type, byte[] data) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-1").digest(concat(ascii(type + " " + data.length + "\0"), data));
+    }
+
+    private static String hex(byte[] id) {
+        StringBuilder s = new StringBuilder();
+        for (byte b : id) {
+            s.append(String.format("%02x", b & 0xFF));
+        }
+        return s.toString();
+    }
+
+    private static byte[] tree(String name, String mode, byte[] id) {
+        return concat(ascii(mode + " " + name + "\0"), id);
+    }
+
+    private static byte[] commit(byte[] tree) {
+        return ascii("tree " + hex(tree) + "\nauthor a <a> 0 +0000\ncommitter a <a> 0 +0000\n\nmessage\n");
+    }
+
+    /**
+     * Writes an object as a loose object file.
+     */
+    private byte[] writeLoose(String type, byte[] data) throws Exception {
+        byte[] id = id(type, data);
+        String name = hex(id);
+        File directory = new File(root, ".git/objects/" + name.substring(0, 2));
+        directory.mkdirs();
+        write(new File(directory, name.substring(2)), deflate(concat(ascii(type + " " + data.length + "\0"), data)));
+        return id;
+    }
+
+    private static byte[] packHeader(int type, long size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int c = (type << 4) | (int) (size & 15);
+        size >>>= 4;
+        while (size != 0) {
+            out.write(c | 0x80);
+            c = (int) (size & 0x7F);
+            size >>>= 7;
+        }
+        out.write(c);
+        return out.toByteArray();
+    }
+
+    private static byte[] deltaSize(long size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (size >= 0x80) {
+            out.write((int) (size & 0x7F) | 0x80);
+            size >>>= 7;
+        }
+        out.write((int) size);
+        return out.toByteArray();
+    }
+
+    /**
+     * A delta that copies the first bytes of the base and appends a text.
+     */
+    private static byte[] delta(byte[] base, int copy, byte[] insert) {
+        return concat(deltaSize(base.length), deltaSize(copy + insert.length), new byte[]{(byte) 0x90, (byte) copy, (byte) insert.length}, insert);
+    }
+
+    private static byte[] offsetDistance(long distance) {
+        byte[] buffer = new byte[10];
+        int position = buffer.length - 1;
+        buffer[position] = (byte) (distance & 0x7F);
+        while ((distance >>>= 7) != 0) {
+            distance--;
+            buffer[--position] = (byte) (0x80 | (distance & 0x7F));
+        }
+        byte[] result = new byte[buffer.length - position];
+        System.arraycopy(buffer, position, result, 0, result.length);
+        return result;
+    }
+
+    /**
+     * Writes a pack file and its index (version 2) from entries by id.
+     */
+    private void writePack(Map<String, Long> offsets, byte[] pack) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(new byte[]{(byte) 0xFF, 't', 'O', 'c', 0, 0, 0, 2});
+        for (int first = 0; first < 256; first++) {
+            int count = 0;
+            for (String id : offsets.keySet()) {
+                if (Integer.parseInt(id.substring(0, 2), 16) <= first) {
+                    count++;
+                }
+            }
+            index.write(new byte[]{(byte) (count >>> 24), (byte) (count >>> 16), (byte) (count >>> 8), (byte) count});
+        }
+        for (String id : offsets.keySet()) {
+            for (int i = 0; i < 40; i += 2) {
+                index.write(Integer.parseInt(id.substring(i, i + 2), 16));
+            }
+        }
+        index.write(new byte[4 * offsets.size()]);
+        for (long offset : offsets.values()) {
+            index.write(new byte[]{(byte) (offset >>> 24), (byte) (offset >>> 16), (byte) (offset >>> 8), (byte) offset});
+        }
+        write(new File(root, ".git/objects/pack/pack-test.idx"), index.toByteArray());
+        write(new File(root, ".git/objects/pack/pack-test.pack"), pack);
+    }
+
+    /**
+     * Files of a commit stored as loose objects, in a subdirectory and missing.
+     */
+    @Test
+    public void looseTest() throws Exception {
+        byte[] text = ascii("a=b\nc=d\n");
+        byte[] blob = writeLoose("blob", text);
+        byte[] directory = writeLoose("tree", tree("x.properties", "100644", blob));
+        byte[] tree = writeLoose("tree", concat(tree("a.properties", "100644", blob), tree("lang", "40000", directory)));
+        byte[] commit = writeLoose("commit", commit(tree));
+        write(new File(root, ".git/refs/heads/master"), ascii(hex(commit) + "\n"));
+
+        GitRepository repository = GitRepository.find(new File(root, "lang"));
+        assertEquals(root.getCanonicalFile(), repository.getWorkTree());
+        assertEquals(hex(commit), repository.resolveHead());
+        assertArrayEquals(text, repository.readFile(hex(commit), "a.properties"));
+        assertArrayEquals(text, repository.readFile(hex(commit), "lang/x.properties"));
+        assertNull(repository.readFile(hex(commit), "b.properties"));
+        assertNull(repository.readFile(hex(commit), "a.properties/x"));
+    }
+
+    /**
+     * A branch in the packed references only, and no commit at all.
+     */
+    @Test
+    public void packedReferenceTest() throws Exception {
+        assertNull(GitRepository.find(root).resolveHead());
+        byte[] commit = writeLoose("commit", commit(writeLoose("tree", new byte[0])));
+        write(new File(root, ".git/packed-refs"), ascii("# pack-refs with: peeled\n" + hex(commit) + " refs/heads/master\n"));
+        assertEquals(hex(commit), GitRepository.find(root).resolveHead());
+    }
+
+    /**
+     * Files of a commit stored in a pack, one of them as offset delta and one
+     * as reference delta.
+     */
+    @Test
+    public void packTest() throws Exception {
+        byte[] base = ascii("a=b\nc=d\n");
+        byte[] first = ascii("a=b\ne=f\n");
+        byte[] second = ascii("a=b\nc=d\ng=h\n");
+        byte[] baseId = id("blob", base);
+        byte[] firstId = id("blob", first);
+        byte[] secondId = id("blob", second);
+        byte[] treeData = concat(tree("a.properties", "100644", baseId), tree("b.properties", "100644", firstId), tree("c.properties", "100644", secondId));
+        byte[] treeId = id("tree", treeData);
+        byte[] commitData = commit(treeId);
+        byte[] commitId = id("commit", commitData);
+
+        Map<String, Long> offsets = new TreeMap<String, Long>();
+        ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        pack.write(concat(ascii("PACK"), new byte[]{0, 0, 0, 2, 0, 0, 0, 5}));
+        long baseOffset = pack.size();
+        offsets.put(hex(baseId), baseOffset);
+        pack.write(concat(packHeader(3, base.length), deflate(base)));
+        byte[] delta = delta(base, 4, ascii("e=f\n"));
+        offsets.put(hex(firstId), (long) pack.size());
+        pack.write(concat(packHeader(6, delta.length), offsetDistance(pack.size() - baseOffset), deflate(delta)));
+        delta = delta(base, 8, ascii("g=h\n"));
+        offsets.put(hex(secondId), (long) pack.size());
+        pack.write(concat(packHeader(7, delta.length), baseId, deflate(delta)));
+        offsets.put(hex(treeId), (long) pack.size());
+        pack.write(concat(packHeader(2, treeData.length), deflate(treeData)));
+        offsets.put(hex(commitId), (long) pack.size());
+        pack.write(concat(packHeader(1, commitData.length), deflate(commitData)));
+        pack.write(new byte[20]);
+        writePack(offsets, pack.toByteArray());
+        write(new File(root, ".git/refs/heads/master"), ascii(hex(commitId) + "\n"));
+
+        GitRepository repository = GitRepository.find(root);
+        String commit = repository.resolveHead();
+        assertEquals(hex(commitId), commit);
+        assertArrayEquals(base, repository.readFile(commit, "a.properties"));
+        assertArrayEquals(first, repository.readFile(commit, "b.properties"));
+        assertArrayEquals(second, repository.readFile(commit, "c.properties"));
+        assertNull(repository.readFile(commit, "d.properties"));
+    }
+
+    /**
+     * An object in neither form is an error.
+     */
+    @Test
+    public void missingObjectTest() throws Exception {
+        try {
+            GitRepository.find(root).readFile("0123456789012345678901234567890123456789", "a.properties");
+            fail("Object read that does not exist");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+}
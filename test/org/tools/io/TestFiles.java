@@ -0,0 +1,55 @@
+/*
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.tools.io;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Temporary directories for tests that need files.
+ */
+public class TestFiles {
+
+    private TestFiles() {
+    }
+
+    /**
+     * @param prefix The start of the name.
+     * @return A new empty directory in the temporary directory.
+     * @throws IOException If it cannot be created.
+     */
+    public static File createDirectory(String prefix) throws IOException {
+        File directory = File.createTempFile(prefix, "");
+        if (!directory.delete() || !directory.mkdirs()) {
+            throw new IOException("Directory cannot be created: " + directory.getPath());
+        }
+        return directory;
+    }
+
+    /**
+     * Deletes a file or a directory with its content.
+     *
+     * @param file The file or directory.
+     */
+    public static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}